@@ -13,6 +13,8 @@ package fr.jayasoft.ivy;
 public class ArtifactOrigin {
 	private boolean _isLocal;
 	private String _location;
+	private long _lastModified;
+	private String _etag;
 	public ArtifactOrigin(boolean isLocal, String location) {
 		_isLocal = isLocal;
 		_location = location;
@@ -23,4 +25,29 @@ public class ArtifactOrigin {
 	public String getLocation() {
 		return _location;
 	}
+	/**
+	 * @return the last modified date of the content downloaded from this origin, 0 if unknown
+	 */
+	public long getLastModified() {
+		return _lastModified;
+	}
+	public void setLastModified(long lastModified) {
+		_lastModified = lastModified;
+	}
+	/**
+	 * @return the entity tag of the content downloaded from this origin, null if unknown
+	 */
+	public String getETag() {
+		return _etag;
+	}
+	public void setETag(String etag) {
+		_etag = etag;
+	}
+	/**
+	 * @return true if the content downloaded from this origin can be revalidated
+	 * using a conditional request
+	 */
+	public boolean hasValidators() {
+		return _lastModified > 0 || _etag != null;
+	}
 }
@@ -41,6 +41,9 @@ import javax.swing.event.EventListenerList;
 import org.xml.sax.SAXException;
 
 import fr.jayasoft.ivy.IvyNode.EvictionData;
+import fr.jayasoft.ivy.cache.BlobStore;
+import fr.jayasoft.ivy.cache.CacheAccessIndex;
+import fr.jayasoft.ivy.cache.RetrieveManifest;
 import fr.jayasoft.ivy.circular.CircularDependencyStrategy;
 import fr.jayasoft.ivy.circular.ErrorCircularDependencyStrategy;
 import fr.jayasoft.ivy.circular.IgnoreCircularDependencyStrategy;
@@ -90,6 +93,7 @@ import fr.jayasoft.ivy.resolver.ChainResolver;
 import fr.jayasoft.ivy.resolver.DualResolver;
 import fr.jayasoft.ivy.resolver.ModuleEntry;
 import fr.jayasoft.ivy.resolver.OrganisationEntry;
+import fr.jayasoft.ivy.resolver.RepositoryResolver;
 import fr.jayasoft.ivy.resolver.RevisionEntry;
 import fr.jayasoft.ivy.status.StatusManager;
 import fr.jayasoft.ivy.url.URLHandlerRegistry;
@@ -97,6 +101,7 @@ import fr.jayasoft.ivy.util.FileUtil;
 import fr.jayasoft.ivy.util.IvyPatternHelper;
 import fr.jayasoft.ivy.util.Message;
 import fr.jayasoft.ivy.util.PropertiesFile;
+import fr.jayasoft.ivy.util.WorkerPool;
 import fr.jayasoft.ivy.version.ChainVersionMatcher;
 import fr.jayasoft.ivy.version.ExactVersionMatcher;
 import fr.jayasoft.ivy.version.LatestVersionMatcher;
@@ -107,6 +112,7 @@ import fr.jayasoft.ivy.xml.XmlIvyConfigurationParser;
 import fr.jayasoft.ivy.xml.XmlModuleDescriptorParser;
 import fr.jayasoft.ivy.xml.XmlModuleDescriptorUpdater;
 import fr.jayasoft.ivy.xml.XmlReportParser;
+import fr.jayasoft.ivy.xml.XmlReportUpdater;
 
 /**
  * <a href="http://www.jayasoft.org/ivy">Ivy</a> is a free java based dependency manager.
@@ -195,6 +201,15 @@ public class Ivy implements TransferListener {
 	private long _interruptTimeout = 2000;
 
 	private boolean _interrupted;
+
+    private Map _cacheAccessIndexes = new HashMap(); // Map (File cache -> CacheAccessIndex)
+
+    private boolean _useCacheBlobStore = false;
+    private Map _blobStores = new HashMap(); // Map (File cache -> BlobStore)
+
+    private XmlReportParser _reportParser = new XmlReportParser();
+
+    private ResolvedModuleRevisionCache _resolvedModuleRevisionCache = new ResolvedModuleRevisionCache(this);
     
     public Ivy() {
         setVariable("ivy.default.conf.dir", Ivy.class.getResource("conf").toExternalForm(), true);
@@ -280,7 +295,12 @@ public class Ivy implements TransferListener {
                 try {
                     URL url = new URL("http://www.jayasoft.org/ivy/repository.properties");
                     Message.verbose("configuring repositories with "+url);
-                    props.load(URLHandlerRegistry.getDefault().openStream(url));
+                    InputStream stream = URLHandlerRegistry.getDefault().openStream(url);
+                    try {
+                        props.load(stream);
+                    } finally {
+                        stream.close();
+                    }
                     configured = true;
                 } catch (Exception ex) {
                     Message.verbose("unable to use remote repository configuration: "+ex.getMessage());
@@ -1040,6 +1060,13 @@ public class Ivy implements TransferListener {
      * Resolves the module identified by the given mrid with its dependencies if transitive is set to true. 
      */
 	public ResolveReport resolve(final ModuleRevisionId mrid, String[] confs, boolean transitive, boolean changing, File cache, Date date, boolean validate, boolean useCacheOnly, boolean useOrigin, Filter artifactFilter) throws ParseException, IOException {
+		return resolve(mrid, confs, transitive, changing, cache, date, validate, useCacheOnly, useOrigin, true, artifactFilter);
+	}
+
+    /**
+     * Same as above, the download of the artifacts being deferred until they are needed if download is false.
+     */
+	public ResolveReport resolve(final ModuleRevisionId mrid, String[] confs, boolean transitive, boolean changing, File cache, Date date, boolean validate, boolean useCacheOnly, boolean useOrigin, boolean download, Filter artifactFilter) throws ParseException, IOException {
 		DefaultModuleDescriptor md;
 		if (confs.length == 1 && confs[0].equals("*")) {
 			ResolvedModuleRevision rmr = findModule(mrid);
@@ -1061,7 +1088,7 @@ public class Ivy implements TransferListener {
 			md = DefaultModuleDescriptor.newCallerInstance(mrid, confs, transitive, changing);
 		}
 		
-		return resolve(md, new String[] {"*"}, cache, date, validate, useCacheOnly, true, useOrigin, true, true, artifactFilter);
+		return resolve(md, new String[] {"*"}, cache, date, validate, useCacheOnly, true, useOrigin, download, true, artifactFilter);
 	}
 	
     public ResolveReport resolve(URL ivySource, String revision, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, Filter artifactFilter) throws ParseException, IOException {
@@ -1076,9 +1103,41 @@ public class Ivy implements TransferListener {
      * Note: the method signature is way too long, we should use a class to store the settings of the resolve.
      */
     public ResolveReport resolve(URL ivySource, String revision, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, boolean transitive, boolean useOrigin, Filter artifactFilter) throws ParseException, IOException {
+        return resolve(ivySource, revision, confs, cache, date, validate, useCacheOnly, transitive, useOrigin, true, artifactFilter);
+    }
+    /**
+     * Same as above, the download of the artifacts being deferred until they are needed if download is false.
+     * 
+     * @see #deferArtifacts(ResolveReport, File, boolean, Filter)
+     */
+    public ResolveReport resolve(URL ivySource, String revision, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, boolean transitive, boolean useOrigin, boolean download, Filter artifactFilter) throws ParseException, IOException {
         IvyContext.getContext().setIvy(this);
         IvyContext.getContext().setCache(cache);
         
+        ModuleDescriptor md = parseForResolve(ivySource, revision, validate);
+
+        return resolve(md, confs, cache, date, validate, useCacheOnly, transitive, useOrigin, download, true, artifactFilter);
+    }
+
+    /**
+     * Resolve dependencies of several modules described by ivy files, sharing the dependencies
+     * they have in common.
+     * 
+     * @see #resolve(ModuleDescriptor[], String[], File, Date, boolean, boolean, boolean, boolean, boolean, boolean, Filter)
+     */
+    public ResolveReport[] resolve(URL[] ivySources, String revision, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, boolean transitive, boolean useOrigin, Filter artifactFilter) throws ParseException, IOException {
+        IvyContext.getContext().setIvy(this);
+        IvyContext.getContext().setCache(cache);
+        
+        ModuleDescriptor[] mds = new ModuleDescriptor[ivySources.length];
+        for (int i = 0; i < ivySources.length; i++) {
+            mds[i] = parseForResolve(ivySources[i], revision, validate);
+        }
+
+        return resolve(mds, confs, cache, date, validate, useCacheOnly, transitive, useOrigin, true, true, artifactFilter);
+    }
+
+    private ModuleDescriptor parseForResolve(URL ivySource, String revision, boolean validate) throws ParseException, IOException {
         URLResource res = new URLResource(ivySource);
         ModuleDescriptorParser parser = ModuleDescriptorParserRegistry.getInstance().getParser(res);
         Message.verbose("using "+parser+" to parse "+ivySource);
@@ -1089,8 +1148,7 @@ public class Ivy implements TransferListener {
         if (revision != null) {
             md.setResolvedModuleRevisionId(ModuleRevisionId.newInstance(md.getModuleRevisionId(), revision));
         }
-
-        return resolve(md, confs, cache, date, validate, useCacheOnly, transitive, useOrigin, true, true, artifactFilter);
+        return md;
     }
 
 	public ResolveReport resolve(ModuleDescriptor md, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, Filter artifactFilter) throws ParseException, IOException, FileNotFoundException {
@@ -1108,6 +1166,30 @@ public class Ivy implements TransferListener {
      * Note: the method signature is way too long, we should use a class to store the settings of the resolve.
      */
 	public ResolveReport resolve(ModuleDescriptor md, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, boolean transitive, boolean useOrigin, boolean download, boolean outputReport, Filter artifactFilter) throws ParseException, IOException, FileNotFoundException {
+		return resolve(md, confs, cache, date, validate, useCacheOnly, transitive, useOrigin, download, outputReport, artifactFilter, null);
+	}
+    /**
+     * Resolve dependencies of several modules in one operation.
+     * 
+     * Each module revision required by several of the modules is asked only once to its resolver,
+     * the following resolves of the batch reusing the module descriptor found by the first one.
+     * Each module still gets its own report, which is the same as the report of an independent
+     * resolve of the module, the shared module descriptors being reported as not downloaded.
+     * 
+     * @return the reports of the resolves, in the order of the given module descriptors
+     */
+	public ResolveReport[] resolve(ModuleDescriptor[] mds, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, boolean transitive, boolean useOrigin, boolean download, boolean outputReport, Filter artifactFilter) throws ParseException, IOException, FileNotFoundException {
+		long start = System.currentTimeMillis();
+		Map resolvedModules = new HashMap();
+		ResolveReport[] reports = new ResolveReport[mds.length];
+		for (int i = 0; i < mds.length; i++) {
+			checkInterrupted();
+			reports[i] = resolve(mds[i], confs, cache, date, validate, useCacheOnly, transitive, useOrigin, download, outputReport, artifactFilter, resolvedModules);
+		}
+		Message.verbose(":: batch resolve done :: "+mds.length+" modules sharing "+resolvedModules.size()+" resolved dependencies ("+(System.currentTimeMillis()-start)+"ms)");
+		return reports;
+	}
+	private ResolveReport resolve(ModuleDescriptor md, String[] confs, File cache, Date date, boolean validate, boolean useCacheOnly, boolean transitive, boolean useOrigin, boolean download, boolean outputReport, Filter artifactFilter, Map resolvedModules) throws ParseException, IOException, FileNotFoundException {
 		IvyContext.getContext().setIvy(this);
         DependencyResolver oldDictator = getDictatorResolver();
         if (useCacheOnly) {
@@ -1133,7 +1215,7 @@ public class Ivy implements TransferListener {
             ResolveReport report = new ResolveReport(md);
 
             // resolve dependencies
-            IvyNode[] dependencies = getDependencies(md, confs, cache, date, report, validate, transitive);
+            IvyNode[] dependencies = getDependencies(md, confs, cache, date, report, validate, transitive, resolvedModules);
             report.setDependencies(Arrays.asList(dependencies), artifactFilter);
 
             
@@ -1163,11 +1245,14 @@ public class Ivy implements TransferListener {
             Message.verbose("\tresolved ivy file produced in "+ivyFileInCache);
             
             report.setResolveTime(System.currentTimeMillis()-start);
+            Message.verbose("\tresolved module revisions cache: "+_resolvedModuleRevisionCache);
 
             if (download) {
 	            Message.verbose(":: downloading artifacts ::");
 	
 	            downloadArtifacts(report, cache, useOrigin, artifactFilter);
+            } else {
+            	deferArtifacts(report, cache, useOrigin, artifactFilter);
             }
             
             
@@ -1175,6 +1260,9 @@ public class Ivy implements TransferListener {
             	outputReport(report, cache);
             }
             
+            recordCacheAccess(cache, dependencies);
+            saveCacheAccessIndex(cache);
+            
             fireIvyEvent(new EndResolveEvent(this, md, confs, report));
             return report;
         } finally {
@@ -1187,6 +1275,11 @@ public class Ivy implements TransferListener {
 		report.setProblemMessages(Message.getProblems());
 		// output report
 		report.output(getReportOutputters(), cache);
+		String[] confs = report.getConfigurations();
+		for (int i = 0; i < confs.length; i++) {
+			_reportParser.invalidate(new File(cache, XmlReportOutputter.getReportFileName(
+					report.getModuleDescriptor().getModuleRevisionId().getModuleId(), confs[i])));
+		}
 		
 		Message.verbose("\tresolve done ("+report.getResolveTime()+"ms resolve - "+report.getDownloadTime()+"ms download)");
 		Message.sumupProblems();
@@ -1194,6 +1287,10 @@ public class Ivy implements TransferListener {
 
     public void downloadArtifacts(ResolveReport report, File cache, boolean useOrigin, Filter artifactFilter) {
     	long start = System.currentTimeMillis();
+    	BlobStore blobStore = getCacheBlobStore(cache);
+    	int blobHits = blobStore == null ? 0 : blobStore.getHits();
+    	long blobSavedDownload = blobStore == null ? 0 : blobStore.getSavedDownload();
+    	long blobSavedDisk = blobStore == null ? 0 : blobStore.getSavedDisk();
     	IvyNode[] dependencies = (IvyNode[]) report.getDependencies().toArray(new IvyNode[report.getDependencies().size()]);
         
         fireIvyEvent(new PrepareDownloadEvent(this, (Artifact[])report.getArtifacts().toArray(new Artifact[report.getArtifacts().size()])));
@@ -1210,23 +1307,127 @@ public class Ivy implements TransferListener {
                     if (adrs[j].getDownloadStatus() == DownloadStatus.FAILED) {
                         Message.warn("\t[NOT FOUND  ] "+adrs[j].getArtifact());
                         resolver.reportFailure(adrs[j].getArtifact());
-                    }
-                }
-                // update concerned reports
-                String[] dconfs = dependencies[i].getRootModuleConfigurations();
-                for (int j = 0; j < dconfs.length; j++) {
-                    // the report itself is responsible to take into account only
-                    // artifacts required in its corresponding configuration
-                    // (as described by the Dependency object)
-                    if (dependencies[i].isEvicted(dconfs[j])) {
-                        report.getConfigurationReport(dconfs[j]).addDependency(dependencies[i]);
                     } else {
-                        report.getConfigurationReport(dconfs[j]).addDependency(dependencies[i], dReport);
+                        recordCacheAccess(cache, adrs[j], useOrigin);
                     }
                 }
+                addDownloadReport(report, dependencies[i], dReport);
             }
         }
         report.setDownloadTime(System.currentTimeMillis() - start);
+        if (blobStore != null) {
+        	report.setBlobStoreHits(blobStore.getHits() - blobHits);
+        	report.setBlobStoreSavedDownload(blobStore.getSavedDownload() - blobSavedDownload);
+        	report.setBlobStoreSavedDisk(blobStore.getSavedDisk() - blobSavedDisk);
+        	Message.verbose("\tblob store: "+report.getBlobStoreHits()+" downloads avoided ("
+        			+(report.getBlobStoreSavedDownload() / 1024)+"kB), "
+        			+(report.getBlobStoreSavedDisk() / 1024)+"kB deduplicated in cache");
+        }
+    }
+
+    /**
+     * Adds the artifacts of the given report to it without downloading them, their download
+     * being deferred until they are needed (see downloadDeferredArtifacts).
+     * The artifacts already in cache are reported as not requiring a download, and the others as deferred.
+     * Missing artifacts are thus not reported as failed, the report having no error for them.
+     */
+    public void deferArtifacts(ResolveReport report, File cache, boolean useOrigin, Filter artifactFilter) {
+    	IvyNode[] dependencies = (IvyNode[]) report.getDependencies().toArray(new IvyNode[report.getDependencies().size()]);
+    	int deferred = 0;
+        for (int i = 0; i < dependencies.length; i++) {
+            if (!dependencies[i].isCompletelyEvicted() && !dependencies[i].hasProblem()) {
+                Artifact[] selectedArtifacts = dependencies[i].getSelectedArtifacts(artifactFilter);
+                DownloadReport dReport = new DownloadReport();
+                for (int j = 0; j < selectedArtifacts.length; j++) {
+                	ArtifactDownloadReport adr = new ArtifactDownloadReport(selectedArtifacts[j]);
+                	ArtifactOrigin origin = getSavedArtifactOrigin(cache, selectedArtifacts[j]);
+                	File archive = getArchiveFileInCache(cache, selectedArtifacts[j], origin, useOrigin);
+                	if (archive.exists()) {
+                		adr.setDownloadStatus(DownloadStatus.NO);
+                		adr.setSize(archive.length());
+                		adr.setArtifactOrigin(origin);
+                	} else {
+                		adr.setDownloadStatus(DownloadStatus.DEFERRED);
+                		deferred++;
+                	}
+                	dReport.addArtifactReport(adr);
+                }
+                addDownloadReport(report, dependencies[i], dReport);
+            }
+        }
+        Message.verbose("\tdownload of "+deferred+" artifacts deferred");
+    }
+
+    private void addDownloadReport(ResolveReport report, IvyNode dependency, DownloadReport dReport) {
+        // update concerned reports
+        String[] dconfs = dependency.getRootModuleConfigurations();
+        for (int j = 0; j < dconfs.length; j++) {
+            // the report itself is responsible to take into account only
+            // artifacts required in its corresponding configuration
+            // (as described by the Dependency object)
+            if (dependency.isEvicted(dconfs[j])) {
+                report.getConfigurationReport(dconfs[j]).addDependency(dependency);
+            } else {
+                report.getConfigurationReport(dconfs[j]).addDependency(dependency, dReport);
+            }
+        }
+    }
+
+    /**
+     * Downloads those of the given artifacts which are not available in the cache, which is
+     * the case of the artifacts whose download has been deferred by a resolve.
+     * Each artifact is downloaded with the artifact resolver of its module saved in the cache.
+     * 
+     * @return the reports of the artifacts which have been downloaded
+     */
+    public DownloadReport downloadDeferredArtifacts(Artifact[] artifacts, File cache, boolean useOrigin) {
+        IvyContext.getContext().setIvy(this);
+        IvyContext.getContext().setCache(cache);
+        long start = System.currentTimeMillis();
+        Map resolvers = new HashMap(); // Map (ModuleRevisionId -> DependencyResolver)
+        Map toDownload = new LinkedHashMap(); // Map (DependencyResolver -> List (Artifact))
+        for (int i = 0; i < artifacts.length; i++) {
+        	if (getArchiveFileInCache(cache, artifacts[i], getSavedArtifactOrigin(cache, artifacts[i]), useOrigin).exists()) {
+        		continue;
+        	}
+        	ModuleRevisionId mrid = artifacts[i].getModuleRevisionId();
+        	DependencyResolver resolver = (DependencyResolver)resolvers.get(mrid);
+        	if (resolver == null) {
+        		ResolvedModuleRevision rmr = findModuleInCache(mrid, cache, false);
+        		resolver = rmr == null ? getResolver(mrid.getModuleId()) : rmr.getArtifactResolver();
+        		resolvers.put(mrid, resolver);
+        	}
+        	List list = (List)toDownload.get(resolver);
+        	if (list == null) {
+        		list = new ArrayList();
+        		toDownload.put(resolver, list);
+        	}
+        	list.add(artifacts[i]);
+        }
+        
+        DownloadReport report = new DownloadReport();
+        if (toDownload.isEmpty()) {
+        	return report;
+        }
+        for (Iterator iter = toDownload.keySet().iterator(); iter.hasNext();) {
+        	checkInterrupted();
+        	DependencyResolver resolver = (DependencyResolver)iter.next();
+        	List list = (List)toDownload.get(resolver);
+        	DownloadReport dReport = resolver.download((Artifact[])list.toArray(new Artifact[list.size()]), this, cache, useOrigin);
+        	ArtifactDownloadReport[] adrs = dReport.getArtifactsReports();
+        	for (int i = 0; i < adrs.length; i++) {
+        		if (adrs[i].getDownloadStatus() == DownloadStatus.FAILED) {
+        			Message.warn("\t[NOT FOUND  ] "+adrs[i].getArtifact());
+        			resolver.reportFailure(adrs[i].getArtifact());
+        		} else {
+        			recordCacheAccess(cache, adrs[i], useOrigin);
+        		}
+        		report.addArtifactReport(adrs[i]);
+        	}
+        }
+        saveCacheAccessIndex(cache);
+        Message.verbose("\t"+report.getArtifactsReports().length+" deferred artifacts downloaded ("+(System.currentTimeMillis()-start)+"ms)");
+        return report;
     }
 
     /**
@@ -1262,7 +1463,12 @@ public class Ivy implements TransferListener {
         }
         DependencyResolver resolver = getResolver(artifact.getModuleRevisionId().getModuleId());
         DownloadReport r = resolver.download(new Artifact[] {artifact}, this, cache, false);
-        return r.getArtifactReport(artifact);
+        ArtifactDownloadReport adr = r.getArtifactReport(artifact);
+        if (adr != null && adr.getDownloadStatus() != DownloadStatus.FAILED) {
+            recordCacheAccess(cache, adr, false);
+            saveCacheAccessIndex(cache);
+        }
+        return adr;
     }
     
     /**
@@ -1298,6 +1504,9 @@ public class Ivy implements TransferListener {
     	return getDependencies(md, confs, cache, date, report, validate, true);
     }
     public IvyNode[] getDependencies(ModuleDescriptor md, String[] confs, File cache, Date date, ResolveReport report, boolean validate, boolean transitive) {
+        return getDependencies(md, confs, cache, date, report, validate, transitive, null);
+    }
+    private IvyNode[] getDependencies(ModuleDescriptor md, String[] confs, File cache, Date date, ResolveReport report, boolean validate, boolean transitive, Map resolvedModules) {
         IvyContext.getContext().setIvy(this);
         IvyContext.getContext().setCache(cache);
         if (md == null) {
@@ -1313,6 +1522,7 @@ public class Ivy implements TransferListener {
         Map dependenciesMap = new LinkedHashMap();
         Date reportDate = new Date();
         ResolveData data = new ResolveData(this, cache, date, null, validate, transitive, dependenciesMap);
+        data.setResolvedModules(resolvedModules);
         IvyNode rootNode = new IvyNode(data, md);
         
         for (int i = 0; i < confs.length; i++) {
@@ -1703,6 +1913,7 @@ public class Ivy implements TransferListener {
                     }
                     if (resolver != null) {
                         Message.debug("\tfound ivy file in cache for "+mrid+" (resolved by "+resolver.getName()+"): "+ivyFile);
+                        getCacheAccessIndex(cache).recordAccess(depMD.getResolvedModuleRevisionId());
                         return new DefaultModuleRevision(resolver, artResolver, depMD, false, false, ivyFile.toURL());
                     } else {
                         Message.debug("\tresolver not found: "+resolverName+" => cannot use cached ivy file for "+mrid);                                    
@@ -1803,6 +2014,9 @@ public class Ivy implements TransferListener {
             
             // output report
             report.output(getReportOutputters(), cache);
+            
+            recordCacheAccess(cache, dependencies);
+            saveCacheAccessIndex(cache);
 
             return report;
         } finally {
@@ -1914,63 +2128,92 @@ public class Ivy implements TransferListener {
     	return retrieve(moduleId, confs, cache, destFilePattern, destIvyPattern, artifactFilter, false, false);
     }
     public int retrieve(ModuleId moduleId, String[] confs, final File cache, String destFilePattern, String destIvyPattern, Filter artifactFilter, boolean sync, boolean useOrigin) {
+    	return retrieve(moduleId, confs, cache, destFilePattern, destIvyPattern, artifactFilter, sync, useOrigin, 1);
+    }
+    
+    /**
+     * Same as above, copying files with the given number of threads.
+     * Using several threads is mostly useful when a lot of files need to be copied on a fast disk.
+     */
+    public int retrieve(ModuleId moduleId, String[] confs, final File cache, String destFilePattern, String destIvyPattern, Filter artifactFilter, boolean sync, boolean useOrigin, int threads) {
     	if (artifactFilter == null) {
     		artifactFilter = FilterHelper.NO_FILTER;
     	}
     	
         IvyContext.getContext().setIvy(this);
         IvyContext.getContext().setCache(cache);
-        Message.info(":: retrieving :: "+moduleId+(sync?" [sync]":""));
+        Message.info(":: retrieving :: "+moduleId+(sync?" [sync]":"")+(threads > 1?" ["+threads+" threads]":""));
         Message.info("\tconfs: "+Arrays.asList(confs));
         long start = System.currentTimeMillis();
         
         destFilePattern = IvyPatternHelper.substituteVariables(destFilePattern, getVariables());
         destIvyPattern = IvyPatternHelper.substituteVariables(destIvyPattern, getVariables());
         try {
-            Map artifactsToCopy = determineArtifactsToCopy(moduleId, confs, cache, destFilePattern, destIvyPattern, artifactFilter);
+            File[] reports = new File[confs.length];
+            boolean reportsUpToDate = true;
+            // filters which cannot be described cannot be compared with the previous one
+            String filterKey = FilterHelper.getKey(artifactFilter);
+            RetrieveManifest manifest = new RetrieveManifest(cache, moduleId, 
+            		Arrays.asList(confs)+"|"+destFilePattern+"|"+destIvyPattern+"|"+sync+"|"+useOrigin
+            		+"|"+(filterKey == null ? artifactFilter.getClass().getName() : filterKey));
+            for (int i = 0; i < confs.length; i++) {
+            	reports[i] = new File(cache, XmlReportOutputter.getReportFileName(moduleId, confs[i]));
+            	reportsUpToDate = reportsUpToDate && manifest.isReportUpToDate(confs[i], reports[i]);
+            }
+            
+            // find what we must retrieve where
+            Collection targets; // Collection (RetrieveManifest.Entry)
+            if (_checkUpToDate && reportsUpToDate && filterKey != null) {
+            	// nothing changed since last retrieve, we can reuse its manifest
+            	Message.verbose("\tresolve reports unchanged since last retrieve: using retrieve manifest");
+            	targets = manifest.getEntries();
+            } else {
+            	targets = getRetrieveTargets(moduleId, confs, cache, destFilePattern, destIvyPattern, artifactFilter, useOrigin);
+            }
+            
             File fileRetrieveRoot = new File(IvyPatternHelper.getTokenRoot(destFilePattern));
             File ivyRetrieveRoot = destIvyPattern == null ? null : new File(IvyPatternHelper.getTokenRoot(destIvyPattern));
             Collection targetArtifactsStructure = new HashSet(); // Set(File) set of all paths which should be present at then end of retrieve (useful for sync) 
             Collection targetIvysStructure = new HashSet(); // same for ivy files
+            Collection retrieved = new ArrayList(); // Collection (RetrieveManifest.Entry)
+            List toCopy = new ArrayList(); // List (RetrieveManifest.Entry)
             
             // do retrieve
-            int targetsCopied = 0;
             int targetsUpToDate = 0;
-            for (Iterator iter = artifactsToCopy.keySet().iterator(); iter.hasNext();) {
-                Artifact artifact = (Artifact)iter.next();
-                File archive;
-				if ("ivy".equals(artifact.getType())) {
-					archive = getIvyFileInCache(cache, artifact.getModuleRevisionId());
-				} else {
-					archive = getArchiveFileInCache(cache, artifact, getSavedArtifactOrigin(cache, artifact), useOrigin);
-					if (!useOrigin && !archive.exists()) {
-						// file is not available in cache, maybe the last resolve was performed with useOrigin=true.
-						// we try to use the best we can
-						archive = getArchiveFileInCache(cache, artifact, getSavedArtifactOrigin(cache, artifact));
-					}
-				}
-                Set dest = (Set)artifactsToCopy.get(artifact);
-                Message.verbose("\tretrieving "+archive);
-                for (Iterator it2 = dest.iterator(); it2.hasNext();) {
-                	checkInterrupted();
-                    File destFile = new File((String)it2.next());
-                    if (!_checkUpToDate || !upToDate(archive, destFile)) {
-                        Message.verbose("\t\tto "+destFile);
-                        FileUtil.copy(archive, destFile, null);
-                        targetsCopied++;
-                    } else {
-                        Message.verbose("\t\tto "+destFile+" [NOT REQUIRED]");
-                        targetsUpToDate++;
-                    }
-                    if ("ivy".equals(artifact.getType())) {
-                    	targetIvysStructure.addAll(FileUtil.getPathFiles(ivyRetrieveRoot, destFile));
-                    } else {
-                    	targetArtifactsStructure.addAll(FileUtil.getPathFiles(fileRetrieveRoot, destFile));
-                    }
-                }
+            for (Iterator iter = targets.iterator(); iter.hasNext();) {
+            	checkInterrupted();
+            	RetrieveManifest.Entry target = (RetrieveManifest.Entry)iter.next();
+            	File archive = target.getSource();
+            	File destFile = target.getDest();
+            	getCacheAccessIndex(cache).recordAccess(target.getModuleRevisionId(), archive);
+            	
+            	RetrieveManifest.Entry previous = _checkUpToDate ? manifest.getEntry(destFile) : null;
+            	RetrieveManifest.Entry entry = new RetrieveManifest.Entry(target.getModuleRevisionId(), target.isIvy(), archive, destFile);
+            	if (previous != null ? previous.isUpToDate(archive) : _checkUpToDate && upToDate(archive, destFile)) {
+            		Message.verbose("\tretrieving "+archive+" to "+destFile+" [NOT REQUIRED]");
+            		targetsUpToDate++;
+            	} else {
+            		toCopy.add(entry);
+            	}
+            	retrieved.add(entry);
+            	if (sync) {
+            		if (target.isIvy()) {
+            			targetIvysStructure.addAll(FileUtil.getPathFiles(ivyRetrieveRoot, destFile));
+            		} else {
+            			targetArtifactsStructure.addAll(FileUtil.getPathFiles(fileRetrieveRoot, destFile));
+            		}
+            	}
+            }
+            
+            copy(toCopy, threads);
+            int targetsCopied = toCopy.size();
+            for (Iterator iter = retrieved.iterator(); iter.hasNext();) {
+            	((RetrieveManifest.Entry)iter.next()).snapshot();
             }
             
             if (sync) {
+            	// the retrieve directories are scanned even with a manifest, to remove
+            	// the files which have not been retrieved too
 				Message.verbose("\tsyncing...");
                 Collection existingArtifacts = FileUtil.listAll(fileRetrieveRoot);
                 Collection existingIvys = ivyRetrieveRoot == null ? null : FileUtil.listAll(ivyRetrieveRoot);
@@ -1988,6 +2231,8 @@ public class Ivy implements TransferListener {
                 	}
                 }
             }
+            manifest.save(retrieved, confs, reports);
+            saveCacheAccessIndex(cache);
             Message.info("\t"+targetsCopied+" artifacts copied, "+targetsUpToDate+" already retrieved");
             Message.verbose("\tretrieve done ("+(System.currentTimeMillis()-start)+"ms)");
             
@@ -1997,6 +2242,132 @@ public class Ivy implements TransferListener {
         }
     }
 
+    /**
+     * Copies the sources of the given entries to their destinations, using at most the given number of threads
+     * @param entries a List of RetrieveManifest.Entry
+     */
+    private void copy(final List entries, int threads) throws IOException {
+    	threads = Math.min(threads, entries.size());
+    	if (threads <= 1) {
+    		for (Iterator iter = entries.iterator(); iter.hasNext();) {
+    			checkInterrupted();
+    			copy((RetrieveManifest.Entry)iter.next());
+    		}
+    		return;
+    	}
+    	final IOException[] failure = new IOException[1];
+    	final WorkerPool.Batch[] batch = new WorkerPool.Batch[1];
+    	Runnable[] tasks = new Runnable[entries.size()];
+    	for (int i = 0; i < tasks.length; i++) {
+    		final RetrieveManifest.Entry entry = (RetrieveManifest.Entry)entries.get(i);
+    		tasks[i] = new Runnable() {
+    			public void run() {
+    				if (isInterrupted()) {
+    					batch[0].cancel();
+    					return;
+    				}
+    				try {
+    					copy(entry);
+    				} catch (IOException ex) {
+    					synchronized (failure) {
+    						if (failure[0] == null) {
+    							failure[0] = ex;
+    						}
+    					}
+    					batch[0].cancel();
+    				}
+    			}
+    		};
+    	}
+    	batch[0] = WorkerPool.newBatch(tasks);
+    	boolean complete = WorkerPool.getDefault().runAll(batch[0], threads);
+    	checkInterrupted();
+    	synchronized (failure) {
+    		if (failure[0] != null) {
+    			throw failure[0];
+    		}
+    	}
+    	if (!complete) {
+    		throw new IOException("retrieve interrupted");
+    	}
+    }
+
+    /**
+     * Copies the source of the given entry to its destination. Package visible for tests.
+     */
+    void copy(RetrieveManifest.Entry entry) throws IOException {
+    	Message.verbose("\tretrieving "+entry.getSource()+" to "+entry.getDest());
+    	FileUtil.copy(entry.getSource(), entry.getDest(), null);
+    }
+
+    /**
+     * Returns the files to retrieve, as RetrieveManifest entries which have not been snapshot yet.
+     */
+    private Collection getRetrieveTargets(ModuleId moduleId, String[] confs, File cache, String destFilePattern, String destIvyPattern, Filter artifactFilter, boolean useOrigin) throws ParseException, IOException {
+    	Map artifactsToCopy = determineArtifactsToCopy(moduleId, confs, cache, destFilePattern, destIvyPattern, artifactFilter);
+    	List missing = new ArrayList(); // List (Artifact)
+    	for (Iterator iter = artifactsToCopy.keySet().iterator(); iter.hasNext();) {
+    		Artifact artifact = (Artifact)iter.next();
+    		if (!"ivy".equals(artifact.getType()) && !getRetrieveSource(cache, artifact, useOrigin).exists()) {
+    			missing.add(artifact);
+    		}
+    	}
+    	if (!missing.isEmpty()) {
+    		// the download of these artifacts has been deferred by the resolve
+    		DownloadReport dReport = downloadDeferredArtifacts((Artifact[])missing.toArray(new Artifact[missing.size()]), cache, useOrigin);
+    		updateReports(moduleId, confs, cache, dReport);
+    		ArtifactDownloadReport[] failed = dReport.getArtifactsReports(DownloadStatus.FAILED);
+    		if (failed.length > 0) {
+    			List failedArtifacts = new ArrayList();
+    			for (int i = 0; i < failed.length; i++) {
+    				failedArtifacts.add(failed[i].getArtifact());
+    			}
+    			throw new IOException("impossible to download "+failed.length+" deferred artifacts: "+failedArtifacts);
+    		}
+    	}
+    	Collection targets = new ArrayList();
+    	for (Iterator iter = artifactsToCopy.keySet().iterator(); iter.hasNext();) {
+    		Artifact artifact = (Artifact)iter.next();
+    		File archive = getRetrieveSource(cache, artifact, useOrigin);
+    		Set dest = (Set)artifactsToCopy.get(artifact);
+    		for (Iterator it2 = dest.iterator(); it2.hasNext();) {
+    			targets.add(new RetrieveManifest.Entry(artifact.getModuleRevisionId(), "ivy".equals(artifact.getType()), 
+    					archive, new File((String)it2.next())));
+    		}
+    	}
+    	return targets;
+    }
+
+    /**
+     * Updates the stored resolve reports of the given module with the downloads of
+     * deferred artifacts.
+     */
+    private void updateReports(ModuleId moduleId, String[] confs, File cache, DownloadReport dReport) {
+    	for (int i = 0; i < confs.length; i++) {
+    		File report = new File(cache, XmlReportOutputter.getReportFileName(moduleId, confs[i]));
+    		try {
+    			if (XmlReportUpdater.update(report, dReport)) {
+    				getReportParser().invalidate(report);
+    			}
+    		} catch (IOException ex) {
+    			Message.warn("impossible to update "+report+" with the downloaded deferred artifacts: "+ex.getMessage());
+    		}
+    	}
+    }
+
+    private File getRetrieveSource(File cache, Artifact artifact, boolean useOrigin) {
+    	if ("ivy".equals(artifact.getType())) {
+    		return getIvyFileInCache(cache, artifact.getModuleRevisionId());
+    	}
+    	File archive = getArchiveFileInCache(cache, artifact, getSavedArtifactOrigin(cache, artifact), useOrigin);
+    	if (!useOrigin && !archive.exists()) {
+    		// file is not available in cache, maybe the last resolve was performed with useOrigin=true.
+    		// we try to use the best we can
+    		archive = getArchiveFileInCache(cache, artifact, getSavedArtifactOrigin(cache, artifact));
+    	}
+    	return archive;
+    }
+
     private void sync(Collection target, Collection existing) {
 		Collection toRemove = new HashSet();
 		for (Iterator iter = existing.iterator(); iter.hasNext();) {
@@ -2032,7 +2403,7 @@ public class Ivy implements TransferListener {
         final Map artifactsToCopy = new HashMap(); // Artifact source -> Set (String copyDestAbsolutePath)
         final Map conflictsMap = new HashMap(); // String copyDestAbsolutePath -> Set (Artifact source)
         final Map conflictsConfMap = new HashMap(); // String copyDestAbsolutePath -> Set (String conf)
-        XmlReportParser parser = new XmlReportParser();
+        XmlReportParser parser = getReportParser();
         for (int i = 0; i < confs.length; i++) {
             final String conf = confs[i];
             Collection artifacts = new ArrayList(Arrays.asList(parser.getArtifacts(moduleId, conf, cache)));
@@ -2370,6 +2741,7 @@ public class Ivy implements TransferListener {
         
         // collect all declared artifacts of this module
         Collection missing = publish(md, resolver, srcArtifactPattern, srcIvyPattern, extraArtifacts, overwrite, conf);
+        _resolvedModuleRevisionCache.invalidate(md.getResolvedModuleRevisionId());
         Message.verbose("\tpublish done ("+(System.currentTimeMillis()-start)+"ms)");
         return missing;
     }
@@ -2401,6 +2773,16 @@ public class Ivy implements TransferListener {
 				artifactsSet.add(new MDArtifact(md, extraArtifacts[i].getName(), extraArtifacts[i].getType(), extraArtifacts[i].getExt(), extraArtifacts[i].getUrl(), extraArtifacts[i].getExtraAttributes()));
 			}
         }
+        try {
+            publishArtifacts(md, resolver, artifactsSet, srcArtifactPattern, srcIvyPattern, overwrite, missing);
+        } finally {
+            // the index of the repository is updated once all the artifacts are published
+            flushIndexes(resolver);
+        }
+        return missing;
+    }
+
+    private void publishArtifacts(ModuleDescriptor md, DependencyResolver resolver, Set artifactsSet, Collection srcArtifactPattern, String srcIvyPattern, boolean overwrite, Collection missing) throws IOException {
         // for each declared published artifact in this descriptor, do:
         for (Iterator iter = artifactsSet.iterator(); iter.hasNext();) {
             Artifact artifact = (Artifact) iter.next();
@@ -2426,7 +2808,25 @@ public class Ivy implements TransferListener {
                 missing.add(artifact);
             }
         }
-        return missing;
+    }
+
+    /**
+     * Updates the index of the repositories in which artifacts have been published, 
+     * including those of the resolvers used by the given one.
+     */
+    private void flushIndexes(DependencyResolver resolver) {
+        Set resolvers = new HashSet(_resolversMap.values());
+        resolvers.add(resolver);
+        for (Iterator iter = resolvers.iterator(); iter.hasNext();) {
+            Object r = iter.next();
+            if (r instanceof RepositoryResolver) {
+                try {
+                    ((RepositoryResolver)r).flushIndex();
+                } catch (IOException ex) {
+                    Message.warn("impossible to update index of "+((RepositoryResolver)r).getName()+": "+ex.getMessage());
+                }
+            }
+        }
     }
 
     private boolean publish(Artifact artifact, String srcArtifactPattern, DependencyResolver resolver, boolean overwrite) throws IOException {
@@ -2568,6 +2968,234 @@ public class Ivy implements TransferListener {
         return getArchivePathInCache(new DefaultArtifact(ModuleRevisionId.newInstance(organisation, module, revision), new Date(), artifact, type, ext));
     }
     
+    /**
+     * Returns the index used to keep track of accesses to the module revisions stored in the
+     * given cache.
+     * 
+     * @param cache the cache for which the index should be returned, default cache is used if null
+     */
+    public synchronized CacheAccessIndex getCacheAccessIndex(File cache) {
+        if (cache == null) {
+            cache = getDefaultCache();
+        }
+        File key = cache.getAbsoluteFile();
+        CacheAccessIndex index = (CacheAccessIndex)_cacheAccessIndexes.get(key);
+        if (index == null) {
+            index = new CacheAccessIndex(key);
+            _cacheAccessIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the content addressed store used to deduplicate artifacts in the given cache,
+     * or null if the cache blob store is not used.
+     * 
+     * @param cache the cache for which the store should be returned, default cache is used if null
+     */
+    public synchronized BlobStore getCacheBlobStore(File cache) {
+        if (!_useCacheBlobStore) {
+            return null;
+        }
+        if (cache == null) {
+            cache = getDefaultCache();
+        }
+        File key = cache.getAbsoluteFile();
+        BlobStore store = (BlobStore)_blobStores.get(key);
+        if (store == null) {
+            store = new BlobStore(key);
+            _blobStores.put(key, store);
+        }
+        return store;
+    }
+
+    private void recordCacheAccess(File cache, IvyNode[] dependencies) {
+        CacheAccessIndex index = getCacheAccessIndex(cache);
+        for (int i = 0; i < dependencies.length; i++) {
+            if (!dependencies[i].isCompletelyEvicted() && !dependencies[i].hasProblem() && dependencies[i].getDescriptor() != null) {
+                index.recordAccess(dependencies[i].getResolvedId());
+            }
+        }
+    }
+
+    private void recordCacheAccess(File cache, ArtifactDownloadReport adr, boolean useOrigin) {
+        Artifact artifact = adr.getArtifact();
+        File archive = getArchiveFileInCache(cache, artifact, adr.getArtifactOrigin(), useOrigin);
+        getCacheAccessIndex(cache).recordAccess(artifact.getModuleRevisionId(), archive);
+    }
+
+    private void saveCacheAccessIndex(File cache) {
+        getCacheAccessIndex(cache).save();
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    //                         CLEAN CACHE
+    /////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Evicts module revisions from the given cache, removing their ivy file, cached data file
+     * and artifacts.
+     * 
+     * All module revisions which have not been accessed for more than maxAge milliseconds are 
+     * evicted, then the least recently used ones are evicted until the total size of the 
+     * module revisions remaining in the cache is lower than maxSize.
+     * 
+     * Only module revisions known by the cache access index are considered, so that cleaning never 
+     * requires to scan the whole cache. Module revisions used in a resolve report still present in the
+     * cache are never evicted.
+     * 
+     * Cleaning is incremental: the files of a module revision are only measured if it has been
+     * accessed since the last clean, the size measured by a previous clean being used otherwise.
+     * Files changed in the cache without Ivy are thus not seen until their module revision is used again.
+     * 
+     * @param cache the cache to clean - default cache is used if null
+     * @param maxSize the maximum size in bytes to keep in cache, -1 for no size limit
+     * @param maxAge the maximum time in milliseconds since last access, -1 for no age limit 
+     * @return a Collection of the evicted ModuleRevisionId
+     */
+    public Collection cleanCache(File cache, long maxSize, long maxAge) {
+        IvyContext.getContext().setIvy(this);
+        if (cache == null) {
+            cache = getDefaultCache();
+        }
+        IvyContext.getContext().setCache(cache);
+        Message.info(":: cleaning cache :: "+cache);
+        long start = System.currentTimeMillis();
+        
+        CacheAccessIndex index = getCacheAccessIndex(cache);
+        // make sure accesses recorded in this instance are taken into account
+        index.save();
+        long lastClean = index.getLastClean();
+        List entries = index.getEntries();
+        Collections.sort(entries, new Comparator() {
+            // least recently used first
+            public int compare(Object o1, Object o2) {
+                long a1 = ((CacheAccessIndex.Entry)o1).getLastAccess();
+                long a2 = ((CacheAccessIndex.Entry)o2).getLastAccess();
+                return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+            }
+        });
+        Set used = getRevisionsUsedByReports(cache);
+        
+        // only the module revisions accessed since the last clean may have changed
+        List measured = new ArrayList(); // List (CacheAccessIndex.Entry)
+        long total = 0;
+        for (Iterator iter = entries.iterator(); iter.hasNext();) {
+            CacheAccessIndex.Entry entry = (CacheAccessIndex.Entry)iter.next();
+            if (entry.getSize() < 0 || entry.getLastAccess() >= lastClean) {
+                long size = 0;
+                for (Iterator it = getFilesInCache(cache, entry).iterator(); it.hasNext();) {
+                    size += ((File)it.next()).length();
+                }
+                entry.setSize(size);
+                measured.add(entry);
+            }
+            total += entry.getSize();
+        }
+        Message.verbose("\t"+entries.size()+" module revisions known in cache ("+(total / 1024)+"kB), "
+                +measured.size()+" measured since last clean, "+used.size()+" used by resolve reports");
+        
+        List evicted = new ArrayList();
+        long now = System.currentTimeMillis();
+        for (Iterator iter = entries.iterator(); iter.hasNext();) {
+            checkInterrupted();
+            CacheAccessIndex.Entry entry = (CacheAccessIndex.Entry)iter.next();
+            boolean tooOld = maxAge >= 0 && now - entry.getLastAccess() > maxAge;
+            boolean tooBig = maxSize >= 0 && total > maxSize;
+            if (!tooOld && !tooBig) {
+                continue;
+            }
+            if (used.contains(entry.getModuleRevisionId())) {
+                Message.debug("\tkeeping "+entry.getModuleRevisionId()+": used by a resolve report");
+                continue;
+            }
+            Message.verbose("\tevicting "+entry.getModuleRevisionId()+" (last access: "+new Date(entry.getLastAccess())+")");
+            for (Iterator it = getFilesInCache(cache, entry).iterator(); it.hasNext();) {
+                deleteInCache(cache, (File)it.next());
+            }
+            total -= entry.getSize();
+            evicted.add(entry.getModuleRevisionId());
+        }
+        index.cleaned(measured, evicted, start);
+        BlobStore blobStore = getCacheBlobStore(cache);
+        if (blobStore != null) {
+            Message.verbose("\t"+blobStore.clean()+" unused blobs deleted");
+            long saved = blobStore.computeDiskSavings();
+            if (saved != -1) {
+                Message.info("\tblob store: "+(saved / 1024)+"kB saved in cache");
+            }
+        }
+        
+        Message.info("\t"+evicted.size()+" module revisions evicted, "+(total / 1024)+"kB remaining");
+        Message.verbose("\tclean cache done ("+(System.currentTimeMillis()-start)+"ms)");
+        return evicted;
+    }
+
+    private Collection getFilesInCache(File cache, CacheAccessIndex.Entry entry) {
+        ModuleRevisionId mrid = entry.getModuleRevisionId();
+        Collection ret = new LinkedHashSet();
+        for (Iterator iter = entry.getPaths().iterator(); iter.hasNext();) {
+            File f = new File(cache, (String)iter.next());
+            if (f.exists()) {
+                ret.add(f);
+            }
+        }
+        File ivyFile = getIvyFileInCache(cache, mrid);
+        if (ivyFile.exists()) {
+            ret.add(ivyFile);
+        }
+        File dataFile = getCachedDataFileInCache(cache, mrid);
+        if (dataFile.exists()) {
+            ret.add(dataFile);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the Set of ModuleRevisionId found in the xml resolve reports stored at the
+     * root of the cache.
+     */
+    private Set getRevisionsUsedByReports(File cache) {
+        Set used = new HashSet();
+        File[] files = cache.listFiles();
+        if (files == null) {
+            return used;
+        }
+        // reports unchanged since they have been parsed are not parsed again
+        XmlReportParser parser = getReportParser();
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (files[i].isFile() && name.endsWith(".xml") && !name.startsWith("resolved-")) {
+                try {
+                    used.addAll(Arrays.asList(parser.getDependencyRevisionIds(files[i])));
+                } catch (ParseException e) {
+                    Message.debug("\tignoring "+files[i]+" while cleaning cache: "+e.getMessage());
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Deletes the given file, and its parent directories up to the cache root if they become empty
+     */
+    private void deleteInCache(File cache, File file) {
+        Message.debug("\t\tdeleting "+file);
+        if (!file.delete()) {
+            Message.verbose("\t\timpossible to delete "+file);
+            return;
+        }
+        File root = cache.getAbsoluteFile();
+        File dir = file.getAbsoluteFile().getParentFile();
+        while (dir != null && !dir.equals(root)) {
+            String[] children = dir.list();
+            if (children == null || children.length > 0 || !dir.delete()) {
+                break;
+            }
+            dir = dir.getParentFile();
+        }
+    }
+    
 //    public File getOriginFileInCache(File cache, Artifact artifact) {
 //        return new File(cache, getOriginPathInCache(artifact));
 //    }
@@ -2753,6 +3381,38 @@ public class Ivy implements TransferListener {
         _cacheIvyPattern = cacheIvyPattern;
     }
 
+    /**
+     * Returns the parser used to read xml resolve reports, which keeps what it has already parsed
+     * for the lifetime of this Ivy instance.
+     */
+    public XmlReportParser getReportParser() {
+        return _reportParser;
+    }
+
+    /**
+     * Returns the cache of the module revisions found by resolvers, which keeps them for the
+     * following resolves made with this Ivy instance.
+     */
+    public ResolvedModuleRevisionCache getResolvedModuleRevisionCache() {
+        return _resolvedModuleRevisionCache;
+    }
+
+    /**
+     * Sets the maximum number of module revisions kept in memory between resolves, 0 disabling
+     * the resolved module revisions cache.
+     */
+    public void setResolvedModuleRevisionCacheSize(int size) {
+        _resolvedModuleRevisionCache.setMaxSize(size);
+    }
+
+    public boolean isUseCacheBlobStore() {
+        return _useCacheBlobStore;
+    }
+
+    public void setUseCacheBlobStore(boolean useCacheBlobStore) {
+        _useCacheBlobStore = useCacheBlobStore;
+    }
+
     public boolean doValidate() {
         return _validate;
     }
@@ -2930,31 +3590,71 @@ public class Ivy implements TransferListener {
     
     public void saveArtifactOrigin(File cache, Artifact artifact, ArtifactOrigin origin) {
        PropertiesFile cdf = getCachedDataFile(cache, artifact.getModuleRevisionId());
-       cdf.setProperty("artifact." + artifact.getName() + "#" + artifact.getExt() + ".is-local", String.valueOf(origin.isLocal()));
-       cdf.setProperty("artifact." + artifact.getName() + "#" + artifact.getExt() + ".location", origin.getLocation());
+       String prefix = "artifact." + artifact.getName() + "#" + artifact.getExt();
+       cdf.setProperty(prefix + ".is-local", String.valueOf(origin.isLocal()));
+       cdf.setProperty(prefix + ".location", origin.getLocation());
+       if (origin.getLastModified() > 0) {
+           cdf.setProperty(prefix + ".last-modified", String.valueOf(origin.getLastModified()));
+       } else {
+           cdf.remove(prefix + ".last-modified");
+       }
+       if (origin.getETag() != null) {
+           cdf.setProperty(prefix + ".etag", origin.getETag());
+       } else {
+           cdf.remove(prefix + ".etag");
+       }
+       cdf.remove(prefix + ".revalidate");
        cdf.save();
     }
     
     public ArtifactOrigin getSavedArtifactOrigin(File cache, Artifact artifact) {
         PropertiesFile cdf = getCachedDataFile(cache, artifact.getModuleRevisionId());
-        String location = cdf.getProperty("artifact." + artifact.getName() + "#" + artifact.getExt() + ".location");
-        boolean isLocal = Boolean.valueOf(cdf.getProperty("artifact." + artifact.getName() + "#" + artifact.getExt() + ".is-local")).booleanValue();
+        String prefix = "artifact." + artifact.getName() + "#" + artifact.getExt();
+        String location = cdf.getProperty(prefix + ".location");
+        boolean isLocal = Boolean.valueOf(cdf.getProperty(prefix + ".is-local")).booleanValue();
         
         if (location == null) {
            // origin has not been specified, return null
            return null;
         }
         
-        return new ArtifactOrigin(isLocal, location);
+        ArtifactOrigin origin = new ArtifactOrigin(isLocal, location);
+        try {
+            origin.setLastModified(Long.parseLong(cdf.getProperty(prefix + ".last-modified", "0")));
+        } catch (NumberFormatException ex) {
+            Message.debug("ignoring bad last modified date for "+artifact+" in cache data file: "+ex.getMessage());
+        }
+        origin.setETag(cdf.getProperty(prefix + ".etag"));
+        return origin;
     }
     
     public void removeSavedArtifactOrigin(File cache, Artifact artifact) {
         PropertiesFile cdf = getCachedDataFile(cache, artifact.getModuleRevisionId());
-        cdf.remove("artifact." + artifact.getName() + "#" + artifact.getExt() + ".location");
-        cdf.remove("artifact." + artifact.getName() + "#" + artifact.getExt() + ".is-local");
+        String prefix = "artifact." + artifact.getName() + "#" + artifact.getExt();
+        cdf.remove(prefix + ".location");
+        cdf.remove(prefix + ".is-local");
+        cdf.remove(prefix + ".last-modified");
+        cdf.remove(prefix + ".etag");
+        cdf.remove(prefix + ".revalidate");
+        cdf.save();
+    }
+    
+    /**
+     * Marks the artifact in cache as possibly out of date: it will be kept in cache,
+     * but revalidated against its origin before being used again. 
+     * The mark is removed when the artifact origin is saved again.
+     */
+    public void markArtifactForRevalidation(File cache, Artifact artifact) {
+        PropertiesFile cdf = getCachedDataFile(cache, artifact.getModuleRevisionId());
+        cdf.setProperty("artifact." + artifact.getName() + "#" + artifact.getExt() + ".revalidate", "true");
         cdf.save();
     }
     
+    public boolean isArtifactToRevalidate(File cache, Artifact artifact) {
+        PropertiesFile cdf = getCachedDataFile(cache, artifact.getModuleRevisionId());
+        return Boolean.valueOf(cdf.getProperty("artifact." + artifact.getName() + "#" + artifact.getExt() + ".revalidate")).booleanValue();
+    }
+    
     private String getSavedResolverName(File cache, ModuleDescriptor md) {
         PropertiesFile cdf = getCachedDataFile(cache, md);
         return cdf.getProperty("resolver");
@@ -2970,7 +3670,11 @@ public class Ivy implements TransferListener {
     }
     
     private PropertiesFile getCachedDataFile(File cache, ModuleRevisionId mRevId) {
-        return new PropertiesFile(new File(cache, IvyPatternHelper.substitute(getCacheDataFilePattern(),mRevId)), "ivy cached data file for "+mRevId);
+        return new PropertiesFile(getCachedDataFileInCache(cache, mRevId), "ivy cached data file for "+mRevId);
+    }
+
+    private File getCachedDataFileInCache(File cache, ModuleRevisionId mRevId) {
+        return new File(cache, IvyPatternHelper.substitute(getCacheDataFilePattern(),mRevId));
     }
 
     public String getCacheDataFilePattern() {
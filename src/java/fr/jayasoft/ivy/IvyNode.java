@@ -601,7 +601,7 @@ public class IvyNode {
                     Message.debug("\tusing "+resolver+" to resolve "+getId());
                     DependencyDescriptor dependencyDescriptor = getDependencyDescriptor(getParent());
                     _data.getIvy().fireIvyEvent(new StartResolveDependencyEvent(_data.getIvy(), resolver, dependencyDescriptor));
-                    _module = resolver.getDependency(dependencyDescriptor, _data);
+                    _module = _data.getDependency(resolver, dependencyDescriptor);
                     _data.getIvy().fireIvyEvent(new EndResolveDependencyEvent(_data.getIvy(), resolver, dependencyDescriptor, _module));
                     if (_module != null) {
                         _data.getIvy().saveResolver(_data.getCache(), _module.getDescriptor(), _module.getResolver().getName());
@@ -48,6 +48,7 @@ import fr.jayasoft.ivy.xml.XmlReportParser;
  * -ivy <ivyfile> : indicates the path to the ivy file to use
  *                  ivy.xml is assumed if not given
  * -retrieve <retrievepattern> : when used, retrieve is also done using the given retrievepattern
+ * -retrievethreads <n> : the number of threads used to copy files during retrieve, 1 is assumed if not given
  * -revision <revision> : the revision with which the module should be published, required to publish
  * -status <status> :   the status with which the module should be published, 
  *                      release is assumed if not given
@@ -55,7 +56,7 @@ import fr.jayasoft.ivy.xml.XmlReportParser;
  *                              ivy-[revision].xml is assumed if not given
  */
 public class Main {
-    private static Options getOptions() {
+    static Options getOptions() {
         Option conf = OptionBuilder.withArgName( "conffile" )
             .hasArg()
             .withDescription(  "use given file for configuration" )
@@ -80,6 +81,10 @@ public class Main {
             .hasArg()
             .withDescription(  "use given pattern as retrieve pattern" )
             .create( "retrieve" );
+        Option retrieveThreads = OptionBuilder.withArgName( "n" )
+            .hasArg()
+            .withDescription(  "in conjonction with -retrieve, use given number of threads to copy files" )
+            .create( "retrievethreads" );
         Option cachepath = OptionBuilder.withArgName( "cachepathfile" )
             .hasArg()
             .withDescription(  "outputs a classpath consisting of all dependencies in cache (including transitive ones) of the given ivy file to the given cachepathfile" )
@@ -146,6 +151,7 @@ public class Main {
         options.addOption(ivyfile);
         options.addOption(dependency);
         options.addOption(retrieve);
+        options.addOption(retrieveThreads);
         options.addOption(cachepath);
         options.addOption(revision);
         options.addOption(status);
@@ -187,6 +193,7 @@ public class Main {
             }
             
             boolean validate = line.hasOption("novalidate")?false:true;
+            int retrieveThreads = getRetrieveThreads(line);
             
             Ivy ivy = new Ivy();
             ivy.addAllVariables(System.getProperties());
@@ -278,7 +285,7 @@ public class Main {
                 if (retrievePattern.indexOf("[") == -1) {
                     retrievePattern = retrievePattern + "/lib/[conf]/[artifact].[ext]";
                 }
-                ivy.retrieve(md.getModuleRevisionId().getModuleId(), confs, cache, retrievePattern, null, null, line.hasOption("sync"), line.hasOption("useOrigin"));
+                ivy.retrieve(md.getModuleRevisionId().getModuleId(), confs, cache, retrievePattern, null, null, line.hasOption("sync"), line.hasOption("useOrigin"), retrieveThreads);
             }
             if (line.hasOption("cachepath")) {
                 outputCachePath(ivy, cache, md, confs, line.getOptionValue("cachepath", "ivycachepath.txt"));
@@ -318,11 +325,25 @@ public class Main {
         }        
     }
 
+    static int getRetrieveThreads(CommandLine line) throws ParseException {
+        String value = line.getOptionValue("retrievethreads", "1");
+        int threads;
+        try {
+            threads = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            threads = 0;
+        }
+        if (threads < 1) {
+            throw new ParseException("retrievethreads should be a number greater than 0: "+value);
+        }
+        return threads;
+    }
+
     private static void outputCachePath(Ivy ivy, File cache, ModuleDescriptor md, String[] confs, String outFile) {
         try {
             String pathSeparator = System.getProperty("path.separator");
             StringBuffer buf = new StringBuffer(); 
-            XmlReportParser parser = new XmlReportParser();
+            XmlReportParser parser = ivy.getReportParser();
             Collection all = new LinkedHashSet();
             for (int i = 0; i < confs.length; i++) {
                 Artifact[] artifacts = parser.getArtifacts(md.getModuleRevisionId().getModuleId(), confs[i], cache);
@@ -349,7 +370,7 @@ public class Main {
     	List urls = new ArrayList();
     	
         try {
-            XmlReportParser parser = new XmlReportParser();
+            XmlReportParser parser = ivy.getReportParser();
             Collection all = new LinkedHashSet();
             for (int i = 0; i < confs.length; i++) {
                 Artifact[] artifacts = parser.getArtifacts(md.getModuleRevisionId().getModuleId(), confs[i], cache);
@@ -6,11 +6,14 @@
 package fr.jayasoft.ivy;
 
 import java.io.File;
+import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 import fr.jayasoft.ivy.report.ConfigurationResolveReport;
+import fr.jayasoft.ivy.util.Message;
 
 public class ResolveData {
     private Map _nodes; // shared map of all nodes: Map (ModuleRevisionId -> IvyNode)
@@ -20,9 +23,11 @@ public class ResolveData {
     private boolean _validate;
     private boolean _transitive;
     private ConfigurationResolveReport _report;
+    private Map _resolvedModules; // shared by a batch of resolves: Map (List (resolver name, ModuleRevisionId, Boolean changing) -> ResolvedModuleRevision)
 
     public ResolveData(ResolveData data, boolean validate) {
         this(data._ivy, data._cache, data._date, data._report, validate, data._nodes);
+        _resolvedModules = data._resolvedModules;
     }
 
     public ResolveData(Ivy ivy, File cache, Date date, ConfigurationResolveReport report, boolean validate) {
@@ -90,6 +95,66 @@ public class ResolveData {
 	public boolean isTransitive() {
 		return _transitive;
 	}
+
+    public Map getResolvedModules() {
+        return _resolvedModules;
+    }
+
+    /**
+     * Sets the map in which module revisions found by resolvers are kept, to share them
+     * between the resolves of a batch. null, the default, disables the sharing.
+     */
+    public void setResolvedModules(Map resolvedModules) {
+        _resolvedModules = resolvedModules;
+    }
+
+    /**
+     * Asks the given resolver for the given dependency, unless it has already been found
+     * by the same resolver in the current batch of resolves.
+     */
+    public ResolvedModuleRevision getDependency(DependencyResolver resolver, DependencyDescriptor dd) throws ParseException {
+        if (_resolvedModules == null) {
+            return getDependencyFromResolver(resolver, dd);
+        }
+        Object key = Arrays.asList(new Object[] {resolver.getName(), dd.getDependencyRevisionId(), Boolean.valueOf(dd.isChanging())});
+        synchronized (_resolvedModules) {
+            if (_resolvedModules.containsKey(key)) {
+                ResolvedModuleRevision rmr = (ResolvedModuleRevision)_resolvedModules.get(key);
+                Message.debug("\t"+dd.getDependencyRevisionId()+" already resolved in batch");
+                if (rmr == null) {
+                    return null;
+                }
+                // the descriptor has only been downloaded by the first resolve of the batch
+                return new DefaultModuleRevision(rmr.getResolver(), rmr.getArtifactResolver(), rmr.getDescriptor(), rmr.isSearched(), false, rmr.getLocalMDUrl());
+            }
+        }
+        ResolvedModuleRevision rmr = getDependencyFromResolver(resolver, dd);
+        synchronized (_resolvedModules) {
+            _resolvedModules.put(key, rmr);
+        }
+        return rmr;
+    }
+
+    /**
+     * Asks the given resolver for the given dependency, unless it is found in the resolved
+     * module revisions cache of the Ivy instance.
+     */
+    private ResolvedModuleRevision getDependencyFromResolver(DependencyResolver resolver, DependencyDescriptor dd) throws ParseException {
+        ResolvedModuleRevisionCache cache = _ivy == null ? null : _ivy.getResolvedModuleRevisionCache();
+        boolean cacheable = cache != null && _cache != null && _date == null && cache.isCacheable(resolver, dd);
+        if (cacheable) {
+            ResolvedModuleRevision rmr = cache.get(resolver, dd, _cache);
+            if (rmr != null) {
+                Message.debug("\t"+dd.getDependencyRevisionId()+" found in resolved module revisions cache");
+                return rmr;
+            }
+        }
+        ResolvedModuleRevision rmr = resolver.getDependency(dd, this);
+        if (cacheable && rmr != null) {
+            cache.put(resolver, dd, _cache, rmr);
+        }
+        return rmr;
+    }
     
 
     
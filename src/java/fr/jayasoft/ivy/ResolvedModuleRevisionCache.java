@@ -0,0 +1,180 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fr.jayasoft.ivy.resolver.AbstractResolver;
+import fr.jayasoft.ivy.resolver.BasicResolver;
+
+/**
+ * Keeps in memory the module revisions found by resolvers, so that the following resolves
+ * made with the same Ivy instance do not ask the resolvers again for the same static module
+ * revisions.
+ *
+ * An entry is reused as long as the ivy file of the module revision in the cache is not
+ * modified or deleted, and is invalidated when the module revision is published. Dynamic
+ * and changing revisions, and revisions found by resolvers checking for modifications,
+ * are never kept. When the cache is full, the least recently used entry is removed.
+ *
+ * The cache is disabled by default: modules modified in the repository without changing
+ * their revision would not be seen by the following resolves of a long lived Ivy instance.
+ */
+public class ResolvedModuleRevisionCache {
+    public static final int DEFAULT_SIZE = 0;
+
+    private static class Entry {
+        private ResolvedModuleRevision _rmr;
+        private File _ivyFile;
+        private long _lastModified;
+
+        Entry(ResolvedModuleRevision rmr, File ivyFile) {
+            _rmr = rmr;
+            _ivyFile = ivyFile;
+            _lastModified = ivyFile.lastModified();
+        }
+
+        boolean isUpToDate() {
+            // a deleted file has a last modified time of 0
+            return _lastModified == _ivyFile.lastModified();
+        }
+    }
+
+    private Ivy _ivy;
+    private int _maxSize;
+    private Map _entries; // Map (List (resolver name, cache, ModuleRevisionId) -> Entry)
+    private int _hits = 0;
+    private int _misses = 0;
+
+    public ResolvedModuleRevisionCache(Ivy ivy) {
+        this(ivy, DEFAULT_SIZE);
+    }
+
+    public ResolvedModuleRevisionCache(Ivy ivy, int maxSize) {
+        _ivy = ivy;
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the maximum number of module revisions kept, 0 disabling the cache.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        _maxSize = maxSize;
+        _entries = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > _maxSize;
+            }
+        };
+    }
+
+    public synchronized int getMaxSize() {
+        return _maxSize;
+    }
+
+    /**
+     * @return true if the module revision asked by the given dependency descriptor to the given
+     * resolver can be kept in this cache
+     */
+    public boolean isCacheable(DependencyResolver resolver, DependencyDescriptor dd) {
+        ModuleRevisionId mrid = dd.getDependencyRevisionId();
+        return getMaxSize() > 0
+            && !dd.isChanging()
+            && !_ivy.getVersionMatcher().isDynamic(mrid)
+            && !isChanging(resolver, mrid);
+    }
+
+    /**
+     * @return the module revision found by the given resolver for the given dependency descriptor
+     * with the given cache, or null if it isn't known or isn't up to date
+     */
+    public synchronized ResolvedModuleRevision get(DependencyResolver resolver, DependencyDescriptor dd, File cache) {
+        Object key = getKey(resolver, dd.getDependencyRevisionId(), cache);
+        Entry entry = (Entry)_entries.get(key);
+        if (entry != null && !entry.isUpToDate()) {
+            _entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            _misses++;
+            return null;
+        }
+        _hits++;
+        ResolvedModuleRevision rmr = entry._rmr;
+        // the module descriptor has not been downloaded by this resolve
+        return new DefaultModuleRevision(rmr.getResolver(), rmr.getArtifactResolver(), rmr.getDescriptor(), rmr.isSearched(), false, rmr.getLocalMDUrl());
+    }
+
+    public synchronized void put(DependencyResolver resolver, DependencyDescriptor dd, File cache, ResolvedModuleRevision rmr) {
+        if (isChanging(rmr.getResolver(), rmr.getId())) {
+            return;
+        }
+        if (rmr.getDescriptor().isDefault() && rmr.getResolver() != resolver) {
+            // another resolver may find a better module descriptor later
+            return;
+        }
+        File ivyFile = _ivy.getIvyFileInCache(cache, rmr.getId());
+        if (!ivyFile.exists()) {
+            return;
+        }
+        _entries.put(getKey(resolver, dd.getDependencyRevisionId(), cache), new Entry(rmr, ivyFile));
+    }
+
+    /**
+     * Removes all the entries of the given module revision.
+     */
+    public synchronized void invalidate(ModuleRevisionId mrid) {
+        for (Iterator iter = _entries.values().iterator(); iter.hasNext();) {
+            Entry entry = (Entry)iter.next();
+            if (mrid.equals(entry._rmr.getId())) {
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        _entries.clear();
+    }
+
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    public synchronized int getHits() {
+        return _hits;
+    }
+
+    public synchronized int getMisses() {
+        return _misses;
+    }
+
+    /**
+     * @return the ratio of the lookups which found an up to date entry, 0 if there has been no lookup
+     */
+    public synchronized double getHitRate() {
+        int lookups = _hits + _misses;
+        return lookups == 0 ? 0 : (double)_hits / lookups;
+    }
+
+    public synchronized String toString() {
+        return size()+" module revisions, "+_hits+" hits, "+_misses+" misses ("+Math.round(getHitRate() * 100)+"% hit rate)";
+    }
+
+    private boolean isChanging(DependencyResolver resolver, ModuleRevisionId mrid) {
+        if (resolver instanceof BasicResolver && ((BasicResolver)resolver).isCheckmodified()) {
+            return true;
+        }
+        return resolver instanceof AbstractResolver
+            && ((AbstractResolver)resolver).getChangingMatcher().matches(mrid.getRevision());
+    }
+
+    private Object getKey(DependencyResolver resolver, ModuleRevisionId mrid, File cache) {
+        return Arrays.asList(new Object[] {resolver.getName(), cache.getAbsoluteFile(), mrid});
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.ant;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Creates an ant filelist of the build files of the modules affected by changed paths,
+ * ordered according to the dependencies declared in ivy files.
+ *
+ * The affected modules are the modules whose directory contains a changed path, and the
+ * modules depending on them, directly or transitively. This is the same as the buildlist 
+ * task with the changes or changesfile attribute required.
+ */
+public class IvyAffected extends IvyBuildList {
+    public void execute() throws BuildException {
+        if (getChanges() == null && getChangesfile() == null) {
+            throw new BuildException("changes or changesfile should be provided in ivy affected");
+        }
+        super.execute();
+    }
+}
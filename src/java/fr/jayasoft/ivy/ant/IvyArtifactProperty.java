@@ -105,7 +105,7 @@ public class IvyArtifactProperty extends IvyTask {
             throw new BuildException("no conf provided for ivy artifactproperty: It can either be set explicitely via the attribute 'conf' or via 'ivy.resolved.configurations' property or a prior call to <resolve/>");
         }
         try {
-            XmlReportParser parser = new XmlReportParser();
+            XmlReportParser parser = ivy.getReportParser();
             String[] confs = splitConfs(_conf);
             for (int i = 0; i < confs.length; i++) {
                 Artifact[] artifacts = parser.getArtifacts(new ModuleId(_organisation, _module), confs[i], _cache);
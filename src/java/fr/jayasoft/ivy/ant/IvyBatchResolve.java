@@ -0,0 +1,172 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.ant;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+
+import fr.jayasoft.ivy.Ivy;
+import fr.jayasoft.ivy.filter.FilterHelper;
+import fr.jayasoft.ivy.report.ResolveReport;
+import fr.jayasoft.ivy.util.Message;
+
+/**
+ * Resolves the dependencies of several modules in one operation, each dependency shared
+ * by several modules being resolved only once.
+ *
+ * The ivy files of the modules are given by nested filesets. Each module gets its own
+ * resolve report, as if it had been resolved with the resolve task.
+ */
+public class IvyBatchResolve extends IvyTask {
+    private List _ivyFiles = new ArrayList(); // List (FileSet)
+    private String _conf = null;
+    private File _cache = null;
+    private String _revision = null;
+    private String _pubdate = null;
+    private boolean _haltOnFailure = true;
+    private boolean _useCacheOnly = false;
+    private String _type = null;
+    private boolean _transitive = true;
+    private boolean _useOrigin = false;
+    private String _failureProperty = null;
+
+    public void addFileset(FileSet ivyFiles) {
+        _ivyFiles.add(ivyFiles);
+    }
+    public String getConf() {
+        return _conf;
+    }
+    public void setConf(String conf) {
+        _conf = conf;
+    }
+    public File getCache() {
+        return _cache;
+    }
+    public void setCache(File cache) {
+        _cache = cache;
+    }
+    public String getRevision() {
+        return _revision;
+    }
+    public void setRevision(String revision) {
+        _revision = revision;
+    }
+    public String getDate() {
+        return _pubdate;
+    }
+    public void setDate(String pubdate) {
+        _pubdate = pubdate;
+    }
+    public boolean isHaltonfailure() {
+        return _haltOnFailure;
+    }
+    public void setHaltonfailure(boolean haltOnFailure) {
+        _haltOnFailure = haltOnFailure;
+    }
+    public void setShowprogress(boolean show) {
+        Message.setShowProgress(show);
+    }
+    public boolean isUseCacheOnly() {
+        return _useCacheOnly;
+    }
+    public void setUseCacheOnly(boolean useCacheOnly) {
+        _useCacheOnly = useCacheOnly;
+    }
+    public String getType() {
+        return _type;
+    }
+    public void setType(String type) {
+        _type = type;
+    }
+    public boolean isTransitive() {
+        return _transitive;
+    }
+    public void setTransitive(boolean transitive) {
+        _transitive = transitive;
+    }
+    public boolean isUseOrigin() {
+        return _useOrigin;
+    }
+    public void setUseOrigin(boolean useOrigin) {
+        _useOrigin = useOrigin;
+    }
+    public String getFailureProperty() {
+        return _failureProperty;
+    }
+    public void setFailureProperty(String failureProperty) {
+        _failureProperty = failureProperty;
+    }
+
+    public void execute() throws BuildException {
+        if (_ivyFiles.isEmpty()) {
+            throw new BuildException("at least one nested fileset is required");
+        }
+        Ivy ivy = getIvyInstance();
+        File ivyFile = null;
+        try {
+            _conf = getProperty(_conf, ivy, "ivy.configurations");
+            _type = getProperty(_type, ivy, "ivy.resolve.default.type.filter");
+            if (_cache == null) {
+                _cache = ivy.getDefaultCache();
+            }
+
+            List urls = new ArrayList(); // List (URL)
+            for (Iterator iter = _ivyFiles.iterator(); iter.hasNext();) {
+                FileSet fs = (FileSet)iter.next();
+                DirectoryScanner ds = fs.getDirectoryScanner(getProject());
+                String[] files = ds.getIncludedFiles();
+                for (int i = 0; i < files.length; i++) {
+                    ivyFile = new File(ds.getBasedir(), files[i]);
+                    urls.add(ivyFile.toURL());
+                }
+            }
+            ivyFile = null;
+
+            ResolveReport[] reports = ivy.resolve(
+                    (URL[])urls.toArray(new URL[urls.size()]),
+                    _revision,
+                    splitConfs(_conf),
+                    _cache,
+                    getPubDate(_pubdate, null),
+                    doValidate(ivy),
+                    _useCacheOnly,
+                    _transitive,
+                    _useOrigin,
+                    FilterHelper.getArtifactTypeFilter(_type));
+            getProject().setProperty("ivy.nb.modules.resolved", String.valueOf(reports.length));
+
+            for (int i = 0; i < reports.length; i++) {
+                if (reports[i].hasError()) {
+                    if (_failureProperty != null) {
+                        getProject().setProperty(_failureProperty, "true");
+                    }
+                    if (isHaltonfailure()) {
+                        throw new BuildException("resolve failed for "+reports[i].getModuleDescriptor().getModuleRevisionId()+" - see output for details");
+                    }
+                }
+            }
+        } catch (MalformedURLException e) {
+            throw new BuildException("unable to convert given ivy file to url: "+ivyFile+": "+e, e);
+        } catch (ParseException e) {
+            log(e.getMessage(), Project.MSG_ERR);
+            throw new BuildException("syntax errors in ivy file: "+e, e);
+        } catch (BuildException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BuildException("impossible to resolve dependencies: "+e, e);
+        }
+    }
+}
@@ -6,16 +6,25 @@
  */
 package fr.jayasoft.ivy.ant;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.tools.ant.BuildException;
@@ -34,6 +43,12 @@ import fr.jayasoft.ivy.util.Message;
 /**
  * Creates an ant filelist of files (usually build.xml) ordered according to the dependencies declared in ivy files.
  * 
+ * The modules can be restricted to the ones affected by changed paths: the modules containing
+ * a changed path, and the modules depending on them directly or transitively.
+ * 
+ * The modules can also be grouped in waves, each module depending only on modules of previous
+ * waves, so that the modules of a wave can be built in parallel.
+ * 
  * @author Xavier Hanin
  */
 public class IvyBuildList extends IvyTask {
@@ -47,6 +62,11 @@ public class IvyBuildList extends IvyTask {
     private boolean _excludeRoot = false;
     private String _leaf = "*";
     private boolean _excludeLeaf = false;
+    private boolean _waves = false;
+    private File _wavesFile;
+    private File _buildTimes;
+    private String _changes;
+    private File _changesFile;
 
 
     public void addFileset(FileSet buildFiles) {
@@ -167,8 +187,14 @@ public class IvyBuildList extends IvyTask {
             Message.info("Filtering modules based on leaf " + leafModuleDescriptor.getModuleRevisionId().getName());
             mds = filterModulesFromLeaf(mds, leafModuleDescriptor);
         }
+        if (_changes != null || _changesFile != null) {
+            mds = filterAffectedModules(mds, buildFiles, independent);
+        }
 
         List sortedModules = ivy.sortModuleDescriptors(mds);
+        if (_waves || _wavesFile != null) {
+            defineWaves(sortedModules, buildFiles, independent);
+        }
 
         for (ListIterator iter = independent.listIterator(); iter.hasNext();) {
             File buildFile = (File)iter.next();
@@ -192,6 +218,319 @@ public class IvyBuildList extends IvyTask {
         getProject().setProperty("ivy.sorted.modules", order.toString());
     }
 
+    /**
+     * Returns the modules affected by the changed paths: the modules whose directory contains
+     * a changed path, and the modules depending on them, directly or transitively.
+     * Build files without ivy file are removed from the independent ones unless their 
+     * directory contains a changed path.
+     */
+    private Collection filterAffectedModules(Collection mds, Map buildFiles, List independent) {
+        Map owners = new HashMap(); // Map (File dir -> ModuleDescriptor or File buildFile)
+        for (Iterator iter = mds.iterator(); iter.hasNext();) {
+            ModuleDescriptor md = (ModuleDescriptor)iter.next();
+            owners.put(getCanonicalFile(((File)buildFiles.get(md)).getParentFile()), md);
+        }
+        for (Iterator iter = independent.iterator(); iter.hasNext();) {
+            File buildFile = (File)iter.next();
+            owners.put(getCanonicalFile(buildFile.getParentFile()), buildFile);
+        }
+        
+        Set changed = new HashSet(); // Set (ModuleDescriptor or File buildFile)
+        String[] paths = getChangedPaths();
+        for (int i = 0; i < paths.length; i++) {
+            Object owner = null;
+            for (File dir = getCanonicalFile(getProject().resolveFile(paths[i])); dir != null && owner == null; dir = dir.getParentFile()) {
+                owner = owners.get(dir);
+            }
+            if (owner == null) {
+                Message.verbose("changed path in no module: "+paths[i]);
+            } else {
+                changed.add(owner);
+            }
+        }
+        
+        Map dependents = new HashMap(); // Map (ModuleId -> List (ModuleDescriptor))
+        for (Iterator iter = mds.iterator(); iter.hasNext();) {
+            ModuleDescriptor md = (ModuleDescriptor)iter.next();
+            DependencyDescriptor[] deps = md.getDependencies();
+            for (int i = 0; i < deps.length; i++) {
+                List l = (List)dependents.get(deps[i].getDependencyId());
+                if (l == null) {
+                    l = new ArrayList();
+                    dependents.put(deps[i].getDependencyId(), l);
+                }
+                l.add(md);
+            }
+        }
+        Set toKeep = new HashSet();
+        LinkedList toProcess = new LinkedList();
+        for (Iterator iter = changed.iterator(); iter.hasNext();) {
+            Object owner = iter.next();
+            if (owner instanceof ModuleDescriptor) {
+                toProcess.add(owner);
+            }
+        }
+        while (!toProcess.isEmpty()) {
+            ModuleDescriptor md = (ModuleDescriptor)toProcess.removeFirst();
+            if (toKeep.add(md)) {
+                List l = (List)dependents.get(md.getModuleRevisionId().getModuleId());
+                if (l != null) {
+                    toProcess.addAll(l);
+                }
+            }
+        }
+        independent.retainAll(changed);
+        
+        for (Iterator iter = toKeep.iterator(); iter.hasNext();) {
+            ModuleDescriptor md = ((ModuleDescriptor) iter.next());
+            Message.verbose("Kept affected module " + md.getModuleRevisionId().getModuleId().getName());
+        }
+        Message.info(toKeep.size()+" modules affected by "+paths.length+" changed paths");
+        return toKeep;
+    }
+
+    /**
+     * Returns the changed paths given by the changes attribute, separated by commas, 
+     * and by the changes file, one per line.
+     */
+    private String[] getChangedPaths() {
+        List paths = new ArrayList();
+        if (_changes != null) {
+            String[] changes = _changes.split(",");
+            for (int i = 0; i < changes.length; i++) {
+                if (changes[i].trim().length() > 0) {
+                    paths.add(changes[i].trim());
+                }
+            }
+        }
+        if (_changesFile != null) {
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(_changesFile));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() > 0 && !line.startsWith("#")) {
+                            paths.add(line);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException ex) {
+                throw new BuildException("impossible to read changes file "+_changesFile+": "+ex, ex);
+            }
+        }
+        return (String[])paths.toArray(new String[paths.size()]);
+    }
+
+    private File getCanonicalFile(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException ex) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * Sets the waves of the given sorted modules as properties and path references, and
+     * writes them in the waves file if any:
+     * ivy.sorted.waves is the number of waves, ivy.sorted.wave.[k] the modules of the wave k 
+     * and ivy.sorted.wave.[k].files their build files, also available in the path reference 
+     * [reference].wave.[k].
+     * Build files without ivy file are put in the first wave.
+     * With build times, the estimated time of each wave is given by ivy.sorted.wave.[k].time, 
+     * and the critical path by ivy.critical.path and ivy.critical.path.time.
+     */
+    private void defineWaves(List sortedModules, Map buildFiles, List independent) {
+        List waves = computeWaves(sortedModules);
+        if (waves.isEmpty() && !independent.isEmpty()) {
+            waves.add(new ArrayList());
+        }
+        Map times = _buildTimes == null ? null : loadBuildTimes(sortedModules);
+        if (isReverse()) {
+            Collections.reverse(waves);
+        }
+        
+        Properties props = new Properties();
+        props.setProperty("ivy.sorted.waves", String.valueOf(waves.size()));
+        for (int k = 0; k < waves.size(); k++) {
+            Path path = new Path(getProject());
+            if (k == 0) {
+                for (Iterator iter = independent.iterator(); iter.hasNext();) {
+                    addBuildFile(path, (File)iter.next());
+                }
+            }
+            StringBuffer modules = new StringBuffer();
+            long time = 0;
+            for (Iterator iter = ((List)waves.get(k)).iterator(); iter.hasNext();) {
+                ModuleDescriptor md = (ModuleDescriptor)iter.next();
+                modules.append(md.getModuleRevisionId().getModuleId());
+                if (iter.hasNext()) {
+                    modules.append(", ");
+                }
+                addBuildFile(path, (File)buildFiles.get(md));
+                if (times != null) {
+                    time = Math.max(time, ((Long)times.get(md)).longValue());
+                }
+            }
+            Message.verbose("build wave "+k+": "+modules);
+            getProject().addReference(getReference()+".wave."+k, path);
+            props.setProperty("ivy.sorted.wave."+k, modules.toString());
+            props.setProperty("ivy.sorted.wave."+k+".files", path.toString());
+            if (times != null) {
+                props.setProperty("ivy.sorted.wave."+k+".time", String.valueOf(time));
+            }
+        }
+        if (times != null) {
+            List criticalPath = computeCriticalPath(sortedModules, times);
+            StringBuffer modules = new StringBuffer();
+            long time = 0;
+            for (Iterator iter = criticalPath.iterator(); iter.hasNext();) {
+                ModuleDescriptor md = (ModuleDescriptor)iter.next();
+                modules.append(md.getModuleRevisionId().getModuleId());
+                if (iter.hasNext()) {
+                    modules.append(", ");
+                }
+                time += ((Long)times.get(md)).longValue();
+            }
+            Message.verbose("critical path: "+modules+" ("+time+"ms)");
+            props.setProperty("ivy.critical.path", modules.toString());
+            props.setProperty("ivy.critical.path.time", String.valueOf(time));
+        }
+        
+        for (Iterator iter = props.keySet().iterator(); iter.hasNext();) {
+            String key = (String)iter.next();
+            getProject().setProperty(key, props.getProperty(key));
+        }
+        if (_wavesFile != null) {
+            try {
+                OutputStream out = new FileOutputStream(_wavesFile);
+                try {
+                    props.store(out, "ivy build waves");
+                } finally {
+                    out.close();
+                }
+            } catch (IOException ex) {
+                throw new BuildException("impossible to write waves file "+_wavesFile+": "+ex, ex);
+            }
+        }
+    }
+
+    /**
+     * Groups the given sorted modules in waves, each module depending only on modules
+     * of previous waves.
+     * Dependencies on modules which are not in the build list, or which are in a circular
+     * dependency with the module, are ignored.
+     * @return List (List (ModuleDescriptor))
+     */
+    private List computeWaves(List sortedModules) {
+        Map levels = new HashMap(); // Map (ModuleId -> Integer)
+        List waves = new ArrayList();
+        for (Iterator iter = sortedModules.iterator(); iter.hasNext();) {
+            ModuleDescriptor md = (ModuleDescriptor)iter.next();
+            int level = 0;
+            DependencyDescriptor[] deps = md.getDependencies();
+            for (int i = 0; i < deps.length; i++) {
+                Integer depLevel = (Integer)levels.get(deps[i].getDependencyId());
+                if (depLevel != null) {
+                    level = Math.max(level, depLevel.intValue() + 1);
+                }
+            }
+            levels.put(md.getModuleRevisionId().getModuleId(), new Integer(level));
+            if (level == waves.size()) {
+                waves.add(new ArrayList());
+            }
+            ((List)waves.get(level)).add(md);
+        }
+        return waves;
+    }
+
+    /**
+     * Returns the modules on the longest chain of dependencies among the given sorted modules,
+     * weighted by their build times, in build order.
+     */
+    private List computeCriticalPath(List sortedModules, Map times) {
+        Map finish = new HashMap(); // Map (ModuleId -> Long)
+        Map previous = new HashMap(); // Map (ModuleDescriptor -> ModuleDescriptor)
+        Map moduleIdMap = new HashMap(); // Map (ModuleId -> ModuleDescriptor)
+        ModuleDescriptor last = null;
+        long max = -1;
+        for (Iterator iter = sortedModules.iterator(); iter.hasNext();) {
+            ModuleDescriptor md = (ModuleDescriptor)iter.next();
+            long start = 0;
+            DependencyDescriptor[] deps = md.getDependencies();
+            for (int i = 0; i < deps.length; i++) {
+                Long depFinish = (Long)finish.get(deps[i].getDependencyId());
+                if (depFinish != null && depFinish.longValue() > start) {
+                    start = depFinish.longValue();
+                    previous.put(md, moduleIdMap.get(deps[i].getDependencyId()));
+                }
+            }
+            long end = start + ((Long)times.get(md)).longValue();
+            finish.put(md.getModuleRevisionId().getModuleId(), new Long(end));
+            moduleIdMap.put(md.getModuleRevisionId().getModuleId(), md);
+            if (end > max) {
+                max = end;
+                last = md;
+            }
+        }
+        List path = new ArrayList();
+        for (ModuleDescriptor md = last; md != null; md = (ModuleDescriptor)previous.get(md)) {
+            path.add(0, md);
+        }
+        return path;
+    }
+
+    /**
+     * Loads the build times of the given modules from the build times file, a properties file
+     * giving the time in ms of the last build of each module by module name. Modules without
+     * build time are given the average time of the others.
+     * @return Map (ModuleDescriptor -> Long)
+     */
+    private Map loadBuildTimes(List sortedModules) {
+        Properties props = new Properties();
+        if (_buildTimes.exists()) {
+            try {
+                InputStream in = new FileInputStream(_buildTimes);
+                try {
+                    props.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                throw new BuildException("impossible to read build times file "+_buildTimes+": "+ex, ex);
+            }
+        } else {
+            Message.verbose("no build times file found at "+_buildTimes);
+        }
+        
+        Map times = new HashMap();
+        long total = 0;
+        for (Iterator iter = sortedModules.iterator(); iter.hasNext();) {
+            ModuleDescriptor md = (ModuleDescriptor)iter.next();
+            String time = props.getProperty(md.getModuleRevisionId().getName());
+            if (time != null) {
+                try {
+                    Long t = Long.valueOf(time.trim());
+                    times.put(md, t);
+                    total += t.longValue();
+                } catch (NumberFormatException ex) {
+                    Message.warn("bad build time for "+md.getModuleRevisionId().getName()+" in "+_buildTimes+": "+time);
+                }
+            }
+        }
+        Long average = new Long(times.isEmpty() ? 0 : total / times.size());
+        for (Iterator iter = sortedModules.iterator(); iter.hasNext();) {
+            ModuleDescriptor md = (ModuleDescriptor)iter.next();
+            if (!times.containsKey(md)) {
+                Message.verbose("no build time for "+md.getModuleRevisionId().getName()+": using average "+average+"ms");
+                times.put(md, average);
+            }
+        }
+        return times;
+    }
+
     /**
      * Returns a collection of ModuleDescriptors that are conatined in the input
      * collection of ModuleDescriptors and upon which the root module depends
@@ -351,4 +690,51 @@ public class IvyBuildList extends IvyTask {
         _reverse = reverse;
     }
 
+    public boolean isWaves() {
+        return _waves;
+    }
+
+    public void setWaves(boolean waves) {
+        _waves = waves;
+    }
+
+    public File getWavesfile() {
+        return _wavesFile;
+    }
+
+    public void setWavesfile(File wavesFile) {
+        _wavesFile = wavesFile;
+    }
+
+    public String getChanges() {
+        return _changes;
+    }
+
+    /**
+     * Sets the changed paths, separated by commas, relative to the project base directory
+     * or absolute.
+     */
+    public void setChanges(String changes) {
+        _changes = changes;
+    }
+
+    public File getChangesfile() {
+        return _changesFile;
+    }
+
+    /**
+     * Sets a file listing the changed paths, one per line, as given by the changes attribute.
+     */
+    public void setChangesfile(File changesFile) {
+        _changesFile = changesFile;
+    }
+
+    public File getBuildtimes() {
+        return _buildTimes;
+    }
+
+    public void setBuildtimes(File buildTimes) {
+        _buildTimes = buildTimes;
+    }
+
 }
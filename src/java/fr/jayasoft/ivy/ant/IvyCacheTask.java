@@ -5,6 +5,7 @@
  */
 package fr.jayasoft.ivy.ant;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -18,10 +19,14 @@ import java.util.Set;
 import org.apache.tools.ant.BuildException;
 
 import fr.jayasoft.ivy.Artifact;
+import fr.jayasoft.ivy.Ivy;
 import fr.jayasoft.ivy.ModuleRevisionId;
 import fr.jayasoft.ivy.report.ArtifactDownloadReport;
 import fr.jayasoft.ivy.report.ConfigurationResolveReport;
+import fr.jayasoft.ivy.report.DownloadReport;
+import fr.jayasoft.ivy.report.DownloadStatus;
 import fr.jayasoft.ivy.report.ResolveReport;
+import fr.jayasoft.ivy.report.XmlReportOutputter;
 import fr.jayasoft.ivy.util.Message;
 import fr.jayasoft.ivy.xml.XmlReportParser;
 
@@ -44,9 +49,35 @@ public abstract class IvyCacheTask extends IvyPostResolveTask {
             }
         }
         
+        downloadDeferredArtifacts(ret);
         return ret;
     }
 
+    /**
+     * Downloads the given artifacts not in cache yet, their download having been deferred
+     * by a lazy resolve.
+     */
+    private void downloadDeferredArtifacts(List artifacts) {
+        Ivy ivy = getIvyInstance();
+        DownloadReport dReport = ivy.downloadDeferredArtifacts((Artifact[])artifacts.toArray(new Artifact[artifacts.size()]), getCache(), isUseOrigin());
+        if (dReport.getArtifactsReports().length == 0) {
+            return;
+        }
+        ResolveReport report = getResolvedReport();
+        if (report != null) {
+            report.updateDownloadReports(dReport);
+            new XmlReportOutputter().output(report, getCache());
+            String[] confs = report.getConfigurations();
+            for (int i = 0; i < confs.length; i++) {
+                ivy.getReportParser().invalidate(new File(getCache(), XmlReportOutputter.getReportFileName(getResolvedModuleId(), confs[i])));
+            }
+        }
+        ArtifactDownloadReport[] failed = dReport.getArtifactsReports(DownloadStatus.FAILED);
+        if (failed.length > 0 && isHaltonfailure()) {
+            throw new BuildException("impossible to download "+failed.length+" deferred artifacts: first failure is "+failed[0].getArtifact());
+        }
+    }
+
     private Collection getAllArtifacts() throws ParseException, IOException {
         String[] confs = splitConfs(getConf());
         Collection all = new LinkedHashSet();
@@ -70,7 +101,7 @@ public abstract class IvyCacheTask extends IvyPostResolveTask {
             }
         } else {
             Message.debug("using stored report to get artifacts list");
-            XmlReportParser parser = new XmlReportParser();
+            XmlReportParser parser = getIvyInstance().getReportParser();
             
             for (int i = 0; i < confs.length; i++) {
                 Artifact[] artifacts = parser.getArtifacts(getResolvedModuleId(), confs[i], getCache());
@@ -0,0 +1,91 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.ant;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.apache.tools.ant.BuildException;
+
+import fr.jayasoft.ivy.Ivy;
+
+/**
+ * Evicts least recently used module revisions from the cache, down to a maximum size
+ * and/or a maximum age since last access.
+ *
+ * maxsize is given in bytes, or with a k, m or g suffix (e.g. 500m).
+ * maxage is given in days, or with a d, h, m or s suffix (e.g. 12h).
+ * When not given, they default to the ivy variables ivy.cache.max.size and ivy.cache.max.age.
+ */
+public class IvyCleanCache extends IvyTask {
+    private File _cache;
+    private String _maxSize;
+    private String _maxAge;
+
+    public void execute() throws BuildException {
+        Ivy ivy = getIvyInstance();
+        if (_cache == null) {
+            _cache = ivy.getDefaultCache();
+        }
+        String maxSize = getProperty(_maxSize, ivy, "ivy.cache.max.size");
+        String maxAge = getProperty(_maxAge, ivy, "ivy.cache.max.age");
+        if (maxSize == null && maxAge == null) {
+            throw new BuildException("no limit provided for ivy clean cache task: please provide maxsize and/or maxage, either as attribute or through ivy.cache.max.size and ivy.cache.max.age properties");
+        }
+        long size = maxSize == null ? -1 : parseSize(maxSize);
+        long age = maxAge == null ? -1 : parseAge(maxAge);
+        try {
+            Collection evicted = ivy.cleanCache(_cache, size, age);
+            getProject().setProperty("ivy.nb.revisions.evicted", String.valueOf(evicted.size()));
+        } catch (Exception ex) {
+            throw new BuildException("impossible to clean cache "+_cache+": "+ex, ex);
+        }
+    }
+
+    private long parseSize(String size) {
+        return parse(size, "kmg", new long[] {1024L, 1024L*1024, 1024L*1024*1024}, 1, "maxsize");
+    }
+
+    private long parseAge(String age) {
+        return parse(age, "dhms", new long[] {24L*3600*1000, 3600L*1000, 60L*1000, 1000L}, 24L*3600*1000, "maxage");
+    }
+
+    private long parse(String value, String units, long[] multipliers, long defaultMultiplier, String attName) {
+        value = value.trim().toLowerCase();
+        long multiplier = defaultMultiplier;
+        if (value.length() > 0) {
+            int unit = units.indexOf(value.charAt(value.length() - 1));
+            if (unit != -1) {
+                multiplier = multipliers[unit];
+                value = value.substring(0, value.length() - 1).trim();
+            }
+        }
+        try {
+            return Long.parseLong(value) * multiplier;
+        } catch (NumberFormatException ex) {
+            throw new BuildException("bad "+attName+" for ivy clean cache task: "+value);
+        }
+    }
+
+    public File getCache() {
+        return _cache;
+    }
+    public void setCache(File cache) {
+        _cache = cache;
+    }
+    public String getMaxsize() {
+        return _maxSize;
+    }
+    public void setMaxsize(String maxSize) {
+        _maxSize = maxSize;
+    }
+    public String getMaxage() {
+        return _maxAge;
+    }
+    public void setMaxage(String maxAge) {
+        _maxAge = maxAge;
+    }
+}
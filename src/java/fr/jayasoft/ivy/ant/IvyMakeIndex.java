@@ -0,0 +1,60 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.ant;
+
+import java.io.File;
+
+import org.apache.tools.ant.BuildException;
+
+import fr.jayasoft.ivy.DependencyResolver;
+import fr.jayasoft.ivy.Ivy;
+import fr.jayasoft.ivy.resolver.RepositoryResolver;
+
+/**
+ * Creates or updates the index of the repository of a resolver, by adding the module
+ * revisions not indexed yet.
+ *
+ * The index is put in the repository at the location given by the index attribute of the
+ * resolver, unless tofile is given, which is useful for repositories which do not support
+ * publication.
+ */
+public class IvyMakeIndex extends IvyTask {
+    private String _resolver;
+    private File _toFile;
+
+    public void execute() throws BuildException {
+        Ivy ivy = getIvyInstance();
+        if (_resolver == null) {
+            throw new BuildException("no resolver provided for ivy make index task: please provide the name of the resolver to index");
+        }
+        DependencyResolver resolver = ivy.getResolver(_resolver);
+        if (!(resolver instanceof RepositoryResolver)) {
+            throw new BuildException("impossible to index "+_resolver+": not a repository resolver");
+        }
+        if (((RepositoryResolver)resolver).getIndex() == null) {
+            throw new BuildException("impossible to index "+_resolver+": no index defined for this resolver");
+        }
+        try {
+            int added = ((RepositoryResolver)resolver).makeIndex(_toFile);
+            getProject().setProperty("ivy.nb.revisions.indexed", String.valueOf(added));
+        } catch (Exception ex) {
+            throw new BuildException("impossible to index "+_resolver+": "+ex, ex);
+        }
+    }
+
+    public String getResolver() {
+        return _resolver;
+    }
+    public void setResolver(String resolver) {
+        _resolver = resolver;
+    }
+    public File getTofile() {
+        return _toFile;
+    }
+    public void setTofile(File toFile) {
+        _toFile = toFile;
+    }
+}
@@ -6,27 +6,43 @@
 package fr.jayasoft.ivy.ant;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.taskdefs.XSLTProcess;
-import org.apache.tools.ant.types.Mapper;
-import org.apache.tools.ant.util.FileNameMapper;
-import org.apache.tools.ant.util.GlobPatternMapper;
 
 import fr.jayasoft.ivy.Ivy;
 import fr.jayasoft.ivy.ModuleId;
+import fr.jayasoft.ivy.report.ConfigurationResolveReport;
+import fr.jayasoft.ivy.report.DotReportWriter;
+import fr.jayasoft.ivy.report.GraphMLReportWriter;
+import fr.jayasoft.ivy.report.GraphReportWriter;
+import fr.jayasoft.ivy.report.ResolveReport;
+import fr.jayasoft.ivy.report.TemplatesCache;
 import fr.jayasoft.ivy.report.XmlReportOutputter;
 import fr.jayasoft.ivy.util.FileUtil;
 import fr.jayasoft.ivy.util.IvyPatternHelper;
 import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.WorkerPool;
 
 /**
  * This ant task let users generates reports (html, xml, graphml, ...) from the last resolve done.
  * 
+ * Stylesheets are compiled once and the configurations are transformed in parallel. Graphml
+ * and dot graphs are written directly from the resolve report when it is still in memory, the
+ * graph stylesheets being used only for reports of previous builds.
+ * 
  * @author Xavier Hanin
  */
 public class IvyReport extends IvyTask {
@@ -138,6 +154,7 @@ public class IvyReport extends IvyTask {
         }
         try {
             String[] confs = splitConfs(_conf);
+            warnDeferredArtifacts(ivy, new ModuleId(_organisation, _module), confs, _cache);
             if (_xsl) {
                 genreport(_cache, _organisation, _module, confs);
             }
@@ -145,13 +162,15 @@ public class IvyReport extends IvyTask {
                 genxml(_cache, _organisation, _module, confs);
             }
             if (_graph) {
-            	genStyled(_cache, _organisation, _module, confs, getStylePath(_cache, "ivy-report-graph.xsl"), "graphml");
+            	gengraph(_cache, _organisation, _module, confs, new GraphMLReportWriter(), "ivy-report-graph.xsl", "graphml");
             }
             if (_dot) {
-            	genStyled(_cache, _organisation, _module, confs, getStylePath(_cache, "ivy-report-dot.xsl"), "dot");
+            	gengraph(_cache, _organisation, _module, confs, new DotReportWriter(), "ivy-report-dot.xsl", "dot");
             }
         } catch (IOException e) {
             throw new BuildException("impossible to generate report: "+e, e);
+        } catch (TransformerException e) {
+            throw new BuildException("impossible to generate report: "+e, e);
         }
     }
     
@@ -169,8 +188,8 @@ public class IvyReport extends IvyTask {
             FileUtil.copy(xml, out, null);
         }
     }
-    private void genreport(File cache, String organisation, String module, String[] confs) throws IOException {        
-        genStyled(cache, organisation, module, confs, getReportStylePath(cache), _xslext);
+    private void genreport(File cache, String organisation, String module, String[] confs) throws IOException, TransformerException {        
+        genStyled(cache, organisation, module, confs, getReportStyle(), _xslext);
 
         // copy the css if required
         if (_todir != null && _xslFile == null) {
@@ -183,72 +202,104 @@ public class IvyReport extends IvyTask {
         }
     }
     
-    private String getReportStylePath(File cache) throws IOException {
+    private Templates getReportStyle() throws TransformerException {
         if (_xslFile != null) {
-            return _xslFile;
+            return TemplatesCache.getTemplates(getProject().resolveFile(_xslFile));
         }
-        // style should be a file (and not an url)
-        // so we have to copy it from classpath to cache
-        File style = new File(cache, "ivy-report.xsl");
-        FileUtil.copy(XmlReportOutputter.class.getResourceAsStream("ivy-report.xsl"), style, null);
-        return style.getAbsolutePath();
+        return TemplatesCache.getTemplates("ivy-report.xsl");
     }
     
-    private void genStyled(File cache, String organisation, String module, String[] confs, String style, String ext) throws IOException {        
-        // process the report with xslt to generate dot file
-        File out;
-        if (_todir != null) {
-            out = _todir;
-        } else {
-            out = new File(".");
+    private void gengraph(File cache, String organisation, String module, String[] confs, GraphReportWriter writer, String styleResourceName, String ext) throws IOException, TransformerException {
+        ResolveReport report = getResolvedReport(organisation, module, true);
+        List styled = new ArrayList();
+        for (int i = 0; i < confs.length; i++) {
+            ConfigurationResolveReport confReport = report == null ? null : report.getConfigurationReport(confs[i]);
+            if (confReport == null) {
+                // not resolved in this build: use the xml report in cache
+                styled.add(confs[i]);
+            } else {
+                File out = getOutputFile(organisation, module, confs[i], ext);
+                writer.output(confReport, out);
+                Message.verbose("\t"+ext+" report for "+confs[i]+" produced in "+out);
+            }
         }
-
-        XSLTProcess xslt = new XSLTProcess();
-        xslt.setTaskName(getTaskName());
-        xslt.setProject(getProject());
-        xslt.init();
-        
-        xslt.setDestdir(out);
-        xslt.setBasedir(cache);
-
-        Mapper mapper = new Mapper(getProject());
-    	xslt.addMapper(mapper);
-        
+        if (!styled.isEmpty()) {
+            genStyled(cache, organisation, module, (String[])styled.toArray(new String[styled.size()]), TemplatesCache.getTemplates(styleResourceName), ext);
+        }
+    }
+    
+    /**
+     * Transforms the xml reports of the given confs with the given stylesheet, the confs
+     * being transformed in parallel, each one with its own transformer.
+     */
+    private void genStyled(File cache, String organisation, String module, final String[] confs, final Templates style, String ext) {
+        final File[] in = new File[confs.length];
+        final File[] out = new File[confs.length];
         for (int i = 0; i < confs.length; i++) {
-        	String reportFileName = XmlReportOutputter.getReportFileName(new ModuleId(organisation, module), confs[i]);
-        	xslt.setIncludes(reportFileName);
-        	
-        	FileNameMapper reportMapper = new GlobPatternMapper();
-			reportMapper.setFrom(reportFileName);
-        	reportMapper.setTo(IvyPatternHelper.substitute(_outputpattern, organisation, module, "", "", "", ext, confs[i]));
-        	mapper.add(reportMapper);
+            in[i] = new File(cache, XmlReportOutputter.getReportFileName(new ModuleId(organisation, module), confs[i]));
+            out[i] = getOutputFile(organisation, module, confs[i], ext);
         }
-        xslt.setStyle(style);
-        
-        XSLTProcess.Param param = xslt.createParam();
-        param.setName("confs");
-        param.setExpression(_conf);
-        param = xslt.createParam();
-        param.setName("extension");
-        param.setExpression(_xslext);
-
+        final Exception[] failures = new Exception[confs.length];
+        Runnable[] tasks = new Runnable[confs.length];
+        for (int i = 0; i < confs.length; i++) {
+            final int index = i;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    try {
+                        transform(style, in[index], out[index]);
+                    } catch (Exception e) {
+                        synchronized (failures) {
+                            failures[index] = e;
+                        }
+                    }
+                }
+            };
+        }
+        if (!WorkerPool.getDefault().runAll(tasks, Runtime.getRuntime().availableProcessors())) {
+            throw new BuildException("report generation interrupted");
+        }
+        synchronized (failures) {
+            for (int i = 0; i < failures.length; i++) {
+                if (failures[i] != null) {
+                    throw new BuildException("impossible to generate "+ext+" report for "+confs[i]+": "+failures[i], failures[i]);
+                }
+            }
+        }
+    }
+    
+    private void transform(Templates style, File in, File out) throws TransformerException, IOException {
+        if (!in.exists()) {
+            Message.warn("\tno report found in cache for "+in.getName()+": "+out.getName()+" not generated");
+            return;
+        }
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Transformer transformer = style.newTransformer();
+        transformer.setParameter("confs", _conf);
+        transformer.setParameter("extension", _xslext);
         // add the provided XSLT parameters
         for (Iterator it = _params.iterator(); it.hasNext(); ) {
-            param = (XSLTProcess.Param) it.next();
-            XSLTProcess.Param realParam = xslt.createParam();
-            realParam.setName(param.getName());
-            realParam.setExpression(param.getExpression());
+            XSLTProcess.Param param = (XSLTProcess.Param) it.next();
+            transformer.setParameter(param.getName(), param.getExpression());
+        }
+        Message.verbose("\tprocessing "+in+" to "+out);
+        OutputStream stream = new FileOutputStream(out);
+        try {
+            transformer.transform(new StreamSource(in), new StreamResult(stream));
+        } finally {
+            stream.close();
         }
-        
-        xslt.execute();
     }
     
-    private String getStylePath(File cache, String styleResourceName) throws IOException {
-        // style should be a file (and not an url)
-        // so we have to copy it from classpath to cache
-        File style = new File(cache, styleResourceName);
-        FileUtil.copy(XmlReportOutputter.class.getResourceAsStream(styleResourceName), style, null);
-        return style.getAbsolutePath();
+    private File getOutputFile(String organisation, String module, String conf, String ext) {
+        String name = IvyPatternHelper.substitute(_outputpattern, organisation, module, "", "", "", ext, conf);
+        if (_todir != null) {
+            return new File(_todir, name);
+        } else {
+            return new File(name);
+        }
     }
     
     public boolean isXml() {
@@ -1,11 +1,19 @@
 package fr.jayasoft.ivy.ant;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.taskdefs.XSLTProcess;
 
@@ -16,6 +24,7 @@ import fr.jayasoft.ivy.ModuleRevisionId;
 import fr.jayasoft.ivy.filter.FilterHelper;
 import fr.jayasoft.ivy.matcher.PatternMatcher;
 import fr.jayasoft.ivy.report.ResolveReport;
+import fr.jayasoft.ivy.report.TemplatesCache;
 import fr.jayasoft.ivy.report.XmlReportOutputter;
 import fr.jayasoft.ivy.util.FileUtil;
 
@@ -89,68 +98,39 @@ public class IvyRepositoryReport extends IvyTask {
         }
     }
     
-    private void genreport(File cache, String organisation, String module) throws IOException {        
-        // first process the report with xslt
-        XSLTProcess xslt = new XSLTProcess();
-        xslt.setTaskName(getTaskName());
-        xslt.setProject(getProject());
-        xslt.init();
-        
-        xslt.setIn(new File(cache, XmlReportOutputter.getReportFileName(new ModuleId(organisation, module), "default")));
-        xslt.setOut(new File(_todir, _outputname+"."+_xslext));
-        
-        xslt.setStyle(_xslFile);
-        
-        XSLTProcess.Param param = xslt.createParam();
-        param.setName("extension");
-        param.setExpression(_xslext);
-
+    private void genreport(File cache, String organisation, String module) throws IOException, TransformerException {        
+        Transformer transformer = TemplatesCache.getTemplates(getProject().resolveFile(_xslFile)).newTransformer();
+        transformer.setParameter("extension", _xslext);
         // add the provided XSLT parameters
         for (Iterator it = _params.iterator(); it.hasNext(); ) {
-            param = (XSLTProcess.Param) it.next();
-            XSLTProcess.Param realParam = xslt.createParam();
-            realParam.setName(param.getName());
-            realParam.setExpression(param.getExpression());
+            XSLTProcess.Param param = (XSLTProcess.Param) it.next();
+            transformer.setParameter(param.getName(), param.getExpression());
         }
-        
-        xslt.execute();
+        transform(transformer, cache, organisation, module, _xslext);
     }
 
-    private void gengraph(File cache, String organisation, String module) throws IOException {        
-        gen(cache, organisation, module, getGraphStylePath(cache), "graphml");
-    }
-    
-    private String getGraphStylePath(File cache) throws IOException {
-        // style should be a file (and not an url)
-        // so we have to copy it from classpath to cache
-        File style = new File(cache, "ivy-report-graph-all.xsl");
-        FileUtil.copy(XmlReportOutputter.class.getResourceAsStream("ivy-report-graph-all.xsl"), style, null);
-        return style.getAbsolutePath();
+    private void gengraph(File cache, String organisation, String module) throws IOException, TransformerException {        
+        gen(cache, organisation, module, TemplatesCache.getTemplates("ivy-report-graph-all.xsl"), "graphml");
     }
     
-    private void gendot(File cache, String organisation, String module) throws IOException {        
-        gen(cache, organisation, module, getDotStylePath(cache), "dot");
+    private void gendot(File cache, String organisation, String module) throws IOException, TransformerException {        
+        gen(cache, organisation, module, TemplatesCache.getTemplates("ivy-report-dot-all.xsl"), "dot");
     }
     
-    private String getDotStylePath(File cache) throws IOException {
-        // style should be a file (and not an url)
-        // so we have to copy it from classpath to cache
-        File style = new File(cache, "ivy-report-dot-all.xsl");
-        FileUtil.copy(XmlReportOutputter.class.getResourceAsStream("ivy-report-dot-all.xsl"), style, null);
-        return style.getAbsolutePath();
+    private void gen(File cache, String organisation, String module, Templates style, String ext) throws IOException, TransformerException {        
+        transform(style.newTransformer(), cache, organisation, module, ext);
     }
     
-    private void gen(File cache, String organisation, String module, String style, String ext) throws IOException {        
-        XSLTProcess xslt = new XSLTProcess();
-        xslt.setTaskName(getTaskName());
-        xslt.setProject(getProject());
-        xslt.init();
-        
-        xslt.setIn(new File(cache, XmlReportOutputter.getReportFileName(new ModuleId(organisation, module), "default")));
-        xslt.setOut(new File(_todir, _outputname+"."+ext));
-        xslt.setBasedir(cache);
-        xslt.setStyle(style);
-        xslt.execute();
+    private void transform(Transformer transformer, File cache, String organisation, String module, String ext) throws IOException, TransformerException {        
+        File in = new File(cache, XmlReportOutputter.getReportFileName(new ModuleId(organisation, module), "default"));
+        File out = new File(_todir, _outputname+"."+ext);
+        out.getAbsoluteFile().getParentFile().mkdirs();
+        OutputStream stream = new FileOutputStream(out);
+        try {
+            transformer.transform(new StreamSource(in), new StreamResult(stream));
+        } finally {
+            stream.close();
+        }
     }
     
     public File getTodir() {
@@ -42,6 +42,23 @@ public class IvyResolve extends IvyTask {
 	private Boolean _keep = null;
 	private String _failureProperty = null;
     private boolean _useOrigin = false;
+    private boolean _lazy = false;
+    
+    public boolean isLazy() {
+    	return _lazy;
+    }
+    
+    /**
+     * Defers the download of the artifacts to the post resolve tasks (cachepath, cachefileset
+     * and retrieve), which download only the artifacts they need.
+     * 
+     * Since artifacts are not downloaded, a lazy resolve reports no error for missing 
+     * artifacts: they are only detected by the post resolve task which needs them, which
+     * updates the stored resolve reports with the downloads it makes.
+     */
+    public void setLazy(boolean lazy) {
+    	_lazy = lazy;
+    }
     
     public boolean isUseOrigin() {
     	return _useOrigin;
@@ -151,6 +168,7 @@ public class IvyResolve extends IvyTask {
 	                    doValidate(ivy),
 	                    _useCacheOnly,
 	                    _useOrigin,
+	                    !_lazy,
 	                    FilterHelper.getArtifactTypeFilter(_type));
             	
             } else {
@@ -174,6 +192,7 @@ public class IvyResolve extends IvyTask {
 	                    _useCacheOnly,
 	                    _transitive,
 	                    _useOrigin,
+	                    !_lazy,
 	                    FilterHelper.getArtifactTypeFilter(_type));
             }
             if (report.hasError()) {
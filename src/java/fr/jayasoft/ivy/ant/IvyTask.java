@@ -5,6 +5,7 @@
  */
 package fr.jayasoft.ivy.ant;
 
+import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -17,9 +18,11 @@ import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 
+import fr.jayasoft.ivy.Artifact;
 import fr.jayasoft.ivy.Ivy;
 import fr.jayasoft.ivy.IvyContext;
 import fr.jayasoft.ivy.ModuleDescriptor;
+import fr.jayasoft.ivy.ModuleId;
 import fr.jayasoft.ivy.report.ResolveReport;
 import fr.jayasoft.ivy.util.Message;
 import fr.jayasoft.ivy.util.StringUtils;
@@ -200,6 +203,24 @@ public class IvyTask extends Task {
 		return resolve;
 	}
 
+    /**
+     * Warns about the artifacts of the given confs which download has been deferred by a 
+     * lazy resolve, and which are thus not downloaded, nor known to be available, when the
+     * task uses the xml reports of the resolve.
+     */
+    protected void warnDeferredArtifacts(Ivy ivy, ModuleId moduleId, String[] confs, File cache) {
+        for (int i = 0; i < confs.length; i++) {
+            try {
+                Artifact[] deferred = ivy.getReportParser().getDeferredArtifacts(moduleId, confs[i], cache);
+                if (deferred.length > 0) {
+                    log(deferred.length+" artifacts of "+moduleId+" "+confs[i]+" have not been downloaded by the lazy resolve: they are reported as deferred, and may be missing (first one is "+deferred[0]+")", Project.MSG_WARN);
+                }
+            } catch (Exception ex) {
+                Message.debug("impossible to check deferred artifacts of "+moduleId+" "+confs[i]+": "+ex);
+            }
+        }
+    }
+
     protected boolean shouldResolve(String org, String module) {
         ensureMessageInitialised();
         if (org != null  && module != null) {
@@ -0,0 +1,215 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import fr.jayasoft.ivy.util.ChecksumHelper;
+import fr.jayasoft.ivy.util.FileUtil;
+import fr.jayasoft.ivy.util.Message;
+
+/**
+ * A content addressed store of artifacts, located in the blobs directory of a cache.
+ *
+ * Each blob is stored under its SHA-1, and artifact files in the cache (located using the
+ * usual cache artifact pattern) are hard links to these blobs. This way byte-identical artifacts
+ * (same jar published under several organisations, several revisions, ...) are only stored once,
+ * and need to be downloaded only once when the repository provides sha1 checksum files.
+ *
+ * Since hard links share their content, files in the cache must never be modified in place:
+ * they are always replaced (which is what downloads do by renaming a temporary file).
+ *
+ * When hard links are not supported (see FileUtil.link), nothing is stored and files are kept as is.
+ * The same applies when the number of links of a file is not available (see FileUtil.getLinkCount,
+ * which relies on the unix:nlink attribute, missing on Windows): blobs could not be cleaned once
+ * unused, so they are not created.
+ */
+public class BlobStore {
+    public static final String BLOBS_DIR = "blobs";
+
+    private File _root;
+
+    private int _hits;
+    private long _savedDownload;
+    private long _savedDisk;
+    private boolean _linkCountSupported = true;
+
+    public BlobStore(File cache) {
+        _root = new File(cache, BLOBS_DIR);
+    }
+
+    public File getBlob(String sha1) {
+        return new File(_root, sha1.substring(0, 2) + "/" + sha1);
+    }
+
+    /**
+     * Fills the given file with the content stored under the given sha1, if any.
+     *
+     * @return true if the content was found in store, false otherwise
+     */
+    public synchronized boolean fetch(String sha1, File dest) throws IOException {
+        sha1 = sha1.trim().toLowerCase();
+        if (!isValid(sha1)) {
+            Message.debug("invalid sha1 for blob store: "+sha1);
+            return false;
+        }
+        File blob = getBlob(sha1);
+        if (!blob.exists()) {
+            return false;
+        }
+        if (dest.getParentFile() != null) {
+            dest.getParentFile().mkdirs();
+        }
+        dest.delete();
+        if (FileUtil.link(blob, dest)) {
+            _savedDisk += blob.length();
+        } else {
+            FileUtil.copy(blob, dest, null);
+        }
+        _hits++;
+        _savedDownload += blob.length();
+        Message.verbose("\tfound "+sha1+" in blob store: no download required for "+dest.getName());
+        return true;
+    }
+
+    /**
+     * Adds the content of the given file to the store. If the same content is already stored,
+     * the file is replaced by a link to the stored blob.
+     *
+     * @return the sha1 of the file, null if nothing can be stored on this platform
+     */
+    public synchronized String store(File file) throws IOException {
+        if (!_linkCountSupported) {
+            return null;
+        }
+        String sha1 = ChecksumHelper.computeAsString(file, "sha1");
+        File blob = getBlob(sha1);
+        if (blob.exists()) {
+            File tmp = new File(file.getPath() + ".blob");
+            tmp.delete();
+            if (FileUtil.link(blob, tmp)) {
+                long length = file.length();
+                if (file.delete() && tmp.renameTo(file)) {
+                    Message.debug("\t"+file.getName()+" deduplicated using blob "+sha1);
+                    _savedDisk += length;
+                } else {
+                    tmp.delete();
+                }
+            }
+        } else {
+            blob.getParentFile().mkdirs();
+            if (FileUtil.link(file, blob)) {
+                if (getLinkCount(blob) == -1) {
+                    // the blob could never be cleaned
+                    blob.delete();
+                    _linkCountSupported = false;
+                    Message.verbose("number of hard links not available for "+blob+": blob store disabled");
+                    return null;
+                }
+                Message.debug("\t"+file.getName()+" stored as blob "+sha1);
+            }
+        }
+        return sha1;
+    }
+
+    /**
+     * Deletes the blobs which are not linked anymore from the cache.
+     * Blobs are kept when the number of links is not available.
+     *
+     * @return the number of deleted blobs
+     */
+    public synchronized int clean() {
+        int deleted = 0;
+        File[] dirs = _root.listFiles();
+        if (dirs == null) {
+            return 0;
+        }
+        for (int i = 0; i < dirs.length; i++) {
+            File[] blobs = dirs[i].listFiles();
+            if (blobs == null) {
+                continue;
+            }
+            for (int j = 0; j < blobs.length; j++) {
+                if (getLinkCount(blobs[j]) == 1 && blobs[j].delete()) {
+                    deleted++;
+                }
+            }
+            dirs[i].delete(); // only deleted if empty
+        }
+        return deleted;
+    }
+
+    /**
+     * Measures the disk space saved in the whole cache by this store, whatever the resolves
+     * which filled it: each blob linked from n files of the cache would otherwise be
+     * stored n times.
+     *
+     * @return the number of bytes saved, or -1 if the number of links is not available
+     */
+    public synchronized long computeDiskSavings() {
+        long saved = 0;
+        File[] dirs = _root.listFiles();
+        if (dirs == null) {
+            return 0;
+        }
+        for (int i = 0; i < dirs.length; i++) {
+            File[] blobs = dirs[i].listFiles();
+            if (blobs == null) {
+                continue;
+            }
+            for (int j = 0; j < blobs.length; j++) {
+                int links = getLinkCount(blobs[j]);
+                if (links == -1) {
+                    return -1;
+                }
+                // the blob itself is one of the links
+                saved += Math.max(0, links - 2) * blobs[j].length();
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * @return the number of downloads avoided thanks to this store
+     */
+    public synchronized int getHits() {
+        return _hits;
+    }
+
+    /**
+     * @return the number of bytes which didn't need to be downloaded thanks to this store
+     */
+    public synchronized long getSavedDownload() {
+        return _savedDownload;
+    }
+
+    /**
+     * @return the number of bytes which would have been used in the cache without this store
+     */
+    public synchronized long getSavedDisk() {
+        return _savedDisk;
+    }
+
+    /**
+     * @return the number of hard links to the given file, -1 if not available
+     */
+    protected int getLinkCount(File file) {
+        return FileUtil.getLinkCount(file);
+    }
+
+    private static boolean isValid(String sha1) {
+        if (sha1.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < sha1.length(); i++) {
+            if (Character.digit(sha1.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.cache;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.PropertiesFile;
+
+/**
+ * A compact index of the module revisions available in a cache, recording for each one
+ * the last time it was accessed and the files (relative to the cache root) it owns.
+ *
+ * Accesses are recorded in memory and only written to disk when save() is called, by
+ * appending the touched entries to a journal: recording accesses thus costs nothing more 
+ * than the number of module revisions touched, whatever the size of the cache. 
+ * The journal is merged in the index file by the clean of the cache, or when it becomes 
+ * bigger than the index file.
+ * 
+ * Several builds (in the same JVM or not) may share the same cache: the journal and the 
+ * index file are only modified while holding a lock on a lock file of the cache, and the
+ * index file is replaced by renaming a temporary file, so that builds do not lose each 
+ * other accesses.
+ *
+ * This index is what allows to clean the cache without scanning its whole tree: only module
+ * revisions which have been recorded at least once are candidates for eviction.
+ * The index also keeps the size of each module revision as measured by the last clean, and
+ * the time of this clean, so that the following clean only needs to measure the module
+ * revisions accessed since then.
+ */
+public class CacheAccessIndex {
+    public static final String INDEX_FILE_NAME = "ivy-cache-access.properties";
+    public static final String JOURNAL_FILE_NAME = "ivy-cache-access.journal";
+    public static final String LOCK_FILE_NAME = "ivy-cache-access.lock";
+
+    private static final long MIN_COMPACTED_JOURNAL_SIZE = 64 * 1024;
+    private static final String HEADER = "ivy cache access index";
+    /**
+     * file locks are held by the JVM: threads of the same JVM are serialized on this monitor
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    private static final String SEPARATOR = "|";
+    private static final String LAST_CLEAN = "last.clean";
+
+    private File _cache;
+    private Map _touched = new HashMap(); // Map (ModuleRevisionId -> Entry)
+
+    public CacheAccessIndex(File cache) {
+        _cache = cache;
+    }
+
+    public File getCache() {
+        return _cache;
+    }
+
+    public File getIndexFile() {
+        return new File(_cache, INDEX_FILE_NAME);
+    }
+
+    public File getJournalFile() {
+        return new File(_cache, JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * Records an access to the given module revision, now.
+     */
+    public synchronized void recordAccess(ModuleRevisionId mrid) {
+        getTouchedEntry(mrid).touch(System.currentTimeMillis());
+    }
+
+    /**
+     * Records an access to the given module revision, now, and remembers that the given file
+     * belongs to it. If the file is not located in the cache (in useOrigin mode, for instance), only the
+     * access is recorded: files outside the cache are never owned by the cache.
+     */
+    public synchronized void recordAccess(ModuleRevisionId mrid, File file) {
+        Entry entry = getTouchedEntry(mrid);
+        entry.touch(System.currentTimeMillis());
+        String path = getPathInCache(file);
+        if (path != null) {
+            entry.addPath(path);
+        }
+    }
+
+    public synchronized boolean isDirty() {
+        return !_touched.isEmpty();
+    }
+
+    /**
+     * Appends the accesses recorded since the last save to the journal.
+     */
+    public synchronized void save() {
+        if (_touched.isEmpty()) {
+            return;
+        }
+        synchronized (JVM_LOCK) {
+            FileLock lock = null;
+            try {
+                lock = lock();
+                appendToJournal(_touched.values());
+                _touched.clear();
+                File journal = getJournalFile();
+                if (journal.length() > Math.max(MIN_COMPACTED_JOURNAL_SIZE, getIndexFile().length())) {
+                    Properties index = loadMerged();
+                    write(index);
+                }
+            } catch (IOException ex) {
+                Message.warn("impossible to record accesses in cache "+_cache+": "+ex.getMessage());
+            } finally {
+                unlock(lock);
+            }
+        }
+    }
+
+    /**
+     * Returns all the entries currently stored in the index file, including the ones
+     * recorded but not saved yet.
+     * @return a List of Entry
+     */
+    public synchronized List getEntries() {
+        Properties index = read();
+        Map entries = new HashMap();
+        for (Iterator iter = index.keySet().iterator(); iter.hasNext();) {
+            String key = (String)iter.next();
+            if (LAST_CLEAN.equals(key)) {
+                continue;
+            }
+            try {
+                ModuleRevisionId mrid = ModuleRevisionId.decode(key);
+                Entry entry = Entry.parse(mrid, index.getProperty(key));
+                if (entry != null) {
+                    entries.put(mrid, entry);
+                }
+            } catch (IllegalArgumentException ex) {
+                Message.debug("ignoring bad cache index entry "+key+": "+ex.getMessage());
+            }
+        }
+        for (Iterator iter = _touched.values().iterator(); iter.hasNext();) {
+            Entry entry = (Entry)iter.next();
+            Entry existing = (Entry)entries.get(entry.getModuleRevisionId());
+            if (existing != null) {
+                existing.merge(entry);
+            } else {
+                entries.put(entry.getModuleRevisionId(), entry.copy());
+            }
+        }
+        return new ArrayList(entries.values());
+    }
+
+    /**
+     * Removes the given module revisions from the index file.
+     * @param mrids a Collection of ModuleRevisionId
+     */
+    public synchronized void remove(final Collection mrids) {
+        update(new Update() {
+            public void update(Properties index) {
+                for (Iterator iter = mrids.iterator(); iter.hasNext();) {
+                    ModuleRevisionId mrid = (ModuleRevisionId)iter.next();
+                    index.remove(mrid.encodeToString());
+                    _touched.remove(mrid);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the time at which the last clean of the cache started, 0 if it has never been cleaned
+     */
+    public synchronized long getLastClean() {
+        try {
+            String lastClean = new PropertiesFile(getIndexFile(), HEADER).getProperty(LAST_CLEAN);
+            return lastClean == null ? 0 : Long.parseLong(lastClean);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Records the end of a clean of the cache: saves the sizes of the given measured entries,
+     * removes the evicted module revisions, and records the time at which the clean started.
+     * @param measured a Collection of Entry which size has been measured by the clean
+     * @param evicted a Collection of ModuleRevisionId
+     */
+    public synchronized void cleaned(final Collection measured, final Collection evicted, final long start) {
+        update(new Update() {
+            public void update(Properties index) {
+                for (Iterator iter = measured.iterator(); iter.hasNext();) {
+                    Entry entry = (Entry)iter.next();
+                    String key = entry.getModuleRevisionId().encodeToString();
+                    Entry existing = Entry.parse(entry.getModuleRevisionId(), index.getProperty(key));
+                    if (existing != null) {
+                        // keep the accesses recorded meanwhile by others
+                        existing.setSize(entry.getSize());
+                        index.setProperty(key, existing.toString());
+                    }
+                }
+                for (Iterator iter = evicted.iterator(); iter.hasNext();) {
+                    ModuleRevisionId mrid = (ModuleRevisionId)iter.next();
+                    index.remove(mrid.encodeToString());
+                    _touched.remove(mrid);
+                }
+                index.setProperty(LAST_CLEAN, String.valueOf(start));
+            }
+        });
+    }
+
+    /**
+     * A modification of the index, done while holding the lock of the cache.
+     */
+    private interface Update {
+        void update(Properties index);
+    }
+
+    /**
+     * Merges the journal in the index file, applies the given update to it and writes it.
+     */
+    private void update(Update update) {
+        synchronized (JVM_LOCK) {
+            FileLock lock = null;
+            try {
+                lock = lock();
+                Properties index = loadMerged();
+                update.update(index);
+                write(index);
+            } catch (IOException ex) {
+                Message.warn("impossible to update the access index of cache "+_cache+": "+ex.getMessage());
+            } finally {
+                unlock(lock);
+            }
+        }
+    }
+
+    /**
+     * @return the index file merged with the journal, read while holding the lock of the cache
+     */
+    private Properties read() {
+        synchronized (JVM_LOCK) {
+            FileLock lock = null;
+            try {
+                lock = lock();
+                return loadMerged();
+            } catch (IOException ex) {
+                Message.warn("impossible to read the access index of cache "+_cache+": "+ex.getMessage());
+                return new Properties();
+            } finally {
+                unlock(lock);
+            }
+        }
+    }
+
+    private FileLock lock() throws IOException {
+        _cache.mkdirs();
+        RandomAccessFile file = new RandomAccessFile(new File(_cache, LOCK_FILE_NAME), "rw");
+        try {
+            return file.getChannel().lock();
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    private void unlock(FileLock lock) {
+        if (lock != null) {
+            try {
+                lock.release();
+                lock.channel().close();
+            } catch (IOException ex) {
+                Message.debug("problem while releasing lock of cache "+_cache+": "+ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Each journal line is a properties file line, so that keys and values are escaped
+     * as in the index file. The same module revision may appear on several lines.
+     */
+    private void appendToJournal(Collection entries) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        for (Iterator iter = entries.iterator(); iter.hasNext();) {
+            Entry entry = (Entry)iter.next();
+            Properties line = new Properties();
+            line.setProperty(entry.getModuleRevisionId().encodeToString(), entry.toString());
+            ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            line.store(stored, null);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(stored.toByteArray()), "ISO-8859-1"));
+            for (String l = reader.readLine(); l != null; l = reader.readLine()) {
+                if (!l.startsWith("#")) {
+                    buf.write((l + "\n").getBytes("ISO-8859-1"));
+                }
+            }
+        }
+        OutputStream out = new FileOutputStream(getJournalFile(), true);
+        try {
+            out.write(buf.toByteArray());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Must be called while holding the lock of the cache.
+     */
+    private Properties loadMerged() throws IOException {
+        Properties index = new PropertiesFile(getIndexFile(), HEADER);
+        File journal = getJournalFile();
+        if (!journal.exists()) {
+            return index;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "ISO-8859-1"));
+        try {
+            for (String l = reader.readLine(); l != null; l = reader.readLine()) {
+                Properties line = new Properties();
+                line.load(new ByteArrayInputStream(l.getBytes("ISO-8859-1")));
+                for (Iterator iter = line.keySet().iterator(); iter.hasNext();) {
+                    String key = (String)iter.next();
+                    try {
+                        ModuleRevisionId mrid = ModuleRevisionId.decode(key);
+                        Entry entry = Entry.parse(mrid, line.getProperty(key));
+                        if (entry == null) {
+                            continue;
+                        }
+                        Entry existing = Entry.parse(mrid, index.getProperty(key));
+                        if (existing != null) {
+                            entry.merge(existing);
+                        }
+                        index.setProperty(key, entry.toString());
+                    } catch (IllegalArgumentException ex) {
+                        // a line partially written by a build which has been stopped
+                        Message.debug("ignoring bad cache journal entry "+key+": "+ex.getMessage());
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    /**
+     * Replaces the index file by the given index, and empties the journal which has been 
+     * merged in it. Must be called while holding the lock of the cache.
+     */
+    private void write(Properties index) throws IOException {
+        File indexFile = getIndexFile();
+        File tmp = new File(_cache, INDEX_FILE_NAME + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            index.store(out, HEADER);
+        } finally {
+            out.close();
+        }
+        // renameTo doesn't replace existing files on all platforms: readers hold the lock
+        indexFile.delete();
+        if (!tmp.renameTo(indexFile)) {
+            throw new IOException("impossible to replace "+indexFile);
+        }
+        getJournalFile().delete();
+    }
+
+    private Entry getTouchedEntry(ModuleRevisionId mrid) {
+        Entry entry = (Entry)_touched.get(mrid);
+        if (entry == null) {
+            entry = new Entry(mrid, 0);
+            _touched.put(mrid, entry);
+        }
+        return entry;
+    }
+
+    private String getPathInCache(File file) {
+        String root = _cache.getAbsolutePath() + File.separator;
+        String path = file.getAbsolutePath();
+        if (path.startsWith(root)) {
+            return path.substring(root.length()).replace(File.separatorChar, '/');
+        }
+        return null;
+    }
+
+    /**
+     * The data stored for one module revision in the index.
+     */
+    public static class Entry {
+        private ModuleRevisionId _mrid;
+        private long _lastAccess;
+        private long _size = -1;
+        private Set _paths = new LinkedHashSet(); // Set (String path relative to cache root)
+
+        Entry(ModuleRevisionId mrid, long lastAccess) {
+            _mrid = mrid;
+            _lastAccess = lastAccess;
+        }
+
+        static Entry parse(ModuleRevisionId mrid, String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split("\\|");
+            try {
+                // the size is missing in entries never measured by a clean
+                int sizeIndex = parts[0].indexOf(':');
+                Entry entry = new Entry(mrid, Long.parseLong(sizeIndex == -1 ? parts[0] : parts[0].substring(0, sizeIndex)));
+                if (sizeIndex != -1) {
+                    entry._size = Long.parseLong(parts[0].substring(sizeIndex + 1));
+                }
+                for (int i = 1; i < parts.length; i++) {
+                    if (parts[i].length() > 0) {
+                        entry.addPath(parts[i]);
+                    }
+                }
+                return entry;
+            } catch (NumberFormatException ex) {
+                Message.debug("ignoring bad cache index entry for "+mrid+": "+value);
+                return null;
+            }
+        }
+
+        void touch(long time) {
+            _lastAccess = Math.max(_lastAccess, time);
+        }
+
+        void addPath(String path) {
+            _paths.add(path);
+        }
+
+        void merge(Entry other) {
+            touch(other._lastAccess);
+            _paths.addAll(other._paths);
+            if (_size < 0) {
+                _size = other._size;
+            }
+        }
+
+        Entry copy() {
+            Entry copy = new Entry(_mrid, _lastAccess);
+            copy._size = _size;
+            copy._paths.addAll(_paths);
+            return copy;
+        }
+
+        public ModuleRevisionId getModuleRevisionId() {
+            return _mrid;
+        }
+
+        public long getLastAccess() {
+            return _lastAccess;
+        }
+
+        /**
+         * @return the size in bytes of the files of the module revision as measured by the
+         * last clean, -1 if it has never been measured
+         */
+        public long getSize() {
+            return _size;
+        }
+
+        public void setSize(long size) {
+            _size = size;
+        }
+
+        /**
+         * @return a Collection of String paths, relative to the cache root, of the files owned
+         * by this module revision besides its ivy file and cached data file
+         */
+        public Collection getPaths() {
+            return _paths;
+        }
+
+        public String toString() {
+            StringBuffer buf = new StringBuffer(String.valueOf(_lastAccess));
+            if (_size >= 0) {
+                buf.append(':').append(_size);
+            }
+            for (Iterator iter = _paths.iterator(); iter.hasNext();) {
+                buf.append(SEPARATOR).append(iter.next());
+            }
+            return buf.toString();
+        }
+    }
+}
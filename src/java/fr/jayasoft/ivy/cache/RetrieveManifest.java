@@ -0,0 +1,193 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+import fr.jayasoft.ivy.ModuleId;
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.PropertiesFile;
+
+/**
+ * Records what a retrieve copied, so that the next identical retrieve can compute
+ * what changed without parsing the resolve reports again nor copying unchanged files.
+ *
+ * A manifest is stored in the cache for each module and retrieve parameters (confs, patterns, filter, ...),
+ * these parameters being summarized in a key. A manifest found with another key is considered
+ * as not valid, and is simply overwritten on save.
+ *
+ * For each retrieved file the manifest stores the source file, and the size and last modification
+ * date of both source and destination files as they were just after the copy.
+ */
+public class RetrieveManifest {
+    private static final String KEY = "key";
+    private static final String REPORT_PREFIX = "report.";
+    private static final String FILE_PREFIX = "file.";
+    private static final String SEPARATOR = "|";
+
+    private String _key;
+    private PropertiesFile _props;
+    private boolean _valid;
+    private Collection _entries;
+
+    public RetrieveManifest(File cache, ModuleId mid, String key) {
+        _key = key;
+        _props = new PropertiesFile(
+                new File(cache, "ivy-retrieve-"+mid.getOrganisation()+"-"+mid.getName()+"-"+Integer.toHexString(key.hashCode())+".properties"),
+                "ivy retrieve manifest");
+        _valid = key.equals(_props.getProperty(KEY));
+        if (!_valid) {
+            _props.clear();
+        }
+    }
+
+    /**
+     * @return true if this manifest has been saved by a previous retrieve with the same key
+     */
+    public boolean isValid() {
+        return _valid;
+    }
+
+    /**
+     * @return true if the given report file is exactly the one which was used when this
+     * manifest was saved
+     */
+    public boolean isReportUpToDate(String conf, File report) {
+        return _valid && stamp(report).equals(_props.getProperty(REPORT_PREFIX+conf));
+    }
+
+    /**
+     * Returns the entries recorded in this manifest when it was loaded.
+     * @return a Collection of Entry
+     */
+    public Collection getEntries() {
+        if (_entries == null) {
+            _entries = new ArrayList();
+            for (Iterator iter = _props.keySet().iterator(); iter.hasNext();) {
+                String key = (String)iter.next();
+                if (key.startsWith(FILE_PREFIX)) {
+                    Entry entry = Entry.parse(new File(key.substring(FILE_PREFIX.length())), _props.getProperty(key));
+                    if (entry != null) {
+                        _entries.add(entry);
+                    }
+                }
+            }
+        }
+        return _entries;
+    }
+
+    /**
+     * Returns the entry recorded for the given destination file, or null if there is none
+     */
+    public Entry getEntry(File dest) {
+        return Entry.parse(dest, _props.getProperty(FILE_PREFIX+dest.getAbsolutePath()));
+    }
+
+    /**
+     * Replaces the content of this manifest with the given entries and reports, and saves it.
+     *
+     * @param entries a Collection of Entry
+     * @param reports the report files used for the retrieve, indexed by conf
+     */
+    public void save(Collection entries, String[] confs, File[] reports) {
+        _props.clear();
+        _props.setProperty(KEY, _key);
+        for (int i = 0; i < confs.length; i++) {
+            _props.setProperty(REPORT_PREFIX+confs[i], stamp(reports[i]));
+        }
+        for (Iterator iter = entries.iterator(); iter.hasNext();) {
+            Entry entry = (Entry)iter.next();
+            _props.setProperty(FILE_PREFIX+entry.getDest().getAbsolutePath(), entry.toString());
+        }
+        _props.save();
+    }
+
+    private static String stamp(File file) {
+        return file.lastModified()+SEPARATOR+file.length();
+    }
+
+    /**
+     * One file copied by a retrieve.
+     */
+    public static class Entry {
+        private ModuleRevisionId _mrid;
+        private boolean _ivy;
+        private File _source;
+        private File _dest;
+        private String _sourceStamp;
+        private String _destStamp;
+
+        public Entry(ModuleRevisionId mrid, boolean ivy, File source, File dest) {
+            _mrid = mrid;
+            _ivy = ivy;
+            _source = source;
+            _dest = dest;
+        }
+
+        static Entry parse(File dest, String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split("\\|");
+            if (parts.length != 7) {
+                Message.debug("ignoring bad retrieve manifest entry for "+dest+": "+value);
+                return null;
+            }
+            try {
+                Entry entry = new Entry(ModuleRevisionId.decode(parts[0]), Boolean.valueOf(parts[1]).booleanValue(), new File(parts[2]), dest);
+                entry._sourceStamp = parts[3]+SEPARATOR+parts[4];
+                entry._destStamp = parts[5]+SEPARATOR+parts[6];
+                return entry;
+            } catch (IllegalArgumentException ex) {
+                Message.debug("ignoring bad retrieve manifest entry for "+dest+": "+ex.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Records the current state of source and destination files, to be called after the copy.
+         */
+        public void snapshot() {
+            _sourceStamp = stamp(_source);
+            _destStamp = stamp(_dest);
+        }
+
+        /**
+         * @return true if neither the source nor the destination has changed since the snapshot
+         * stored in this entry was taken, and the source is still the given one
+         */
+        public boolean isUpToDate(File source) {
+            return _sourceStamp != null
+                && _source.getAbsoluteFile().equals(source.getAbsoluteFile())
+                && _sourceStamp.equals(stamp(_source))
+                && _destStamp.equals(stamp(_dest));
+        }
+
+        public ModuleRevisionId getModuleRevisionId() {
+            return _mrid;
+        }
+
+        public boolean isIvy() {
+            return _ivy;
+        }
+
+        public File getSource() {
+            return _source;
+        }
+
+        public File getDest() {
+            return _dest;
+        }
+
+        public String toString() {
+            return _mrid.encodeToString()+SEPARATOR+_ivy+SEPARATOR+_source.getAbsolutePath()+SEPARATOR+_sourceStamp+SEPARATOR+_destStamp;
+        }
+    }
+}
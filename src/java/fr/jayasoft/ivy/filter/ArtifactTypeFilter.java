@@ -18,6 +18,10 @@ public class ArtifactTypeFilter implements Filter {
         _acceptedTypes = new ArrayList(acceptedTypes);
     }
     
+    public Collection getAcceptedTypes() {
+        return _acceptedTypes;
+    }
+    
     public boolean accept(Object o) {
         if (! (o instanceof Artifact)) {
             return false;
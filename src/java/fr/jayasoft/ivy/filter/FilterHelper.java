@@ -26,6 +26,30 @@ public class FilterHelper {
         return new ArtifactTypeFilter(acceptedTypes);
     }
 
+    /**
+     * Returns a description of the given filter, equal for filters accepting the same 
+     * objects, or null if the filter is not known well enough to be described.
+     */
+    public static String getKey(Filter filter) {
+        if (filter == NO_FILTER) {
+            return "*";
+        } else if (filter instanceof ArtifactTypeFilter) {
+            return "types"+((ArtifactTypeFilter)filter).getAcceptedTypes();
+        } else if (filter instanceof NotFilter) {
+            String op = getKey(((NotFilter)filter).getOp());
+            return op == null ? null : "not("+op+")";
+        } else if (filter instanceof AndFilter) {
+            String op1 = getKey(((AndFilter)filter).getOp1());
+            String op2 = getKey(((AndFilter)filter).getOp2());
+            return op1 == null || op2 == null ? null : "and("+op1+","+op2+")";
+        } else if (filter instanceof OrFilter) {
+            String op1 = getKey(((OrFilter)filter).getOp1());
+            String op2 = getKey(((OrFilter)filter).getOp2());
+            return op1 == null || op2 == null ? null : "or("+op1+","+op2+")";
+        }
+        return null;
+    }
+
     /**
      * we could have used commons-collections facility for this...
      * if we accepted to add dependencies on third party jars
@@ -55,7 +55,7 @@ public class ConfigurationResolveReport {
         File previousReportFile = new File(cache, XmlReportOutputter.getReportFileName(md.getModuleRevisionId().getModuleId(), conf));
 		if (previousReportFile.exists()) {
 			try {
-				_previousDeps = Arrays.asList(new XmlReportParser().getDependencyRevisionIds(md.getModuleRevisionId().getModuleId(), conf, cache));
+				_previousDeps = Arrays.asList(ivy.getReportParser().getDependencyRevisionIds(md.getModuleRevisionId().getModuleId(), conf, cache));
 			} catch (Exception e) {
 				_previousDeps = null;
 			}
@@ -232,6 +232,24 @@ public class ConfigurationResolveReport {
         }
         return (ArtifactDownloadReport[])result.toArray(new ArtifactDownloadReport[result.size()]);
     }
+    /**
+     * Updates the reports of the artifacts found in the given download report, downloaded
+     * after the resolve because their download had been deferred.
+     */
+    public void updateDownloadReports(DownloadReport report) {
+        for (Iterator iter = _dependencyReports.values().iterator(); iter.hasNext();) {
+            Collection reports = (Collection)iter.next();
+            for (Iterator iterator = reports.iterator(); iterator.hasNext();) {
+                ArtifactDownloadReport adr = (ArtifactDownloadReport)iterator.next();
+                ArtifactDownloadReport downloaded = report.getArtifactReport(adr.getArtifact());
+                if (downloaded != null) {
+                    adr.setDownloadStatus(downloaded.getDownloadStatus());
+                    adr.setSize(downloaded.getSize());
+                    adr.setArtifactOrigin(downloaded.getArtifactOrigin());
+                }
+            }
+        }
+    }
     public ArtifactDownloadReport[] getFailedArtifactsReports() {
         List result = new ArrayList();
         for (Iterator iter = _dependencyReports.values().iterator(); iter.hasNext();) {
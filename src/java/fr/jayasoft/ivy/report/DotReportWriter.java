@@ -0,0 +1,50 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.report;
+
+import java.io.PrintWriter;
+
+/**
+ * Writes the dependency graph of a configuration in the dot format of graphviz.
+ */
+public class DotReportWriter extends GraphReportWriter {
+
+    protected void startGraph(PrintWriter out) {
+        out.println("/* directed graph dot input file, generated by ivy report */");
+        out.println("digraph G {");
+    }
+
+    protected void writeNode(PrintWriter out, String id, String[] label, boolean root) {
+        out.print("\t\""+escape(id)+"\" [label=\"");
+        for (int i = 0; i < label.length; i++) {
+            if (i > 0) {
+                out.print("\\n");
+            }
+            out.print(escape(label[i]));
+        }
+        out.println("\"];");
+    }
+
+    protected void writeEdge(PrintWriter out, String source, String target, String label) {
+        out.println("\t\""+escape(source)+"\" -> \""+escape(target)+"\" [label=\""+escape(label)+"\"];");
+    }
+
+    protected void endGraph(PrintWriter out) {
+        out.println("}");
+    }
+    
+    private static String escape(String s) {
+        StringBuffer buf = new StringBuffer(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                buf.append('\\');
+            }
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+}
@@ -21,6 +21,10 @@ public class DownloadStatus {
     public static final DownloadStatus NO = new DownloadStatus("no");
     public static final DownloadStatus SUCCESSFUL = new DownloadStatus("successful");
     public static final DownloadStatus FAILED = new DownloadStatus("failed");
+    /**
+     * means that download has been deferred until the artifact is needed
+     */
+    public static final DownloadStatus DEFERRED = new DownloadStatus("deferred");
     public String toString() {
         return _name;
     }
@@ -0,0 +1,79 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.report;
+
+import java.io.PrintWriter;
+
+/**
+ * Writes the dependency graph of a configuration in the graphml format, with the yEd
+ * extensions used to render the nodes and edges.
+ */
+public class GraphMLReportWriter extends GraphReportWriter {
+
+    protected void startGraph(PrintWriter out) {
+        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        out.println("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns/graphml\"");
+        out.println("         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+        out.println("         xsi:schemaLocation=\"http://graphml.graphdrawing.org/xmlns/graphml http://www.yworks.com/xml/schema/graphml/1.0/ygraphml.xsd\"");
+        out.println("         xmlns:y=\"http://www.yworks.com/xml/graphml\">");
+        out.println("  <key id=\"d0\" for=\"node\" yfiles.type=\"nodegraphics\"/>");
+        out.println("  <key id=\"d1\" for=\"edge\" yfiles.type=\"edgegraphics\"/>");
+        out.println("  <graph id=\"G\" edgedefault=\"directed\">");
+    }
+
+    protected void writeNode(PrintWriter out, String id, String[] label, boolean root) {
+        out.println("    <node id=\""+escape(id)+"\">");
+        out.println("      <data key=\"d0\">");
+        out.println("        <y:ShapeNode>");
+        out.println("          <y:Fill color=\""+(root ? "#CCCCFF" : "#FFFFCC")+"\" transparent=\"false\"/>");
+        out.println("          <y:BorderStyle type=\"line\" width=\"1.0\" color=\"#000000\"/>");
+        out.print("          <y:NodeLabel visible=\"true\" alignment=\"center\" fontFamily=\"Dialog\" fontSize=\"12\" fontStyle=\"plain\" textColor=\"#000000\" modelName=\"internal\" modelPosition=\"c\" autoSizePolicy=\"center\">");
+        for (int i = 0; i < label.length; i++) {
+            if (i > 0) {
+                out.println();
+            }
+            out.print(escape(label[i]));
+        }
+        out.println("</y:NodeLabel>");
+        out.println("          <y:Shape type=\"roundrectangle\"/>");
+        out.println("        </y:ShapeNode>");
+        out.println("      </data>");
+        out.println("    </node>");
+    }
+
+    protected void writeEdge(PrintWriter out, String source, String target, String label) {
+        out.println("    <edge id=\""+escape(source+"-"+target)+"\" source=\""+escape(source)+"\" target=\""+escape(target)+"\">");
+        out.println("      <data key=\"d1\">");
+        out.println("        <y:PolyLineEdge>");
+        out.println("          <y:LineStyle type=\"line\" width=\"1.0\" color=\"#000000\"/>");
+        out.println("          <y:Arrows source=\"none\" target=\"standard\"/>");
+        out.println("          <y:EdgeLabel visible=\"true\" alignment=\"center\" fontFamily=\"Dialog\" fontSize=\"12\" fontStyle=\"plain\" textColor=\"#000000\" modelName=\"free\" modelPosition=\"anywhere\" preferredPlacement=\"target\" distance=\"2.0\" ratio=\"0.5\">"+escape(label)+"</y:EdgeLabel>");
+        out.println("          <y:BendStyle smoothed=\"false\"/>");
+        out.println("        </y:PolyLineEdge>");
+        out.println("      </data>");
+        out.println("    </edge>");
+    }
+
+    protected void endGraph(PrintWriter out) {
+        out.println("  </graph>");
+        out.println("</graphml>");
+    }
+    
+    private static String escape(String s) {
+        StringBuffer buf = new StringBuffer(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<': buf.append("&lt;"); break;
+                case '>': buf.append("&gt;"); break;
+                case '&': buf.append("&amp;"); break;
+                case '"': buf.append("&quot;"); break;
+                default: buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+}
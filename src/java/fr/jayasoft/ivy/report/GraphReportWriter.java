@@ -0,0 +1,104 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.report;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import fr.jayasoft.ivy.IvyNode;
+import fr.jayasoft.ivy.ModuleId;
+import fr.jayasoft.ivy.ModuleRevisionId;
+
+/**
+ * Writes the dependency graph of a configuration resolve report directly from the report,
+ * without going through the xml report and a stylesheet.
+ * 
+ * The graph has one node per module, labelled with the module name and its revisions, and
+ * one edge from each caller to each of its non evicted dependencies, labelled with the
+ * asked revision. It is the same graph as the one produced by the graph stylesheets.
+ */
+public abstract class GraphReportWriter {
+    
+    public void output(ConfigurationResolveReport report, File out) throws IOException {
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        OutputStream stream = new FileOutputStream(out);
+        try {
+            output(report, stream);
+        } finally {
+            stream.close();
+        }
+    }
+    
+    public void output(ConfigurationResolveReport report, OutputStream stream) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(stream, "UTF-8"));
+        String conf = report.getConfiguration();
+        ModuleRevisionId root = report.getModuleDescriptor().getModuleRevisionId();
+        
+        startGraph(out);
+        writeNode(out, getNodeId(root.getModuleId()), new String[] {root.getName()}, true);
+        List modules = report.getModuleIds();
+        for (Iterator iter = modules.iterator(); iter.hasNext();) {
+            ModuleId mid = (ModuleId)iter.next();
+            List label = new ArrayList();
+            label.add(mid.getName());
+            for (Iterator it2 = report.getNodes(mid).iterator(); it2.hasNext();) {
+                IvyNode dep = (IvyNode)it2.next();
+                StringBuffer revision = new StringBuffer().append(dep.getResolvedId().getRevision());
+                if (dep.hasProblem()) {
+                    revision.append(" (error)");
+                }
+                if (dep.isEvicted(conf)) {
+                    revision.append(" (evicted)");
+                }
+                label.add(revision.toString());
+            }
+            writeNode(out, getNodeId(mid), (String[])label.toArray(new String[label.size()]), false);
+        }
+        for (Iterator iter = modules.iterator(); iter.hasNext();) {
+            ModuleId mid = (ModuleId)iter.next();
+            for (Iterator it2 = report.getNodes(mid).iterator(); it2.hasNext();) {
+                IvyNode dep = (IvyNode)it2.next();
+                if (dep.isEvicted(conf)) {
+                    continue;
+                }
+                IvyNode.Caller[] callers = dep.getCallers(conf);
+                for (int i = 0; i < callers.length; i++) {
+                    writeEdge(out, 
+                            getNodeId(callers[i].getModuleRevisionId().getModuleId()), 
+                            getNodeId(mid), 
+                            callers[i].getAskedDependencyId().getRevision());
+                }
+            }
+        }
+        endGraph(out);
+        out.flush();
+    }
+    
+    protected String getNodeId(ModuleId mid) {
+        return mid.getOrganisation()+"-"+mid.getName();
+    }
+
+    protected abstract void startGraph(PrintWriter out);
+    
+    /**
+     * Writes a node, the label being given line by line.
+     */
+    protected abstract void writeNode(PrintWriter out, String id, String[] label, boolean root);
+    
+    protected abstract void writeEdge(PrintWriter out, String source, String target, String label);
+    
+    protected abstract void endGraph(PrintWriter out);
+}
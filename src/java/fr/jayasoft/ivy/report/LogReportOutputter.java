@@ -72,6 +72,10 @@ public class LogReportOutputter implements ReportOutputter {
             output(report.getConfigurationReport(confs[i]));
         }
         Message.rawinfo("\t"+new String(sep));
+        if (report.getBlobStoreHits() > 0) {
+            Message.info("\t:: "+report.getBlobStoreHits()+" artifacts found in cache blob store: "
+                    +(report.getBlobStoreSavedDownload() / 1024)+"kB not downloaded");
+        }
 
         IvyNode[] unresolved = report.getUnresolvedDependencies();
         if (unresolved.length > 0) {
@@ -31,6 +31,9 @@ public class ResolveReport {
 	private List _artifacts;
 	private long _resolveTime;
 	private long _downloadTime;
+	private int _blobStoreHits;
+	private long _blobStoreSavedDownload;
+	private long _blobStoreSavedDisk;
 	
     public ResolveReport(ModuleDescriptor md) {
         _md = md;
@@ -86,6 +89,15 @@ public class ResolveReport {
             all.addAll(Arrays.asList(report.getFailedArtifactsReports()));
         }
         return (ArtifactDownloadReport[])all.toArray(new ArtifactDownloadReport[all.size()]);
+    }
+    /**
+     * Updates the reports of the artifacts downloaded after the resolve, because their
+     * download had been deferred.
+     */
+    public void updateDownloadReports(DownloadReport report) {
+        for (Iterator iter = _confReports.values().iterator(); iter.hasNext();) {
+            ((ConfigurationResolveReport)iter.next()).updateDownloadReports(report);
+        }
     }
 	public boolean hasChanged() {
         for (Iterator iter = _confReports.values().iterator(); iter.hasNext();) {
@@ -191,4 +203,32 @@ public class ResolveReport {
 	public long getDownloadTime() {
 		return _downloadTime;
 	}
+	/**
+	 * @return the number of artifacts found in the cache blob store instead of being downloaded
+	 */
+	public int getBlobStoreHits() {
+		return _blobStoreHits;
+	}
+	public void setBlobStoreHits(int hits) {
+		_blobStoreHits = hits;
+	}
+	/**
+	 * @return the number of bytes which didn't need to be downloaded thanks to the cache blob store
+	 */
+	public long getBlobStoreSavedDownload() {
+		return _blobStoreSavedDownload;
+	}
+	public void setBlobStoreSavedDownload(long saved) {
+		_blobStoreSavedDownload = saved;
+	}
+	/**
+	 * @return the number of bytes the artifacts downloaded by this resolve would have used 
+	 * in addition in the cache without its blob store
+	 */
+	public long getBlobStoreSavedDisk() {
+		return _blobStoreSavedDisk;
+	}
+	public void setBlobStoreSavedDisk(long saved) {
+		_blobStoreSavedDisk = saved;
+	}
 }
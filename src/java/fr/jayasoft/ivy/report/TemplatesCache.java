@@ -0,0 +1,88 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.report;
+
+import java.io.File;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import fr.jayasoft.ivy.util.Message;
+
+/**
+ * Keeps the report stylesheets compiled, so that each stylesheet is parsed and compiled only
+ * once for all the reports generated in the same JVM.
+ * 
+ * Stylesheets are read in place, from the classpath or from the file system, and a stylesheet
+ * file is compiled again when it is modified. Compiled stylesheets are thread safe: each
+ * transformation only needs its own transformer, obtained with Templates.newTransformer().
+ * 
+ * At most MAX_SIZE stylesheets are kept, the least recently used one being removed when
+ * another one is compiled.
+ */
+public class TemplatesCache {
+    public static final int MAX_SIZE = 20;
+    
+    private static class Entry {
+        private Templates _templates;
+        private long _lastModified;
+        
+        Entry(Templates templates, long lastModified) {
+            _templates = templates;
+            _lastModified = lastModified;
+        }
+    }
+    
+    private static Map _entries = new LinkedHashMap(16, 0.75f, true) { // Map (String system id -> Entry)
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+    
+    /**
+     * @return the compiled stylesheet of the given name provided with ivy reports
+     */
+    public static Templates getTemplates(String resourceName) throws TransformerException {
+        URL url = XmlReportOutputter.class.getResource(resourceName);
+        if (url == null) {
+            throw new TransformerException("report stylesheet not found: "+resourceName);
+        }
+        return getTemplates(url.toExternalForm(), 0);
+    }
+    
+    /**
+     * @return the compiled stylesheet of the given file
+     */
+    public static Templates getTemplates(File style) throws TransformerException {
+        if (!style.exists()) {
+            throw new TransformerException("stylesheet not found: "+style);
+        }
+        return getTemplates(style.getAbsoluteFile().toURI().toString(), style.lastModified());
+    }
+    
+    private static synchronized Templates getTemplates(String systemId, long lastModified) throws TransformerException {
+        Entry entry = (Entry)_entries.get(systemId);
+        if (entry == null || entry._lastModified != lastModified) {
+            Message.verbose("\tcompiling stylesheet "+systemId);
+            entry = new Entry(TransformerFactory.newInstance().newTemplates(new StreamSource(systemId)), lastModified);
+            _entries.put(systemId, entry);
+        }
+        return entry._templates;
+    }
+    
+    public static synchronized void clear() {
+        _entries.clear();
+    }
+    
+    public static synchronized int size() {
+        return _entries.size();
+    }
+}
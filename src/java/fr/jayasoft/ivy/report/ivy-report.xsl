@@ -22,6 +22,7 @@
 <xsl:variable name="cacheartifacts" select="$artifacts[@status='no']"/>
 <xsl:variable name="dlartifacts" select="$artifacts[@status='successful']"/>
 <xsl:variable name="faileds" select="$artifacts[@status='failed']"/>
+<xsl:variable name="deferreds" select="$artifacts[@status='deferred']"/>
 <xsl:variable name="artifactsok" select="$artifacts[@status!='failed']"/>
 
 <xsl:template name="calling">
@@ -277,10 +278,12 @@
             <xsl:value-of select="count($errors)"/> errors <img src="http://ivy.jayasoft.org/images/error.gif" alt="error" title="module revisions on which error occured"/>)</td></tr>
           <tr><td class="title">Artifacts</td><td class="value"><xsl:value-of select="count($artifacts)"/> 
             (<xsl:value-of select="count($dlartifacts)"/> downloaded,
-            <xsl:value-of select="count($faileds)"/> failed)</td></tr>
+            <xsl:value-of select="count($faileds)"/> failed<xsl:if test="count($deferreds) > 0">,
+            <span title="artifacts not downloaded by a lazy resolve: their availability and size are unknown"><xsl:value-of select="count($deferreds)"/> deferred</span></xsl:if>)</td></tr>
           <tr><td class="title">Artifacts size</td><td class="value"><xsl:value-of select="round(sum($artifacts/@size) div 1024)"/> kB
             (<xsl:value-of select="round(sum($dlartifacts/@size) div 1024)"/> kB downloaded,
-            <xsl:value-of select="round(sum($cacheartifacts/@size) div 1024)"/> kB in cache)</td></tr>
+            <xsl:value-of select="round(sum($cacheartifacts/@size) div 1024)"/> kB in cache<xsl:if test="count($deferreds) > 0">,
+            size of <xsl:value-of select="count($deferreds)"/> deferred artifacts unknown</xsl:if>)</td></tr>
         </table>
     
     <xsl:if test="count($errors) > 0">
@@ -393,7 +396,8 @@
           <tr><td class="title">Configurations</td><td class="value"><xsl:value-of select="@conf"/></td></tr>
           <tr><td class="title">Artifacts size</td><td class="value"><xsl:value-of select="round(sum(artifacts/artifact/@size) div 1024)"/> kB
             (<xsl:value-of select="round(sum(artifacts/artifact[@status='successful']/@size) div 1024)"/> kB downloaded,
-            <xsl:value-of select="round(sum(artifacts/artifact[@status='no']/@size) div 1024)"/> kB in cache)</td></tr>
+            <xsl:value-of select="round(sum(artifacts/artifact[@status='no']/@size) div 1024)"/> kB in cache<xsl:if test="count(artifacts/artifact[@status='deferred']) > 0">,
+            <xsl:value-of select="count(artifacts/artifact[@status='deferred'])"/> deferred</xsl:if>)</td></tr>
         	<xsl:if test="count(license) > 0">
             <tr><td class="title">Licenses</td><td class="value">
 			      <xsl:call-template name="licenses">
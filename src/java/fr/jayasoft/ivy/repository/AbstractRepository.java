@@ -20,6 +20,9 @@ public abstract class AbstractRepository implements Repository {
     private EventListenerList _listeners = new EventListenerList();
     private String _name;
     private TransferEvent _evt;
+    private int _failureThreshold = 0;
+    private long _coolDown = 60000;
+    private CircuitBreaker _circuitBreaker;
     
     public void addTransferListener(TransferListener listener) {
         _listeners.add(TransferListener.class, listener);
@@ -114,6 +117,58 @@ public abstract class AbstractRepository implements Repository {
     public void setName(String name) {
         _name = name;
     }
+
+    /**
+     * @return the circuit breaker of this repository, null if it has none
+     */
+    public synchronized CircuitBreaker getCircuitBreaker() {
+        if (_failureThreshold <= 0) {
+            return null;
+        }
+        if (_circuitBreaker == null) {
+            _circuitBreaker = new CircuitBreaker(getName(), _failureThreshold, _coolDown);
+        }
+        return _circuitBreaker;
+    }
+
+    protected void connectionSucceeded() {
+        CircuitBreaker breaker = getCircuitBreaker();
+        if (breaker != null) {
+            breaker.succeeded();
+        }
+    }
+
+    protected void connectionFailed(String reason) {
+        CircuitBreaker breaker = getCircuitBreaker();
+        if (breaker != null) {
+            breaker.failed(reason);
+        }
+    }
+
+    public int getFailureThreshold() {
+        return _failureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive connection failures after which this repository is
+     * skipped, 0 to never skip it.
+     */
+    public synchronized void setFailureThreshold(int failureThreshold) {
+        _failureThreshold = failureThreshold;
+        _circuitBreaker = null;
+    }
+
+    public long getCoolDown() {
+        return _coolDown;
+    }
+
+    /**
+     * Sets the time in ms during which this repository is skipped once unreachable.
+     */
+    public synchronized void setCoolDown(long coolDown) {
+        _coolDown = coolDown;
+        _circuitBreaker = null;
+    }
     
     public String toString() {
         return getName();
@@ -123,6 +178,43 @@ public abstract class AbstractRepository implements Repository {
     	put(source, destination, overwrite);
     }
 
+    /**
+     * Returns the resources associated with the given identifiers, as getResource does.
+     * 
+     * Repositories able to do so should check the existence of all the resources at once,
+     * to save round trips when several resources are about to be checked. The sources are
+     * given in order of preference, so the resources after the first existing one do not
+     * need to be checked.
+     * Callers must call releaseResources with the same sources once the lookup needing
+     * them is done.
+     */
+    public Resource[] getResources(String[] sources) throws IOException {
+        Resource[] resources = new Resource[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            resources[i] = getResource(sources[i]);
+        }
+        return resources;
+    }
+
+    /**
+     * Tells that the information obtained by getResources about the given sources is not 
+     * needed anymore, so that repositories keeping it can discard it before it gets stale.
+     * Does nothing by default.
+     */
+    public void releaseResources(String[] sources) {
+    }
+
+    /**
+     * Fetches a resource in destination, which already contains the beginning of the resource
+     * as it was when it had the given last modified date.
+     * 
+     * Repositories able to do so should only fetch the missing part when the resource has not 
+     * been modified since. By default the whole resource is fetched again.
+     */
+    public void resume(String source, File destination, long lastModified) throws IOException {
+        get(source, destination);
+    }
+
 	protected void put(File source, String destination, boolean overwrite) throws IOException {
 		throw new UnsupportedOperationException("put in not supported by "+getName());
 	}
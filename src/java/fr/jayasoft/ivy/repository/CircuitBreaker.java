@@ -0,0 +1,117 @@
+/*
+ * This file is subject to the licence found in LICENCE.TXT in the root directory of the project.
+ * Copyright Jayasoft 2005 - All rights reserved
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import fr.jayasoft.ivy.util.Message;
+
+/**
+ * Stops sending requests to a repository which can't be reached.
+ *
+ * The circuit opens after a given number of consecutive connection failures. Requests are
+ * then refused during a cool-down period, after which a single request is let through
+ * to probe the repository: the circuit closes if it succeeds, and stays open for another
+ * cool-down period otherwise.
+ *
+ * Each repository holds its own circuit breaker, so that the state of a repository is kept
+ * across the resolves made with the same configuration.
+ */
+public class CircuitBreaker {
+
+    /**
+     * @return true if the given exception, or one of its causes, tells that a server could not
+     * be reached
+     */
+    public static boolean isConnectionFailure(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof ConnectException
+                    || t instanceof NoRouteToHostException
+                    || t instanceof UnknownHostException
+                    || t instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String _name;
+    private int _threshold;
+    private long _coolDown;
+    private int _failures = 0;
+    private long _nextProbe = -1;
+
+    /**
+     * @param threshold the number of consecutive connection failures opening the circuit
+     * @param coolDown the time in ms during which requests are refused once the circuit is open
+     */
+    public CircuitBreaker(String name, int threshold, long coolDown) {
+        _name = name;
+        _threshold = threshold;
+        _coolDown = coolDown;
+    }
+
+    /**
+     * @return true if a request can be sent to the repository, false if it should be skipped
+     */
+    public synchronized boolean allowRequest() {
+        if (_nextProbe < 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= _nextProbe) {
+            Message.verbose("\t"+_name+": probing unreachable repository");
+            _nextProbe = now + _coolDown;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void succeeded() {
+        if (_nextProbe >= 0) {
+            Message.info("\t"+_name+": repository reachable again");
+        }
+        _failures = 0;
+        _nextProbe = -1;
+    }
+
+    public synchronized void failed(String reason) {
+        _failures++;
+        if (_nextProbe >= 0) {
+            Message.verbose("\t"+_name+": repository still unreachable: "+reason);
+            _nextProbe = System.currentTimeMillis() + _coolDown;
+        } else if (_failures >= _threshold) {
+            Message.warn(_name+": repository unreachable after "+_failures+" connection failures: skipped for "+_coolDown+"ms ("+reason+")");
+            _nextProbe = System.currentTimeMillis() + _coolDown;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return _nextProbe >= 0;
+    }
+
+    /**
+     * @return the number of consecutive connection failures
+     */
+    public synchronized int getFailures() {
+        return _failures;
+    }
+
+    /**
+     * @return the time in ms before the next request is let through, 0 if the circuit is closed
+     */
+    public synchronized long getRemainingCoolDown() {
+        return _nextProbe < 0 ? 0 : Math.max(0, _nextProbe - System.currentTimeMillis());
+    }
+
+    public String getName() {
+        return _name;
+    }
+}
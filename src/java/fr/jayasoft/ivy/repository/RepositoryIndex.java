@@ -0,0 +1,242 @@
+/*
+ * This file is subject to the licence found in LICENCE.TXT in the root directory of the project.
+ * Copyright Jayasoft 2005 - All rights reserved
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import fr.jayasoft.ivy.ModuleRevisionId;
+
+/**
+ * An index of the module revisions available in a repository, used instead of listing the
+ * repository when available.
+ *
+ * The index is stored as a text file, starting with a version line, followed by one line
+ * per module revision:
+ * <pre>
+ * ivy-index 1 &lt;last modified&gt;
+ * &lt;organisation&gt; &lt;module&gt; &lt;revision&gt; &lt;publication&gt; md|nomd [&lt;artifact&gt;:&lt;type&gt;:&lt;ext&gt; ...]
+ * </pre>
+ * where md tells that the revision has a module descriptor, and dates are in ms.
+ * Names containing spaces are not supported.
+ */
+public class RepositoryIndex {
+    public static final int VERSION = 1;
+    private static final String HEADER = "ivy-index";
+
+    public static class Entry {
+        private ModuleRevisionId _mrid;
+        private long _publication;
+        private boolean _descriptor;
+        private Set _artifacts = new TreeSet(); // Set (String name:type:ext)
+
+        private Entry(ModuleRevisionId mrid, long publication) {
+            _mrid = mrid;
+            _publication = publication;
+        }
+
+        public ModuleRevisionId getModuleRevisionId() {
+            return _mrid;
+        }
+
+        public long getPublication() {
+            return _publication;
+        }
+
+        public void setPublication(long publication) {
+            _publication = publication;
+        }
+
+        public boolean hasDescriptor() {
+            return _descriptor;
+        }
+
+        public void setDescriptor(boolean descriptor) {
+            _descriptor = descriptor;
+        }
+
+        public void addArtifact(String name, String type, String ext) {
+            _artifacts.add(name+":"+type+":"+ext);
+        }
+
+        public boolean hasArtifact(String name, String type, String ext) {
+            return _artifacts.contains(name+":"+type+":"+ext);
+        }
+    }
+
+    public static RepositoryIndex read(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line = reader.readLine();
+            StringTokenizer header = new StringTokenizer(line == null ? "" : line);
+            if (header.countTokens() != 3 || !HEADER.equals(header.nextToken())) {
+                throw new IOException("not an ivy repository index");
+            }
+            RepositoryIndex index = new RepositoryIndex();
+            try {
+                int version = Integer.parseInt(header.nextToken());
+                if (version != VERSION) {
+                    throw new IOException("unsupported ivy repository index version: "+version);
+                }
+                long lastModified = Long.parseLong(header.nextToken());
+                while ((line = reader.readLine()) != null) {
+                    StringTokenizer tokens = new StringTokenizer(line);
+                    if (tokens.countTokens() < 5) {
+                        continue;
+                    }
+                    Entry entry = index.add(ModuleRevisionId.newInstance(tokens.nextToken(), tokens.nextToken(), tokens.nextToken()), Long.parseLong(tokens.nextToken()));
+                    entry.setDescriptor("md".equals(tokens.nextToken()));
+                    while (tokens.hasMoreTokens()) {
+                        entry._artifacts.add(tokens.nextToken());
+                    }
+                }
+                index._lastModified = lastModified;
+            } catch (NumberFormatException ex) {
+                throw new IOException("bad ivy repository index: "+ex.getMessage());
+            }
+            return index;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Map _organisations = new TreeMap(); // Map (String org -> Map (String module -> Map (String revision -> Entry)))
+    private long _lastModified = System.currentTimeMillis();
+    private int _size = 0;
+
+    public synchronized void write(OutputStream out) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+        writer.println(HEADER+" "+VERSION+" "+_lastModified);
+        for (Iterator orgs = _organisations.values().iterator(); orgs.hasNext();) {
+            for (Iterator mods = ((Map)orgs.next()).values().iterator(); mods.hasNext();) {
+                for (Iterator revs = ((Map)mods.next()).values().iterator(); revs.hasNext();) {
+                    Entry entry = (Entry)revs.next();
+                    ModuleRevisionId mrid = entry.getModuleRevisionId();
+                    writer.print(mrid.getOrganisation()+" "+mrid.getName()+" "+mrid.getRevision()+" "+entry.getPublication()+" "+(entry.hasDescriptor() ? "md" : "nomd"));
+                    for (Iterator iter = entry._artifacts.iterator(); iter.hasNext();) {
+                        writer.print(" "+iter.next());
+                    }
+                    writer.println();
+                }
+            }
+        }
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("problem while writing ivy repository index");
+        }
+    }
+
+    /**
+     * Adds the given module revision to the index if it isn't already indexed, and updates
+     * its publication date otherwise.
+     * @return the entry of the module revision
+     */
+    public synchronized Entry add(ModuleRevisionId mrid, long publication) {
+        Map modules = (Map)_organisations.get(mrid.getOrganisation());
+        if (modules == null) {
+            modules = new TreeMap();
+            _organisations.put(mrid.getOrganisation(), modules);
+        }
+        Map revisions = (Map)modules.get(mrid.getName());
+        if (revisions == null) {
+            revisions = new TreeMap();
+            modules.put(mrid.getName(), revisions);
+        }
+        Entry entry = (Entry)revisions.get(mrid.getRevision());
+        if (entry == null) {
+            entry = new Entry(ModuleRevisionId.newInstance(mrid.getOrganisation(), mrid.getName(), mrid.getRevision()), publication);
+            revisions.put(mrid.getRevision(), entry);
+            _size++;
+        } else {
+            entry.setPublication(publication);
+        }
+        _lastModified = System.currentTimeMillis();
+        return entry;
+    }
+
+    /**
+     * Adds the module revisions of the given index to this one, with their artifacts.
+     */
+    public synchronized void addAll(RepositoryIndex index) {
+        Entry[] entries = index.getEntries();
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = add(entries[i].getModuleRevisionId(), entries[i].getPublication());
+            entry.setDescriptor(entry.hasDescriptor() || entries[i].hasDescriptor());
+            entry._artifacts.addAll(entries[i]._artifacts);
+        }
+    }
+
+    /**
+     * @return all the entries of the index
+     */
+    public synchronized Entry[] getEntries() {
+        List entries = new ArrayList(_size);
+        for (Iterator orgs = _organisations.values().iterator(); orgs.hasNext();) {
+            for (Iterator mods = ((Map)orgs.next()).values().iterator(); mods.hasNext();) {
+                entries.addAll(((Map)mods.next()).values());
+            }
+        }
+        return (Entry[])entries.toArray(new Entry[entries.size()]);
+    }
+
+    public synchronized Entry getEntry(ModuleRevisionId mrid) {
+        Map revisions = getRevisionsMap(mrid.getOrganisation(), mrid.getName());
+        return (Entry)revisions.get(mrid.getRevision());
+    }
+
+    public boolean contains(ModuleRevisionId mrid) {
+        return getEntry(mrid) != null;
+    }
+
+    public synchronized String[] getOrganisations() {
+        return (String[])_organisations.keySet().toArray(new String[_organisations.size()]);
+    }
+
+    public synchronized String[] getModules(String org) {
+        Map modules = (Map)_organisations.get(org);
+        return modules == null ? new String[0] : (String[])modules.keySet().toArray(new String[modules.size()]);
+    }
+
+    public synchronized Entry[] getRevisions(String org, String module) {
+        List entries = new ArrayList(getRevisionsMap(org, module).values());
+        return (Entry[])entries.toArray(new Entry[entries.size()]);
+    }
+
+    /**
+     * @return the number of module revisions in the index
+     */
+    public synchronized int size() {
+        return _size;
+    }
+
+    public synchronized long getLastModified() {
+        return _lastModified;
+    }
+
+    public synchronized void setLastModified(long lastModified) {
+        _lastModified = lastModified;
+    }
+
+    private Map getRevisionsMap(String org, String module) {
+        Map modules = (Map)_organisations.get(org);
+        Map revisions = modules == null ? null : (Map)modules.get(module);
+        return revisions == null ? new TreeMap() : revisions;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository;
+
+/**
+ * Thrown when a request to a repository is skipped because its circuit breaker is open.
+ * 
+ * @see CircuitBreaker
+ */
+public class UnreachableRepositoryException extends RuntimeException {
+
+    public UnreachableRepositoryException() {
+        super();
+    }
+
+    public UnreachableRepositoryException(String msg) {
+        super(msg);
+    }
+
+    public UnreachableRepositoryException(Throwable t) {
+        super(t);
+    }
+
+    public UnreachableRepositoryException(String msg, Throwable t) {
+        super(msg, t);
+    }
+
+}
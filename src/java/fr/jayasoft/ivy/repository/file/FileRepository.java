@@ -7,7 +7,9 @@
 package fr.jayasoft.ivy.repository.file;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,6 +41,30 @@ public class FileRepository extends AbstractRepository {
         copy(getFile(source), destination, true);
     }
 
+    public void resume(String source, File destination, long lastModified) throws IOException {
+        File src = getFile(source);
+        long offset = destination.length();
+        if (src.lastModified() != lastModified || src.length() < offset) {
+            get(source, destination);
+            return;
+        }
+        fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
+        InputStream in = new FileInputStream(src);
+        try {
+            _progress.setTotalLength(new Long(src.length() - offset));
+            in.skip(offset);
+            FileUtil.append(in, destination, _progress);
+        } catch (IOException ex) {
+            fireTransferError(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            fireTransferError(ex);
+            throw ex;
+        } finally {
+            _progress.setTotalLength(null);
+        }
+    }
+
     public void put(File source, String destination, boolean overwrite) throws IOException {
         fireTransferInitiated(getResource(destination), TransferEvent.REQUEST_PUT);
         copy(source, getFile(destination), overwrite);
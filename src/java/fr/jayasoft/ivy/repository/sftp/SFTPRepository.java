@@ -7,6 +7,7 @@
 package fr.jayasoft.ivy.repository.sftp;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -15,7 +16,6 @@ import java.util.Iterator;
 import java.util.List;
 
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
@@ -36,6 +36,9 @@ import fr.jayasoft.ivy.util.Message;
  * 
  * It relies on jsch for sftp handling, and thus is compatible with sftp version 0, 1, 2 and 3
  * 
+ * Several sftp channels may be opened on the same ssh session (see maxChannels), so that
+ * this repository can be used by several threads at the same time.
+ * 
  * @author Xavier Hanin
  *
  */
@@ -78,7 +81,13 @@ public class SFTPRepository extends AbstractSshBasedRepository {
 	public Resource resolveResource(String path) {
 		try {
 			ChannelSftp c = getSftpChannel(path);
-			Collection r = c.ls(path);
+			Collection r;
+			try {
+				// an unexisting path is reported as an sftp error, which doesn't make the channel unusable
+				r = c.ls(path);
+			} finally {
+				releaseSftpChannel(c);
+			}
 			if (r != null) {
 				for (Iterator iter = r.iterator(); iter.hasNext();) {
 					Object obj=iter.next();
@@ -97,10 +106,24 @@ public class SFTPRepository extends AbstractSshBasedRepository {
 	}
 
 	public InputStream openStream(SFTPResource resource) throws IOException {
-        ChannelSftp c = getSftpChannel(resource.getName());
+        final ChannelSftp c = getSftpChannel(resource.getName());
         try {
-			return c.get(resource.getName());
+        	// the channel can only be given back to the pool once the stream is closed
+			return new FilterInputStream(c.get(resource.getName())) {
+				private boolean _closed = false;
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						if (!_closed) {
+							_closed = true;
+							releaseSftpChannel(c);
+						}
+					}
+				}
+			};
 		} catch (SftpException e) {
+			discardSftpChannel(c);
 			e.printStackTrace();
 			IOException ex = new IOException("impossible to open stream for "+resource+" on "+getHost()+(e.getMessage() != null?": " + e.getMessage():""));
 			ex.initCause(e);
@@ -111,30 +134,61 @@ public class SFTPRepository extends AbstractSshBasedRepository {
     public void get(String source, File destination) throws IOException {
         fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
         ChannelSftp c = getSftpChannel(source);
+        boolean reusable = false;
         try {
 			c.get(source, destination.getAbsolutePath(), new MyProgressMonitor());
+			reusable = true;
 		} catch (SftpException e) {
 			e.printStackTrace();
 			IOException ex = new IOException("impossible to get "+source+" on "+getHost()+(e.getMessage() != null?": " + e.getMessage():""));
 			ex.initCause(e);
 			throw ex;
+		} finally {
+			giveBackSftpChannel(c, reusable);
+		}
+    }
+
+    public void resume(String source, File destination, long lastModified) throws IOException {
+        fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
+        ChannelSftp c = getSftpChannel(source);
+        boolean reusable = false;
+        try {
+        	int mode = ChannelSftp.OVERWRITE;
+        	if (c.stat(source).getMTime() * 1000L == lastModified) {
+        		Message.verbose("\tresuming download of "+source+" at byte "+destination.length());
+        		mode = ChannelSftp.RESUME;
+        	}
+			c.get(source, destination.getAbsolutePath(), new MyProgressMonitor(), mode);
+			reusable = true;
+		} catch (SftpException e) {
+			IOException ex = new IOException("impossible to get "+source+" on "+getHost()+(e.getMessage() != null?": " + e.getMessage():""));
+			ex.initCause(e);
+			throw ex;
+		} finally {
+			giveBackSftpChannel(c, reusable);
 		}
     }
 
 	public void put(File source, String destination, boolean overwrite) throws IOException {
         fireTransferInitiated(getResource(destination), TransferEvent.REQUEST_PUT);
         ChannelSftp c = getSftpChannel(destination);
+        boolean reusable = false;
         try {
-            if(!overwrite && checkExistence(destination, c))
+            if(!overwrite && checkExistence(destination, c)) {
+                reusable = true;
                 throw new IOException("destination file exists and overwrite == true");
+            }
         	if (destination.indexOf('/') != -1) {
         		mkdirs(destination.substring(0, destination.lastIndexOf('/')),c);
         	}
 			c.put(source.getAbsolutePath(), destination, new MyProgressMonitor());
+			reusable = true;
 		} catch (SftpException e) {
 			IOException ex = new IOException(e.getMessage());
 			ex.initCause(e);
 			throw ex;
+		} finally {
+			giveBackSftpChannel(c, reusable);
 		}
 	}
 
@@ -158,7 +212,12 @@ public class SFTPRepository extends AbstractSshBasedRepository {
 	public List list(String parent) throws IOException {
 		try {
 			ChannelSftp c = getSftpChannel(parent);
-			Collection r = c.ls(parent);
+			Collection r;
+			try {
+				r = c.ls(parent);
+			} finally {
+				releaseSftpChannel(c);
+			}
 			if (r != null) {
 				if (!parent.endsWith("/")) {
 					parent = parent+"/";
@@ -199,31 +258,44 @@ public class SFTPRepository extends AbstractSshBasedRepository {
     }
     
 	/**
-	 * Establish the connection to the server if not yet connected, and listen to ivy events
-	 * for closing connection when resolve is finished.
+	 * Establish the connection to the server if not yet connected, and get an sftp channel
+	 * from the pool of channels of the session.
 	 * 
-	 * Not meant to be used in multi threaded environment.
+	 * The returned channel must be given back using releaseSftpChannel once used, or 
+	 * discardSftpChannel if it is in an unknown state.
 	 * 
+	 * @param path the path or uri of the resource for which a channel is needed
 	 * @return the ChannelSftp with which a connection is established
 	 * @throws IOException if any connection problem occurs
 	 */
-	private ChannelSftp getSftpChannel(String pathOrUri) throws IOException {
-	    Session session = getSession(pathOrUri);
-        String host = session.getHost();
-        ChannelSftp channel = SshCache.getInstance().getChannelSftp(session);
-        if(channel == null) {
-            try {
-                channel = (ChannelSftp) session.openChannel("sftp");
-                channel.connect();
-                Message.verbose(":: SFTP :: connected to "+host+"!");
-                SshCache.getInstance().attachChannelSftp(session,channel);
-            } catch (JSchException e) {
-                IOException ex = new IOException(e.getMessage());
-                ex.initCause(e);
-                throw ex;
-            }
-        }
-        return channel;
+	private ChannelSftp getSftpChannel(String path) throws IOException {
+		Session session = getSession(path);
+		ChannelSftp channel = SshCache.getInstance().acquireChannelSftp(session, getMaxChannels(), getChannelIdleTimeout());
+		if (channel == null) {
+			// the session has been cleared concurrently (end of resolve, idle timeout): reconnect
+			session = getSession(path);
+			channel = SshCache.getInstance().acquireChannelSftp(session, getMaxChannels(), getChannelIdleTimeout());
+			if (channel == null) {
+				throw new IOException("ssh session to "+session.getHost()+" closed while getting an sftp channel");
+			}
+		}
+		return channel;
+	}
+
+	private void releaseSftpChannel(ChannelSftp channel) {
+		SshCache.getInstance().releaseChannelSftp(channel);
+	}
+
+	private void discardSftpChannel(ChannelSftp channel) {
+		SshCache.getInstance().discardChannelSftp(channel);
+	}
+
+	private void giveBackSftpChannel(ChannelSftp channel, boolean reusable) {
+		if (reusable) {
+			releaseSftpChannel(channel);
+		} else {
+			discardSftpChannel(channel);
+		}
 	}
 
     protected String getRepositoryScheme() {
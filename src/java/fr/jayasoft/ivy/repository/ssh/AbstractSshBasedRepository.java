@@ -19,6 +19,9 @@ public abstract class AbstractSshBasedRepository extends AbstractRepository {
     private String user = "guest";
     private String host = null;
     private int port = -1;
+    private int maxChannels = 4;
+    private long channelIdleTimeout = 60000;
+    private long sessionIdleTimeout = 0;
 
     public AbstractSshBasedRepository() {
         super();
@@ -53,13 +56,21 @@ public abstract class AbstractSshBasedRepository extends AbstractRepository {
                 }
             }
         }
-        return SshCache.getInstance().getSession(host, 
+        try {
+            Session session = SshCache.getInstance().getSession(host, 
                                                  port,
                                                  user,
                                                  userPassword, 
                                                  getKeyFile(),
                                                  getKeyFilePassword(),
-                                                 getPassFile());
+                                                 getPassFile(),
+                                                 getSessionIdleTimeout());
+            connectionSucceeded();
+            return session;
+        } catch (IOException ex) {
+            connectionFailed("unable to connect to "+host+": "+ex.getMessage());
+            throw ex;
+        }
     }
         
     /**
@@ -204,6 +215,49 @@ public abstract class AbstractSshBasedRepository extends AbstractRepository {
         return passFile;
     }
 
+    /**
+     * @param maxChannels maximum number of channels opened concurrently on a single session
+     */
+    public void setMaxChannels(int maxChannels) {
+        this.maxChannels = maxChannels;
+    }
+
+    /**
+     * @return the maximum number of channels opened concurrently on a single session
+     */
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    /**
+     * @param channelIdleTimeout time in ms after which an unused channel is closed
+     */
+    public void setChannelIdleTimeout(long channelIdleTimeout) {
+        this.channelIdleTimeout = channelIdleTimeout;
+    }
+
+    /**
+     * @return the time in ms after which an unused channel is closed
+     */
+    public long getChannelIdleTimeout() {
+        return channelIdleTimeout;
+    }
+
+    /**
+     * @param sessionIdleTimeout time in ms after which an unused session is closed,
+     * 0 to close sessions at the end of each resolve
+     */
+    public void setSessionIdleTimeout(long sessionIdleTimeout) {
+        this.sessionIdleTimeout = sessionIdleTimeout;
+    }
+
+    /**
+     * @return the time in ms after which an unused session is closed
+     */
+    public long getSessionIdleTimeout() {
+        return sessionIdleTimeout;
+    }
+
     protected abstract String getRepositoryScheme();
 
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+package fr.jayasoft.ivy.repository.ssh;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * a bounded pool of channels opened on a single ssh session
+ * channels are acquired by the threads needing them, and must be released (or discarded
+ * if they are in an unknown state) after use. When the maximum number of channels
+ * is reached, acquiring threads wait until a channel is released.
+ *
+ * idle channels are closed when they have not been used for longer than the idle timeout,
+ * and are health checked before being handed out again
+ */
+public abstract class ChannelPool {
+    private static class IdleChannel {
+        private Object channel;
+        private long since;
+
+        public IdleChannel(Object channel, long since) {
+            this.channel = channel;
+            this.since = since;
+        }
+    }
+
+    private int maxChannels;
+    private long idleTimeout;
+    private LinkedList idle = new LinkedList(); // List (IdleChannel), most recently used last
+    private int busy = 0;
+    private boolean closed = false;
+
+    /**
+     * @param maxChannels maximum number of channels opened at the same time
+     * @param idleTimeout time in ms after which an unused channel is closed, 0 or less to never close them
+     */
+    public ChannelPool(int maxChannels, long idleTimeout) {
+        this.maxChannels = Math.max(1, maxChannels);
+        this.idleTimeout = idleTimeout;
+    }
+
+    public synchronized void setMaxChannels(int maxChannels) {
+        this.maxChannels = Math.max(1, maxChannels);
+        notifyAll();
+    }
+
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * gets a channel from the pool, opening a new one if no idle channel is available
+     * and the maximum number of channels is not reached, or waiting for a channel
+     * to be released otherwise
+     * @return an open channel, which must be given back with release or discard
+     */
+    public Object acquire() throws IOException {
+        List dead = new ArrayList();
+        try {
+            synchronized (this) {
+                while (true) {
+                    if (closed) {
+                        throw new IOException("channel pool closed");
+                    }
+                    long now = System.currentTimeMillis();
+                    while (!idle.isEmpty()) {
+                        IdleChannel c = (IdleChannel)idle.removeLast();
+                        if ((idleTimeout > 0 && now - c.since > idleTimeout) || !isAlive(c.channel)) {
+                            dead.add(c.channel);
+                        } else {
+                            busy++;
+                            return c.channel;
+                        }
+                    }
+                    if (busy < maxChannels) {
+                        busy++;
+                        break;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("interrupted while waiting for a channel");
+                    }
+                }
+            }
+        } finally {
+            destroy(dead);
+        }
+        try {
+            return create();
+        } catch (IOException e) {
+            synchronized (this) {
+                busy--;
+                notifyAll();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                busy--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * gives back a channel to the pool after a successful use
+     * @param channel acquired from this pool
+     */
+    public void release(Object channel) {
+        boolean keep;
+        synchronized (this) {
+            busy--;
+            keep = !closed && isAlive(channel);
+            if (keep) {
+                idle.addLast(new IdleChannel(channel, System.currentTimeMillis()));
+            }
+            notifyAll();
+        }
+        if (!keep) {
+            destroy(channel);
+        }
+    }
+
+    /**
+     * closes a channel acquired from this pool which should not be used anymore
+     * (because of an error for instance)
+     * @param channel acquired from this pool
+     */
+    public void discard(Object channel) {
+        synchronized (this) {
+            busy--;
+            notifyAll();
+        }
+        destroy(channel);
+    }
+
+    /**
+     * closes all idle channels, and makes any later acquire fail
+     * channels in use are closed when they are released
+     */
+    public void close() {
+        List toClose = new ArrayList();
+        synchronized (this) {
+            closed = true;
+            for (Iterator iter = idle.iterator(); iter.hasNext();) {
+                toClose.add(((IdleChannel)iter.next()).channel);
+            }
+            idle.clear();
+            notifyAll();
+        }
+        destroy(toClose);
+    }
+
+    /**
+     * @return true once close has been called
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of channels currently acquired
+     */
+    public synchronized int getBusyCount() {
+        return busy;
+    }
+
+    /**
+     * @return the number of channels opened but not used
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    private void destroy(List channels) {
+        for (Iterator iter = channels.iterator(); iter.hasNext();) {
+            destroy(iter.next());
+        }
+    }
+
+    /**
+     * opens a new channel
+     */
+    protected abstract Object create() throws IOException;
+
+    /**
+     * health check performed before handing out an idle channel
+     */
+    protected abstract boolean isAlive(Object channel);
+
+    /**
+     * closes the given channel
+     */
+    protected abstract void destroy(Object channel);
+}
@@ -3,7 +3,10 @@ package fr.jayasoft.ivy.repository.ssh;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
@@ -25,6 +28,13 @@ import fr.jayasoft.ivy.util.Message;
  * two maps are used to find cache entries
  * one map is using the above keys, the other
  * uses the session itself
+ * 
+ * sftp channels are pooled per session, so that several threads can use
+ * the same session concurrently
+ * 
+ * sessions are closed at the end of each resolve, unless a session idle timeout
+ * is given: in this case they are reused across resolves, and closed
+ * only when they haven't been used for longer than this timeout
  */
 public class SshCache {
     
@@ -32,13 +42,19 @@ public class SshCache {
     
     private static SshCache instance = new SshCache();
     
+    /**
+     * used to close idle sessions, daemon so that it doesn't prevent the jvm from exiting
+     */
+    private Timer reaper;
+    
     public static SshCache getInstance() {
         return instance;
     }
     
     private class Entry {
         private Session session = null;
-        private ChannelSftp channelSftp = null;
+        private ChannelPool sftpPool = null;
+        private long lastUse = System.currentTimeMillis();
         private String host = null;
         private String user = null;
         private int port = 22;
@@ -64,34 +80,75 @@ public class SshCache {
             return user;
         }
 
-        public Entry(Session newSession, String newUser, String newHost, int newPort) {
+        public Entry(Session newSession, String newUser, String newHost, int newPort, final long sessionIdleTimeout) {
             session = newSession;
             host = newHost;
             user = newUser;
             port = newPort;
-            IvyContext.getContext().getIvy().addIvyListener(new IvyListener() {
-                public void progress(IvyEvent event) {
-                    event.getSource().removeIvyListener(this);
-                    clearSession(session);
-                }
-            }, EndResolveEvent.NAME);
+            if (sessionIdleTimeout <= 0) {
+                IvyContext.getContext().getIvy().addIvyListener(new IvyListener() {
+                    public void progress(IvyEvent event) {
+                        event.getSource().removeIvyListener(this);
+                        clearSession(session);
+                    }
+                }, EndResolveEvent.NAME);
+            } else {
+                getReaper().schedule(new TimerTask() {
+                    public void run() {
+                        if (isIdleSince(System.currentTimeMillis() - sessionIdleTimeout)) {
+                            Message.verbose(":: SSH :: session to "+host+" idle for more than "+sessionIdleTimeout+"ms");
+                            cancel();
+                            clearSession(session);
+                        }
+                    }
+                }, sessionIdleTimeout, Math.max(1, sessionIdleTimeout / 2));
+            }
         }
 
-        /**
-         * attach an sftp channel to this cache entry
-         * @param channelSftp to attach
-         */
-        public void setChannelSftp(ChannelSftp newChannel) {
-            if(channelSftp != null && newChannel != null )
-                throw new IllegalStateException("Only one sftp channelSftp per session allowed");
-            this.channelSftp = newChannel;
+        public synchronized void touch() {
+            lastUse = System.currentTimeMillis();
         }
-        
+
+        private synchronized boolean isIdleSince(long time) {
+            return lastUse < time && (sftpPool == null || sftpPool.getBusyCount() == 0);
+        }
+
         /**
-         * @return the attached sftp channel
+         * @return the pool of sftp channels opened on this session, created if necessary
          */
-        public ChannelSftp getChannelSftp() {
-            return channelSftp;
+        public synchronized ChannelPool getSftpPool(int maxChannels, long channelIdleTimeout) {
+            if (sftpPool == null) {
+                sftpPool = new ChannelPool(maxChannels, channelIdleTimeout) {
+                    protected Object create() throws IOException {
+                        try {
+                            ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+                            channel.connect();
+                            Message.verbose(":: SFTP :: connected to "+host+"!");
+                            return channel;
+                        } catch (JSchException e) {
+                            IOException ex = new IOException(e.getMessage());
+                            ex.initCause(e);
+                            throw ex;
+                        }
+                    }
+                    protected boolean isAlive(Object channel) {
+                        ChannelSftp c = (ChannelSftp)channel;
+                        return session.isConnected() && c.isConnected() && !c.isClosed();
+                    }
+                    protected void destroy(Object channel) {
+                        ChannelSftp c = (ChannelSftp)channel;
+                        if (c.isConnected()) {
+                            Message.verbose(":: SFTP :: closing sftp connection from "+host+"...");
+                            c.disconnect();
+                            Message.verbose(":: SFTP :: sftp connection closed from "+host);
+                        }
+                    }
+                };
+            } else {
+                sftpPool.setMaxChannels(maxChannels);
+                sftpPool.setIdleTimeout(channelIdleTimeout);
+            }
+            return sftpPool;
         }
         
         /**
@@ -102,16 +159,12 @@ public class SshCache {
         }
 
         /**
-         * remove channelSftp and disconnect if necessary
+         * close all sftp channels
          */
-        public void releaseChannelSftp() {
-            if(channelSftp != null) {
-                if(channelSftp.isConnected()) {
-                    Message.verbose(":: SFTP :: closing sftp connection from "+host+"...");
-                    channelSftp.disconnect();
-                    channelSftp = null;
-                    Message.verbose(":: SFTP :: sftp connection closed from "+host);
-                }
+        public synchronized void releaseChannelSftp() {
+            if(sftpPool != null) {
+                sftpPool.close();
+                sftpPool = null;
             }
         }
     }
@@ -124,13 +177,17 @@ public class SshCache {
      * key is the session itself
      */
     private Map sessionCacheMap = new HashMap();
+    /**
+     * key is a channel acquired with acquireChannelSftp, value the pool it comes from
+     */
+    private Map acquiredChannels = new IdentityHashMap();
     
     /**
      * retrieves a session entry for a given hostname from the cache
      * @param hostname to retrieve session for
      * @return null or the existing entry
      */
-    private Entry getCacheEntry(String user, String host, int port) {
+    private synchronized Entry getCacheEntry(String user, String host, int port) {
         return (Entry)uriCacheMap.get(createCacheKey(user, host, port));
     }
 
@@ -153,7 +210,7 @@ public class SshCache {
      * @param session to retrieve cache entry for
      * @return null or the existing entry
      */
-    private Entry getCacheEntry(Session session) {
+    private synchronized Entry getCacheEntry(Session session) {
         return (Entry)sessionCacheMap.get(session);
     }
 
@@ -165,14 +222,15 @@ public class SshCache {
      * @param port of the session
      * @param session Session to save
      */
-    private void setSession(String user, String host, int port, Session newSession) {
+    private synchronized void setSession(String user, String host, int port, Session newSession, long sessionIdleTimeout) {
         Entry entry = (Entry)uriCacheMap.get(createCacheKey(user, host, port));
         Session oldSession = null;
         if(entry != null)
             oldSession = entry.getSession();
+        if(entry != null)
+            entry.releaseChannelSftp();
         if(oldSession != null && !oldSession.equals(newSession) && 
            oldSession.isConnected()) {
-            entry.releaseChannelSftp();
             String oldhost = oldSession.getHost();
             Message.verbose(":: SSH :: closing ssh connection from "+oldhost+"...");
             oldSession.disconnect();
@@ -183,7 +241,7 @@ public class SshCache {
             if(entry.getSession() != null)
                 sessionCacheMap.remove(entry.getSession());
         } else {
-            Entry newEntry = new Entry(newSession,user,host,port);
+            Entry newEntry = new Entry(newSession,user,host,port,sessionIdleTimeout);
             uriCacheMap.put(createCacheKey(user, host, port), newEntry);
             sessionCacheMap.put(newSession, newEntry);
         }
@@ -193,40 +251,88 @@ public class SshCache {
      * discardes session entries from the cache
      * @param session to clear
      */
-    public void clearSession(Session session) {
+    public synchronized void clearSession(Session session) {
         Entry entry = (Entry)sessionCacheMap.get(session);
         if(entry != null) 
-            setSession(entry.getUser(), entry.getHost(), entry.getPort(), null);
+            setSession(entry.getUser(), entry.getHost(), entry.getPort(), null, 0);
     }
     
     /**
-     * retrieves an sftp channel from the cache
-     * @param host to connect to
-     * @return channelSftp or null if not successful (channel not existent or dead)
+     * gets an sftp channel for the given session, from the pool of channels of this session
+     * the channel must be given back using releaseChannelSftp or discardChannelSftp
+     * @param session to get a channel for
+     * @param maxChannels maximum number of sftp channels opened at the same time on the session
+     * @param channelIdleTimeout time in ms after which an unused channel is closed
+     * @return an open channelSftp, or null if the session has been cleared from the cache,
+     * 	before or while acquiring the channel, in which case a new session should be used
      */
-    public ChannelSftp getChannelSftp(Session session) throws IOException {
-        ChannelSftp channel = null;
-        Entry entry = getCacheEntry(session);
-        if(entry != null) {
-            channel = entry.getChannelSftp();
-            if(channel != null && !channel.isConnected()) {
-                entry.releaseChannelSftp();
-                channel = null;
+    public ChannelSftp acquireChannelSftp(Session session, int maxChannels, long channelIdleTimeout) throws IOException {
+        ChannelPool pool;
+        synchronized (this) {
+            // the entry is checked under the cache lock, so that its pool can't be
+            // one closed by a concurrent clearSession
+            Entry entry = getCacheEntry(session);
+            if(entry == null)
+                return null;
+            entry.touch();
+            pool = entry.getSftpPool(maxChannels, channelIdleTimeout);
+        }
+        ChannelSftp channel;
+        try {
+            channel = (ChannelSftp)pool.acquire();
+        } catch (IOException ex) {
+            if (pool.isClosed()) {
+                // the session has been cleared while waiting for a channel or opening it
+                Message.verbose(":: SFTP :: session to "+session.getHost()+" closed while acquiring a channel");
+                return null;
             }
-        }    
+            throw ex;
+        }
+        synchronized (acquiredChannels) {
+            acquiredChannels.put(channel, pool);
+        }
         return channel;
     }
     
     /**
-     * attaches a channelSftp to an existing session cache entry
-     * @param session to attach the channel to
-     * @param channelSftp channel to attach
+     * gives back a channel acquired with acquireChannelSftp once it has been successfully used
      */
-    public void attachChannelSftp(Session session, ChannelSftp channel) {
-        Entry entry = getCacheEntry(session);
-        if(entry == null)
-            throw new IllegalArgumentException("No entry for "+session+" in the cache");
-        entry.setChannelSftp(channel);
+    public void releaseChannelSftp(ChannelSftp channel) {
+        ChannelPool pool = removeAcquired(channel);
+        if (pool != null) {
+            pool.release(channel);
+        } else {
+            channel.disconnect();
+        }
+    }
+    
+    /**
+     * gives back a channel acquired with acquireChannelSftp which should not be reused
+     */
+    public void discardChannelSftp(ChannelSftp channel) {
+        ChannelPool pool = removeAcquired(channel);
+        if (pool != null) {
+            pool.discard(channel);
+        } else {
+            channel.disconnect();
+        }
+    }
+    
+    /**
+     * @return the pool the given channel has been acquired from, which may have been 
+     * closed since, in which case the channel is closed when given back
+     */
+    private ChannelPool removeAcquired(ChannelSftp channel) {
+        synchronized (acquiredChannels) {
+            return (ChannelPool)acquiredChannels.remove(channel);
+        }
+    }
+    
+    private synchronized Timer getReaper() {
+        if (reaper == null) {
+            reaper = new Timer(true);
+        }
+        return reaper;
     }
     
     /**
@@ -247,10 +353,28 @@ public class SshCache {
                               File pemFile,
                               String pemPassword,
                               File passFile) throws IOException {
+        return getSession(host, port, username, userPassword, pemFile, pemPassword, passFile, 0);
+    }
+    
+    /**
+     * same as above, reusing the session across resolves if sessionIdleTimeout is positive
+     * @param sessionIdleTimeout time in ms after which an unused session is closed, 
+     * 0 or less to close the session at the end of the resolve
+     */
+    public synchronized Session getSession(String host, 
+                              int port,
+                              String username,
+                              String userPassword,
+                              File pemFile,
+                              String pemPassword,
+                              File passFile,
+                              long sessionIdleTimeout) throws IOException {
         Entry entry = getCacheEntry(username, host, port);
         Session session = null;
-        if(entry != null)
+        if(entry != null) {
             session = entry.getSession();
+            entry.touch();
+        }
         if(session == null || !session.isConnected()) {
             Message.verbose(":: SSH :: connecting to "+host+"...");
             try {
@@ -265,7 +389,7 @@ public class SshCache {
                 session.setUserInfo(new cfUserInfo(host,username,userPassword,pemFile,pemPassword,passFile));
                 session.connect();
                 Message.verbose(":: SSH :: connected to "+host+"!");
-                setSession(username, host, port, session);
+                setSession(username, host, port, session, sessionIdleTimeout);
             } catch (JSchException e) {
                 if (passFile.exists()) {
                     passFile.delete();
@@ -0,0 +1,174 @@
+/*
+ * This file is subject to the licence found in LICENCE.TXT in the root directory of the project.
+ * Copyright Jayasoft 2005 - All rights reserved
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository.url;
+
+import java.net.URL;
+import java.util.Arrays;
+
+import fr.jayasoft.ivy.url.URLHandler;
+import fr.jayasoft.ivy.url.URLHandlerRegistry;
+import fr.jayasoft.ivy.url.URLHandler.URLInfo;
+import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.WorkerPool;
+
+/**
+ * Checks urls with hedged requests: when a check takes longer than the 95th percentile
+ * of the latencies observed so far, the same check is sent again, and the first answer
+ * is used.
+ *
+ * Checks are not hedged until enough latencies have been observed. They run in the shared
+ * worker pool: when it is busy, or when too many checks of this checker are still running,
+ * urls are checked by the calling thread without hedging. The losing check of a hedged
+ * pair cannot be interrupted, it is abandoned and ends with the timeout of the check.
+ */
+public class HedgedChecker {
+    private static final int SAMPLES = 100;
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_DELAY = 10;
+    /**
+     * Maximum number of checks of a checker running at the same time, including the
+     * abandoned ones
+     */
+    static final int MAX_RUNNING_CHECKS = 8;
+
+    private long[] _latencies = new long[SAMPLES];
+    private int _nbLatencies = 0;
+    private int _hedged = 0;
+    private int _running = 0;
+
+    public URLInfo check(URL url, int timeout) {
+        long delay = getHedgeDelay();
+        long start = System.currentTimeMillis();
+        Check check = new Check(url, timeout);
+        if (delay < 0 || !start(check)) {
+            URLInfo info = URLHandlerRegistry.getDefault().getURLInfo(url, timeout);
+            record(System.currentTimeMillis() - start);
+            return info;
+        }
+        URLInfo info = check.waitFor(delay);
+        if (info == null) {
+            if (start(check)) {
+                Message.verbose("\tno answer after "+delay+"ms: sent another check of "+url);
+                synchronized (this) {
+                    _hedged++;
+                }
+            }
+            info = check.waitFor(0);
+        }
+        record(System.currentTimeMillis() - start);
+        return info;
+    }
+
+    /**
+     * @return the delay after which a check is hedged, -1 if checks should not be hedged yet
+     */
+    public synchronized long getHedgeDelay() {
+        if (_nbLatencies < MIN_SAMPLES) {
+            return -1;
+        }
+        int n = Math.min(_nbLatencies, SAMPLES);
+        long[] sorted = new long[n];
+        System.arraycopy(_latencies, 0, sorted, 0, n);
+        Arrays.sort(sorted);
+        return Math.max(MIN_DELAY, sorted[(n * 95 - 1) / 100]);
+    }
+
+    /**
+     * @return the number of checks which have been hedged
+     */
+    public synchronized int getHedged() {
+        return _hedged;
+    }
+
+    synchronized void record(long latency) {
+        _latencies[_nbLatencies % SAMPLES] = latency;
+        _nbLatencies++;
+    }
+
+    /**
+     * @return the number of checks of this checker currently running
+     */
+    synchronized int getRunning() {
+        return _running;
+    }
+
+    /**
+     * Runs the given check in the worker pool, if possible.
+     * @return false if the check has not been started
+     */
+    private boolean start(final Check check) {
+        synchronized (this) {
+            if (_running >= MAX_RUNNING_CHECKS) {
+                return false;
+            }
+            _running++;
+        }
+        boolean started = WorkerPool.getDefault().tryExecute(new Runnable() {
+            public void run() {
+                try {
+                    check.run();
+                } finally {
+                    synchronized (HedgedChecker.this) {
+                        _running--;
+                    }
+                }
+            }
+        });
+        if (!started) {
+            synchronized (this) {
+                _running--;
+            }
+        }
+        return started;
+    }
+
+    private static class Check {
+        private URL _url;
+        private int _timeout;
+        private URLInfo _info;
+
+        public Check(URL url, int timeout) {
+            _url = url;
+            _timeout = timeout;
+        }
+
+        public void run() {
+            URLInfo info = URLHandler.UNAVAILABLE;
+            try {
+                info = URLHandlerRegistry.getDefault().getURLInfo(_url, _timeout);
+            } finally {
+                synchronized (this) {
+                    if (_info == null) {
+                        _info = info;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param delay the maximum time to wait, 0 to wait until an answer arrives
+         * @return the first answer, or null if none arrived in time
+         */
+        public synchronized URLInfo waitFor(long delay) {
+            long end = System.currentTimeMillis() + delay;
+            while (_info == null) {
+                long remaining = end - System.currentTimeMillis();
+                if (delay > 0 && remaining <= 0) {
+                    return null;
+                }
+                try {
+                    wait(delay > 0 ? remaining : 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return _info == null ? URLHandler.UNAVAILABLE : _info;
+                }
+            }
+            return _info;
+        }
+    }
+}
@@ -12,40 +12,103 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 
 import fr.jayasoft.ivy.repository.AbstractRepository;
+import fr.jayasoft.ivy.repository.CircuitBreaker;
 import fr.jayasoft.ivy.repository.RepositoryCopyProgressListener;
 import fr.jayasoft.ivy.repository.Resource;
 import fr.jayasoft.ivy.repository.TransferEvent;
 import fr.jayasoft.ivy.url.ApacheURLLister;
+import fr.jayasoft.ivy.url.URLHandler;
+import fr.jayasoft.ivy.url.URLHandlerHelper;
+import fr.jayasoft.ivy.url.URLHandlerRegistry;
+import fr.jayasoft.ivy.url.URLHandler.URLInfo;
 import fr.jayasoft.ivy.util.FileUtil;
 
 public class URLRepository extends AbstractRepository {
+    /**
+     * Maximum number of resources keeping in memory the content got by fetchResource
+     * and not read yet
+     */
+    public static final int MAX_FETCHED_CONTENTS = 16;
+    
     private RepositoryCopyProgressListener _progress = new RepositoryCopyProgressListener(this);
     private Map _resourcesCache = new HashMap();
+    private boolean _fetchDescriptors = false;
+    private int _timeout = 0;
+    private HedgedChecker _hedgedChecker = null;
+    private LinkedList _fetched = new LinkedList(); // List (URLResource), oldest first
 
     public Resource getResource(String source) throws IOException {
         Resource res = (Resource)_resourcesCache.get(source);
         if (res == null) {
-            res = new URLResource(new URL(source));
+            res = new URLResource(new URL(source), this);
             _resourcesCache.put(source, res);
         }
         return res;
     }
 
+    /**
+     * Checks the resources not checked yet concurrently. The sources are given in order of
+     * preference: the resources after the first existing one may be left unchecked.
+     */
+    public Resource[] getResources(String[] sources) throws IOException {
+        Resource[] resources = super.getResources(sources);
+        List toCheck = new ArrayList();
+        for (int i = 0; i < resources.length; i++) {
+            URLResource res = (URLResource)resources[i];
+            if (!res.isInitialised() && !toCheck.contains(res)) {
+                toCheck.add(res);
+            }
+        }
+        if (toCheck.size() > 1) {
+            URL[] urls = new URL[toCheck.size()];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = ((URLResource)toCheck.get(i)).getURL();
+            }
+            URLInfo[] infos = URLHandlerHelper.getURLInfo(URLHandlerRegistry.getDefault(), urls, _timeout);
+            for (int i = 0; i < infos.length; i++) {
+                if (infos[i] != null) {
+                    ((URLResource)toCheck.get(i)).init(checked(urls[i], infos[i]));
+                }
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Same as getResource, except that if the resource has not been checked yet, it is checked
+     * with a request getting its content too. The content is then used by the next get
+     * of this resource instead of downloading it again.
+     */
+    public Resource fetchResource(String source) throws IOException {
+        URLResource res = (URLResource)getResource(source);
+        if (!res.isInitialised()) {
+            res.fetch();
+        }
+        return res;
+    }
+
     public void get(String source, File destination) throws IOException {
         fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
         try {
-            Resource res = getResource(source);
+            URLResource res = (URLResource)getResource(source);
             long totalLength = res.getContentLength();
             if (totalLength > 0) {
                 _progress.setTotalLength(new Long(totalLength));
             }
+            if (res.hasContent()) {
+                FileUtil.copy(res.openStream(), destination, _progress);
+                return;
+            }
             FileUtil.copy(new URL(source), destination, _progress);
+            connectionSucceeded();
         } catch (IOException ex) {
+            downloadFailed(ex);
             fireTransferError(ex);
             throw ex;
         } catch (RuntimeException ex) {
@@ -56,6 +119,141 @@ public class URLRepository extends AbstractRepository {
         }
     }
 
+    /**
+     * Fetches the resource only if it has been modified since a previous download,
+     * described by its last modified date and entity tag.
+     * @return the info of the downloaded content, or null if the resource has not been modified
+     */
+    public URLInfo get(String source, File destination, long lastModified, String etag) throws IOException {
+        fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
+        try {
+            URLResource res = (URLResource)getResource(source);
+            if (res.isInitialised() && res.getContentLength() > 0) {
+                // the resource is not checked only for the progress: the conditional get is the only request
+                _progress.setTotalLength(new Long(res.getContentLength()));
+            }
+            if (destination.getParentFile() != null) {
+                destination.getParentFile().mkdirs();
+            }
+            URLInfo info = URLHandlerHelper.download(URLHandlerRegistry.getDefault(), new URL(source), destination, _progress, lastModified, etag);
+            connectionSucceeded();
+            return info;
+        } catch (IOException ex) {
+            downloadFailed(ex);
+            fireTransferError(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            fireTransferError(ex);
+            throw ex;
+        } finally {
+            _progress.setTotalLength(null);
+        }
+    }
+
+    public void resume(String source, File destination, long lastModified) throws IOException {
+        fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
+        try {
+            URLHandlerHelper.resume(URLHandlerRegistry.getDefault(), new URL(source), destination, _progress, lastModified);
+            connectionSucceeded();
+        } catch (IOException ex) {
+            downloadFailed(ex);
+            fireTransferError(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            fireTransferError(ex);
+            throw ex;
+        }
+    }
+
+    URLInfo getURLInfo(URL url) {
+        if (_hedgedChecker != null) {
+            return checked(url, _hedgedChecker.check(url, _timeout));
+        }
+        return checked(url, URLHandlerRegistry.getDefault().getURLInfo(url, _timeout));
+    }
+
+    /**
+     * Records in the circuit breaker of this repository if the given url could be reached.
+     */
+    URLInfo checked(URL url, URLInfo info) {
+        if (info == URLHandler.UNREACHABLE) {
+            connectionFailed("unable to reach "+url);
+        } else {
+            connectionSucceeded();
+        }
+        return info;
+    }
+
+    private void downloadFailed(IOException ex) {
+        if (CircuitBreaker.isConnectionFailure(ex)) {
+            connectionFailed(ex.toString());
+        }
+    }
+
+    /**
+     * @return the timeout in ms used to check resources, 0 to use the url handler default
+     */
+    public int getTimeout() {
+        return _timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        _timeout = timeout;
+    }
+
+    public boolean isHedged() {
+        return _hedgedChecker != null;
+    }
+
+    /**
+     * When true, resources checks are sent again when they take longer than most
+     * previous checks, and the first answer is used.
+     */
+    public void setHedged(boolean hedged) {
+        _hedgedChecker = hedged ? new HedgedChecker() : null;
+    }
+
+    /**
+     * Called when a resource has fetched its content, releasing the content of the
+     * oldest resources if too many contents are kept.
+     */
+    void contentFetched(URLResource res) {
+        synchronized (_fetched) {
+            _fetched.remove(res);
+            _fetched.addLast(res);
+            while (_fetched.size() > MAX_FETCHED_CONTENTS) {
+                ((URLResource)_fetched.removeFirst()).releaseContent();
+            }
+        }
+    }
+
+    void contentReleased(URLResource res) {
+        synchronized (_fetched) {
+            _fetched.remove(res);
+        }
+    }
+
+    /**
+     * @return the number of resources keeping their fetched content in memory
+     */
+    int getFetchedContents() {
+        synchronized (_fetched) {
+            return _fetched.size();
+        }
+    }
+
+    /**
+     * Tells if module descriptors should be checked with fetchResource rather than getResource,
+     * this choice being left to the resolvers. 
+     */
+    public boolean isFetchDescriptors() {
+        return _fetchDescriptors;
+    }
+
+    public void setFetchDescriptors(boolean fetchDescriptors) {
+        _fetchDescriptors = fetchDescriptors;
+    }
+
     public void put(File source, String destination, boolean overwrite) throws IOException {
         throw new UnsupportedOperationException("URL repository is not able to put files for the moment");
     }
@@ -6,12 +6,15 @@
  */
 package fr.jayasoft.ivy.repository.url;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 import fr.jayasoft.ivy.repository.Resource;
+import fr.jayasoft.ivy.url.URLHandlerHelper;
 import fr.jayasoft.ivy.url.URLHandlerRegistry;
 import fr.jayasoft.ivy.url.URLHandler.URLInfo;
 
@@ -21,11 +24,18 @@ public class URLResource implements Resource {
     private long _lastModified;
     private long _contentLength;
     private boolean _exists;
+    private byte[] _content;
+    private URLRepository _repository;
 
     public URLResource(URL url) {
         _url = url;
     }
 
+    URLResource(URL url, URLRepository repository) {
+        _url = url;
+        _repository = repository;
+    }
+
     public String getName() {
         return _url.toExternalForm();
     }
@@ -46,7 +56,10 @@ public class URLResource implements Resource {
     }
 
     private void init() {
-        URLInfo info = URLHandlerRegistry.getDefault().getURLInfo(_url);
+        init(_repository == null ? URLHandlerRegistry.getDefault().getURLInfo(_url) : _repository.getURLInfo(_url));
+    }
+
+    void init(URLInfo info) {
         _contentLength = info.getContentLength();
         _lastModified = info.getLastModified();
         _exists = info.isReachable();
@@ -67,6 +80,48 @@ public class URLResource implements Resource {
         return _exists;
     }
 
+    /**
+     * Initialises this resource with a request getting its content, which is kept in memory
+     * until it is read by openStream, or released by the repository when too many fetched
+     * contents have not been read.
+     */
+    void fetch() {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        URLInfo info = URLHandlerHelper.fetch(URLHandlerRegistry.getDefault(), _url, content);
+        if (_repository != null) {
+            _repository.checked(_url, info);
+        }
+        init(info);
+        if (info.isReachable()) {
+            synchronized (this) {
+                _content = content.toByteArray();
+                if (_contentLength < 0) {
+                    _contentLength = _content.length;
+                }
+            }
+            if (_repository != null) {
+                _repository.contentFetched(this);
+            }
+        }
+    }
+
+    synchronized boolean hasContent() {
+        return _content != null;
+    }
+
+    void releaseContent() {
+        synchronized (this) {
+            _content = null;
+        }
+        if (_repository != null) {
+            _repository.contentReleased(this);
+        }
+    }
+
+    boolean isInitialised() {
+        return _init;
+    }
+
     public URL getURL() {
         return _url;
     }
@@ -79,6 +134,15 @@ public class URLResource implements Resource {
     }
 
 	public InputStream openStream() throws IOException {
-		return _url.openStream();
+		byte[] content;
+		synchronized (this) {
+			content = _content;
+		}
+		if (content != null) {
+			// the fetched content is read only once
+			releaseContent();
+			return new ByteArrayInputStream(content);
+		}
+		return URLHandlerRegistry.getDefault().openStream(_url);
 	}
 }
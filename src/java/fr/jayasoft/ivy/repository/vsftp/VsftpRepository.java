@@ -3,12 +3,16 @@ package fr.jayasoft.ivy.repository.vsftp;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import fr.jayasoft.ivy.Ivy;
@@ -20,6 +24,7 @@ import fr.jayasoft.ivy.repository.AbstractRepository;
 import fr.jayasoft.ivy.repository.BasicResource;
 import fr.jayasoft.ivy.repository.Resource;
 import fr.jayasoft.ivy.repository.TransferEvent;
+import fr.jayasoft.ivy.repository.TransferListener;
 import fr.jayasoft.ivy.util.IvyThread;
 import fr.jayasoft.ivy.util.Message;
 
@@ -34,12 +39,21 @@ import fr.jayasoft.ivy.util.Message;
  * 
  * Tested with SecureCRT 5.0.5
  * 
+ * In pipelined mode, the ls commands needed to get information about several resources
+ * at once, with getResources, are sent in one batch, the responses being read afterwards,
+ * one per prompt.
+ * 
+ * With maxConnections greater than 1, operations are dispatched to several vsftp
+ * processes, allowing to download several files at the same time.
+ * 
  * @author Xavier Hanin
  *
  */
 public class VsftpRepository extends AbstractRepository {
 	private static final String PROMPT = "vsftp> ";
 
+	private static final int MAX_PIPELINED_COMMANDS = 50;
+
 	private static final SimpleDateFormat FORMAT = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.US);
 	
 	private String _host;
@@ -69,9 +83,58 @@ public class VsftpRepository extends AbstractRepository {
 	
 	private Ivy _ivy = null;
 
+	private boolean _pipelined = false;
+	
+	private Map _prefetched = new HashMap(); // Map (String source -> Resource) checked by the last getResources
+	
+	private int _maxConnections = 1;
+	
+	private List _connections = new ArrayList(); // List (VsftpRepository) opened by the dispatcher
+	
+	private LinkedList _idleConnections = new LinkedList(); // List (VsftpRepository) not in use
+
 	public Resource getResource(String source) throws IOException {
 		initIvy();
-		return new VsftpResource(this, source);
+		VsftpResource res = new VsftpResource(this, source);
+		synchronized (_prefetched) {
+			Resource init = (Resource)_prefetched.get(source);
+			if (init != null) {
+				res.setInitResource(init);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * In pipelined mode, checks all the given resources with batches of ls commands. 
+	 * The information obtained is used by the resources returned by getResource until 
+	 * it is released with releaseResources, or until the next call to this method.
+	 */
+	public Resource[] getResources(String[] sources) throws IOException {
+		if (_pipelined && sources.length > 1) {
+			Map prefetched = new HashMap();
+			for (int start = 0; start < sources.length; start += MAX_PIPELINED_COMMANDS) {
+				String[] batch = new String[Math.min(MAX_PIPELINED_COMMANDS, sources.length - start)];
+				System.arraycopy(sources, start, batch, 0, batch.length);
+				Resource[] resources = getInitResources(batch);
+				for (int i = 0; i < batch.length; i++) {
+					prefetched.put(batch[i], resources[i]);
+				}
+			}
+			synchronized (_prefetched) {
+				_prefetched.clear();
+				_prefetched.putAll(prefetched);
+			}
+		}
+		return super.getResources(sources);
+	}
+
+	public void releaseResources(String[] sources) {
+		synchronized (_prefetched) {
+			for (int i = 0; i < sources.length; i++) {
+				_prefetched.remove(sources[i]);
+			}
+		}
 	}
 
 	private void initIvy() {
@@ -79,6 +142,14 @@ public class VsftpRepository extends AbstractRepository {
 	}
 
 	protected Resource getInitResource(String source) throws IOException {
+		if (isDispatcher()) {
+			VsftpRepository connection = acquireConnection();
+			try {
+				return connection.getInitResource(source);
+			} finally {
+				releaseConnection(connection);
+			}
+		}
 		try {
 			return lslToResource(source, sendCommand("ls -l "+source, true, true));
 		} catch (IOException ex) {
@@ -89,7 +160,51 @@ public class VsftpRepository extends AbstractRepository {
 		}
 	}
 
+	/**
+	 * Same as getInitResource for several sources, sending all ls commands before reading
+	 * the responses
+	 */
+	protected Resource[] getInitResources(String[] sources) throws IOException {
+		if (isDispatcher()) {
+			VsftpRepository connection = acquireConnection();
+			try {
+				return connection.getInitResources(sources);
+			} finally {
+				releaseConnection(connection);
+			}
+		}
+		try {
+			String[] commands = new String[sources.length];
+			for (int i = 0; i < sources.length; i++) {
+				commands[i] = "ls -l "+sources[i];
+			}
+			String[] responses = sendCommands(commands, _readTimeout);
+			Resource[] resources = new Resource[sources.length];
+			for (int i = 0; i < sources.length; i++) {
+				// errors can't be attributed to a command in a batch, and are appended to the last response:
+				// only the first line of each response is relevant for a ls -l on a file
+				String line = responses[i].split("\n")[0].trim();
+				resources[i] = lslToResource(sources[i], line.length() == 0 ? null : line);
+			}
+			return resources;
+		} catch (IOException ex) {
+			cleanup(ex);
+			throw ex;
+		} finally {
+			cleanup();
+		}
+	}
+
 	public void get(final String source, File destination) throws IOException {
+		if (isDispatcher()) {
+			VsftpRepository connection = acquireConnection();
+			try {
+				connection.get(source, destination);
+			} finally {
+				releaseConnection(connection);
+			}
+			return;
+		}
 		initIvy();
 		try {
 	        fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
@@ -160,6 +275,14 @@ public class VsftpRepository extends AbstractRepository {
 	}
 
 	public List list(String parent) throws IOException {
+		if (isDispatcher()) {
+			VsftpRepository connection = acquireConnection();
+			try {
+				return connection.list(parent);
+			} finally {
+				releaseConnection(connection);
+			}
+		}
 		initIvy();
 		try {
 			if (!parent.endsWith("/")) {
@@ -189,9 +312,22 @@ public class VsftpRepository extends AbstractRepository {
 	}
 
 	public void put(File source, String destination, boolean overwrite) throws IOException {
+		synchronized (_prefetched) {
+			_prefetched.remove(destination);
+		}
+		if (isDispatcher()) {
+			VsftpRepository connection = acquireConnection();
+			try {
+				connection.put(source, destination, overwrite);
+			} finally {
+				releaseConnection(connection);
+			}
+			return;
+		}
 		initIvy();
 		try {
-			if (getResource(destination).exists()) {
+			// not checked with getResource, which may use information obtained before
+			if (getInitResource(destination).exists()) {
 				if (overwrite) {
 					sendCommand("rm "+destination, getExpectedRemoveMessage(destination));
 				} else {
@@ -216,6 +352,70 @@ public class VsftpRepository extends AbstractRepository {
 		}
 	}
 
+	private boolean isDispatcher() {
+		return _maxConnections > 1;
+	}
+
+	/**
+	 * Returns a connection not used by any other thread, opening a new one if the maximum
+	 * number of connections is not reached, or waiting for one to be released otherwise.
+	 */
+	private VsftpRepository acquireConnection() throws IOException {
+		synchronized (_idleConnections) {
+			while (_idleConnections.isEmpty() && _connections.size() >= _maxConnections) {
+				try {
+					_idleConnections.wait();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("interrupted while waiting for a connection to "+getHost());
+				}
+			}
+			if (!_idleConnections.isEmpty()) {
+				return (VsftpRepository)_idleConnections.removeLast();
+			}
+			VsftpRepository connection = newConnection();
+			_connections.add(connection);
+			Message.debug("opened vsftp connection "+_connections.size()+"/"+_maxConnections+" to "+getHost());
+			return connection;
+		}
+	}
+
+	private void releaseConnection(VsftpRepository connection) {
+		synchronized (_idleConnections) {
+			_idleConnections.addLast(connection);
+			_idleConnections.notifyAll();
+		}
+	}
+
+	/**
+	 * Creates a repository used by the dispatcher to handle one connection, of the same 
+	 * class as this repository, which must then have a public constructor without parameter.
+	 * Subclasses which can't be created this way should override this method.
+	 */
+	protected VsftpRepository newConnection() throws IOException {
+		VsftpRepository connection;
+		try {
+			connection = (VsftpRepository)getClass().newInstance();
+		} catch (Exception ex) {
+			throw new IOException("impossible to create a connection with "+getClass().getName()+": "+ex);
+		}
+		initConnection(connection);
+		return connection;
+	}
+
+	protected void initConnection(VsftpRepository connection) {
+		connection.setName(getName());
+		connection.setHost(getHost());
+		connection.setUsername(getUsername());
+		connection.setAuthentication(getAuthentication());
+		connection.setReadTimeout(getReadTimeout());
+		connection.setReuseConnection(_reuseConnection);
+		connection.setPipelined(isPipelined());
+		connection.addTransferListener(new TransferListener() {
+			public void transferProgress(TransferEvent evt) {
+				fireTransferEvent(evt);
+			}
+		});
+	}
 
 	private void mkdirs(String destDir) throws IOException {
 		if (dirExists(destDir)) {
@@ -303,11 +503,51 @@ public class VsftpRepository extends AbstractRepository {
 		}
 	}
 
+	/**
+	 * Sends all the given commands at once, and then reads their responses.
+	 * 
+	 * Since vsftp doesn't tell which command an error message belongs to, all errors are
+	 * appended to the last response.
+	 * 
+	 * @return the responses, in the same order as the commands
+	 */
+	protected String[] sendCommands(String[] commands, long timeout) throws IOException {
+		checkInterrupted();
+		_inCommand = true;
+		_errorsLastUpdateTime = 0;
+		synchronized (this) {
+			ensureConnectionOpened();
+			Message.debug("sending "+commands.length+" pipelined commands to "+getHost());
+			updateLastCommandTime();
+			for (int i = 0; i < commands.length; i++) {
+				_out.println(commands[i]);
+			}
+			_out.flush();
+		}
+		try {
+			return readResponses(commands.length, true, timeout);
+		} finally {
+			_inCommand = false;
+		}
+	}
+
 	protected String readResponse(boolean sendErrorAsResponse) throws IOException {
 		return readResponse(sendErrorAsResponse, _readTimeout);
 	}
 
-	protected synchronized String readResponse(final boolean sendErrorAsResponse, long timeout) throws IOException {
+	protected String readResponse(boolean sendErrorAsResponse, long timeout) throws IOException {
+		return readResponses(1, sendErrorAsResponse, timeout)[0];
+	}
+
+	/**
+	 * Reads the given number of responses, each one being ended by a prompt.
+	 * 
+	 * @param timeout the maximum time to wait for each response, 0 to wait as long as needed
+	 * @throws IOException if the stream ends before the prompt ending the last response 
+	 * of a batch
+	 */
+	protected synchronized String[] readResponses(final int count, final boolean sendErrorAsResponse, long timeout) throws IOException {
+		final String[] responses = new String[count];
 		final StringBuffer response = new StringBuffer();
 		final IOException[] exc = new IOException[1];
 		final boolean[] done = new boolean[1];
@@ -317,6 +557,7 @@ public class VsftpRepository extends AbstractRepository {
 		            try {
 		                int c;
 		                boolean getPrompt = false;
+		                int read = 0;
 		                // the reading is done in a for loop making five attempts to read the stream if we do not reach the next prompt
 		                for (int attempts = 0; !getPrompt && attempts < 5; attempts++) {
 		                    while ((c = _in.read()) != -1) {
@@ -325,6 +566,11 @@ public class VsftpRepository extends AbstractRepository {
 		                        if (response.length() >= PROMPT.length() 
 		                                && response.substring(response.length() - PROMPT.length(), response.length()).equals(PROMPT)) {
 		                            response.setLength(response.length() - PROMPT.length());
+		                            if (++read < count) {
+		                                responses[read - 1] = chomp(response).toString();
+		                                response.setLength(0);
+		                                continue;
+		                            }
 		                            getPrompt = true;
 		                            break;
 		                        }
@@ -337,6 +583,9 @@ public class VsftpRepository extends AbstractRepository {
 		                        }
 		                    }
 		                }
+                        if (!getPrompt && count > 1) {
+                            throw new IOException("incomplete responses from "+getHost()+": received "+read+" of "+count);
+                        }
                         if (getPrompt) {
                             // wait enough for error stream to be fully read
                             if (_errorsLastUpdateTime == 0) {
@@ -360,7 +609,7 @@ public class VsftpRepository extends AbstractRepository {
 		                        throw new IOException(chomp(_errors).toString());
 		                    }
 		                }
-		                chomp(response);
+		                responses[count - 1] = chomp(response).toString();
 		                done[0] = true;
 		            } catch (IOException e) {
 		                exc[0]  = e;
@@ -377,7 +626,7 @@ public class VsftpRepository extends AbstractRepository {
 			reader = new IvyThread(r);
 			reader.start();
 			try {
-				wait(timeout);
+				wait(timeout * count);
 			} catch (InterruptedException e) {
 			}
 		}
@@ -400,13 +649,15 @@ public class VsftpRepository extends AbstractRepository {
 			}
 			throw new IOException("connection timeout to "+getHost());
 		} else {
-			if ("Not connected.".equals(response)) {
-				Message.info("vsftp connection to "+getHost()+" reset");
-				closeConnection();
-				throw new IOException("not connected to "+getHost());
+			for (int i = 0; i < count; i++) {
+				if ("Not connected.".equals(responses[i])) {
+					Message.info("vsftp connection to "+getHost()+" reset");
+					closeConnection();
+					throw new IOException("not connected to "+getHost());
+				}
+				Message.debug("received response '"+responses[i]+"' from "+getHost());
 			}
-			Message.debug("received response '"+response+"' from "+getHost());
-			return response.toString();
+			return responses;
 		}
 	}
 
@@ -468,7 +719,7 @@ public class VsftpRepository extends AbstractRepository {
 
 	private void exec(String command) throws IOException {
 		Message.debug("launching '"+command+"'");
-		_process = Runtime.getRuntime().exec(command);
+		_process = startProcess(command);
 		_in = new InputStreamReader(_process.getInputStream());
 		_err = new InputStreamReader(_process.getErrorStream());
 		_out = new PrintWriter(_process.getOutputStream());
@@ -490,6 +741,13 @@ public class VsftpRepository extends AbstractRepository {
 	}
 
 
+	/**
+	 * Starts the vsftp process executing the given command line
+	 */
+	protected Process startProcess(String command) throws IOException {
+		return Runtime.getRuntime().exec(command);
+	}
+
 	private void checkInterrupted() {
 		if (_ivy != null) {
 			_ivy.checkInterrupted();
@@ -517,6 +775,11 @@ public class VsftpRepository extends AbstractRepository {
 	}
 	
 	public synchronized void disconnect() {
+		synchronized (_idleConnections) {
+			for (int i = 0; i < _connections.size(); i++) {
+				((VsftpRepository)_connections.get(i)).disconnect();
+			}
+		}
 		if (_in != null) {
 			Message.verbose("disconnecting from "+getHost()+"... ");
 			try {
@@ -663,4 +926,28 @@ public class VsftpRepository extends AbstractRepository {
 	public void setReadTimeout(long readTimeout) {
 		_readTimeout = readTimeout;
 	}
+
+	public boolean isPipelined() {
+		return _pipelined;
+	}
+
+	/**
+	 * Sets the pipelined mode, in which the ls commands used to get information about
+	 * several resources are sent in a single batch.
+	 */
+	public void setPipelined(boolean pipelined) {
+		_pipelined = pipelined;
+	}
+
+	public int getMaxConnections() {
+		return _maxConnections;
+	}
+
+	/**
+	 * Sets the maximum number of vsftp connections opened at the same time to the host,
+	 * 1 by default.
+	 */
+	public void setMaxConnections(int maxConnections) {
+		_maxConnections = maxConnections;
+	}
 }
@@ -9,6 +9,7 @@ import fr.jayasoft.ivy.util.Message;
 
 public class VsftpResource extends LazyResource {
 	private VsftpRepository _repository;
+	private Resource _initResource;
 	
 	public VsftpResource(VsftpRepository repository, String file) {
 		super(file);
@@ -17,12 +18,19 @@ public class VsftpResource extends LazyResource {
 
     protected void init() {
 		try {
-			init(_repository.getInitResource(getName()));
+			init(_initResource != null ? _initResource : _repository.getInitResource(getName()));
 		} catch (IOException e) {
 			Message.verbose(e.toString());
 		}
     }
     
+	/**
+	 * Sets the information used to initialize this resource, when it has been obtained
+	 * by the repository together with the one of other resources
+	 */
+	void setInitResource(Resource resource) {
+		_initResource = resource;
+	}
 
 	public InputStream openStream() throws IOException {
     	throw new UnsupportedOperationException("vsftp resource does not support openStream operation");
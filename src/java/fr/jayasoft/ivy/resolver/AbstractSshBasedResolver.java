@@ -109,5 +109,33 @@ public abstract class AbstractSshBasedResolver extends RepositoryResolver {
         getSshBasedRepository().setPort(port);
     }
     
+    /**
+     * sets the maximum number of channels opened at the same time on a single session
+     * 4 is default
+     * @param maxChannels maximum number of concurrent channels
+     */
+    public void setMaxChannels(int maxChannels) {
+        getSshBasedRepository().setMaxChannels(maxChannels);
+    }
+
+    /**
+     * sets the time after which an unused channel is closed
+     * 60000 (one minute) is default
+     * @param timeout in milliseconds
+     */
+    public void setChannelIdleTimeout(long timeout) {
+        getSshBasedRepository().setChannelIdleTimeout(timeout);
+    }
+
+    /**
+     * sets the time after which an unused session is closed
+     * by default (0) sessions are closed at the end of each resolve, setting a timeout
+     * allows to reuse them across resolves made in the same jvm
+     * @param timeout in milliseconds
+     */
+    public void setSessionIdleTimeout(long timeout) {
+        getSshBasedRepository().setSessionIdleTimeout(timeout);
+    }
+    
     abstract public String getTypeName();
 }
\ No newline at end of file
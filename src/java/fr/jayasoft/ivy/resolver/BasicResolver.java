@@ -35,6 +35,7 @@ import fr.jayasoft.ivy.ModuleId;
 import fr.jayasoft.ivy.ModuleRevisionId;
 import fr.jayasoft.ivy.ResolveData;
 import fr.jayasoft.ivy.ResolvedModuleRevision;
+import fr.jayasoft.ivy.cache.BlobStore;
 import fr.jayasoft.ivy.event.download.EndArtifactDownloadEvent;
 import fr.jayasoft.ivy.event.download.NeedArtifactEvent;
 import fr.jayasoft.ivy.event.download.StartArtifactDownloadEvent;
@@ -77,6 +78,10 @@ public abstract class BasicResolver extends AbstractResolver {
     
     private String _checksums = null;
 
+    private Integer _retries = null;
+
+    private long _retryDelay = 1000;
+
 	private URLRepository _extartifactrep = new URLRepository(); // used only to download external artifacts
     
     public BasicResolver() {
@@ -445,6 +450,12 @@ public abstract class BasicResolver extends AbstractResolver {
                         Artifact transformedArtifact = toSystem(arts[j]);
                         ArtifactOrigin origin = data.getIvy().getSavedArtifactOrigin(data.getCache(), transformedArtifact);
 						File artFile = data.getIvy().getArchiveFileInCache(data.getCache(), transformedArtifact, origin, false);
+                        if (artFile.exists() && origin != null && origin.hasValidators()) {
+                            // the artifact may not have changed: it will be downloaded again only if needed
+                            Message.debug("marking "+artFile+" for revalidation");
+                            data.getIvy().markArtifactForRevalidation(data.getCache(), transformedArtifact);
+                            continue;
+                        }
                         if (artFile.exists()) {
                             Message.debug("deleting "+artFile);
                             artFile.delete();
@@ -626,8 +637,12 @@ public abstract class BasicResolver extends AbstractResolver {
             // the original one if possible. If we are not in useOrigin mode, we use the getArchivePath
             // method which always return a path in the actual cache
         	File archiveFile = ivy.getArchiveFileInCache(cache, artifacts[i], origin, useOrigin);
+        	ArtifactOrigin cachedOrigin = null;
+        	if (archiveFile.exists() && origin != null && ivy.isArtifactToRevalidate(cache, artifacts[i])) {
+        		cachedOrigin = origin;
+        	}
         			
-        	if (archiveFile.exists()) {
+        	if (archiveFile.exists() && cachedOrigin == null) {
         		Message.verbose("\t[NOT REQUIRED] "+artifacts[i]);
         		adr.setDownloadStatus(DownloadStatus.NO);  
                 adr.setSize(archiveFile.length());
@@ -660,6 +675,7 @@ public abstract class BasicResolver extends AbstractResolver {
                 			Message.info("downloading "+artifactRef.getResource()+" ...");
                 			ivy.fireIvyEvent(new StartArtifactDownloadEvent(ivy, this, artifacts[i], origin));
 
+                			BlobStore blobStore = ivy.getCacheBlobStore(cache);
                 			File tmp = ivy.getArchiveFileInCache(cache, 
                 					new DefaultArtifact(
                 							artifacts[i].getModuleRevisionId(), 
@@ -680,13 +696,42 @@ public abstract class BasicResolver extends AbstractResolver {
                 				_extartifactrep.get(artifactRef.getResource().getName(), tmp);
                 				adr.setSize(tmp.length());
                 			} else {
-                				adr.setSize(getAndCheck(artifactRef.getResource(), tmp));
+                				// the sha1 published with the artifact tells if its content is already in store.
+                				// It is only looked up when the check of the download would fetch it first
+                				// anyway, so that the blob store costs no additional request
+                				String sha1 = null;
+                				if (blobStore != null && cachedOrigin == null && isSha1CheckedFirst()) {
+                					sha1 = getPublishedSha1(artifactRef.getResource());
+                				}
+                				if (sha1 != null && sha1.length() > 0 && blobStore.fetch(sha1, tmp)) {
+                					adr.setSize(tmp.length());
+                					blobStore = null; // already in store
+                				} else {
+                					adr.setSize(getAndCheck(artifactRef.getResource(), tmp, cachedOrigin, origin, sha1));
+                				}
                 			}
-                			if (!tmp.renameTo(archiveFile)) {
+                			if (adr.getSize() == -1) {
+                				Message.info("\t[NOT MODIFIED] "+artifacts[i]+" ("+(System.currentTimeMillis()-start)+"ms)");
+                				ivy.saveArtifactOrigin(cache, artifacts[i], cachedOrigin);
+                				adr.setDownloadStatus(DownloadStatus.NO);
+                				adr.setSize(archiveFile.length());
+                				adr.setArtifactOrigin(cachedOrigin);
+                			} else if (cachedOrigin != null && archiveFile.exists() && !archiveFile.delete()) {
+                				Message.warn("\t[FAILED     ] "+artifacts[i]+" impossible to replace modified file in cache ("+(System.currentTimeMillis()-start)+"ms)");
+                				tmp.delete();
+                				adr.setDownloadStatus(DownloadStatus.FAILED);
+                			} else if (!tmp.renameTo(archiveFile)) {
                 				Message.warn("\t[FAILED     ] "+artifacts[i]+" impossible to move temp file to definitive one ("+(System.currentTimeMillis()-start)+"ms)");
                 				adr.setDownloadStatus(DownloadStatus.FAILED);
                 			} else {
                 				ivy.saveArtifactOrigin(cache, artifacts[i], origin);
+                				if (blobStore != null) {
+                					try {
+                						blobStore.store(archiveFile);
+                					} catch (IOException ex) {
+                						Message.warn("\timpossible to add "+archiveFile+" to blob store: "+ex.getMessage());
+                					}
+                				}
                 				Message.info("\t[SUCCESSFUL ] "+artifacts[i]+" ("+(System.currentTimeMillis()-start)+"ms)");
                 				adr.setDownloadStatus(DownloadStatus.SUCCESSFUL);
                 				adr.setArtifactOrigin(origin);
@@ -797,13 +842,187 @@ public abstract class BasicResolver extends AbstractResolver {
     }
 
     protected long getAndCheck(Resource resource, File dest) throws IOException {
+		for (int attempt = 0; ; attempt++) {
+			try {
+				long size = get(resource, dest);
+				check(resource, dest);
+				return size;
+			} catch (IOException ex) {
+				waitBeforeRetry(resource, attempt, ex);
+			}
+		}
+	}
+
+	/**
+	 * Waits before the next attempt to download the given resource, if another attempt
+	 * should be made. The delay doubles after each failed attempt.
+	 * 
+	 * @throws IOException the failure of the last attempt if no new attempt should be made
+	 */
+	private void waitBeforeRetry(Resource resource, int attempt, IOException failure) throws IOException {
+		if (attempt >= getRetries()) {
+			throw failure;
+		}
+		long delay = _retryDelay << Math.min(attempt, 16);
+		Message.verbose("\t"+getName()+": download of "+resource+" failed ("+failure.getMessage()+"): retrying in "+delay+"ms");
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw failure;
+		}
+		checkInterrupted();
+	}
+
+	/**
+	 * Same as getAndCheck, except that the resource is not downloaded if it has not been modified
+	 * since the content in cache has been downloaded from the given cached origin.
+	 * The validators of the downloaded content are stored in origin, so that they can be used
+	 * for later conditional downloads.
+	 * 
+	 * @param cached the origin of the content in cache, null if there is nothing to revalidate
+	 * @return the downloaded size, or -1 if the resource has not been modified
+	 */
+	protected long getAndCheck(Resource resource, File dest, ArtifactOrigin cached, ArtifactOrigin origin) throws IOException {
+		return getAndCheck(resource, dest, cached, origin, null);
+	}
+
+	/**
+	 * @param sha1 the sha1 published with the resource if it has already been downloaded,
+	 * used to check the downloaded content instead of downloading the sha1 file again,
+	 * an empty string if it is already known that there is none, null if it has not been 
+	 * looked up
+	 */
+	private long getAndCheck(Resource resource, File dest, ArtifactOrigin cached, ArtifactOrigin origin, String sha1) throws IOException {
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return doGetAndCheck(resource, dest, cached, origin, sha1);
+			} catch (IOException ex) {
+				// what has been downloaded is kept: the next attempt will resume if possible
+				waitBeforeRetry(resource, attempt, ex);
+			}
+		}
+	}
+
+	private long doGetAndCheck(Resource resource, File dest, ArtifactOrigin cached, ArtifactOrigin origin, String sha1) throws IOException {
+		long lastModified = resource.getLastModified();
+		long size;
+		try {
+			if (cached == null && lastModified > 0 && dest.length() > 0 && dest.lastModified() == lastModified) {
+				// dest is what remains of a failed download of the same resource
+				long partial = dest.length();
+				try {
+					size = resume(resource, dest, lastModified);
+				} catch (IOException ex) {
+					if (dest.length() <= partial) {
+						// the resume made no progress: the next attempt must start over
+						// instead of trying to resume the same content forever
+						dest.delete();
+					}
+					throw ex;
+				}
+				origin.setLastModified(lastModified);
+			} else {
+				size = getIfModified(resource, dest, cached, origin);
+			}
+		} catch (IOException ex) {
+			markPartialDownload(dest, lastModified);
+			throw ex;
+		} catch (RuntimeException ex) {
+			markPartialDownload(dest, lastModified);
+			throw ex;
+		}
+		if (size != -1) {
+			checkWithSha1(resource, dest, sha1);
+		}
+		return size;
+	}
+
+	/**
+	 * Gives the last modified date of the resource to what has been downloaded of it,
+	 * so that the download can be resumed later if the resource is still the same. 
+	 */
+	private void markPartialDownload(File dest, long lastModified) {
+		if (lastModified > 0 && dest.length() > 0) {
+			dest.setLastModified(lastModified);
+		}
+	}
+
+	/**
+	 * Downloads the resource to dest, which already contains the beginning of the resource
+	 * as it was when it had the given last modified date.
+	 * By default the resource is downloaded again from the start: resolvers able to resume
+	 * downloads should override this method.
+	 * 
+	 * @return the size of the whole downloaded file
+	 */
+	protected long resume(Resource resource, File dest, long lastModified) throws IOException {
+		return get(resource, dest);
+	}
+
+	/**
+	 * Downloads the resource only if it has been modified since the content in cache has been 
+	 * downloaded from the given cached origin. 
+	 * By default only the last modified date of the resource is compared with the one of the
+	 * cached origin: resolvers able to perform conditional downloads should override this method.
+	 * 
+	 * @return the downloaded size, or -1 if the resource has not been modified
+	 */
+	protected long getIfModified(Resource resource, File dest, ArtifactOrigin cached, ArtifactOrigin origin) throws IOException {
+		long lastModified = resource.getLastModified();
+		if (cached != null && lastModified > 0 && lastModified == cached.getLastModified()) {
+			return -1;
+		}
 		long size = get(resource, dest);
+		origin.setLastModified(lastModified);
+		return size;
+	}
+
+	private void check(Resource resource, File dest) throws IOException {
+		checkWithSha1(resource, dest, null);
+	}
+
+	/**
+	 * @param sha1 the sha1 published with the resource, an empty string if there is none,
+	 * null if it has not been downloaded yet
+	 */
+	private void checkWithSha1(Resource resource, File dest, String sha1) throws IOException {
 		String[] checksums = getChecksumAlgorithms();
 		boolean checked = false;
 		for (int i = 0; i < checksums.length && !checked; i++) {
-			checked = check(resource, dest, checksums[i]);
+			if (sha1 != null && "sha1".equals(checksums[i])) {
+				checked = sha1.length() > 0 && checkValue(resource, dest, sha1, checksums[i]);
+			} else {
+				checked = check(resource, dest, checksums[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return true if sha1 is the first checksum algorithm used to check downloads, its 
+	 * checksum file being then always downloaded with the resource
+	 */
+	private boolean isSha1CheckedFirst() {
+		String[] checksums = getChecksumAlgorithms();
+		return checksums.length > 0 && "sha1".equals(checksums[0]);
+	}
+
+	/**
+	 * Returns the sha1 published in the repository with the given resource, 
+	 * or an empty string if there is none.
+	 */
+	private String getPublishedSha1(Resource resource) throws IOException {
+		Resource csRes = resource.clone(resource.getName()+".sha1");
+		if (!csRes.exists()) {
+			return "";
+		}
+		File csFile = File.createTempFile("ivytmp", "sha1");
+		try {
+			get(csRes, csFile);
+			return ChecksumHelper.readChecksum(csFile);
+		} finally {
+			csFile.delete();
 		}
-		return size;
 	}
 
 	private boolean check(Resource resource, File dest, String algorithm) throws IOException {
@@ -813,13 +1032,7 @@ public abstract class BasicResolver extends AbstractResolver {
 			File csFile = File.createTempFile("ivytmp", algorithm);
 			try {
 				get(csRes, csFile);
-				if (!ChecksumHelper.check(dest, csFile, algorithm)) {
-					dest.delete();
-					throw new IOException("invalid "+algorithm);
-				} else {
-					Message.verbose(algorithm + " OK for "+resource);
-					return true;
-				}
+				return checkValue(resource, dest, ChecksumHelper.readChecksum(csFile), algorithm);
 			} finally {
 				csFile.delete();
 			}
@@ -828,6 +1041,16 @@ public abstract class BasicResolver extends AbstractResolver {
 		}
 	}
 
+	private boolean checkValue(Resource resource, File dest, String expected, String algorithm) throws IOException {
+		if (!ChecksumHelper.check(dest, expected, algorithm)) {
+			dest.delete();
+			throw new IOException("invalid "+algorithm);
+		} else {
+			Message.verbose(algorithm + " OK for "+resource);
+			return true;
+		}
+	}
+
 
     protected ResolvedResource getArtifactRef(Artifact artifact, Date date) {
     	ResolvedResource ret = findArtifactRef(artifact, date);
@@ -884,4 +1107,38 @@ public abstract class BasicResolver extends AbstractResolver {
 		_checksums = checksums;
 	}
 
+	/**
+	 * Number of times a failed download is attempted again by this resolver
+	 */
+	public int getRetries() {
+		if (_retries == null) {
+			String retries = getIvy() == null ? null : getIvy().getVariable("ivy.resolver.default.retries");
+			if (retries == null) {
+				return 0;
+			}
+			try {
+				return Math.max(0, Integer.parseInt(retries.trim()));
+			} catch (NumberFormatException ex) {
+				Message.warn("bad ivy.resolver.default.retries: "+retries+": failed downloads will not be attempted again");
+				return 0;
+			}
+		}
+		return _retries.intValue();
+	}
+
+	public void setRetries(int retries) {
+		_retries = new Integer(retries);
+	}
+
+	/**
+	 * Delay in ms before the first new attempt of a failed download, doubled for each next one
+	 */
+	public long getRetryDelay() {
+		return _retryDelay;
+	}
+
+	public void setRetryDelay(long retryDelay) {
+		_retryDelay = retryDelay;
+	}
+
 }
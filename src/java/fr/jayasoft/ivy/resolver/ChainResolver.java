@@ -11,8 +11,10 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import fr.jayasoft.ivy.Artifact;
 import fr.jayasoft.ivy.ArtifactInfo;
@@ -52,6 +54,8 @@ public class ChainResolver extends AbstractResolver {
     private boolean _returnFirst = false;
     private List _chain = new ArrayList();
     private boolean _dual;
+    private boolean _adaptive = false;
+    private Map _statistics = new HashMap(); // Map (File cache -> ChainStatistics)
 
     public void add(DependencyResolver resolver) {
         _chain.add(resolver);
@@ -63,21 +67,38 @@ public class ChainResolver extends AbstractResolver {
         
         List errors = new ArrayList();
         
+        boolean isDynamic = getIvy().getVersionMatcher().isDynamic(dd.getDependencyRevisionId());
+        ChainStatistics stats = getStatistics(data.getCache());
+        DependencyResolver known = null;
+        if (stats != null && !isDynamic) {
+            known = getKnownResolver(stats, dd);
+            if (known != null) {
+                Message.verbose("\t"+getName()+": "+dd.getDependencyRevisionId()+" previously found first in "+known.getName()+": asking it only");
+                ResolvedModuleRevision mr = getDependency(known, dd, data, errors, stats);
+                checkInterrupted();
+                if (mr != null && (_returnFirst || !mr.getDescriptor().isDefault())) {
+                    return resolvedRevision(mr);
+                }
+                stats.removeFirstHit(dd.getDependencyRevisionId());
+                if (mr != null) {
+                    // default descriptor: it is compared with the other resolvers results below
+                    known = null;
+                }
+            }
+        }
+        
+        // true while all the resolvers asked have answered they don't have the module
+        boolean allMissed = errors.isEmpty();
         for (Iterator iter = _chain.iterator(); iter.hasNext();) {
             DependencyResolver resolver = (DependencyResolver) iter.next();
-            LatestStrategy oldLatest = setLatestIfRequired(resolver, getLatestStrategy());
-            ResolvedModuleRevision mr = null;
-            try {
-                mr = resolver.getDependency(dd, data);
-            } catch (Exception ex) {
-            	Message.verbose("problem occured while resolving "+dd+" with "+resolver+": "+ex);
-            	errors.add(ex);
-            } finally {
-                if (oldLatest != null) {
-                    setLatest(resolver, oldLatest);
-                }
+            if (resolver == known) {
+                continue;
             }
+            int nbErrors = errors.size();
+            ResolvedModuleRevision mr = getDependency(resolver, dd, data, errors, stats);
             checkInterrupted();
+            boolean first = allMissed;
+            allMissed &= mr == null && errors.size() == nbErrors;
             if (mr != null) {
                 boolean shouldReturn = _returnFirst;
                 shouldReturn |= !getIvy().getVersionMatcher().isDynamic(dd.getDependencyRevisionId()) && ret != null && !ret.getDescriptor().isDefault();
@@ -99,13 +120,16 @@ public class ChainResolver extends AbstractResolver {
                     }
                     if (!getIvy().getVersionMatcher().isDynamic(dd.getDependencyRevisionId()) && !ret.getDescriptor().isDefault()) {
                         Message.debug("\tmodule revision found and is not default: returning "+mrDesc);
+                        saveStatistics(stats, dd, first && ret == mr ? resolver : null);
                         return resolvedRevision(mr);
                     }
                 } else {
+                    saveStatistics(stats, dd, first && !isDynamic && !mr.getDescriptor().isDefault() ? resolver : null);
                     return resolvedRevision(mr);
                 }
             }
         }
+        saveStatistics(stats, dd, null);
         if (ret == null && !errors.isEmpty()) {
         	if (errors.size() == 1) {
         		Exception ex = (Exception) errors.get(0);
@@ -129,6 +153,85 @@ public class ChainResolver extends AbstractResolver {
         return resolvedRevision(ret);
     }
     
+    /**
+     * Asks the given resolver for the given dependency, recording the lookup in the given
+     * statistics if any.
+     * @return the resolved module revision, null if not found or if an error occured, in which
+     * case the error is added to the given list
+     */
+    private ResolvedModuleRevision getDependency(DependencyResolver resolver, DependencyDescriptor dd, ResolveData data, List errors, ChainStatistics stats) {
+        LatestStrategy oldLatest = setLatestIfRequired(resolver, getLatestStrategy());
+        try {
+            long start = System.currentTimeMillis();
+            ResolvedModuleRevision mr = resolver.getDependency(dd, data);
+            if (stats != null) {
+                stats.record(dd.getDependencyId().getOrganisation(), resolver.getName(), mr != null, System.currentTimeMillis() - start);
+            }
+            return mr;
+        } catch (Exception ex) {
+            Message.verbose("problem occured while resolving "+dd+" with "+resolver+": "+ex);
+            errors.add(ex);
+            return null;
+        } finally {
+            if (oldLatest != null) {
+                setLatest(resolver, oldLatest);
+            }
+        }
+    }
+
+    /**
+     * @return the first resolver of this chain in which the dependency revision has been 
+     * found, the resolvers declared before it having not found it, null if it isn't known
+     */
+    private DependencyResolver getKnownResolver(ChainStatistics stats, DependencyDescriptor dd) {
+        String name = stats.getFirstHit(dd.getDependencyRevisionId());
+        if (name == null) {
+            return null;
+        }
+        for (Iterator iter = _chain.iterator(); iter.hasNext();) {
+            DependencyResolver resolver = (DependencyResolver) iter.next();
+            if (name.equals(resolver.getName())) {
+                return resolver;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the statistics of the lookups made by this chain with the given cache, null
+     * if the chain isn't adaptive
+     */
+    public synchronized ChainStatistics getStatistics(File cache) {
+        if (!isAdaptive() || cache == null) {
+            return null;
+        }
+        ChainStatistics stats = (ChainStatistics)_statistics.get(cache);
+        if (stats == null) {
+            stats = new ChainStatistics(cache, getName());
+            _statistics.put(cache, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Records the first resolver in which the given dependency has been found, if it is
+     * known, and saves the statistics
+     * @param firstHit the first resolver of the chain which has found the static dependency 
+     * revision, all the resolvers declared before it having not found it, null if there is 
+     * none
+     */
+    private void saveStatistics(ChainStatistics stats, DependencyDescriptor dd, DependencyResolver firstHit) {
+        if (stats == null) {
+            return;
+        }
+        if (firstHit != null) {
+            stats.setFirstHit(dd.getDependencyRevisionId(), firstHit.getName());
+        } else if (!getIvy().getVersionMatcher().isDynamic(dd.getDependencyRevisionId())) {
+            stats.removeFirstHit(dd.getDependencyRevisionId());
+        }
+        stats.save();
+    }
+
     private ResolvedModuleRevision resolvedRevision(ResolvedModuleRevision mr) {
         if (isDual() && mr != null) {
             return new ResolvedModuleRevisionProxy(mr, this);
@@ -221,6 +324,7 @@ public class ChainResolver extends AbstractResolver {
         Message.verbose("\t"+getName()+" [chain] "+_chain);
         Message.debug("\t\treturn first: "+isReturnFirst());
         Message.debug("\t\tdual: "+isDual());
+        Message.debug("\t\tadaptive: "+isAdaptive());
         for (Iterator iter = _chain.iterator(); iter.hasNext();) {
             DependencyResolver r = (DependencyResolver)iter.next();
             Message.debug("\t\t-> "+r.getName());
@@ -269,4 +373,21 @@ public class ChainResolver extends AbstractResolver {
         return _dual;
     }
 
+    /**
+     * When adaptive, the chain records in the cache the first resolver, in declaration order,
+     * in which each static revision has been found, and asks only this resolver the next time.
+     * A resolver is recorded only if all the resolvers declared before it have answered 
+     * that they don't have the revision, so the result is the same as with the declaration 
+     * order, unless the revision is published later on in one of these resolvers.
+     * The chain also records the hits, misses and lookup times of its resolvers per 
+     * organisation (see ChainStatistics), without using them to choose the resolvers to ask.
+     */
+    public void setAdaptive(boolean b) {
+        _adaptive = b;
+    }
+
+    public boolean isAdaptive() {
+        return _adaptive;
+    }
+
 }
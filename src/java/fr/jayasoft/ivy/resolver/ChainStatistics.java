@@ -0,0 +1,214 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.resolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.PropertiesFile;
+
+/**
+ * Statistics of the lookups made by the resolvers of a chain, stored in the cache.
+ *
+ * For each static module revision, the statistics record the first resolver of the chain 
+ * which has found it, all the resolvers declared before it having answered that they 
+ * don't have it. Only the MAX_REVISIONS most recently recorded module revisions are kept.
+ * 
+ * For each resolver and organisation, they also record the number of lookups which have 
+ * found the module (hits) or not (misses), and the total time spent in these lookups.
+ * These counters are not used to choose the resolvers to ask.
+ */
+public class ChainStatistics {
+    public static final int MAX_REVISIONS = 2000;
+    /**
+     * Minimum delay in ms between two saves of the statistics when only the lookup
+     * counters have changed
+     */
+    public static final long COUNTERS_SAVE_INTERVAL = 10000;
+    
+    private static final String REVISION_PREFIX = "revision.";
+    private static final String RESOLVER_PREFIX = "resolver.";
+    private static final String SEPARATOR = "|";
+
+    private PropertiesFile _props;
+    private boolean _modified = false;
+    private boolean _countersModified = false;
+    private long _lastSave = 0;
+
+    public ChainStatistics(File cache, String chainName) {
+        _props = new PropertiesFile(new File(cache, "ivy-chain-"+chainName+".properties"), "ivy chain statistics");
+    }
+
+    /**
+     * @return the name of the first resolver in which the given module revision has been 
+     * found, null if it isn't known
+     */
+    public synchronized String getFirstHit(ModuleRevisionId mrid) {
+        String value = _props.getProperty(REVISION_PREFIX+mrid.encodeToString());
+        if (value == null) {
+            return null;
+        }
+        int index = value.indexOf(SEPARATOR);
+        return index <= 0 ? null : value.substring(0, index);
+    }
+
+    /**
+     * Records the first resolver of the chain which has found the given module revision
+     */
+    public synchronized void setFirstHit(ModuleRevisionId mrid, String resolver) {
+        if (resolver.equals(getFirstHit(mrid))) {
+            return;
+        }
+        _props.setProperty(REVISION_PREFIX+mrid.encodeToString(), resolver+SEPARATOR+System.currentTimeMillis());
+        _modified = true;
+    }
+
+    /**
+     * Forgets the first resolver in which the given module revision has been found
+     */
+    public synchronized void removeFirstHit(ModuleRevisionId mrid) {
+        if (_props.remove(REVISION_PREFIX+mrid.encodeToString()) != null) {
+            _modified = true;
+        }
+    }
+
+    /**
+     * @return the number of module revisions of which the first resolver is known
+     */
+    public synchronized int size() {
+        return getRevisionEntries().size();
+    }
+
+    /**
+     * Records a lookup of a module of the given organisation made with the given resolver
+     * 
+     * @param found true if the resolver has found the module
+     * @param time the time spent in the lookup, in ms
+     */
+    public synchronized void record(String organisation, String resolver, boolean found, long time) {
+        long[] counters = getCounters(organisation, resolver);
+        counters[found ? 0 : 1]++;
+        counters[2] += time;
+        _props.setProperty(RESOLVER_PREFIX+resolver+SEPARATOR+organisation, 
+                counters[0]+SEPARATOR+counters[1]+SEPARATOR+counters[2]);
+        _countersModified = true;
+    }
+
+    /**
+     * @return the number of lookups made with the given resolver which have found a module
+     * of the given organisation
+     */
+    public synchronized long getHits(String organisation, String resolver) {
+        return getCounters(organisation, resolver)[0];
+    }
+
+    /**
+     * @return the number of lookups made with the given resolver which have not found a 
+     * module of the given organisation
+     */
+    public synchronized long getMisses(String organisation, String resolver) {
+        return getCounters(organisation, resolver)[1];
+    }
+
+    /**
+     * @return the ratio of the lookups made with the given resolver which have found a 
+     * module of the given organisation, -1 if no lookup has been made
+     */
+    public synchronized double getHitRate(String organisation, String resolver) {
+        long[] counters = getCounters(organisation, resolver);
+        long lookups = counters[0] + counters[1];
+        return lookups == 0 ? -1 : (double)counters[0] / lookups;
+    }
+
+    /**
+     * @return the average time in ms of the lookups made with the given resolver for 
+     * modules of the given organisation, -1 if no lookup has been made
+     */
+    public synchronized long getAverageTime(String organisation, String resolver) {
+        long[] counters = getCounters(organisation, resolver);
+        long lookups = counters[0] + counters[1];
+        return lookups == 0 ? -1 : counters[2] / lookups;
+    }
+
+    /**
+     * Saves the statistics if they have changed, keeping only the MAX_REVISIONS
+     * most recently recorded module revisions.
+     * When only the lookup counters have changed, they are saved at most once every 
+     * COUNTERS_SAVE_INTERVAL ms, to avoid writing the statistics after each lookup.
+     */
+    public synchronized void save() {
+        long now = System.currentTimeMillis();
+        if (_modified || _countersModified && now - _lastSave >= COUNTERS_SAVE_INTERVAL) {
+            prune();
+            _props.save();
+            _modified = false;
+            _countersModified = false;
+            _lastSave = now;
+        }
+    }
+
+    private long[] getCounters(String organisation, String resolver) {
+        long[] counters = new long[3];
+        String value = _props.getProperty(RESOLVER_PREFIX+resolver+SEPARATOR+organisation);
+        if (value != null) {
+            String[] parts = value.split("\\|");
+            try {
+                for (int i = 0; i < counters.length && i < parts.length; i++) {
+                    counters[i] = Long.parseLong(parts[i]);
+                }
+            } catch (NumberFormatException ex) {
+                Message.debug("ignoring bad chain statistics for "+resolver+": "+value);
+                counters = new long[3];
+            }
+        }
+        return counters;
+    }
+
+    private List getRevisionEntries() {
+        List entries = new ArrayList();
+        for (Iterator iter = _props.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry)iter.next();
+            if (String.valueOf(entry.getKey()).startsWith(REVISION_PREFIX)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private void prune() {
+        List entries = getRevisionEntries();
+        if (entries.size() <= MAX_REVISIONS) {
+            return;
+        }
+        Collections.sort(entries, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long t1 = getRecordTime((Map.Entry)o1);
+                long t2 = getRecordTime((Map.Entry)o2);
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        for (Iterator iter = entries.subList(0, entries.size() - MAX_REVISIONS).iterator(); iter.hasNext();) {
+            _props.remove(((Map.Entry)iter.next()).getKey());
+        }
+    }
+
+    private static long getRecordTime(Map.Entry entry) {
+        String value = String.valueOf(entry.getValue());
+        try {
+            return Long.parseLong(value.substring(value.indexOf(SEPARATOR) + 1));
+        } catch (NumberFormatException ex) {
+            // bad entry: removed first
+            return 0;
+        }
+    }
+}
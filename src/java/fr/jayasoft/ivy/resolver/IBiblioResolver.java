@@ -6,12 +6,18 @@
 package fr.jayasoft.ivy.resolver;
 
 import java.io.File;
+import java.io.InputStream;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
 import fr.jayasoft.ivy.Artifact;
 import fr.jayasoft.ivy.DefaultArtifact;
 import fr.jayasoft.ivy.DependencyDescriptor;
@@ -20,7 +26,10 @@ import fr.jayasoft.ivy.ModuleRevisionId;
 import fr.jayasoft.ivy.ResolveData;
 import fr.jayasoft.ivy.ResolvedModuleRevision;
 import fr.jayasoft.ivy.report.DownloadReport;
+import fr.jayasoft.ivy.repository.Resource;
 import fr.jayasoft.ivy.util.IvyPatternHelper;
+import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.XMLHelper;
 
 /**
  * IBiblioResolver is a resolver which can be used to resolve dependencies found
@@ -30,12 +39,19 @@ import fr.jayasoft.ivy.util.IvyPatternHelper;
 public class IBiblioResolver extends URLResolver {
     public static final String DEFAULT_PATTERN = "[module]/[type]s/[artifact]-[revision].[ext]";
     public static final String DEFAULT_ROOT = "http://www.ibiblio.org/maven/";
+    public static final String MAVEN_METADATA = "maven-metadata.xml";
+    public static final long DEFAULT_METADATA_TTL = 5 * 60 * 1000;
     private String _root = null;
     private String _pattern = null;
     
     // use poms if m2 compatible is true
     private boolean _usepoms = true;
     
+    // use maven-metadata.xml files to find revisions if m2 compatible is true
+    private boolean _useMavenMetadata = true;
+    private long _metadataTTL = DEFAULT_METADATA_TTL;
+    private Map _metadata = new HashMap(); // Map (String location -> MavenMetadata)
+    
     public IBiblioResolver() {
     }
     
@@ -50,6 +66,111 @@ public class IBiblioResolver extends URLResolver {
         }
     }
     
+    protected ResolvedResource findResourceUsingPattern(ModuleRevisionId mrid, String pattern, Artifact artifact, ResourceMDParser rmdparser, Date date) {
+        if (isM2compatible() && isUseMavenMetadata() && getIvy().getVersionMatcher().isDynamic(mrid)) {
+            String[] revs = getMavenMetadataRevisions(pattern, mrid.getOrganisation(), mrid.getName());
+            if (revs != null) {
+                ResolvedResource[] rress = ResolverHelper.findAll(getRepository(), mrid, pattern, artifact, revs);
+                return findResource(getName(), rress, getLatestStrategy(), getIvy().getVersionMatcher(), rmdparser, mrid, pattern, date);
+            }
+        }
+        return super.findResourceUsingPattern(mrid, pattern, artifact, rmdparser, date);
+    }
+    
+    /**
+     * Returns the revisions listed in the maven-metadata.xml file found in the directory 
+     * containing the revisions of the given module, which is kept for the metadata ttl.
+     * @return the revisions found, or null if there is no such file and the repository
+     * should be listed
+     */
+    private String[] getMavenMetadataRevisions(String pattern, String org, String module) {
+        int index = pattern.indexOf(IvyPatternHelper.getTokenString(IvyPatternHelper.REVISION_KEY));
+        if (index <= 0 || pattern.charAt(index - 1) != '/') {
+            return null;
+        }
+        String location = pattern.substring(0, index);
+        location = IvyPatternHelper.substituteToken(location, IvyPatternHelper.ORGANISATION_KEY, org);
+        location = IvyPatternHelper.substituteToken(location, IvyPatternHelper.MODULE_KEY, module);
+        if (location.indexOf('[') != -1) {
+            return null;
+        }
+        location += MAVEN_METADATA;
+        
+        MavenMetadata metadata;
+        synchronized (_metadata) {
+            metadata = (MavenMetadata)_metadata.get(location);
+        }
+        if (metadata == null || metadata.isExpired()) {
+            metadata = readMavenMetadata(location);
+            synchronized (_metadata) {
+                _metadata.put(location, metadata);
+            }
+        }
+        return metadata.getRevisions();
+    }
+
+    private MavenMetadata readMavenMetadata(String location) {
+        final MavenMetadata metadata = new MavenMetadata(System.currentTimeMillis() + _metadataTTL);
+        try {
+            Resource res = getRepository().getResource(location);
+            if (!res.exists()) {
+                Message.verbose("\t"+getName()+": no "+MAVEN_METADATA+" found at "+location+": revisions will be listed");
+                return metadata;
+            }
+            final List revisions = new ArrayList();
+            InputStream in = res.openStream();
+            try {
+                XMLHelper.parse(in, null, new DefaultHandler() {
+                    private StringBuffer _text = new StringBuffer();
+                    private boolean _versions = false;
+                    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                        _text.setLength(0);
+                        if ("versions".equals(qName)) {
+                            _versions = true;
+                        }
+                    }
+                    public void characters(char[] ch, int start, int length) {
+                        _text.append(ch, start, length);
+                    }
+                    public void endElement(String uri, String localName, String qName) {
+                        if ("versions".equals(qName)) {
+                            _versions = false;
+                        } else if (_versions && "version".equals(qName)) {
+                            revisions.add(_text.toString().trim());
+                        } else if ("lastUpdated".equals(qName)) {
+                            metadata._lastUpdated = _text.toString().trim();
+                        }
+                    }
+                }, null);
+            } finally {
+                in.close();
+            }
+            metadata._revisions = (String[])revisions.toArray(new String[revisions.size()]);
+            Message.verbose("\t"+getName()+": found "+revisions.size()+" revisions in "+location+" last updated "+metadata._lastUpdated);
+        } catch (Exception e) {
+            Message.warn(getName()+": unable to read "+location+": "+e.getMessage()+": revisions will be listed");
+        }
+        return metadata;
+    }
+    
+    private static class MavenMetadata {
+        private long _expiration;
+        private String[] _revisions;
+        private String _lastUpdated;
+        
+        public MavenMetadata(long expiration) {
+            _expiration = expiration;
+        }
+        
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= _expiration;
+        }
+        
+        public String[] getRevisions() {
+            return _revisions;
+        }
+    }
+
     protected void logIvyNotFound(ModuleRevisionId mrid) {
         if (isM2compatible() && isUsepoms()) {
             Artifact artifact = DefaultArtifact.newPomArtifact(mrid, null);
@@ -144,6 +265,16 @@ public class IBiblioResolver extends URLResolver {
     		return new String[0];
     	}
         ensureConfigured(getIvy());
+        if (IvyPatternHelper.REVISION_KEY.equals(token) && isM2compatible() && isUseMavenMetadata()) {
+            String org = (String)otherTokenValues.get(IvyPatternHelper.ORGANISATION_KEY);
+            String module = (String)otherTokenValues.get(IvyPatternHelper.MODULE_KEY);
+            if (org != null && module != null) {
+                String[] revs = getMavenMetadataRevisions(getWholePattern(), org.replace('.', '/'), module);
+                if (revs != null) {
+                    return revs;
+                }
+            }
+        }
     	return super.listTokenValues(token, otherTokenValues);
     }
     public OrganisationEntry[] listOrganisations() {
@@ -196,4 +327,24 @@ public class IBiblioResolver extends URLResolver {
 		_usepoms = usepoms;
 		updateWholePattern();
 	}
+
+    public boolean isUseMavenMetadata() {
+        return _useMavenMetadata;
+    }
+
+    public void setUseMavenMetadata(boolean useMavenMetadata) {
+        _useMavenMetadata = useMavenMetadata;
+    }
+
+    public long getMetadataTTL() {
+        return _metadataTTL;
+    }
+
+    /**
+     * Sets the time in ms during which the maven-metadata.xml files read are kept, 
+     * the absence of a file included.
+     */
+    public void setMetadataTTL(long metadataTTL) {
+        _metadataTTL = metadataTTL;
+    }
 }
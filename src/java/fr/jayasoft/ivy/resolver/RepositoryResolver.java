@@ -7,7 +7,12 @@ package fr.jayasoft.ivy.resolver;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -16,15 +21,24 @@ import java.util.List;
 import java.util.Map;
 
 import fr.jayasoft.ivy.Artifact;
+import fr.jayasoft.ivy.ArtifactOrigin;
 import fr.jayasoft.ivy.DefaultArtifact;
+import fr.jayasoft.ivy.DefaultDependencyDescriptor;
 import fr.jayasoft.ivy.Ivy;
 import fr.jayasoft.ivy.LatestStrategy;
 import fr.jayasoft.ivy.ModuleDescriptor;
 import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.ResolveData;
+import fr.jayasoft.ivy.ResolvedModuleRevision;
 import fr.jayasoft.ivy.report.DownloadReport;
 import fr.jayasoft.ivy.repository.AbstractRepository;
+import fr.jayasoft.ivy.repository.CircuitBreaker;
 import fr.jayasoft.ivy.repository.Repository;
+import fr.jayasoft.ivy.repository.RepositoryIndex;
 import fr.jayasoft.ivy.repository.Resource;
+import fr.jayasoft.ivy.repository.UnreachableRepositoryException;
+import fr.jayasoft.ivy.repository.url.URLRepository;
+import fr.jayasoft.ivy.url.URLHandler.URLInfo;
 import fr.jayasoft.ivy.util.ChecksumHelper;
 import fr.jayasoft.ivy.util.FileUtil;
 import fr.jayasoft.ivy.util.IvyPatternHelper;
@@ -39,6 +53,11 @@ public class RepositoryResolver extends AbstractResourceResolver {
     
     private Repository _repository;
     private Boolean _alwaysCheckExactRevision = null;
+    private String _index;
+    private RepositoryIndex _repositoryIndex;
+    private boolean _indexLoaded = false;
+    private long _indexTtl = 0;
+    private RepositoryIndex _pendingIndex = null; // the artifacts published since the last flushIndex
 
     
     public RepositoryResolver() {
@@ -60,11 +79,82 @@ public class RepositoryResolver extends AbstractResourceResolver {
     }
 
 
+    protected ResolvedResource findResourceUsingPatterns(ModuleRevisionId mrid, List patternList, Artifact artifact, ResourceMDParser rmdparser, Date date) {
+        CircuitBreaker breaker = _repository instanceof AbstractRepository ? ((AbstractRepository)_repository).getCircuitBreaker() : null;
+        if (breaker != null && !breaker.allowRequest()) {
+            Message.verbose("\t"+getName()+": repository unreachable: skipping "+artifact);
+            throw new UnreachableRepositoryException(getName()+": repository unreachable: skipped for "+breaker.getRemainingCoolDown()+"ms");
+        }
+        boolean exact = !getIvy().getVersionMatcher().isDynamic(mrid) || isAlwaysCheckExactRevision();
+        String[] checked = null;
+        if (exact && isFetchDescriptors() && ("ivy".equals(artifact.getType()) || "pom".equals(artifact.getType()))) {
+            // get the descriptor while checking the candidates in order, patterns are then
+            // tried as usual without any new request until the found one
+            try {
+                for (Iterator iter = patternList.iterator(); iter.hasNext();) {
+                    String name = IvyPatternHelper.substitute((String)iter.next(), mrid, artifact);
+                    if (((URLRepository)_repository).fetchResource(name).exists()) {
+                        break;
+                    }
+                }
+            } catch (IOException ex) {
+                Message.debug("\t"+getName()+": impossible to fetch descriptor for "+mrid+": "+ex);
+            }
+        } else if (exact && patternList.size() > 1 && _repository instanceof AbstractRepository) {
+            // check all the candidates at once, patterns are then tried in order as usual
+            checked = new String[patternList.size()];
+            for (int i = 0; i < checked.length; i++) {
+                checked[i] = IvyPatternHelper.substitute((String)patternList.get(i), mrid, artifact);
+            }
+            try {
+                ((AbstractRepository)_repository).getResources(checked);
+            } catch (IOException ex) {
+                Message.debug("\t"+getName()+": impossible to check resources for "+mrid+" at once: "+ex);
+            }
+        }
+        ResolvedResource rres;
+        try {
+            rres = super.findResourceUsingPatterns(mrid, patternList, artifact, rmdparser, date);
+        } finally {
+            if (checked != null) {
+                // what has been checked at once may be stale for later lookups
+                ((AbstractRepository)_repository).releaseResources(checked);
+            }
+        }
+        if (rres != null && !getIvy().getVersionMatcher().isDynamic(mrid)) {
+            RepositoryIndex index = getRepositoryIndex();
+            if (index != null && !index.contains(mrid)) {
+                Message.verbose("\t"+getName()+": "+mrid+" not in index "+_index+": index is stale, listing the repository instead");
+                _repositoryIndex = null;
+            }
+        }
+        return rres;
+    }
+
+    private boolean isFetchDescriptors() {
+        return _repository instanceof URLRepository && ((URLRepository)_repository).isFetchDescriptors();
+    }
+
     protected ResolvedResource findResourceUsingPattern(ModuleRevisionId mrid, String pattern, Artifact artifact, ResourceMDParser rmdparser, Date date) {
-        return findResourceUsingPattern(getName(), getRepository(), getLatestStrategy(), getIvy().getVersionMatcher(), rmdparser, mrid, pattern, artifact, date, isAlwaysCheckExactRevision());
+        RepositoryIndex index = getRepositoryIndex();
+        ResolvedResource rres = findResourceUsingPattern(getName(), getRepository(), index, getLatestStrategy(), getIvy().getVersionMatcher(), rmdparser, mrid, pattern, artifact, date, isAlwaysCheckExactRevision());
+        if (rres == null && index != null && getIvy().getVersionMatcher().isDynamic(mrid)) {
+            // the revisions in the index may have been removed since it has been made
+            Message.debug("\t"+getName()+": no indexed revision found for "+mrid+": listing the repository");
+            rres = findResourceUsingPattern(getName(), getRepository(), null, getLatestStrategy(), getIvy().getVersionMatcher(), rmdparser, mrid, pattern, artifact, date, isAlwaysCheckExactRevision());
+        }
+        return rres;
     }
     
     public static ResolvedResource findResourceUsingPattern(String name, Repository repository, LatestStrategy strategy, VersionMatcher versionMatcher, ResourceMDParser rmdparser, ModuleRevisionId mrid, String pattern, Artifact artifact, Date date, boolean alwaysCheckExactRevision) {
+        return findResourceUsingPattern(name, repository, null, strategy, versionMatcher, rmdparser, mrid, pattern, artifact, date, alwaysCheckExactRevision);
+    }
+    
+    /**
+     * Same as above, the revisions of the module being taken from the given index instead of
+     * listing the repository if an index is given.
+     */
+    public static ResolvedResource findResourceUsingPattern(String name, Repository repository, RepositoryIndex index, LatestStrategy strategy, VersionMatcher versionMatcher, ResourceMDParser rmdparser, ModuleRevisionId mrid, String pattern, Artifact artifact, Date date, boolean alwaysCheckExactRevision) {
         try {
             if (!versionMatcher.isDynamic(mrid) || alwaysCheckExactRevision) {
                 String resourceName = IvyPatternHelper.substitute(pattern, mrid, artifact);
@@ -75,13 +165,13 @@ public class RepositoryResolver extends AbstractResourceResolver {
                 	String revision = pattern.indexOf(IvyPatternHelper.REVISION_KEY) == -1? "working@"+name : mrid.getRevision(); 
                     return new ResolvedResource(res, revision);
                 } else if (versionMatcher.isDynamic(mrid)) {
-                    return findDynamicResourceUsingPattern(name, repository, strategy, versionMatcher, rmdparser, mrid, pattern, artifact, date);
+                    return findDynamicResourceUsingPattern(name, repository, index, strategy, versionMatcher, rmdparser, mrid, pattern, artifact, date);
                 } else {
                     Message.debug("\t"+name+": resource not reachable for "+mrid+": res="+res);
                     return null;
                 }
             } else {
-                return findDynamicResourceUsingPattern(name, repository, strategy, versionMatcher, rmdparser, mrid, pattern, artifact, date);
+                return findDynamicResourceUsingPattern(name, repository, index, strategy, versionMatcher, rmdparser, mrid, pattern, artifact, date);
             }
         } catch (IOException ex) {
         	throw new RuntimeException(name+": unable to get resource for "+mrid+": res="+IvyPatternHelper.substitute(pattern, mrid, artifact)+": "+ex, ex);
@@ -91,6 +181,7 @@ public class RepositoryResolver extends AbstractResourceResolver {
     private static ResolvedResource findDynamicResourceUsingPattern(
     		String name, 
     		Repository repository, 
+    		RepositoryIndex index, 
     		LatestStrategy strategy, 
     		VersionMatcher versionMatcher, 
     		ResourceMDParser rmdparser,
@@ -98,7 +189,23 @@ public class RepositoryResolver extends AbstractResourceResolver {
     		String pattern, 
     		Artifact artifact, 
     		Date date) {
-        ResolvedResource[] rress = ResolverHelper.findAll(repository, mrid, pattern, artifact);
+        ResolvedResource[] rress = index == null ? ResolverHelper.findAll(repository, mrid, pattern, artifact) : findAll(index, repository, mrid, pattern, artifact);
+        return findResource(name, rress, strategy, versionMatcher, rmdparser, mrid, pattern, date);
+    }
+
+    /**
+     * Selects among the given resources the one matching the given dynamic revision.
+     * @param rress the resources of the module revisions found, null if none could be listed
+     */
+    protected static ResolvedResource findResource(
+            String name, 
+            ResolvedResource[] rress, 
+            LatestStrategy strategy, 
+            VersionMatcher versionMatcher, 
+            ResourceMDParser rmdparser,
+            ModuleRevisionId mrid, 
+            String pattern, 
+            Date date) {
         if (rress == null) {
             Message.debug("\t"+name+": unable to list resources for "+mrid+": pattern="+pattern);
             return null;
@@ -143,6 +250,79 @@ public class RepositoryResolver extends AbstractResourceResolver {
         }
     }
 
+    /**
+     * Same as ResolverHelper.findAll, the revisions being taken from the given index.
+     * The repository is listed if the module isn't in the index.
+     */
+    private static ResolvedResource[] findAll(RepositoryIndex index, Repository repository, ModuleRevisionId mrid, String pattern, Artifact artifact) {
+        String partiallyResolvedPattern = IvyPatternHelper.substitute(pattern, ModuleRevisionId.newInstance(mrid, IvyPatternHelper.getTokenString(IvyPatternHelper.REVISION_KEY)), artifact);
+        RepositoryIndex.Entry[] entries = index.getRevisions(mrid.getOrganisation(), mrid.getName());
+        if (entries.length == 0 || partiallyResolvedPattern.indexOf(IvyPatternHelper.getTokenString(IvyPatternHelper.REVISION_KEY)) == -1) {
+            return ResolverHelper.findAll(repository, mrid, pattern, artifact);
+        }
+        boolean descriptor = "ivy".equals(artifact.getType()) || "pom".equals(artifact.getType());
+        List ret = new ArrayList(entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            if (descriptor ? !entries[i].hasDescriptor() : !entries[i].hasArtifact(artifact.getName(), artifact.getType(), artifact.getExt())) {
+                continue;
+            }
+            String revision = entries[i].getModuleRevisionId().getRevision();
+            String rres = IvyPatternHelper.substituteToken(partiallyResolvedPattern, IvyPatternHelper.REVISION_KEY, revision);
+            try {
+                ret.add(new ResolvedResource(new IndexedResource(repository.getResource(rres), entries[i].getPublication()), revision));
+            } catch (IOException e) {
+                Message.warn("impossible to get resource from name listed by index: "+rres+": "+e.getMessage());
+            }
+        }
+        Message.debug("\tfound indexed resources: "+ret);
+        return (ResolvedResource[])ret.toArray(new ResolvedResource[ret.size()]);
+    }
+
+    /**
+     * A resource whose last modified date is the publication date given by the index.
+     */
+    private static class IndexedResource implements Resource {
+        private Resource _resource;
+        private long _publication;
+
+        public IndexedResource(Resource resource, long publication) {
+            _resource = resource;
+            _publication = publication;
+        }
+
+        public String getName() {
+            return _resource.getName();
+        }
+
+        public long getLastModified() {
+            return _publication;
+        }
+
+        public long getContentLength() {
+            return _resource.getContentLength();
+        }
+
+        public boolean exists() {
+            return _resource.exists();
+        }
+
+        public boolean isLocal() {
+            return _resource.isLocal();
+        }
+
+        public Resource clone(String cloneName) {
+            return _resource.clone(cloneName);
+        }
+
+        public InputStream openStream() throws IOException {
+            return _resource.openStream();
+        }
+
+        public String toString() {
+            return _resource.toString();
+        }
+    }
+
     protected long get(Resource resource, File dest) throws IOException {
         Message.verbose("\t"+getName()+": downloading "+resource.getName());
         Message.debug("\t\tto "+dest);
@@ -153,6 +333,33 @@ public class RepositoryResolver extends AbstractResourceResolver {
         return dest.length();
     }
 
+    protected long resume(Resource resource, File dest, long lastModified) throws IOException {
+        if (!(_repository instanceof AbstractRepository)) {
+            return super.resume(resource, dest, lastModified);
+        }
+        Message.verbose("\t"+getName()+": resuming download of "+resource.getName());
+        Message.debug("\t\tto "+dest);
+        ((AbstractRepository)_repository).resume(resource.getName(), dest, lastModified);
+        return dest.length();
+    }
+
+    protected long getIfModified(Resource resource, File dest, ArtifactOrigin cached, ArtifactOrigin origin) throws IOException {
+        if (!(_repository instanceof URLRepository)) {
+            return super.getIfModified(resource, dest, cached, origin);
+        }
+        Message.verbose("\t"+getName()+": downloading "+resource.getName()+(cached == null ? "" : " if modified"));
+        Message.debug("\t\tto "+dest);
+        URLInfo info = ((URLRepository)_repository).get(resource.getName(), dest, 
+                cached == null ? 0 : cached.getLastModified(), 
+                cached == null ? null : cached.getETag());
+        if (info == null) {
+            return -1;
+        }
+        origin.setLastModified(info.getLastModified());
+        origin.setETag(info.getETag());
+        return dest.length();
+    }
+
     public void publish(Artifact artifact, File src, boolean overwrite) throws IOException {
         String destPattern;
         if ("ivy".equals(artifact.getType()) && !getIvyPatterns().isEmpty()) {
@@ -174,6 +381,221 @@ public class RepositoryResolver extends AbstractResourceResolver {
         
         put(artifact, src, dest, overwrite);
         Message.info("\tpublished "+artifact.getName()+" to "+hidePassword(dest));
+        if (_index != null) {
+            addToIndex(artifact);
+        }
+    }
+
+    /**
+     * Records the given published artifact, to add it to the index of the repository on
+     * the next call to flushIndex.
+     */
+    private synchronized void addToIndex(Artifact artifact) {
+        if (_pendingIndex == null) {
+            _pendingIndex = new RepositoryIndex();
+        }
+        ModuleRevisionId mrid = artifact.getModuleRevisionId();
+        RepositoryIndex.Entry entry = _pendingIndex.add(mrid, artifact.getPublicationDate() == null ? System.currentTimeMillis() : artifact.getPublicationDate().getTime());
+        if ("ivy".equals(artifact.getType())) {
+            entry.setDescriptor(true);
+        } else {
+            entry.addArtifact(artifact.getName(), artifact.getType(), artifact.getExt());
+        }
+    }
+
+    /**
+     * Adds the artifacts published since the last call to the index of the repository, 
+     * with a single update of the index. Ivy calls it once all the artifacts of a module 
+     * have been published.
+     * 
+     * The index is read, updated and written back without any lock on the repository: 
+     * when several processes publish at the same time, the revisions published by one of 
+     * them may be missing from the index. A missing revision is detected as soon as it is
+     * resolved as a static revision, and the index then isn't used anymore by the resolver;
+     * the index ttl bounds the time during which dynamic revisions may be resolved without
+     * it. Running makeindex adds the missing revisions back.
+     * 
+     * @return the number of module revisions updated in the index
+     */
+    public synchronized int flushIndex() throws IOException {
+        if (_pendingIndex == null) {
+            return 0;
+        }
+        RepositoryIndex pending = _pendingIndex;
+        _pendingIndex = null;
+        // the index is read as late as possible, to keep the updates of concurrent publishers
+        RepositoryIndex index = readIndex();
+        if (index == null) {
+            index = new RepositoryIndex();
+        }
+        index.addAll(pending);
+        writeIndex(index, getIndexArtifact(), null);
+        _repositoryIndex = index;
+        _indexLoaded = true;
+        Message.verbose("\t"+getName()+": "+pending.size()+" module revisions updated in index "+_index);
+        return pending.size();
+    }
+
+    /**
+     * Creates the index of the repository, or updates it with the module revisions not indexed 
+     * yet. The repository is listed to find the module revisions, and the module descriptor of
+     * each new revision is parsed to find its artifacts.
+     * 
+     * @param dest the file in which the index should be written, null to put it in the repository
+     * @return the number of module revisions added to the index
+     */
+    public synchronized int makeIndex(File dest) throws IOException {
+        if (_index == null) {
+            throw new IllegalStateException("no index defined for "+getName());
+        }
+        RepositoryIndex index = dest != null && dest.exists() ? readIndex(dest) : readIndex();
+        if (index == null) {
+            index = new RepositoryIndex();
+        }
+        // list the repository itself
+        _repositoryIndex = null;
+        _indexLoaded = true;
+        int added = 0;
+        try {
+            ResolveData data = new ResolveData(getIvy(), getIvy().getDefaultCache(), null, null, false);
+            OrganisationEntry[] orgs = listOrganisations();
+            for (int i = 0; i < orgs.length; i++) {
+                ModuleEntry[] mods = listModules(orgs[i]);
+                for (int j = 0; j < mods.length; j++) {
+                    RevisionEntry[] revs = listRevisions(mods[j]);
+                    for (int k = 0; k < revs.length; k++) {
+                        ModuleRevisionId mrid = ModuleRevisionId.newInstance(orgs[i].getOrganisation(), mods[j].getModule(), revs[k].getRevision());
+                        if (index.contains(mrid)) {
+                            continue;
+                        }
+                        ResolvedModuleRevision rmr;
+                        try {
+                            rmr = getDependency(new DefaultDependencyDescriptor(mrid, false), data);
+                        } catch (Exception ex) {
+                            Message.warn("\t"+getName()+": impossible to index "+mrid+": "+ex.getMessage());
+                            continue;
+                        }
+                        if (rmr == null) {
+                            continue;
+                        }
+                        RepositoryIndex.Entry entry = index.add(mrid, rmr.getPublicationDate() == null ? 0 : rmr.getPublicationDate().getTime());
+                        entry.setDescriptor(!rmr.getDescriptor().isDefault());
+                        Artifact[] artifacts = rmr.getDescriptor().getAllArtifacts();
+                        for (int l = 0; l < artifacts.length; l++) {
+                            entry.addArtifact(artifacts[l].getName(), artifacts[l].getType(), artifacts[l].getExt());
+                        }
+                        added++;
+                    }
+                }
+            }
+        } finally {
+            _indexLoaded = false;
+        }
+        // the whole repository has been checked: the index is up to date
+        index.setLastModified(System.currentTimeMillis());
+        writeIndex(index, getIndexArtifact(), dest);
+        Message.info("\t"+getName()+": "+added+" module revisions added to index "+(dest == null ? _index : dest.getPath())+" ("+index.size()+" indexed)");
+        return added;
+    }
+
+    /**
+     * @return the artifact used to put the index in the repository
+     */
+    private Artifact getIndexArtifact() {
+        return new DefaultArtifact(ModuleRevisionId.newInstance("ivy", "index", "working@"+getName()), new Date(), "ivy-index", "index", "txt");
+    }
+
+    private void writeIndex(RepositoryIndex index, Artifact artifact, File dest) throws IOException {
+        File file = dest == null ? File.createTempFile("ivyindex", ".txt") : dest;
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                index.write(out);
+            } finally {
+                out.close();
+            }
+            if (dest == null) {
+                _repository.put(artifact, file, _index, true);
+            }
+        } finally {
+            if (dest == null) {
+                file.delete();
+            }
+        }
+    }
+
+    private RepositoryIndex readIndex(File file) throws IOException {
+        return RepositoryIndex.read(new FileInputStream(file));
+    }
+
+    /**
+     * @return the index found in the repository, null if there is none
+     */
+    private RepositoryIndex readIndex() throws IOException {
+        Resource res = _repository.getResource(_index);
+        if (!res.exists()) {
+            return null;
+        }
+        return RepositoryIndex.read(res.openStream());
+    }
+
+    /**
+     * @return the index of the repository, null if the repository has no index or if it 
+     * is stale
+     */
+    protected synchronized RepositoryIndex getRepositoryIndex() {
+        if (_indexLoaded && _repositoryIndex != null && isExpired(_repositoryIndex)) {
+            // the index may have been updated since it has been read
+            _indexLoaded = false;
+        }
+        if (_index != null && !_indexLoaded) {
+            _indexLoaded = true;
+            try {
+                _repositoryIndex = readIndex();
+                if (_repositoryIndex == null) {
+                    Message.verbose("\t"+getName()+": no index found at "+_index+": listing the repository instead");
+                } else if (isExpired(_repositoryIndex)) {
+                    Message.verbose("\t"+getName()+": index "+_index+" not updated for more than "+_indexTtl+"ms: listing the repository instead");
+                    _repositoryIndex = null;
+                } else {
+                    Message.verbose("\t"+getName()+": using index "+_index+" ("+_repositoryIndex.size()+" module revisions)");
+                }
+            } catch (IOException ex) {
+                Message.warn("\t"+getName()+": impossible to read index "+_index+": "+ex.getMessage());
+            }
+        }
+        return _repositoryIndex;
+    }
+
+    private boolean isExpired(RepositoryIndex index) {
+        return _indexTtl > 0 && System.currentTimeMillis() - index.getLastModified() > _indexTtl;
+    }
+
+    public String getIndex() {
+        return _index;
+    }
+
+    /**
+     * Sets the name in the repository of the index to use instead of listing the repository, 
+     * and to update when publishing.
+     */
+    public void setIndex(String index) {
+        _index = index;
+        _repositoryIndex = null;
+        _indexLoaded = false;
+    }
+
+    public long getIndexTtl() {
+        return _indexTtl;
+    }
+
+    /**
+     * Sets the time in ms after which an index which has not been updated, by a publication
+     * or makeindex, is not trusted anymore, the repository being listed instead. 0, the
+     * default, means that the index never expires.
+     */
+    public synchronized void setIndexTtl(long indexTtl) {
+        _indexTtl = indexTtl;
     }
 
 	private void put(Artifact artifact, File src, String dest, boolean overwrite) throws IOException {
@@ -206,6 +628,10 @@ public class RepositoryResolver extends AbstractResourceResolver {
     }    
 
     protected void findTokenValues(Collection names, List patterns, Map tokenValues, String token) {
+        RepositoryIndex index = getRepositoryIndex();
+        if (index != null && findIndexedTokenValues(index, names, tokenValues, token)) {
+            return;
+        }
         for (Iterator iter = patterns.iterator(); iter.hasNext();) {
             String pattern = (String)iter.next();
             String partiallyResolvedPattern = IvyPatternHelper.substituteTokens(pattern, tokenValues);
@@ -216,6 +642,40 @@ public class RepositoryResolver extends AbstractResourceResolver {
         }
     }
     
+    /**
+     * Finds the values of the given token in the index, when the index can give them.
+     * @return true if the values have been found in the index, false if the repository 
+     * should be listed
+     */
+    private boolean findIndexedTokenValues(RepositoryIndex index, Collection names, Map tokenValues, String token) {
+        for (Iterator iter = tokenValues.keySet().iterator(); iter.hasNext();) {
+            String key = (String)iter.next();
+            if (!IvyPatternHelper.ORGANISATION_KEY.equals(key)
+                    && !IvyPatternHelper.MODULE_KEY.equals(key)
+                    && !IvyPatternHelper.ARTIFACT_KEY.equals(key)
+                    && !IvyPatternHelper.TYPE_KEY.equals(key)
+                    && !IvyPatternHelper.EXT_KEY.equals(key)
+                    && tokenValues.get(key) != null) {
+                return false;
+            }
+        }
+        String org = (String)tokenValues.get(IvyPatternHelper.ORGANISATION_KEY);
+        String module = (String)tokenValues.get(IvyPatternHelper.MODULE_KEY);
+        if (IvyPatternHelper.ORGANISATION_KEY.equals(token)) {
+            names.addAll(Arrays.asList(index.getOrganisations()));
+        } else if (IvyPatternHelper.MODULE_KEY.equals(token) && org != null) {
+            names.addAll(Arrays.asList(index.getModules(org)));
+        } else if (IvyPatternHelper.REVISION_KEY.equals(token) && org != null && module != null) {
+            RepositoryIndex.Entry[] entries = index.getRevisions(org, module);
+            for (int i = 0; i < entries.length; i++) {
+                names.add(entries[i].getModuleRevisionId().getRevision());
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
     public String getTypeName() {
         return "repository";
     }
@@ -233,6 +693,25 @@ public class RepositoryResolver extends AbstractResourceResolver {
         }
     }
 
+    /**
+     * Sets the number of consecutive connection failures after which the repository is 
+     * skipped for the cool-down period, 0 to never skip it.
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (_repository instanceof AbstractRepository) {
+            ((AbstractRepository)_repository).setFailureThreshold(failureThreshold);
+        }
+    }
+
+    /**
+     * Sets the time in ms during which the repository is skipped once unreachable.
+     */
+    public void setCoolDown(long coolDown) {
+        if (_repository instanceof AbstractRepository) {
+            ((AbstractRepository)_repository).setCoolDown(coolDown);
+        }
+    }
+
     public boolean isAlwaysCheckExactRevision() {
         return _alwaysCheckExactRevision == null ? true : _alwaysCheckExactRevision.booleanValue();
     }
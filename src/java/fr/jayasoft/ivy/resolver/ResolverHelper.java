@@ -115,19 +115,7 @@ public class ResolverHelper {
         String[] revs = listTokenValues(rep, partiallyResolvedPattern, IvyPatternHelper.REVISION_KEY);
         if (revs != null) {
             Message.debug("\tfound revs: "+Arrays.asList(revs));
-            List ret = new ArrayList(revs.length);
-            for (int i = 0; i < revs.length; i++) {
-            	String rres = IvyPatternHelper.substituteToken(partiallyResolvedPattern, IvyPatternHelper.REVISION_KEY, revs[i]);
-                try {
-					ret.add(new ResolvedResource(rep.getResource(rres), revs[i]));
-				} catch (IOException e) {
-					Message.warn("impossible to get resource from name listed by repository: "+rres+": "+e.getMessage());
-				}
-            }
-            if (revs.length != ret.size()) {
-                Message.debug("\tfound resolved res: "+ret);
-            }
-            return (ResolvedResource[])ret.toArray(new ResolvedResource[ret.size()]);
+            return findAll(rep, mrid, pattern, artifact, revs);
         } else if (partiallyResolvedPattern.indexOf("["+IvyPatternHelper.REVISION_KEY+"]") == -1) {
             // the partially resolved pattern is completely resolved, check the resource
             try {
@@ -144,6 +132,26 @@ public class ResolverHelper {
         return null;
     }
 
+    /**
+     * Same as above, the revisions of the module being given instead of listed.
+     */
+    public static ResolvedResource[] findAll(Repository rep, ModuleRevisionId mrid, String pattern, Artifact artifact, String[] revs) {
+        String partiallyResolvedPattern = IvyPatternHelper.substitute(pattern, ModuleRevisionId.newInstance(mrid, IvyPatternHelper.getTokenString(IvyPatternHelper.REVISION_KEY)), artifact);
+        List ret = new ArrayList(revs.length);
+        for (int i = 0; i < revs.length; i++) {
+        	String rres = IvyPatternHelper.substituteToken(partiallyResolvedPattern, IvyPatternHelper.REVISION_KEY, revs[i]);
+            try {
+				ret.add(new ResolvedResource(rep.getResource(rres), revs[i]));
+			} catch (IOException e) {
+				Message.warn("impossible to get resource from name listed by repository: "+rres+": "+e.getMessage());
+			}
+        }
+        if (revs.length != ret.size()) {
+            Message.debug("\tfound resolved res: "+ret);
+        }
+        return (ResolvedResource[])ret.toArray(new ResolvedResource[ret.size()]);
+    }
+
 //    public static ResolvedResource[] findAll(Repository rep, ModuleRevisionId mrid, String pattern, Artifact artifact, VersionMatcher versionMatcher, ResourceMDParser mdParser) {
 //        // substitute all but revision
 //        String partiallyResolvedPattern = IvyPatternHelper.substitute(pattern, new ModuleRevisionId(mrid.getModuleId(), IvyPatternHelper.getTokenString(IvyPatternHelper.REVISION_KEY), mrid.getExtraAttributes()), artifact);
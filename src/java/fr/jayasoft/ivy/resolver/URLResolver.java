@@ -15,6 +15,25 @@ public class URLResolver extends RepositoryResolver {
     public URLResolver() {
         setRepository(new URLRepository());
     }
+    /**
+     * When true, module descriptors are downloaded by the request checking their existence,
+     * instead of being checked first and then downloaded.
+     */
+    public void setFetchdescriptors(boolean fetchDescriptors) {
+        ((URLRepository)getRepository()).setFetchDescriptors(fetchDescriptors);
+    }
+    /**
+     * Timeout in ms used to check the existence of resources, 0 to use the url handler default
+     */
+    public void setTimeout(int timeout) {
+        ((URLRepository)getRepository()).setTimeout(timeout);
+    }
+    /**
+     * When true, slow resource checks are sent again, see HedgedChecker
+     */
+    public void setHedged(boolean hedged) {
+        ((URLRepository)getRepository()).setHedged(hedged);
+    }
     public String getTypeName() {
         return "url";
     }
@@ -52,4 +52,10 @@ public class VsftpResolver extends RepositoryResolver {
 	public void setReadTimeout(long readTimeout) {
 		getVsftpRepository().setReadTimeout(readTimeout);
 	}
+	public void setPipelined(boolean pipelined) {
+		getVsftpRepository().setPipelined(pipelined);
+	}
+	public void setMaxConnections(int maxConnections) {
+		getVsftpRepository().setMaxConnections(maxConnections);
+	}
 }
@@ -0,0 +1,273 @@
+package fr.jayasoft.ivy.tools.analyser;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import fr.jayasoft.ivy.DefaultDependencyDescriptor;
+import fr.jayasoft.ivy.DefaultModuleDescriptor;
+import fr.jayasoft.ivy.ModuleDescriptor;
+import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.WorkerPool;
+
+/**
+ * A dependency analyser reading the class files of the jars itself, without any external tool.
+ *
+ * A jar depends on another one when one of its classes refers to a class defined in the other
+ * jar, the references being read in the constant pool and member descriptors of the class files.
+ * When a class is defined in several jars, the first of the analysed modules defining it is used.
+ * Jars are read in parallel.
+ */
+public class BytecodeDependencyAnalyser implements DependencyAnalyser {
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private int _threads;
+
+	public BytecodeDependencyAnalyser() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public BytecodeDependencyAnalyser(int threads) {
+		_threads = Math.max(1, threads);
+	}
+
+	public ModuleDescriptor[] analyze(JarModule[] modules) {
+		JarClasses[] classes = readJars(modules);
+
+		Map index = new HashMap(); // Map (String class -> JarModule)
+		for (int i = 0; i < modules.length; i++) {
+			for (Iterator iter = classes[i].getDefined().iterator(); iter.hasNext();) {
+				String name = (String)iter.next();
+				if (!index.containsKey(name)) {
+					index.put(name, modules[i]);
+				}
+			}
+		}
+		Message.verbose("indexed "+index.size()+" classes in "+modules.length+" jars");
+
+		ModuleDescriptor[] mds = new ModuleDescriptor[modules.length];
+		for (int i = 0; i < modules.length; i++) {
+			JarModule module = modules[i];
+			DefaultModuleDescriptor md = DefaultModuleDescriptor.newBasicInstance(module.getMrid(), new Date(module.getJar().lastModified()));
+			Set dependencies = new HashSet();
+			for (Iterator iter = classes[i].getReferenced().iterator(); iter.hasNext();) {
+				JarModule dependency = (JarModule)index.get(iter.next());
+				if (dependency == null
+						|| module.getMrid().getModuleId().equals(dependency.getMrid().getModuleId())
+						|| !dependencies.add(dependency.getMrid())) {
+					continue;
+				}
+				Message.verbose(module.getMrid() + " depends on "  + dependency.getMrid());
+
+				DefaultDependencyDescriptor dd = new DefaultDependencyDescriptor(dependency.getMrid(), false);
+				dd.addDependencyConfiguration(ModuleDescriptor.DEFAULT_CONFIGURATION, ModuleDescriptor.DEFAULT_CONFIGURATION);
+				md.addDependency(dd);
+			}
+			mds[i] = md;
+		}
+		return mds;
+	}
+
+	/**
+	 * Reads the classes of the given jars with up to the configured number of threads,
+	 * each reading one jar at a time.
+	 */
+	private JarClasses[] readJars(final JarModule[] modules) {
+		final JarClasses[] classes = new JarClasses[modules.length];
+		Runnable[] tasks = new Runnable[modules.length];
+		for (int i = 0; i < modules.length; i++) {
+			final int index = i;
+			tasks[i] = new Runnable() {
+				public void run() {
+					JarClasses jarClasses = readJar(modules[index].getJar());
+					synchronized (classes) {
+						classes[index] = jarClasses;
+					}
+				}
+			};
+		}
+		if (!WorkerPool.getDefault().runAll(tasks, _threads)) {
+			Message.warn("jar analysis interrupted: dependencies of unread jars are ignored");
+		}
+		synchronized (classes) {
+			for (int i = 0; i < classes.length; i++) {
+				if (classes[i] == null) {
+					// the read failed with an unexpected exception, or has been skipped
+					Message.warn("unable to analyse "+modules[i].getJar());
+					classes[i] = new JarClasses();
+				}
+			}
+		}
+		return classes;
+	}
+
+	static JarClasses readJar(File jar) {
+		JarClasses classes = new JarClasses();
+		ZipFile zip = null;
+		try {
+			zip = new ZipFile(jar);
+			for (Enumeration entries = zip.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = (ZipEntry)entries.nextElement();
+				String name = entry.getName();
+				if (entry.isDirectory() || !name.endsWith(".class")) {
+					continue;
+				}
+				classes.getDefined().add(name.substring(0, name.length() - ".class".length()));
+				DataInputStream in = new DataInputStream(new BufferedInputStream(zip.getInputStream(entry)));
+				try {
+					readClass(in, classes.getReferenced());
+				} catch (IOException e) {
+					Message.warn("unable to analyse "+name+" in "+jar+": "+e.getMessage());
+				} catch (RuntimeException e) {
+					Message.warn("unable to analyse "+name+" in "+jar+": bad class file: "+e);
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException e) {
+			Message.warn("unable to analyse "+jar+": "+e.getMessage());
+		} finally {
+			if (zip != null) {
+				try {
+					zip.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return classes;
+	}
+
+	/**
+	 * Adds to the given set the internal names of the classes referenced by the given class file.
+	 */
+	static void readClass(DataInputStream in, Set referenced) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a class file");
+		}
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+
+		int count = in.readUnsignedShort();
+		String[] utf8 = new String[count];
+		List classes = new ArrayList(); // List (Integer utf8 index)
+		List descriptors = new ArrayList(); // List (Integer utf8 index)
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+				case 1: // utf8
+					utf8[i] = in.readUTF();
+					break;
+				case 7: // class
+					classes.add(new Integer(in.readUnsignedShort()));
+					break;
+				case 12: // name and type
+					in.readUnsignedShort();
+					descriptors.add(new Integer(in.readUnsignedShort()));
+					break;
+				case 16: // method type
+					descriptors.add(new Integer(in.readUnsignedShort()));
+					break;
+				case 8: // string
+				case 19: // module
+				case 20: // package
+					skip(in, 2);
+					break;
+				case 15: // method handle
+					skip(in, 3);
+					break;
+				case 3: // integer
+				case 4: // float
+				case 9: // field ref
+				case 10: // method ref
+				case 11: // interface method ref
+				case 17: // dynamic
+				case 18: // invoke dynamic
+					skip(in, 4);
+					break;
+				case 5: // long
+				case 6: // double
+					skip(in, 8);
+					i++; // takes two entries
+					break;
+				default:
+					throw new IOException("unknown constant pool tag "+tag);
+			}
+		}
+		for (Iterator iter = classes.iterator(); iter.hasNext();) {
+			String name = utf8[((Integer)iter.next()).intValue()];
+			if (name.startsWith("[")) {
+				addDescriptorClasses(name, referenced);
+			} else {
+				referenced.add(name);
+			}
+		}
+		for (Iterator iter = descriptors.iterator(); iter.hasNext();) {
+			addDescriptorClasses(utf8[((Integer)iter.next()).intValue()], referenced);
+		}
+
+		skip(in, 6); // access flags, this class, super class
+		skip(in, 2 * in.readUnsignedShort()); // interfaces
+		for (int members = 0; members < 2; members++) { // fields then methods
+			int nb = in.readUnsignedShort();
+			for (int i = 0; i < nb; i++) {
+				skip(in, 4); // access flags, name
+				addDescriptorClasses(utf8[in.readUnsignedShort()], referenced);
+				int attributes = in.readUnsignedShort();
+				for (int j = 0; j < attributes; j++) {
+					skip(in, 2);
+					skip(in, in.readInt());
+				}
+			}
+		}
+	}
+
+	private static void addDescriptorClasses(String descriptor, Set referenced) {
+		for (int i = 0; i < descriptor.length(); i++) {
+			if (descriptor.charAt(i) == 'L') {
+				int end = descriptor.indexOf(';', i);
+				if (end == -1) {
+					return;
+				}
+				referenced.add(descriptor.substring(i + 1, end));
+				i = end;
+			}
+		}
+	}
+
+	private static void skip(DataInputStream in, int n) throws IOException {
+		while (n > 0) {
+			int skipped = in.skipBytes(n);
+			if (skipped <= 0) {
+				in.readByte(); // throws EOFException at the end of the stream
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	static class JarClasses {
+		private Set _defined = new HashSet(); // Set (String internal class name)
+		private Set _referenced = new TreeSet(); // Set (String internal class name)
+
+		public Set getDefined() {
+			return _defined;
+		}
+
+		public Set getReferenced() {
+			return _referenced;
+		}
+	}
+}
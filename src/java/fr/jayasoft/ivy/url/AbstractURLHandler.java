@@ -6,9 +6,86 @@
  */
 package fr.jayasoft.ivy.url;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import fr.jayasoft.ivy.util.CopyProgressListener;
+import fr.jayasoft.ivy.util.Message;
+
+public abstract class AbstractURLHandler implements ExtendedURLHandler {
+    /**
+     * Content encodings accepted in responses to requests getting the content of urls
+     */
+    protected static final String ACCEPTED_ENCODINGS = "gzip,deflate";
+    
+    /**
+     * Maximum number of urls checked at the same time by getURLInfo(URL[], int)
+     */
+    public static final int MAX_CONCURRENT_CHECKS = 8;
+    
+
+    /**
+     * @return the given date formatted as expected in http headers
+     */
+    protected static String formatHttpDate(long date) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(date));
+    }
+    
+
+    /**
+     * Tells if the content of the given url, received with the given content encoding, 
+     * must be decoded.
+     * Compressed archives are never decoded: some servers give their own compression as 
+     * their content encoding, while the archive itself is what has to be downloaded.
+     */
+    protected static boolean isDecodingRequired(URL url, String encoding) {
+        if (encoding == null) {
+            return false;
+        }
+        encoding = encoding.trim().toLowerCase(Locale.US);
+        if (!"gzip".equals(encoding) && !"x-gzip".equals(encoding) && !"deflate".equals(encoding)) {
+            return false;
+        }
+        String path = url.getPath().toLowerCase(Locale.US);
+        return !path.endsWith(".gz") && !path.endsWith(".tgz");
+    }
+
+    /**
+     * @return a stream decoding the given content of the url, received with the given
+     * content encoding, or the given stream itself if no decoding is required
+     */
+    protected static InputStream getDecodedStream(URL url, String encoding, InputStream in) throws IOException {
+        if (!isDecodingRequired(url, encoding)) {
+            return in;
+        }
+        Message.debug("decoding "+encoding+" content of "+url);
+        if ("deflate".equals(encoding.trim().toLowerCase(Locale.US))) {
+            // some servers send raw deflate data, without the zlib header
+            BufferedInputStream buffered = new BufferedInputStream(in);
+            buffered.mark(2);
+            int cmf = buffered.read();
+            int flg = buffered.read();
+            buffered.reset();
+            boolean zlib = flg != -1 && (cmf & 0x0f) == 8 && ((cmf << 8) + flg) % 31 == 0;
+            return zlib ? new InflaterInputStream(buffered) : new InflaterInputStream(buffered, new Inflater(true));
+        } else {
+            return new GZIPInputStream(in);
+        }
+    }
 
-public abstract class AbstractURLHandler implements URLHandler {
     public boolean isReachable(URL url) {
         return getURLInfo(url).isReachable();
     }
@@ -28,4 +105,20 @@ public abstract class AbstractURLHandler implements URLHandler {
     public long getLastModified(URL url, int timeout) {
         return getURLInfo(url, timeout).getLastModified();        
     }
+    
+    public URLInfo[] getURLInfo(URL[] urls, int timeout) {
+        return URLHandlerHelper.checkAll(this, urls, timeout);
+    }
+    
+    public URLInfo fetch(URL url, OutputStream content) {
+        return URLHandlerHelper.getAndCheck(this, url, content);
+    }
+    
+    public URLInfo download(URL src, File dest, CopyProgressListener l, long lastModified, String etag) throws IOException {
+        return URLHandlerHelper.downloadIfNewer(this, src, dest, l, lastModified);
+    }
+    
+    public void resume(URL src, File dest, CopyProgressListener l, long lastModified) throws IOException {
+        download(src, dest, l);
+    }
 }
@@ -5,11 +5,13 @@
  */
 package fr.jayasoft.ivy.url;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
@@ -28,20 +30,42 @@ public class BasicURLHandler extends AbstractURLHandler {
 
     private static interface HttpStatus {
         static final int SC_OK = 200;
+        static final int SC_PARTIAL_CONTENT = 206;
+        static final int SC_NOT_MODIFIED = 304;
         static final int SC_PROXY_AUTHENTICATION_REQUIRED = 407;
     }
 
+    // URLConnection timeouts are only available since jdk 1.5
+    private static final Method SET_CONNECT_TIMEOUT;
+    private static final Method SET_READ_TIMEOUT;
+    static {
+        Method connect = null;
+        Method read = null;
+        try {
+            connect = URLConnection.class.getMethod("setConnectTimeout", new Class[] {int.class});
+            read = URLConnection.class.getMethod("setReadTimeout", new Class[] {int.class});
+        } catch (Exception e) {
+            Message.verbose("url connection timeouts not supported by this jre");
+            connect = null;
+        }
+        SET_CONNECT_TIMEOUT = connect;
+        SET_READ_TIMEOUT = read;
+    }
+    
+    private int _timeout = 0;
+
     public BasicURLHandler() {
     	Message.debug("installing "+IvyAuthenticator.INSTANCE.getClass()); // do not remove, ensure IvyAuthenticator class loading!
     }
 
     public URLInfo getURLInfo(URL url) {
-        return getURLInfo(url, 0);
+        return getURLInfo(url, _timeout);
     }
     public URLInfo getURLInfo(URL url, int timeout) {
         URLConnection con = null;
         try {
             con = url.openConnection();
+            setTimeout(con, timeout > 0 ? timeout : _timeout);
             if (con instanceof HttpURLConnection) {
                 int status = ((HttpURLConnection)con).getResponseCode();
                 if (status == HttpStatus.SC_OK) {
@@ -51,14 +75,7 @@ public class BasicURLHandler extends AbstractURLHandler {
                             con.getLastModified()
                             );
                 }
-                if (status == HttpStatus.SC_PROXY_AUTHENTICATION_REQUIRED) {
-                    Message.warn("Your proxy requires authentication.");
-                }else if (String.valueOf(status).startsWith("4")) {
-                    Message.verbose("CLIENT ERROR: "+((HttpURLConnection)con).getResponseMessage()+" url="+url);
-                }else if (String.valueOf(status).startsWith("5")) {
-                    Message.error("SERVER ERROR: "+((HttpURLConnection)con).getResponseMessage()+" url="+url);
-                }
-                Message.debug("HTTP response status: "+status+" url="+url);
+                logUnavailable((HttpURLConnection)con, status, url);
             } else {
                 int contentLength = con.getContentLength();
                 if (contentLength <= 0) {
@@ -74,8 +91,12 @@ public class BasicURLHandler extends AbstractURLHandler {
         } catch (UnknownHostException e) {
             Message.warn("Host " + e.getMessage() +" not found. url="+url);
             Message.info("You probably access the destination server through a proxy server that is not well configured.");
+            return UNREACHABLE;
+        } catch (FileNotFoundException e) {
+            Message.debug("not found: "+url);
         } catch (IOException e) {
             Message.error("Server access Error: "+e.getMessage()+" url="+url);
+            return UNREACHABLE;
         } finally {
             if (con instanceof HttpURLConnection) {
                 ((HttpURLConnection)con).disconnect();
@@ -84,44 +105,163 @@ public class BasicURLHandler extends AbstractURLHandler {
         return UNAVAILABLE;
     }
     
-    public InputStream openStream(URL url) throws IOException {
-        URLConnection conn = null;
-        InputStream inStream = null;
+    private void logUnavailable(HttpURLConnection con, int status, URL url) throws IOException {
+        if (status == HttpStatus.SC_PROXY_AUTHENTICATION_REQUIRED) {
+            Message.warn("Your proxy requires authentication.");
+        }else if (String.valueOf(status).startsWith("4")) {
+            Message.verbose("CLIENT ERROR: "+con.getResponseMessage()+" url="+url);
+        }else if (String.valueOf(status).startsWith("5")) {
+            Message.error("SERVER ERROR: "+con.getResponseMessage()+" url="+url);
+        }
+        Message.debug("HTTP response status: "+status+" url="+url);
+    }
+    
+    public URLInfo fetch(URL url, OutputStream content) {
+        URLConnection con = null;
         try {
-            conn = url.openConnection();
-            inStream = conn.getInputStream();
-            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-            
-            byte[] buffer = new byte[4096];
-            int len;
-            while ((len = inStream.read(buffer)) > 0) {
-                outStream.write(buffer, 0, len);
-            }
-            return new ByteArrayInputStream(outStream.toByteArray());
+            con = url.openConnection();
+            setTimeout(con, _timeout);
+            acceptEncodings(con);
+            if (con instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection)con).getResponseCode();
+                if (status != HttpStatus.SC_OK) {
+                    logUnavailable((HttpURLConnection)con, status, url);
+                    return UNAVAILABLE;
+                }
+            }
+            int contentLength = con.getContentLength();
+            InputStream in;
+            try {
+                in = con.getInputStream();
+            } catch (FileNotFoundException e) {
+                Message.debug("not found: "+url);
+                return UNAVAILABLE;
+            }
+            if (isDecodingRequired(url, con.getContentEncoding())) {
+                // the content length is the one of the encoded content
+                contentLength = -1;
+            }
+            FileUtil.copy(getDecodedStream(url, con.getContentEncoding(), in), content, null);
+            return new URLInfo(true, contentLength, con.getLastModified(), con.getHeaderField("ETag"));
+        } catch (UnknownHostException e) {
+            Message.warn("Host " + e.getMessage() +" not found. url="+url);
+            Message.info("You probably access the destination server through a proxy server that is not well configured.");
+        } catch (IOException e) {
+            Message.error("Server access Error: "+e.getMessage()+" url="+url);
+        } finally {
+            if (con instanceof HttpURLConnection) {
+                ((HttpURLConnection)con).disconnect();
+            }
         }
-        finally {
-            if (inStream != null) {
-                inStream.close();
+        return UNREACHABLE;
+    }
+    
+    /**
+     * Returns a stream reading the content of the url as it arrives, the connection being
+     * closed when the stream is closed. Callers must thus always close the returned stream.
+     */
+    public InputStream openStream(URL url) throws IOException {
+        URLConnection conn = url.openConnection();
+        setTimeout(conn, _timeout);
+        acceptEncodings(conn);
+        try {
+            return new ConnectionInputStream(conn);
+        } catch (IOException ex) {
+            if (conn instanceof HttpURLConnection) {
+                ((HttpURLConnection) conn).disconnect();
             }
-            
-            if (conn != null) {
-                if (conn instanceof HttpURLConnection) {
-                    //System.out.println("Closing HttpURLConnection");
-                    ((HttpURLConnection) conn).disconnect();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Sets the timeout in milliseconds used to connect and then to wait for data 
+     * when opening streams and downloading, 0 (the default) meaning no timeout.
+     * Timeouts are only supported with a jre 1.5 or later.
+     */
+    public void setTimeout(int timeout) {
+        _timeout = timeout;
+    }
+    
+    public int getTimeout() {
+        return _timeout;
+    }
+    
+    private static void setTimeout(URLConnection con, int timeout) {
+        if (timeout <= 0 || SET_CONNECT_TIMEOUT == null) {
+            return;
+        }
+        try {
+            Object[] args = new Object[] {new Integer(timeout)};
+            SET_CONNECT_TIMEOUT.invoke(con, args);
+            SET_READ_TIMEOUT.invoke(con, args);
+        } catch (Exception e) {
+            Message.debug("impossible to set timeout on "+con+": "+e);
+        }
+    }
+    
+    /**
+     * Lets the server compress the content it sends, range requests excepted: ranges would 
+     * then apply to the compressed content.
+     */
+    private static void acceptEncodings(URLConnection con) {
+        if (con instanceof HttpURLConnection) {
+            con.setRequestProperty("Accept-Encoding", ACCEPTED_ENCODINGS);
+        }
+    }
+    
+    private static final class ConnectionInputStream extends FilterInputStream {
+        private URLConnection _conn;
+        
+        private ConnectionInputStream(URLConnection conn) throws IOException {
+            super(getDecodedStream(conn.getURL(), conn.getContentEncoding(), conn.getInputStream()));
+            _conn = conn;
+        }
+        
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (_conn instanceof HttpURLConnection) {
+                    ((HttpURLConnection) _conn).disconnect();
                 }
             }
         }
     }
     public void download(URL src, File dest, CopyProgressListener l) throws IOException {
+        download(src, dest, l, 0, null);
+    }
+    
+    public URLInfo download(URL src, File dest, CopyProgressListener l, long lastModified, String etag) throws IOException {
         URLConnection srcConn = null;
         try {
             srcConn = src.openConnection();
+            setTimeout(srcConn, _timeout);
+            acceptEncodings(srcConn);
+            if (lastModified > 0) {
+                srcConn.setIfModifiedSince(lastModified);
+            }
+            if (etag != null) {
+                srcConn.setRequestProperty("If-None-Match", etag);
+            }
+            if (srcConn instanceof HttpURLConnection) {
+                if (((HttpURLConnection)srcConn).getResponseCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    Message.debug("not modified: "+src);
+                    return null;
+                }
+            } else if (lastModified > 0 && srcConn.getLastModified() != 0 && srcConn.getLastModified() <= lastModified) {
+                // no conditional request for other protocols: simply compare dates
+                Message.debug("not modified: "+src);
+                return null;
+            }
             int contentLength = srcConn.getContentLength();
-            FileUtil.copy(srcConn.getInputStream(), dest, l);
-            if (dest.length() != contentLength && contentLength != -1) {
+            String encoding = srcConn.getContentEncoding();
+            FileUtil.copy(getDecodedStream(src, encoding, srcConn.getInputStream()), dest, l);
+            if (dest.length() != contentLength && contentLength != -1 && !isDecodingRequired(src, encoding)) {
             	dest.delete();
             	throw new IOException("Downloaded file size doesn't match expected Content Length for "+src+". Please retry.");
             }
+            return new URLInfo(true, dest.length(), srcConn.getLastModified(), srcConn.getHeaderField("ETag"));
         }
         finally {
             if (srcConn != null) {
@@ -132,4 +272,52 @@ public class BasicURLHandler extends AbstractURLHandler {
             }
         }
     }
+    
+    public void resume(URL src, File dest, CopyProgressListener l, long lastModified) throws IOException {
+        long offset = dest.length();
+        URLConnection srcConn = null;
+        try {
+            srcConn = src.openConnection();
+            setTimeout(srcConn, _timeout);
+            if (srcConn instanceof HttpURLConnection) {
+                srcConn.setRequestProperty("Range", "bytes="+offset+"-");
+                // the range is ignored by the server if the resource has been modified
+                srcConn.setRequestProperty("If-Range", formatHttpDate(lastModified));
+                int status = ((HttpURLConnection)srcConn).getResponseCode(); 
+                String range = srcConn.getHeaderField("Content-Range");
+                if (status == HttpStatus.SC_PARTIAL_CONTENT && range != null && range.startsWith("bytes "+offset+"-")) {
+                    Message.verbose("\tresuming download of "+src+" at byte "+offset);
+                    FileUtil.append(srcConn.getInputStream(), dest, l);
+                    return;
+                } else if (status == HttpStatus.SC_OK) {
+                    Message.verbose("\timpossible to resume download of "+src+": downloading it again");
+                    FileUtil.copy(srcConn.getInputStream(), dest, l);
+                    return;
+                }
+            } else if (srcConn.getLastModified() == lastModified && srcConn.getContentLength() >= offset) {
+                Message.verbose("\tresuming download of "+src+" at byte "+offset);
+                InputStream in = srcConn.getInputStream();
+                skip(in, offset);
+                FileUtil.append(in, dest, l);
+                return;
+            }
+        } finally {
+            if (srcConn instanceof HttpURLConnection) {
+                ((HttpURLConnection) srcConn).disconnect();
+            }
+        }
+        Message.verbose("\timpossible to resume download of "+src+": downloading it again");
+        download(src, dest, l);
+    }
+    
+    private static void skip(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                in.close();
+                throw new IOException("unexpected end of stream");
+            }
+            n -= skipped;
+        }
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * This file is subject to the licence found in LICENCE.TXT in the root directory of the project.
+ * Copyright Jayasoft 2005 - All rights reserved
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.url;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+
+import fr.jayasoft.ivy.util.CopyProgressListener;
+
+/**
+ * Optional capabilities of url handlers, saving requests when the protocol allows it.
+ * 
+ * Url handlers are not required to implement this interface: callers go through 
+ * URLHandlerHelper, which uses these capabilities when they are available and falls back
+ * to the URLHandler methods otherwise. AbstractURLHandler implements it with the same
+ * fallbacks, its subclasses overriding the methods they can do better.
+ * 
+ * @see URLHandlerHelper
+ */
+public interface ExtendedURLHandler extends URLHandler {
+    /**
+     * Gets the info of several urls at once, given in order of preference. Implementations
+     * should check the urls concurrently, and may stop checking as soon as the first 
+     * reachable url is known, all the urls before it being unreachable.
+     * 
+     * @param timeout the timeout used for each url, 0 to use the default one
+     * @return the info of each url, in the same order, null for the urls which have 
+     * not been checked
+     */
+    public URLInfo[] getURLInfo(URL[] urls, int timeout);
+    
+    /**
+     * Same as getURLInfo, except that the content of the url is also written to the given
+     * stream, using a single request to both check and get the url.
+     * 
+     * never returns null, return UNAVAILABLE when url is not reachable or when its
+     * content could not be fully read, in which case what has been written must be ignored
+     */
+    public URLInfo fetch(URL url, OutputStream content);
+    
+    /**
+     * Downloads src to dest only if it has been modified since a previous download,
+     * described by its last modified date and entity tag.
+     * 
+     * @param lastModified last modified date of the previously downloaded content, 0 if unknown
+     * @param etag entity tag of the previously downloaded content, null if unknown
+     * @return the info of the downloaded content, or null if the content has not been modified,
+     * in which case dest is left untouched
+     */
+    public URLInfo download(URL src, File dest, CopyProgressListener l, long lastModified, String etag) throws IOException;
+    
+    /**
+     * Downloads src to dest, which already contains the beginning of the content of src
+     * as it was when src had the given last modified date.
+     * 
+     * Only the missing bytes are downloaded if src has not been modified since and if
+     * the server supports it, the whole content is downloaded otherwise.
+     */
+    public void resume(URL src, File dest, CopyProgressListener l, long lastModified) throws IOException;
+}
@@ -8,6 +8,7 @@ package fr.jayasoft.ivy.url;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.text.ParseException;
@@ -73,13 +74,70 @@ public class HttpClientHandler extends AbstractURLHandler {
     
     public InputStream openStream(URL url) throws IOException {
         GetMethod get = doGet(url);
-        return new GETInputStream(get);
+        try {
+            return new GETInputStream(url, get);
+        } catch (IOException ex) {
+            get.releaseConnection();
+            throw ex;
+        }
     }
     
     public void download(URL src, File dest, CopyProgressListener l) throws IOException {
         GetMethod get = doGet(src);
-        FileUtil.copy(get.getResponseBodyAsStream(), dest, l);
-        get.releaseConnection();
+        try {
+            FileUtil.copy(getDecodedStream(src, get), dest, l);
+        } finally {
+            get.releaseConnection();
+        }
+    }
+    
+    public URLInfo download(URL src, File dest, CopyProgressListener l, long lastModified, String etag) throws IOException {
+        GetMethod get = doGet(src, lastModified, etag);
+        try {
+            int status = get.getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                Message.debug("not modified: "+src);
+                return null;
+            }
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException("HTTP "+status+"="+get.getStatusText()+" url="+src);
+            }
+            FileUtil.copy(getDecodedStream(src, get), dest, l);
+            Header etagHeader = get.getResponseHeader("etag");
+            return new URLInfo(true, dest.length(), getLastModified(get), etagHeader == null ? null : etagHeader.getValue());
+        } finally {
+            get.releaseConnection();
+        }
+    }
+    
+    public void resume(URL src, File dest, CopyProgressListener l, long lastModified) throws IOException {
+        long offset = dest.length();
+        HttpClient client = getClient(src);
+        GetMethod get = new GetMethod(src.toExternalForm());
+        get.setDoAuthentication(useAuthentication(src) || useProxyAuthentication());
+        get.setRequestHeader("Range", "bytes="+offset+"-");
+        // the range is ignored by the server if the resource has been modified
+        get.setRequestHeader("If-Range", formatHttpDate(lastModified));
+        try {
+            client.executeMethod(get);
+            int status = get.getStatusCode();
+            Header range = get.getResponseHeader("Content-Range");
+            if (status == HttpStatus.SC_PARTIAL_CONTENT && range != null && range.getValue().startsWith("bytes "+offset+"-")) {
+                Message.verbose("\tresuming download of "+src+" at byte "+offset);
+                FileUtil.append(get.getResponseBodyAsStream(), dest, l);
+                return;
+            } else if (status == HttpStatus.SC_OK) {
+                Message.verbose("\timpossible to resume download of "+src+": downloading it again");
+                FileUtil.copy(get.getResponseBodyAsStream(), dest, l);
+                return;
+            }
+            // 416 when dest already holds the whole resource for instance
+            Message.debug("HTTP response status to range request: "+status+"="+get.getStatusText()+" url="+src);
+        } finally {
+            get.releaseConnection();
+        }
+        Message.verbose("\timpossible to resume download of "+src+": downloading it again");
+        download(src, dest, l, 0, null);
     }
     
     public URLInfo getURLInfo(URL url) {
@@ -95,21 +153,16 @@ public class HttpClientHandler extends AbstractURLHandler {
             if (status == HttpStatus.SC_OK) {
                 return new URLInfo(true, getResponseContentLength(head), getLastModified(head));
             }
-            if (status == HttpStatus.SC_PROXY_AUTHENTICATION_REQUIRED) {
-                Message.error("Your proxy requires authentication.");
-            }else if (String.valueOf(status).startsWith("4")) {
-                Message.verbose("CLIENT ERROR: "+head.getStatusText()+" url="+url);
-            }else if (String.valueOf(status).startsWith("5")) {
-                Message.warn("SERVER ERROR: "+head.getStatusText()+" url="+url);
-            }
-            Message.debug("HTTP response status: "+status +"="+head.getStatusText()+" url="+url);
+            logUnavailable(head, url);
         } catch (HttpException e) {
             Message.error("HttpClientHandler: "+e.getMessage()+":" + e.getReasonCode()+"="+e.getReason()+" url="+url);
         } catch (UnknownHostException e) {
             Message.warn("Host " + e.getMessage() +" not found. url="+url);
             Message.info("You probably access the destination server through a proxy server that is not well configured.");
+            return UNREACHABLE;
         }catch (IOException e) {
             Message.error("HttpClientHandler: "+e.getMessage()+" url="+url);
+            return UNREACHABLE;
         } finally{
             if(head != null) {
                 head.releaseConnection();
@@ -118,8 +171,67 @@ public class HttpClientHandler extends AbstractURLHandler {
         return UNAVAILABLE;
     }
     
-    private long getLastModified(HeadMethod head) {
-        Header header = head.getResponseHeader("last-modified");
+    public URLInfo fetch(URL url, OutputStream content) {
+        GetMethod get = null;
+        try {
+            get = doGet(url);
+            int status = get.getStatusCode();
+            if (status != HttpStatus.SC_OK) {
+                logUnavailable(get, url);
+                return UNAVAILABLE;
+            }
+            FileUtil.copy(getDecodedStream(url, get), content, null);
+            Header etagHeader = get.getResponseHeader("etag");
+            Header lengthHeader = get.getResponseHeader("content-length");
+            long contentLength = -1;
+            if (lengthHeader != null && !isDecodingRequired(url, getContentEncoding(get))) {
+                try {
+                    contentLength = Long.parseLong(lengthHeader.getValue());
+                } catch (NumberFormatException e) {
+                    // length unknown
+                }
+            }
+            return new URLInfo(true, contentLength, getLastModified(get), etagHeader == null ? null : etagHeader.getValue());
+        } catch (HttpException e) {
+            Message.error("HttpClientHandler: "+e.getMessage()+":" + e.getReasonCode()+"="+e.getReason()+" url="+url);
+        } catch (UnknownHostException e) {
+            Message.warn("Host " + e.getMessage() +" not found. url="+url);
+            Message.info("You probably access the destination server through a proxy server that is not well configured.");
+            return UNREACHABLE;
+        }catch (IOException e) {
+            Message.error("HttpClientHandler: "+e.getMessage()+" url="+url);
+            return UNREACHABLE;
+        } finally{
+            if(get != null) {
+                get.releaseConnection();
+            }
+        }
+        return UNAVAILABLE;
+    }
+    
+    private static String getContentEncoding(HttpMethodBase method) {
+        Header header = method.getResponseHeader("content-encoding");
+        return header == null ? null : header.getValue();
+    }
+    
+    private static InputStream getDecodedStream(URL url, HttpMethodBase method) throws IOException {
+        return getDecodedStream(url, getContentEncoding(method), method.getResponseBodyAsStream());
+    }
+    
+    private void logUnavailable(HttpMethodBase method, URL url) {
+        int status = method.getStatusCode();
+        if (status == HttpStatus.SC_PROXY_AUTHENTICATION_REQUIRED) {
+            Message.error("Your proxy requires authentication.");
+        }else if (String.valueOf(status).startsWith("4")) {
+            Message.verbose("CLIENT ERROR: "+method.getStatusText()+" url="+url);
+        }else if (String.valueOf(status).startsWith("5")) {
+            Message.warn("SERVER ERROR: "+method.getStatusText()+" url="+url);
+        }
+        Message.debug("HTTP response status: "+status +"="+method.getStatusText()+" url="+url);
+    }
+    
+    private long getLastModified(HttpMethodBase method) {
+        Header header = method.getResponseHeader("last-modified");
         if (header != null) {
             String lastModified = header.getValue();
             try {
@@ -162,10 +274,21 @@ public class HttpClientHandler extends AbstractURLHandler {
     }
 
     private GetMethod doGet(URL url) throws IOException, HttpException {
+        return doGet(url, 0, null);
+    }
+
+    private GetMethod doGet(URL url, long lastModified, String etag) throws IOException, HttpException {
         HttpClient client = getClient(url);
 
         GetMethod get = new GetMethod(url.toExternalForm());
         get.setDoAuthentication(useAuthentication(url) || useProxyAuthentication());
+        get.setRequestHeader("Accept-Encoding", ACCEPTED_ENCODINGS);
+        if (lastModified > 0) {
+            get.setRequestHeader("If-Modified-Since", formatHttpDate(lastModified));
+        }
+        if (etag != null) {
+            get.setRequestHeader("If-None-Match", etag);
+        }
         client.executeMethod(get);
         return get;
     }
@@ -227,9 +350,9 @@ public class HttpClientHandler extends AbstractURLHandler {
         private InputStream _is;
         private GetMethod _get;
 
-        private GETInputStream(GetMethod get) throws IOException {
+        private GETInputStream(URL url, GetMethod get) throws IOException {
             _get = get;
-            _is = get.getResponseBodyAsStream();
+            _is = getDecodedStream(url, get);
         }
 
         public int available() throws IOException {
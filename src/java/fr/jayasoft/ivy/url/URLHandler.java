@@ -24,11 +24,16 @@ public interface URLHandler {
         private long _contentLength;
         private long _lastModified;
         private boolean _available;
+        private String _etag;
         
         protected URLInfo(boolean available, long contentLength, long lastModified) {
+            this(available, contentLength, lastModified, null);
+        }
+        protected URLInfo(boolean available, long contentLength, long lastModified, String etag) {
             _available = available;
             _contentLength = contentLength;
             _lastModified = lastModified;
+            _etag = etag;
         }
         public boolean isReachable() {
             return _available;
@@ -39,8 +44,19 @@ public interface URLHandler {
         public long getLastModified() {
             return _lastModified;
         }
+        /**
+         * @return the entity tag given by the server, null if none was given
+         */
+        public String getETag() {
+            return _etag;
+        }
     }
     public static final URLInfo UNAVAILABLE = new URLInfo(false, 0,0);
+    /**
+     * Info returned when the server of the url could not be reached at all, the url 
+     * being considered as unavailable by callers not making the difference.
+     */
+    public static final URLInfo UNREACHABLE = new URLInfo(false, 0,0);
     
     /**
      * Please prefer getURLInfo when several infos are needed.
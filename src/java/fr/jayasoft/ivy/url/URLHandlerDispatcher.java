@@ -8,6 +8,7 @@ package fr.jayasoft.ivy.url;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -20,7 +21,7 @@ import fr.jayasoft.ivy.util.CopyProgressListener;
  * @author Xavier Hanin
  *
  */
-public class URLHandlerDispatcher implements URLHandler {
+public class URLHandlerDispatcher implements ExtendedURLHandler {
     protected Map _handlers = new HashMap();
     protected URLHandler _default = new BasicURLHandler();
 
@@ -59,6 +60,15 @@ public class URLHandlerDispatcher implements URLHandler {
     public URLInfo getURLInfo(URL url, int timeout) {
         return getHandler(url.getProtocol()).getURLInfo(url, timeout);
     }
+
+    public URLInfo[] getURLInfo(URL[] urls, int timeout) {
+        return URLHandlerHelper.checkAll(this, urls, timeout);
+    }
+    
+    public URLInfo fetch(URL url, OutputStream content) {
+        return URLHandlerHelper.fetch(getHandler(url.getProtocol()), url, content);
+    }
+    
     public InputStream openStream(URL url) throws IOException {
         return getHandler(url.getProtocol()).openStream(url);
     }
@@ -67,6 +77,14 @@ public class URLHandlerDispatcher implements URLHandler {
         getHandler(src.getProtocol()).download(src, dest, l);
     }
     
+    public URLInfo download(URL src, File dest, CopyProgressListener l, long lastModified, String etag) throws IOException {
+        return URLHandlerHelper.download(getHandler(src.getProtocol()), src, dest, l, lastModified, etag);
+    }
+    
+    public void resume(URL src, File dest, CopyProgressListener l, long lastModified) throws IOException {
+        URLHandlerHelper.resume(getHandler(src.getProtocol()), src, dest, l, lastModified);
+    }
+    
     public void setDownloader(String protocol, URLHandler downloader) {
         _handlers.put(protocol, downloader);
     }
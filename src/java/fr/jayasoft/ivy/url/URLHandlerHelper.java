@@ -0,0 +1,170 @@
+/*
+ * This file is subject to the licence found in LICENCE.TXT in the root directory of the project.
+ * Copyright Jayasoft 2005 - All rights reserved
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.url;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+
+import fr.jayasoft.ivy.url.URLHandler.URLInfo;
+import fr.jayasoft.ivy.util.CopyProgressListener;
+import fr.jayasoft.ivy.util.FileUtil;
+import fr.jayasoft.ivy.util.Message;
+import fr.jayasoft.ivy.util.WorkerPool;
+
+/**
+ * Gives access to the capabilities of ExtendedURLHandler with any url handler, falling
+ * back to the plain URLHandler methods when the handler does not implement it.
+ * 
+ * @see ExtendedURLHandler
+ */
+public class URLHandlerHelper {
+    /**
+     * @see ExtendedURLHandler#getURLInfo(URL[], int)
+     */
+    public static URLInfo[] getURLInfo(URLHandler handler, URL[] urls, int timeout) {
+        if (handler instanceof ExtendedURLHandler) {
+            return ((ExtendedURLHandler)handler).getURLInfo(urls, timeout);
+        }
+        return checkAll(handler, urls, timeout);
+    }
+    
+    /**
+     * @see ExtendedURLHandler#fetch(URL, OutputStream)
+     */
+    public static URLInfo fetch(URLHandler handler, URL url, OutputStream content) {
+        if (handler instanceof ExtendedURLHandler) {
+            return ((ExtendedURLHandler)handler).fetch(url, content);
+        }
+        return getAndCheck(handler, url, content);
+    }
+    
+    /**
+     * @see ExtendedURLHandler#download(URL, File, CopyProgressListener, long, String)
+     */
+    public static URLInfo download(URLHandler handler, URL src, File dest, CopyProgressListener l, long lastModified, String etag) throws IOException {
+        if (handler instanceof ExtendedURLHandler) {
+            return ((ExtendedURLHandler)handler).download(src, dest, l, lastModified, etag);
+        }
+        return downloadIfNewer(handler, src, dest, l, lastModified);
+    }
+    
+    /**
+     * @see ExtendedURLHandler#resume(URL, File, CopyProgressListener, long)
+     */
+    public static void resume(URLHandler handler, URL src, File dest, CopyProgressListener l, long lastModified) throws IOException {
+        if (handler instanceof ExtendedURLHandler) {
+            ((ExtendedURLHandler)handler).resume(src, dest, l, lastModified);
+        } else {
+            handler.download(src, dest, l);
+        }
+    }
+    
+    /**
+     * Checks the url, and then gets its content if it is available, with two requests.
+     */
+    static URLInfo getAndCheck(URLHandler handler, URL url, OutputStream content) {
+        URLInfo info = handler.getURLInfo(url);
+        if (!info.isReachable()) {
+            return info;
+        }
+        try {
+            FileUtil.copy(handler.openStream(url), content, null);
+            return info;
+        } catch (IOException e) {
+            Message.verbose("impossible to get "+url+": "+e.getMessage());
+            return URLHandler.UNAVAILABLE;
+        }
+    }
+    
+    /**
+     * Downloads the url if its last modified date is after the given one, using the last
+     * modified date given by a check of the url.
+     */
+    static URLInfo downloadIfNewer(URLHandler handler, URL src, File dest, CopyProgressListener l, long lastModified) throws IOException {
+        URLInfo info = handler.getURLInfo(src);
+        if (lastModified > 0 && info.isReachable() && info.getLastModified() != 0 && info.getLastModified() <= lastModified) {
+            Message.debug("not modified: "+src);
+            return null;
+        }
+        handler.download(src, dest, l);
+        return new URLInfo(true, dest.length(), info.getLastModified());
+    }
+    
+    /**
+     * Gets the info of the given urls using the given handler, with up to 
+     * AbstractURLHandler.MAX_CONCURRENT_CHECKS threads of the shared worker pool each 
+     * checking one url at a time.
+     * 
+     * The urls are given in order of preference: as soon as one is reachable and all the
+     * urls before it have been found unreachable, the checks left are skipped and the 
+     * running ones are abandoned, their info being null.
+     */
+    static URLInfo[] checkAll(final URLHandler handler, final URL[] urls, final int timeout) {
+        final URLInfo[] infos = new URLInfo[urls.length];
+        final WorkerPool.Batch[] batch = new WorkerPool.Batch[1];
+        Runnable[] tasks = new Runnable[urls.length];
+        for (int i = 0; i < tasks.length; i++) {
+            final int index = i;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    URLInfo info = URLHandler.UNAVAILABLE;
+                    try {
+                        info = handler.getURLInfo(urls[index], timeout);
+                    } finally {
+                        synchronized (infos) {
+                            infos[index] = info;
+                            if (isAnswered(infos)) {
+                                batch[0].cancel();
+                            }
+                            infos.notifyAll();
+                        }
+                    }
+                }
+            };
+        }
+        batch[0] = WorkerPool.newBatch(tasks);
+        WorkerPool pool = WorkerPool.getDefault();
+        if (urls.length <= 1 || pool.startAll(batch[0], AbstractURLHandler.MAX_CONCURRENT_CHECKS) == 0) {
+            // checked in order by the calling thread
+            pool.runAll(batch[0], 1);
+        } else {
+            synchronized (infos) {
+                while (!isAnswered(infos)) {
+                    try {
+                        infos.wait();
+                    } catch (InterruptedException ex) {
+                        batch[0].cancel();
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        synchronized (infos) {
+            URLInfo[] result = new URLInfo[infos.length];
+            System.arraycopy(infos, 0, result, 0, infos.length);
+            return result;
+        }
+    }
+    
+    /**
+     * @return true if the first reachable url is known, or if all urls have been checked
+     */
+    private static boolean isAnswered(URLInfo[] infos) {
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null) {
+                return false;
+            }
+            if (infos[i].isReachable()) {
+                return true;
+            }
+        }
+        return true;
+    }
+}
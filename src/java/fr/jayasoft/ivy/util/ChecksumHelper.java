@@ -20,18 +20,30 @@ public class ChecksumHelper {
 	}
 	
 	public static boolean check(File dest, File checksumFile, String algorithm) throws IOException {
+		return check(dest, readChecksum(checksumFile), algorithm);
+	}
+	
+	/**
+	 * Checks the given file against an expected checksum, as read by readChecksum.
+	 */
+	public static boolean check(File dest, String expected, String algorithm) throws IOException {
+		String computed = computeAsString(dest, algorithm).trim().toLowerCase();
+		return expected.equals(computed);
+	}    
+	
+	/**
+	 * Returns the checksum found in the given checksum file, in lower case.
+	 * Checksum files may contain the name of the file after the checksum, separated by a space.
+	 */
+	public static String readChecksum(File checksumFile) throws IOException {
 		String csFileContent = FileUtil.readEntirely(new BufferedReader(new FileReader(checksumFile))).trim().toLowerCase();
-		String expected;
 		int spaceIndex = csFileContent.indexOf(' ');
 		if (spaceIndex != -1) {
-			expected = csFileContent.substring(0, spaceIndex);
+			return csFileContent.substring(0, spaceIndex);
 		} else {
-			expected = csFileContent;
+			return csFileContent;
 		}
-		
-		String computed = computeAsString(dest, algorithm).trim().toLowerCase();
-		return expected.equals(computed);
-	}    
+	}
 	
     public static String computeAsString(File f, String algorithm) throws IOException {
     	return byteArrayToHexString(compute(f, algorithm));
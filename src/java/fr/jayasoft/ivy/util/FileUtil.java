@@ -12,6 +12,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -67,6 +69,13 @@ public class FileUtil {
         copy(src, new FileOutputStream(dest), l);
     }
 
+    /**
+     * Appends the content of src at the end of dest.
+     */
+    public static void append(InputStream src, File dest, CopyProgressListener l) throws IOException {
+        copy(src, new FileOutputStream(dest, true), l);
+    }
+
     public static void copy(InputStream src, OutputStream dest, CopyProgressListener l) throws IOException {
         try {
             CopyProgressEvent evt = null;
@@ -152,6 +161,52 @@ public class FileUtil {
 		Collections.reverse(ret);
 		return ret;
 	}
+	/**
+	 * Creates a hard link to an existing file.
+	 * 
+	 * Hard links are only available with the java.nio.file API of java 7 and later, which is thus 
+	 * accessed by reflection. On older JVMs, or on file systems not supporting hard links, no link 
+	 * is created and false is returned.
+	 * 
+	 * @param existing the file to link to
+	 * @param link the link to create, which must not exist
+	 * @return true if the link has been created, false otherwise
+	 */
+	public static boolean link(File existing, File link) {
+		try {
+			Class pathClass = Class.forName("java.nio.file.Path");
+			Class filesClass = Class.forName("java.nio.file.Files");
+			Method createLink = filesClass.getMethod("createLink", new Class[] {pathClass, pathClass});
+			createLink.invoke(null, new Object[] {toPath(link), toPath(existing)});
+			return true;
+		} catch (Exception ex) {
+			Message.debug("impossible to link "+link+" to "+existing+": "+ex);
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the number of hard links to the given file, or -1 if this information is not
+	 * available on the running JVM or file system.
+	 */
+	public static int getLinkCount(File file) {
+		try {
+			Class pathClass = Class.forName("java.nio.file.Path");
+			Class filesClass = Class.forName("java.nio.file.Files");
+			Class linkOptionClass = Class.forName("java.nio.file.LinkOption");
+			Object noOptions = Array.newInstance(linkOptionClass, 0);
+			Method getAttribute = filesClass.getMethod("getAttribute", new Class[] {pathClass, String.class, noOptions.getClass()});
+			Object count = getAttribute.invoke(null, new Object[] {toPath(file), "unix:nlink", noOptions});
+			return ((Number)count).intValue();
+		} catch (Exception ex) {
+			return -1;
+		}
+	}
+	
+	private static Object toPath(File file) throws Exception {
+		return File.class.getMethod("toPath", new Class[0]).invoke(file, new Object[0]);
+	}
+	
 	/**
 	 * Returns a collection of all Files being contained in the given directory,
 	 * recursively, including directories.
@@ -0,0 +1,265 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.util;
+
+import java.util.LinkedList;
+
+import fr.jayasoft.ivy.IvyContext;
+
+/**
+ * A bounded pool of daemon threads shared by the operations running work in parallel.
+ *
+ * Threads are created when needed, up to the maximum size of the pool, and stop after
+ * being idle for a few seconds. Each task runs with the IvyContext of the thread which
+ * submitted it.
+ *
+ * When running a set of tasks with runAll, the calling thread runs tasks too, so that
+ * the tasks are always run even when all the threads of the pool are busy, for instance
+ * with tasks waiting for an unresponsive server.
+ */
+public class WorkerPool {
+    public static final int DEFAULT_MAX_THREADS = 16;
+    private static final long KEEP_ALIVE = 5000;
+
+    private static WorkerPool _default = new WorkerPool("ivy worker", DEFAULT_MAX_THREADS);
+
+    public static WorkerPool getDefault() {
+        return _default;
+    }
+
+    /**
+     * A set of tasks run by runAll, which can be cancelled to skip the tasks not started yet.
+     */
+    public static class Batch {
+        private Runnable[] _tasks;
+        private int _next = 0;
+        private int _running = 0;
+        private boolean _cancelled = false;
+
+        Batch(Runnable[] tasks) {
+            _tasks = tasks;
+        }
+
+        /**
+         * Prevents the tasks not started yet from running. Running tasks are not stopped.
+         */
+        public synchronized void cancel() {
+            _cancelled = true;
+        }
+
+        public synchronized boolean isCancelled() {
+            return _cancelled;
+        }
+
+        /**
+         * @return true if all the tasks have been run
+         */
+        public synchronized boolean isComplete() {
+            return !_cancelled && _next >= _tasks.length && _running == 0;
+        }
+
+        void runTasks() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        // the calling thread has been interrupted
+                        _cancelled = true;
+                    }
+                    if (_cancelled || _next >= _tasks.length) {
+                        return;
+                    }
+                    task = _tasks[_next++];
+                    _running++;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    Message.error("unexpected error in "+Thread.currentThread().getName()+": "+ex);
+                } finally {
+                    synchronized (this) {
+                        _running--;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits until no task is running nor left to start.
+         * @return false if the calling thread has been interrupted, the batch being cancelled
+         */
+        synchronized boolean waitForEnd() {
+            boolean interrupted = Thread.interrupted();
+            if (interrupted) {
+                _cancelled = true;
+            }
+            while (_running > 0 || (!_cancelled && _next < _tasks.length)) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    // running tasks cannot be stopped: skip the others and wait for them
+                    _cancelled = true;
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return !interrupted;
+        }
+    }
+
+    private String _name;
+    private int _maxThreads;
+    private int _threads = 0;
+    private int _idle = 0;
+    private LinkedList _queue = new LinkedList(); // List (Runnable)
+
+    public WorkerPool(String name, int maxThreads) {
+        _name = name;
+        _maxThreads = Math.max(1, maxThreads);
+    }
+
+    public synchronized int getMaxThreads() {
+        return _maxThreads;
+    }
+
+    /**
+     * @return the number of threads currently in the pool
+     */
+    public synchronized int getThreads() {
+        return _threads;
+    }
+
+    /**
+     * Starts the given task in a thread of the pool, if a thread is available.
+     * @return false if all the threads of the pool are busy, in which case the task is not run
+     */
+    public boolean tryExecute(Runnable task) {
+        final IvyContext context = IvyContext.getContext();
+        final Runnable target = task;
+        Runnable withContext = new Runnable() {
+            public void run() {
+                IvyContext.setContext(context);
+                target.run();
+            }
+        };
+        synchronized (this) {
+            if (_idle > _queue.size()) {
+                _queue.addLast(withContext);
+                notify();
+                return true;
+            }
+            if (_threads < _maxThreads) {
+                _queue.addLast(withContext);
+                _threads++;
+                Thread worker = new Thread(new Runnable() {
+                    public void run() {
+                        work();
+                    }
+                }, _name+" "+_threads);
+                worker.setDaemon(true);
+                worker.start();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Runs the given tasks with up to the given number of threads, including the calling
+     * thread, and returns when they are all done.
+     *
+     * If the calling thread is interrupted, the tasks not started yet are skipped, the
+     * running ones are waited for, and the interrupt flag of the thread is restored.
+     *
+     * @return false if the tasks have not all been run
+     */
+    public boolean runAll(Runnable[] tasks, int parallelism) {
+        return runAll(new Batch(tasks), parallelism);
+    }
+
+    /**
+     * Same as runAll(Runnable[], int), with a batch created by newBatch, which tasks
+     * can cancel to skip the following tasks.
+     */
+    public boolean runAll(final Batch batch, int parallelism) {
+        int helpers = Math.min(parallelism, batch._tasks.length) - 1;
+        for (int i = 0; i < helpers; i++) {
+            if (!tryExecute(new Runnable() {
+                public void run() {
+                    batch.runTasks();
+                }
+            })) {
+                break;
+            }
+        }
+        batch.runTasks();
+        return batch.waitForEnd() && batch.isComplete();
+    }
+
+    /**
+     * Starts running the given batch with up to the given number of threads of the pool,
+     * and returns without waiting for the tasks, nor running any in the calling thread.
+     * 
+     * @return the number of threads started, 0 if all the threads of the pool are busy,
+     * in which case the caller is responsible for running the batch, with runAll for instance
+     */
+    public int startAll(final Batch batch, int parallelism) {
+        int started = 0;
+        for (int i = 0; i < Math.min(parallelism, batch._tasks.length); i++) {
+            if (!tryExecute(new Runnable() {
+                public void run() {
+                    batch.runTasks();
+                }
+            })) {
+                break;
+            }
+            started++;
+        }
+        return started;
+    }
+
+    public static Batch newBatch(Runnable[] tasks) {
+        return new Batch(tasks);
+    }
+
+    private void work() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                _idle++;
+                try {
+                    long end = System.currentTimeMillis() + KEEP_ALIVE;
+                    while (_queue.isEmpty()) {
+                        long remaining = end - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            _threads--;
+                            return;
+                        }
+                        try {
+                            wait(remaining);
+                        } catch (InterruptedException ex) {
+                            _threads--;
+                            return;
+                        }
+                    }
+                    task = (Runnable)_queue.removeFirst();
+                } finally {
+                    _idle--;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                Message.error("unexpected error in "+Thread.currentThread().getName()+": "+ex);
+            } finally {
+                IvyContext.setContext(null);
+            }
+        }
+    }
+}
@@ -244,6 +244,18 @@ public class XmlIvyConfigurationParser extends DefaultHandler {
                 if (cacheArtPattern != null) {
                     _ivy.setCacheArtifactPattern(_ivy.substitute(cacheArtPattern));
                 }
+                String useCacheBlobStore = (String)attributes.get("useCacheBlobStore");
+                if (useCacheBlobStore != null) {
+                    _ivy.setUseCacheBlobStore(Boolean.valueOf(_ivy.substitute(useCacheBlobStore)).booleanValue());
+                }
+                String resolvedModulesCacheSize = (String)attributes.get("resolvedModulesCacheSize");
+                if (resolvedModulesCacheSize != null) {
+                    try {
+                        _ivy.setResolvedModuleRevisionCacheSize(Integer.parseInt(_ivy.substitute(resolvedModulesCacheSize)));
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("bad resolvedModulesCacheSize "+_ivy.substitute(resolvedModulesCacheSize)+": it should be a number of module revisions");
+                    }
+                }
                 String useRemoteConfig = (String)attributes.get("useRemoteConfig");
                 if (useRemoteConfig != null) {
                     _ivy.setUseRemoteConfig(Boolean.valueOf(_ivy.substitute(useRemoteConfig)).booleanValue());
@@ -11,7 +11,9 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -30,19 +32,39 @@ import fr.jayasoft.ivy.ModuleRevisionId;
 import fr.jayasoft.ivy.extendable.ExtendableItemHelper;
 import fr.jayasoft.ivy.report.XmlReportOutputter;
 
+/**
+ * Parses xml resolve reports produced by XmlReportOutputter.
+ * 
+ * Parsed reports are kept by the parser instance, and reused as long as the report file
+ * is not modified (or explicitly invalidated), so that a long lived parser (see Ivy.getReportParser())
+ * parses each report only once even if several tasks need it. A modified report replaces
+ * the parsed one, and only the most recently used reports are kept.
+ */
 public class XmlReportParser {
+    public static final int DEFAULT_MAX_REPORTS = 100;
+
     private static class SaxXmlReportParser {
         private List _mrids;
         private List _defaultMrids;
         private List _realMrids;
 		private List _artifacts;
+		private List _deferredArtifacts;
 		private File _report;
+		private long _lastModified;
+		private long _length;
 		SaxXmlReportParser(File report) {
 	        _artifacts = new ArrayList();
+	        _deferredArtifacts = new ArrayList();
             _mrids = new ArrayList();
             _defaultMrids = new ArrayList();
             _realMrids = new ArrayList();
 			_report = report;
+			_lastModified = report.lastModified();
+			_length = report.length();
+		}
+		
+		boolean isUpToDate() {
+			return _lastModified == _report.lastModified() && _length == _report.length();
 		}
 		
 		public void parse() throws Exception {
@@ -106,6 +128,9 @@ public class XmlReportParser {
                         String ext = attributes.getValue("ext");
 						Artifact artifact = new DefaultArtifact(_mrid, _pubdate, artifactName, type, ext, ExtendableItemHelper.getExtraAttributes(attributes, "extra-"));
                         _revisionArtifacts.add(artifact);
+                        if ("deferred".equals(status)) {
+                            _deferredArtifacts.add(artifact);
+                        }
                     }
                 }
 
@@ -128,6 +153,9 @@ public class XmlReportParser {
 		public List getArtifacts() {
 			return _artifacts;
 		}
+		public List getDeferredArtifacts() {
+			return _deferredArtifacts;
+		}
 		public List getModuleRevisionIds() {
 			return _mrids;
 		}
@@ -137,14 +165,69 @@ public class XmlReportParser {
         }
     }
 
+    private Map _parsed; // Map (File report -> SaxXmlReportParser)
+
+    public XmlReportParser() {
+        this(DEFAULT_MAX_REPORTS);
+    }
+
+    /**
+     * @param maxReports the maximum number of parsed reports kept, 0 to parse reports each time
+     */
+    public XmlReportParser(final int maxReports) {
+        _parsed = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > maxReports;
+            }
+        };
+    }
+
+    /**
+     * @return the number of parsed reports currently kept
+     */
+    public int size() {
+        synchronized (_parsed) {
+            return _parsed.size();
+        }
+    }
+
+    private SaxXmlReportParser parse(File report) throws Exception {
+        File key = report.getAbsoluteFile();
+        synchronized (_parsed) {
+            SaxXmlReportParser parser = (SaxXmlReportParser)_parsed.get(key);
+            if (parser != null) {
+                if (parser.isUpToDate()) {
+                    return parser;
+                }
+                _parsed.remove(key);
+            }
+        }
+        SaxXmlReportParser parser = new SaxXmlReportParser(report);
+        parser.parse();
+        synchronized (_parsed) {
+            _parsed.put(key, parser);
+        }
+        return parser;
+    }
+
+    /**
+     * Forgets what has been parsed for the given report file, if any.
+     * This is required when the report is rewritten, file modification date and size being
+     * not precise enough to be sure to detect the change.
+     */
+    public void invalidate(File report) {
+        synchronized (_parsed) {
+            _parsed.remove(report.getAbsoluteFile());
+        }
+    }
+
 	public Artifact[] getArtifacts(ModuleId moduleId, String conf, File cache) throws ParseException, IOException {
 		return getArtifacts(getReportFile(moduleId, conf, cache));
     }
 
 	private Artifact[] getArtifacts(File report) throws ParseException {
 		try {
-			SaxXmlReportParser parser = new SaxXmlReportParser(report);
-			parser.parse();
+			SaxXmlReportParser parser = parse(report);
             return (Artifact[])parser.getArtifacts().toArray(new Artifact[parser.getArtifacts().size()]);
         } catch (Exception ex) {
             ParseException pe = new ParseException("failed to parse report: "+report+": "+ex.getMessage(), 0);
@@ -153,14 +236,32 @@ public class XmlReportParser {
         }
 	}
         
+    /**
+     * Returns the artifacts which download has been deferred by a lazy resolve, and which
+     * had not been downloaded yet when the report has been written
+     */
+    public Artifact[] getDeferredArtifacts(ModuleId moduleId, String conf, File cache) throws ParseException, IOException {
+        File report = getReportFile(moduleId, conf, cache);
+        try {
+            SaxXmlReportParser parser = parse(report);
+            return (Artifact[])parser.getDeferredArtifacts().toArray(new Artifact[parser.getDeferredArtifacts().size()]);
+        } catch (Exception ex) {
+            ParseException pe = new ParseException("failed to parse report: "+report+": "+ex.getMessage(), 0);
+            pe.initCause(ex);
+            throw pe;
+        }
+    }
+
     public ModuleRevisionId[] getDependencyRevisionIds(ModuleId moduleId, String conf, File cache) throws ParseException, IOException {
         return getDependencyRevisionIds(getReportFile(moduleId, conf, cache));
     }
 
-    private ModuleRevisionId[] getDependencyRevisionIds(File report) throws ParseException {
+    /**
+     * Returns all the mrids of the dependencies found in the given xml report file
+     */
+    public ModuleRevisionId[] getDependencyRevisionIds(File report) throws ParseException {
         try {
-            SaxXmlReportParser parser = new SaxXmlReportParser(report);
-            parser.parse();
+            SaxXmlReportParser parser = parse(report);
             return (ModuleRevisionId[])parser.getModuleRevisionIds().toArray(new ModuleRevisionId[parser.getModuleRevisionIds().size()]);
         } catch (Exception ex) {
             ParseException pe = new ParseException("failed to parse report: "+report+": "+ex.getMessage(), 0);
@@ -178,8 +279,7 @@ public class XmlReportParser {
 
     private ModuleRevisionId[] getRealDependencyRevisionIds(File report) throws ParseException {
         try {
-            SaxXmlReportParser parser = new SaxXmlReportParser(report);
-            parser.parse();
+            SaxXmlReportParser parser = parse(report);
             return (ModuleRevisionId[])parser.getRealModuleRevisionIds().toArray(new ModuleRevisionId[parser.getRealModuleRevisionIds().size()]);
         } catch (Exception ex) {
             ParseException pe = new ParseException("failed to parse report: "+report+": "+ex.getMessage(), 0);
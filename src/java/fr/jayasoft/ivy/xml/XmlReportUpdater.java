@@ -0,0 +1,139 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import fr.jayasoft.ivy.Artifact;
+import fr.jayasoft.ivy.ArtifactOrigin;
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.report.ArtifactDownloadReport;
+import fr.jayasoft.ivy.report.DownloadReport;
+import fr.jayasoft.ivy.report.DownloadStatus;
+
+/**
+ * Used to update xml resolve reports produced by XmlReportOutputter with the downloads of
+ * the artifacts which have been deferred by a lazy resolve, when the ResolveReport which
+ * produced them is not available anymore (retrieve of a previous resolve for instance).
+ *
+ * Only the status, size and origin of the deferred artifacts are updated, the rest of the
+ * report being kept as is.
+ */
+public class XmlReportUpdater {
+    /**
+     * @param report the xml report file to update
+     * @param dReport the reports of the deferred artifacts downloaded
+     * @return true if the report has been modified
+     */
+    public static boolean update(File report, DownloadReport dReport) throws IOException {
+        Map downloaded = new HashMap(); // Map (String key -> ArtifactDownloadReport)
+        ArtifactDownloadReport[] adrs = dReport.getArtifactsReports();
+        for (int i = 0; i < adrs.length; i++) {
+            Artifact artifact = adrs[i].getArtifact();
+            downloaded.put(getKey(artifact.getModuleRevisionId(), artifact.getName(), artifact.getType(),
+                    artifact.getExt(), artifact.getExtraAttributes()), adrs[i]);
+        }
+        if (downloaded.isEmpty()) {
+            return false;
+        }
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+            boolean modified = false;
+            NodeList modules = doc.getElementsByTagName("module");
+            for (int i = 0; i < modules.getLength(); i++) {
+                Element module = (Element)modules.item(i);
+                NodeList revisions = module.getElementsByTagName("revision");
+                for (int j = 0; j < revisions.getLength(); j++) {
+                    Element revision = (Element)revisions.item(j);
+                    ModuleRevisionId mrid = ModuleRevisionId.newInstance(
+                            module.getAttribute("organisation"),
+                            module.getAttribute("name"),
+                            getAttribute(revision, "branch"),
+                            revision.getAttribute("name"),
+                            getExtraAttributes(revision));
+                    NodeList artifacts = revision.getElementsByTagName("artifact");
+                    for (int k = 0; k < artifacts.getLength(); k++) {
+                        Element artifact = (Element)artifacts.item(k);
+                        if (!DownloadStatus.DEFERRED.toString().equals(artifact.getAttribute("status"))) {
+                            continue;
+                        }
+                        ArtifactDownloadReport adr = (ArtifactDownloadReport)downloaded.get(getKey(mrid,
+                                artifact.getAttribute("name"), artifact.getAttribute("type"),
+                                artifact.getAttribute("ext"), getExtraAttributes(artifact)));
+                        if (adr != null) {
+                            update(artifact, adr);
+                            modified = true;
+                        }
+                    }
+                }
+            }
+            if (modified) {
+                Transformer transformer = TransformerFactory.newInstance().newTransformer();
+                transformer.setOutputProperty(OutputKeys.ENCODING, "ISO-8859-1");
+                transformer.transform(new DOMSource(doc), new StreamResult(report));
+            }
+            return modified;
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            IOException ioex = new IOException("impossible to update report "+report+": "+ex.getMessage());
+            ioex.initCause(ex);
+            throw ioex;
+        }
+    }
+
+    private static void update(Element artifact, ArtifactDownloadReport adr) {
+        artifact.setAttribute("status", adr.getDownloadStatus().toString());
+        artifact.setAttribute("size", String.valueOf(adr.getSize()));
+        ArtifactOrigin origin = adr.getArtifactOrigin();
+        if (origin != null) {
+            Element location = artifact.getOwnerDocument().createElement("origin-location");
+            location.setAttribute("is-local", String.valueOf(origin.isLocal()));
+            location.setAttribute("location", origin.getLocation());
+            artifact.appendChild(location);
+        }
+    }
+
+    private static String getKey(ModuleRevisionId mrid, String name, String type, String ext, Map extraAttributes) {
+        return mrid.encodeToString()+"/"+name+"/"+type+"/"+ext+"/"+new TreeMap(extraAttributes);
+    }
+
+    /**
+     * @return the value of the given attribute, null if it is not set
+     */
+    private static String getAttribute(Element element, String name) {
+        return element.hasAttribute(name) ? element.getAttribute(name) : null;
+    }
+
+    private static Map getExtraAttributes(Element element) {
+        Map extra = new HashMap();
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node att = attributes.item(i);
+            if (att.getNodeName().startsWith("extra-")) {
+                extra.put(att.getNodeName().substring("extra-".length()), att.getNodeValue());
+            }
+        }
+        return extra;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.ParseException;
+
+public class MainTest extends TestCase {
+    public void testRetrieveThreads() throws Exception {
+        assertEquals(1, Main.getRetrieveThreads(parse(new String[0])));
+        assertEquals(4, Main.getRetrieveThreads(parse(new String[] {"-retrievethreads", "4"})));
+        assertBadRetrieveThreads("0");
+        assertBadRetrieveThreads("-2");
+        assertBadRetrieveThreads("four");
+    }
+
+    private void assertBadRetrieveThreads(String value) throws Exception {
+        try {
+            Main.getRetrieveThreads(parse(new String[] {"-retrievethreads", value}));
+            fail("retrievethreads "+value+" should be rejected");
+        } catch (ParseException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf(value) != -1);
+        }
+    }
+
+    private CommandLine parse(String[] args) throws ParseException {
+        return new GnuParser().parse(Main.getOptions(), args);
+    }
+}
@@ -6,6 +6,7 @@
 package fr.jayasoft.ivy;
 
 import java.io.File;
+import java.net.URL;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
@@ -2656,6 +2657,62 @@ public class ResolveTest extends TestCase {
     }
 
 
+    public void testBatchResolve() throws Exception {
+        final int[] calls = new int[1];
+        FileSystemResolver resolver = new FileSystemResolver() {
+            public ResolvedModuleRevision getDependency(DependencyDescriptor dd, ResolveData data) throws java.text.ParseException {
+                calls[0]++;
+                return super.getDependency(dd, data);
+            }
+        };
+        resolver.setName("counting");
+        resolver.addIvyPattern("test/repositories/1/[organisation]/[module]/ivys/ivy-[revision].xml");
+        resolver.addArtifactPattern("test/repositories/1/[organisation]/[module]/[type]s/[artifact]-[revision].[ext]");
+        _ivy.addResolver(resolver);
+        _ivy.setDefaultResolver("counting");
+
+        // mod2.3 depends on mod2.1 which depends on mod1.1, itself depending on mod1.2
+        URL[] ivyFiles = new URL[] {
+                new File("test/repositories/1/org2/mod2.1/ivys/ivy-0.3.xml").toURL(),
+                new File("test/repositories/1/org2/mod2.3/ivys/ivy-0.4.xml").toURL()
+        };
+        ResolveReport[] reports = _ivy.resolve(ivyFiles, null, new String[] {"*"}, _cache, null, true, false, true, false, null);
+        assertEquals(2, reports.length);
+        // mod1.1 and mod1.2 are asked only once to the resolver
+        assertEquals(3, calls[0]);
+
+        // the reports are the same as the ones of independent resolves
+        for (int i = 0; i < ivyFiles.length; i++) {
+            assertFalse(reports[i].hasError());
+            ResolveReport report = _ivy.resolve(ivyFiles[i], null, new String[] {"*"}, _cache, null, true);
+            assertEquals(report.getModuleDescriptor().getModuleRevisionId(), reports[i].getModuleDescriptor().getModuleRevisionId());
+            assertEquals(Arrays.asList(report.getConfigurations()), Arrays.asList(reports[i].getConfigurations()));
+            assertEquals(getResolvedIds(report), getResolvedIds(reports[i]));
+            // default descriptors get a new publication date at each resolve, compare artifacts by name
+            assertEquals(getArtifactNames(report), getArtifactNames(reports[i]));
+        }
+        assertEquals(3 + 2 + 3, calls[0]);
+        assertTrue(_ivy.getArchiveFileInCache(_cache, "org1", "mod1.1", "1.0", "mod1.1", "jar", "jar").exists());
+        assertTrue(_ivy.getArchiveFileInCache(_cache, "org2", "mod2.1", "0.3", "art21A", "jar", "jar").exists());
+    }
+
+    private Set getResolvedIds(ResolveReport report) {
+        Set ids = new HashSet();
+        for (Iterator iter = report.getDependencies().iterator(); iter.hasNext();) {
+            IvyNode node = (IvyNode)iter.next();
+            ids.add(node.getResolvedId());
+        }
+        return ids;
+    }
+
+    private Set getArtifactNames(ResolveReport report) {
+        Set names = new HashSet();
+        for (Iterator iter = report.getArtifacts().iterator(); iter.hasNext();) {
+            names.add(iter.next().toString());
+        }
+        return names;
+    }
+
     ////////////////////////////////////////////////////////////
     // helper methods to ease the tests
     ////////////////////////////////////////////////////////////
@@ -0,0 +1,108 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy;
+
+import java.io.File;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+
+import fr.jayasoft.ivy.report.ResolveReport;
+import fr.jayasoft.ivy.resolver.FileSystemResolver;
+
+public class ResolvedModuleRevisionCacheTest extends TestCase {
+    private Ivy _ivy;
+    private File _cache;
+
+    protected void setUp() throws Exception {
+        _ivy = new Ivy();
+        _ivy.configure(new File("test/repositories/ivyconf.xml"));
+        createCache();
+    }
+
+    private void createCache() {
+        _cache = new File("build/cache");
+        _cache.mkdirs();
+    }
+    
+    protected void tearDown() throws Exception {
+        cleanCache();
+    }
+
+    private void cleanCache() {
+        Delete del = new Delete();
+        del.setProject(new Project());
+        del.setDir(_cache);
+        del.execute();
+    }
+
+    public void testDisabledByDefault() throws Exception {
+        ResolvedModuleRevisionCache cache = _ivy.getResolvedModuleRevisionCache();
+        assertEquals(0, cache.getMaxSize());
+
+        URL ivyFile = new File("test/repositories/1/org2/mod2.3/ivys/ivy-0.4.xml").toURL();
+        ResolveReport report = _ivy.resolve(ivyFile, null, new String[] {"*"}, _cache, null, true);
+        assertFalse(report.hasError());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+    }
+
+    public void testCache() throws Exception {
+        final int[] calls = new int[1];
+        FileSystemResolver resolver = new FileSystemResolver() {
+            public ResolvedModuleRevision getDependency(DependencyDescriptor dd, ResolveData data) throws java.text.ParseException {
+                calls[0]++;
+                return super.getDependency(dd, data);
+            }
+        };
+        resolver.setName("counting");
+        resolver.addIvyPattern("test/repositories/1/[organisation]/[module]/ivys/ivy-[revision].xml");
+        resolver.addArtifactPattern("test/repositories/1/[organisation]/[module]/[type]s/[artifact]-[revision].[ext]");
+        _ivy.addResolver(resolver);
+        _ivy.setDefaultResolver("counting");
+        _ivy.setResolvedModuleRevisionCacheSize(100);
+        ResolvedModuleRevisionCache cache = _ivy.getResolvedModuleRevisionCache();
+
+        // mod2.3 depends on mod2.1 which depends on mod1.1, itself depending on mod1.2
+        URL ivyFile = new File("test/repositories/1/org2/mod2.3/ivys/ivy-0.4.xml").toURL();
+        ResolveReport report = _ivy.resolve(ivyFile, null, new String[] {"*"}, _cache, null, true);
+        assertFalse(report.hasError());
+        assertEquals(3, calls[0]);
+        assertEquals(3, cache.size());
+        assertEquals(0, cache.getHits());
+
+        // the resolver is not asked again for any module
+        report = _ivy.resolve(ivyFile, null, new String[] {"*"}, _cache, null, true);
+        assertFalse(report.hasError());
+        assertEquals(3, calls[0]);
+        assertEquals(3, cache.getHits());
+        assertEquals(0.5, cache.getHitRate(), 0.001);
+        assertEquals(4, report.getArtifacts().size());
+
+        // a modified ivy file in cache invalidates the entry
+        File mod11 = _ivy.getIvyFileInCache(_cache, ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"));
+        mod11.setLastModified(mod11.lastModified() - 10000);
+        // published revisions are invalidated
+        cache.invalidate(ModuleRevisionId.newInstance("org2", "mod2.1", "0.3"));
+        report = _ivy.resolve(ivyFile, null, new String[] {"*"}, _cache, null, true);
+        assertFalse(report.hasError());
+        assertEquals(5, calls[0]);
+
+        // the entries are not up to date anymore when the cache is cleaned
+        cleanCache();
+        createCache();
+        report = _ivy.resolve(ivyFile, null, new String[] {"*"}, _cache, null, true);
+        assertEquals(8, calls[0]);
+
+        // the cache is not used when it is disabled
+        _ivy.setResolvedModuleRevisionCacheSize(0);
+        report = _ivy.resolve(ivyFile, null, new String[] {"*"}, _cache, null, true);
+        assertEquals(11, calls[0]);
+    }
+}
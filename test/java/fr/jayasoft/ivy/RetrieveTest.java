@@ -5,12 +5,22 @@
  */
 package fr.jayasoft.ivy;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Delete;
 
+import fr.jayasoft.ivy.cache.RetrieveManifest;
+import fr.jayasoft.ivy.filter.FilterHelper;
 import fr.jayasoft.ivy.report.ResolveReport;
+import fr.jayasoft.ivy.util.FileUtil;
 import fr.jayasoft.ivy.util.IvyPatternHelper;
 
 import junit.framework.TestCase;
@@ -86,4 +96,137 @@ public class RetrieveTest extends TestCase {
     }
 
 
+
+    public void testRetrieveWithThreads() throws Exception {
+        final Set threads = Collections.synchronizedSet(new HashSet());
+        Ivy ivy = new Ivy() {
+            void copy(RetrieveManifest.Entry entry) throws IOException {
+                threads.add(Thread.currentThread());
+                try {
+                    // makes copies last long enough to overlap
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.copy(entry);
+            }
+        };
+        ivy.configure(new File("test/repositories/ivyconf.xml"));
+        ResolveReport report = ivy.resolve(new File("test/repositories/1/org6/mod6.2/ivys/ivy-0.4.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        ModuleDescriptor md = report.getModuleDescriptor();
+        ModuleId mid = md.getModuleRevisionId().getModuleId();
+        
+        File single = new File("build/test/retrieve/single");
+        File parallel = new File("build/test/retrieve/parallel");
+        assertEquals(4, ivy.retrieve(mid, md.getConfigurationsNames(), _cache, single.getPath()+"/[conf]/[artifact]-[revision].[ext]", null, null, false, false, 1));
+        assertEquals(1, threads.size());
+        threads.clear();
+        assertEquals(4, ivy.retrieve(mid, md.getConfigurationsNames(), _cache, parallel.getPath()+"/[conf]/[artifact]-[revision].[ext]", null, null, false, false, 3));
+        assertTrue("copies have not been made in parallel", threads.size() > 1);
+        
+        // same files as with a single thread
+        Set singleFiles = getRelativePaths(single);
+        assertEquals(4, singleFiles.size());
+        assertEquals(singleFiles, getRelativePaths(parallel));
+        for (Iterator iter = singleFiles.iterator(); iter.hasNext();) {
+            String path = (String)iter.next();
+            assertEquals(path, readFile(new File(single, path)), readFile(new File(parallel, path)));
+        }
+    }
+
+    private Set getRelativePaths(File root) {
+        Set paths = new HashSet();
+        int prefix = root.getAbsolutePath().length() + 1;
+        for (Iterator iter = FileUtil.listAll(root).iterator(); iter.hasNext();) {
+            File file = (File)iter.next();
+            if (file.isFile()) {
+                paths.add(file.getAbsolutePath().substring(prefix));
+            }
+        }
+        return paths;
+    }
+
+    private String readFile(File file) throws IOException {
+        return FileUtil.readEntirely(new BufferedReader(new FileReader(file)));
+    }
+
+    public void testRetrieveIncremental() throws Exception {
+        ResolveReport report = _ivy.resolve(new File("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        ModuleDescriptor md = report.getModuleDescriptor();
+        ModuleId mid = md.getModuleRevisionId().getModuleId();
+        
+        String pattern = "build/test/retrieve/[module]/[conf]/[artifact]-[revision].[ext]";
+        File dest = new File(IvyPatternHelper.substitute(pattern, "org1", "mod1.2", "2.0", "mod1.2", "jar", "jar", "default"));
+        assertEquals(1, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, null, true, false));
+        assertTrue(dest.exists());
+
+        // nothing changed: nothing to copy
+        assertEquals(0, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, null, true, false));
+        
+        // retrieved file removed: copied again
+        dest.delete();
+        assertEquals(1, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, null, true, false));
+        assertTrue(dest.exists());
+    }
+
+    public void testRetrieveIncrementalSync() throws Exception {
+        ResolveReport report = _ivy.resolve(new File("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        ModuleDescriptor md = report.getModuleDescriptor();
+        ModuleId mid = md.getModuleRevisionId().getModuleId();
+        
+        String pattern = "build/test/retrieve/[module]/[conf]/[artifact]-[revision].[ext]";
+        _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, null, true, false);
+        File dest = new File(IvyPatternHelper.substitute(pattern, "org1", "mod1.2", "2.0", "mod1.2", "jar", "jar", "default"));
+        assertTrue(dest.exists());
+
+        // a new resolve with a dependency in another revision: the previous one should be removed
+        report = _ivy.resolve(new File("test/repositories/1/org1/mod1.1/ivys/ivy-1.1.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, null, true, false);
+        assertFalse(dest.exists());
+        assertTrue(new File(IvyPatternHelper.substitute(pattern, "org1", "mod1.2", "2.1", "mod1.2", "jar", "jar", "default")).exists());
+    }
+
+    public void testRetrieveIncrementalSyncRemovesFilesNotRetrieved() throws Exception {
+        ResolveReport report = _ivy.resolve(new File("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        ModuleDescriptor md = report.getModuleDescriptor();
+        ModuleId mid = md.getModuleRevisionId().getModuleId();
+        
+        String pattern = "build/test/retrieve/[module]/[conf]/[artifact]-[revision].[ext]";
+        _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, null, true, false);
+        File dest = new File(IvyPatternHelper.substitute(pattern, "org1", "mod1.2", "2.0", "mod1.2", "jar", "jar", "default"));
+        assertTrue(dest.exists());
+
+        // a file which has never been retrieved is removed even if the manifest is reused
+        File foreign = new File(dest.getParentFile(), "foreign.jar");
+        FileUtil.copy(dest, foreign, null);
+        assertEquals(0, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, null, true, false));
+        assertTrue(dest.exists());
+        assertFalse(foreign.exists());
+    }
+
+    public void testRetrieveIncrementalWithFilter() throws Exception {
+        ResolveReport report = _ivy.resolve(new File("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        ModuleDescriptor md = report.getModuleDescriptor();
+        ModuleId mid = md.getModuleRevisionId().getModuleId();
+        
+        String pattern = "build/test/retrieve/[module]/[conf]/[artifact]-[revision].[ext]";
+        File dest = new File(IvyPatternHelper.substitute(pattern, "org1", "mod1.2", "2.0", "mod1.2", "jar", "jar", "default"));
+        assertEquals(0, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, FilterHelper.getArtifactTypeFilter("source"), true, false));
+        assertFalse(dest.exists());
+
+        // another filter: the manifest of the previous retrieve is not reused
+        assertEquals(1, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, FilterHelper.getArtifactTypeFilter("jar"), true, false));
+        assertTrue(dest.exists());
+        assertEquals(0, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, FilterHelper.getArtifactTypeFilter("jar"), true, false));
+
+        // back to the first filter
+        assertEquals(0, _ivy.retrieve(mid, md.getConfigurationsNames(), _cache, pattern, null, FilterHelper.getArtifactTypeFilter("source"), true, false));
+        assertFalse(dest.exists());
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.ant;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+
+public class IvyAffectedTest extends TestCase {
+    private Project _project;
+    private IvyAffected _affected;
+
+    protected void setUp() throws Exception {
+        _project = new Project();
+        _project.setBasedir(new File(".").getAbsolutePath());
+
+        _affected = new IvyAffected();
+        _affected.setProject(_project);
+
+        FileSet fs = new FileSet();
+        fs.setDir(new File("test/buildlist"));
+        fs.setIncludes("**/build.xml");
+        _affected.addFileset(fs);
+
+        _affected.setReference("affected.build.files");
+    }
+
+    public void testChangedModule() {
+        // A depends on C which depends on B, D depends on A and B
+        _affected.setChanges("test/buildlist/C/src/Foo.java");
+        _affected.execute();
+
+        assertBuildFiles(new String[] {"C", "A", "D"});
+    }
+
+    public void testChangedLeaf() {
+        _affected.setChanges("test/buildlist/D/ivy.xml, test/buildlist/D/build.xml");
+        _affected.execute();
+
+        assertBuildFiles(new String[] {"D"});
+    }
+
+    public void testChangedRoot() {
+        _affected.setChanges(new File("test/buildlist/B/ivy.xml").getAbsolutePath());
+        _affected.execute();
+
+        assertBuildFiles(new String[] {"B", "C", "A", "D"});
+    }
+
+    public void testNoModuleChanged() {
+        _affected.setChanges("src/java/Foo.java");
+        _affected.execute();
+
+        assertBuildFiles(new String[0]);
+    }
+
+    public void testChangesFile() throws Exception {
+        File changes = new File("build/test/changes.txt");
+        changes.getParentFile().mkdirs();
+        PrintWriter out = new PrintWriter(new FileWriter(changes));
+        out.println("# changed paths");
+        out.println("test/buildlist/A/src/Foo.java");
+        out.println();
+        out.println("src/java/Foo.java");
+        out.close();
+        try {
+            _affected.setChangesfile(changes);
+            _affected.execute();
+
+            assertBuildFiles(new String[] {"A", "D"});
+        } finally {
+            changes.delete();
+        }
+    }
+
+    public void testNoChanges() {
+        try {
+            _affected.execute();
+            fail("affected without changes should fail");
+        } catch (BuildException ex) {
+            // expected
+        }
+    }
+
+    private void assertBuildFiles(String[] modules) {
+        Path path = (Path)_project.getReference("affected.build.files");
+        assertNotNull(path);
+        String[] files = path.list();
+        assertEquals(modules.length, files.length);
+        for (int i = 0; i < modules.length; i++) {
+            assertEquals(new File("test/buildlist/"+modules[i]+"/build.xml").getAbsolutePath(), new File(files[i]).getAbsolutePath());
+        }
+    }
+}
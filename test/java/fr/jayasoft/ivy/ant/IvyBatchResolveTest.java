@@ -0,0 +1,91 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.ant;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+import org.apache.tools.ant.types.FileSet;
+
+import fr.jayasoft.ivy.Ivy;
+import fr.jayasoft.ivy.ModuleRevisionId;
+
+public class IvyBatchResolveTest extends TestCase {
+    private File _cache;
+    private IvyBatchResolve _resolve;
+    private Project _project;
+
+    protected void setUp() throws Exception {
+        createCache();
+        _project = new Project();
+        _project.setProperty("ivy.conf.file", "test/repositories/ivyconf.xml");
+
+        _resolve = new IvyBatchResolve();
+        _resolve.setProject(_project);
+        _resolve.setCache(_cache);
+    }
+
+    private void createCache() {
+        _cache = new File("build/cache");
+        _cache.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        cleanCache();
+    }
+
+    private void cleanCache() {
+        Delete del = new Delete();
+        del.setProject(new Project());
+        del.setDir(_cache);
+        del.execute();
+    }
+
+    public void testSimple() throws Exception {
+        // both depend on org="org1" name="mod1.2" rev="2.0"
+        _resolve.addFileset(newFileSet("ivy-simple.xml,ivy-double.xml"));
+        _resolve.execute();
+
+        assertEquals("2", _project.getProperty("ivy.nb.modules.resolved"));
+        assertTrue(getIvy().getResolvedIvyFileInCache(_cache, ModuleRevisionId.newInstance("jayasoft", "resolve-simple", "1.0")).exists());
+        assertTrue(getIvy().getResolvedIvyFileInCache(_cache, ModuleRevisionId.newInstance("jayasoft", "resolve-double", "1.0")).exists());
+        assertTrue(getIvy().getArchiveFileInCache(_cache, "org1", "mod1.2", "2.0", "mod1.2", "jar", "jar").exists());
+    }
+
+    public void testFailure() throws Exception {
+        _resolve.addFileset(newFileSet("ivy-simple.xml,ivy-failure.xml"));
+        _resolve.setFailureProperty("failed");
+        try {
+            _resolve.execute();
+            fail("failure didn't raised an exception with default haltonfailure setting");
+        } catch (BuildException ex) {
+            // ok => should raise an exception
+        }
+        assertEquals("true", _project.getProperty("failed"));
+    }
+
+    public void testFailureWithoutHalt() throws Exception {
+        _resolve.addFileset(newFileSet("ivy-failure.xml"));
+        _resolve.setHaltonfailure(false);
+        _resolve.execute();
+        assertEquals("1", _project.getProperty("ivy.nb.modules.resolved"));
+    }
+
+    private FileSet newFileSet(String includes) {
+        FileSet fs = new FileSet();
+        fs.setDir(new File("test/java/fr/jayasoft/ivy/ant"));
+        fs.setIncludes(includes);
+        return fs;
+    }
+
+    private Ivy getIvy() {
+        return _resolve.getIvyInstance();
+    }
+}
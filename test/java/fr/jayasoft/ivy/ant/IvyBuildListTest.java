@@ -12,6 +12,14 @@ import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.Path;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
 
 public class IvyBuildListTest extends TestCase {
 
@@ -194,4 +202,102 @@ public class IvyBuildListTest extends TestCase {
         assertEquals(new File("test/buildlist/D/build.xml").getAbsolutePath(), new File(files[1]).getAbsolutePath());
     }
 
+    public void testWaves() {
+        Project p = new Project();
+
+        IvyBuildList buildlist = new IvyBuildList();
+        buildlist.setProject(p);
+        buildlist.setWaves(true);
+
+        FileSet fs = new FileSet();
+        fs.setDir(new File("test/buildwaves"));
+        fs.setIncludes("**/build.xml");
+        buildlist.addFileset(fs);
+
+        buildlist.setReference("ordered.build.files");
+
+        buildlist.execute();
+
+        assertEquals(6, ((Path)p.getReference("ordered.build.files")).list().length);
+        assertEquals("4", p.getProperty("ivy.sorted.waves"));
+        assertWave(p, 0, new String[] {"core", "util"});
+        assertWave(p, 1, new String[] {"api"});
+        assertWave(p, 2, new String[] {"impl", "web"});
+        assertWave(p, 3, new String[] {"app"});
+        assertNull(p.getReference("ordered.build.files.wave.4"));
+        assertNull(p.getProperty("ivy.critical.path"));
+    }
+
+    public void testWavesWithBuildTimes() throws Exception {
+        File buildTimes = new File("build/test/buildtimes.properties");
+        File wavesFile = new File("build/test/waves.properties");
+        buildTimes.getParentFile().mkdirs();
+        Properties times = new Properties();
+        times.setProperty("core", "10");
+        times.setProperty("util", "50");
+        times.setProperty("api", "20");
+        times.setProperty("impl", "30");
+        times.setProperty("web", "100");
+        // app has no build time: the average of the others is used
+        OutputStream out = new FileOutputStream(buildTimes);
+        try {
+            times.store(out, null);
+        } finally {
+            out.close();
+        }
+
+        try {
+            Project p = new Project();
+    
+            IvyBuildList buildlist = new IvyBuildList();
+            buildlist.setProject(p);
+            buildlist.setReverse(true);
+            buildlist.setWavesfile(wavesFile);
+            buildlist.setBuildtimes(buildTimes);
+    
+            FileSet fs = new FileSet();
+            fs.setDir(new File("test/buildwaves"));
+            fs.setIncludes("**/build.xml");
+            buildlist.addFileset(fs);
+    
+            buildlist.setReference("ordered.build.files");
+    
+            buildlist.execute();
+    
+            assertEquals("4", p.getProperty("ivy.sorted.waves"));
+            assertWave(p, 0, new String[] {"app"});
+            assertWave(p, 3, new String[] {"core", "util"});
+            assertEquals("42", p.getProperty("ivy.sorted.wave.0.time"));
+            assertEquals("100", p.getProperty("ivy.sorted.wave.1.time"));
+            assertEquals("50", p.getProperty("ivy.sorted.wave.3.time"));
+            assertEquals("[ jayasoft | core ], [ jayasoft | api ], [ jayasoft | web ]", p.getProperty("ivy.critical.path"));
+            assertEquals("130", p.getProperty("ivy.critical.path.time"));
+    
+            Properties waves = new Properties();
+            InputStream in = new FileInputStream(wavesFile);
+            try {
+                waves.load(in);
+            } finally {
+                in.close();
+            }
+            assertEquals("4", waves.getProperty("ivy.sorted.waves"));
+            assertEquals(p.getProperty("ivy.sorted.wave.2.files"), waves.getProperty("ivy.sorted.wave.2.files"));
+            assertEquals("130", waves.getProperty("ivy.critical.path.time"));
+        } finally {
+            buildTimes.delete();
+            wavesFile.delete();
+        }
+    }
+
+    private void assertWave(Project p, int k, String[] modules) {
+        Set expected = new HashSet();
+        for (int i = 0; i < modules.length; i++) {
+            expected.add(new File("test/buildwaves/"+modules[i]+"/build.xml").getAbsolutePath());
+        }
+        Path path = (Path)p.getReference("ordered.build.files.wave."+k);
+        assertNotNull(path);
+        Set actual = new HashSet(Arrays.asList(path.list()));
+        assertEquals(expected, actual);
+        assertEquals(modules.length, p.getProperty("ivy.sorted.wave."+k).split(", ").length);
+    }
 }
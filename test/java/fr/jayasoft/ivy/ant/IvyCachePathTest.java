@@ -14,6 +14,12 @@ import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Delete;
 import org.apache.tools.ant.types.Path;
 
+import fr.jayasoft.ivy.Ivy;
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.report.ArtifactDownloadReport;
+import fr.jayasoft.ivy.report.DownloadStatus;
+import fr.jayasoft.ivy.report.ResolveReport;
+
 public class IvyCachePathTest extends TestCase {
     private File _cache;
     private IvyCachePath _path;
@@ -121,6 +127,40 @@ public class IvyCachePathTest extends TestCase {
         assertEquals(0, p.size());
     }
 
+    public void testLazy() throws Exception {
+        // mod2.3 gets only art21A of mod2.1 in myconf1, and both art21A and art21B in myconf2
+        IvyResolve resolve = new IvyResolve();
+        resolve.setProject(_project);
+        resolve.setCache(_cache);
+        resolve.setFile(new File("test/repositories/1/org2/mod2.3/ivys/ivy-0.4.xml"));
+        resolve.setLazy(true);
+        resolve.execute();
+
+        Ivy ivy = _path.getIvyInstance();
+        File art21A = ivy.getArchiveFileInCache(_cache, "org2", "mod2.1", "0.3", "art21A", "jar", "jar");
+        File art21B = ivy.getArchiveFileInCache(_cache, "org2", "mod2.1", "0.3", "art21B", "jar", "jar");
+        assertFalse(art21A.exists());
+        assertFalse(art21B.exists());
+
+        _path.setConf("myconf1");
+        _path.setPathid("lazy-pathid");
+        _path.execute();
+        Path p = (Path)_project.getReference("lazy-pathid");
+        assertEquals(3, p.size());
+        assertTrue(art21A.exists());
+        assertFalse(art21B.exists());
+        assertTrue(ivy.getArchiveFileInCache(_cache, "org1", "mod1.2", "2.0", "mod1.2", "jar", "jar").exists());
+
+        // the report is updated with the downloaded artifacts
+        ResolveReport report = _path.getResolvedReport();
+        ModuleRevisionId mod21 = ModuleRevisionId.newInstance("org2", "mod2.1", "0.3");
+        ArtifactDownloadReport[] adrs = report.getConfigurationReport("myconf2").getDownloadReports(mod21);
+        assertEquals(2, adrs.length);
+        for (int i = 0; i < adrs.length; i++) {
+            assertEquals(adrs[i].getName(), "art21A".equals(adrs[i].getName()) ? DownloadStatus.SUCCESSFUL : DownloadStatus.DEFERRED, adrs[i].getDownloadStatus());
+        }
+    }
+
     public void testFailure() throws Exception {
         try {
             _project.setProperty("ivy.dep.file", "test/java/fr/jayasoft/ivy/ant/ivy-failure.xml");
@@ -0,0 +1,179 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.ant;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+
+import fr.jayasoft.ivy.Ivy;
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.cache.CacheAccessIndex;
+import fr.jayasoft.ivy.report.XmlReportOutputter;
+
+public class IvyCleanCacheTest extends TestCase {
+    private File _cache;
+    private IvyCleanCache _clean;
+    private Project _project;
+
+    protected void setUp() throws Exception {
+        createCache();
+        _project = new Project();
+        _project.setProperty("ivy.conf.file", "test/repositories/ivyconf.xml");
+
+        _clean = new IvyCleanCache();
+        _clean.setProject(_project);
+        _clean.setCache(_cache);
+    }
+
+    private void createCache() {
+        _cache = new File("build/cache");
+        _cache.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        cleanCache();
+    }
+
+    private void cleanCache() {
+        Delete del = new Delete();
+        del.setProject(new Project());
+        del.setDir(_cache);
+        del.execute();
+    }
+
+    private void resolveSimple() {
+        IvyResolve resolve = new IvyResolve();
+        resolve.setProject(_project);
+        resolve.setCache(_cache);
+        resolve.setFile(new File("test/java/fr/jayasoft/ivy/ant/ivy-simple.xml"));
+        resolve.execute();
+    }
+
+    private void deleteReports() {
+        new File(_cache, XmlReportOutputter.getReportFileName(
+                ModuleRevisionId.newInstance("jayasoft", "resolve-simple", "1.0").getModuleId(), "default")).delete();
+    }
+
+    private File getJarInCache() {
+        return _clean.getIvyInstance().getArchiveFileInCache(_cache, "org1", "mod1.2", "2.0", "mod1.2", "jar", "jar");
+    }
+
+    private File getIvyFileInCache() {
+        return _clean.getIvyInstance().getIvyFileInCache(_cache, ModuleRevisionId.newInstance("org1", "mod1.2", "2.0"));
+    }
+
+    public void testAccessRecorded() throws Exception {
+        resolveSimple();
+
+        assertTrue(new File(_cache, CacheAccessIndex.JOURNAL_FILE_NAME).exists());
+        CacheAccessIndex index = _clean.getIvyInstance().getCacheAccessIndex(_cache);
+        assertEquals(1, index.getEntries().size());
+        CacheAccessIndex.Entry entry = (CacheAccessIndex.Entry)index.getEntries().get(0);
+        assertEquals(ModuleRevisionId.newInstance("org1", "mod1.2", "2.0"), entry.getModuleRevisionId());
+        assertEquals(1, entry.getPaths().size());
+    }
+
+    public void testMaxSize() throws Exception {
+        resolveSimple();
+        deleteReports();
+        assertTrue(getJarInCache().exists());
+
+        _clean.setMaxsize("0");
+        _clean.execute();
+
+        assertFalse(getJarInCache().exists());
+        assertFalse(getIvyFileInCache().exists());
+        assertEquals("1", _project.getProperty("ivy.nb.revisions.evicted"));
+        assertTrue(_clean.getIvyInstance().getCacheAccessIndex(_cache).getEntries().isEmpty());
+    }
+
+    public void testMaxAge() throws Exception {
+        resolveSimple();
+        deleteReports();
+
+        _clean.setMaxage("1d");
+        _clean.execute();
+
+        assertTrue(getJarInCache().exists());
+        assertEquals("0", _project.getProperty("ivy.nb.revisions.evicted"));
+    }
+
+    public void testKeepRevisionsUsedByReports() throws Exception {
+        resolveSimple();
+
+        _clean.setMaxsize("0");
+        _clean.execute();
+
+        assertTrue(getJarInCache().exists());
+        assertTrue(getIvyFileInCache().exists());
+    }
+
+    public void testIncremental() throws Exception {
+        resolveSimple();
+        deleteReports();
+        CacheAccessIndex index = _clean.getIvyInstance().getCacheAccessIndex(_cache);
+        assertEquals(0, index.getLastClean());
+
+        _clean.setMaxage("1d");
+        _clean.execute();
+        assertTrue(index.getLastClean() > 0);
+        CacheAccessIndex.Entry entry = (CacheAccessIndex.Entry)index.getEntries().get(0);
+        long size = entry.getSize();
+        assertTrue(size >= getJarInCache().length() + getIvyFileInCache().length());
+
+        // not accessed since last clean: not measured again
+        long jarSize = getJarInCache().length();
+        getJarInCache().delete();
+        Thread.sleep(10);
+        _clean.execute();
+        entry = (CacheAccessIndex.Entry)index.getEntries().get(0);
+        assertEquals(size, entry.getSize());
+
+        // accessed again: measured again
+        Thread.sleep(10);
+        index.recordAccess(ModuleRevisionId.newInstance("org1", "mod1.2", "2.0"));
+        index.save();
+        _clean.execute();
+        entry = (CacheAccessIndex.Entry)index.getEntries().get(0);
+        assertEquals(size - jarSize, entry.getSize());
+    }
+
+    public void testSizeWithUnit() throws Exception {
+        resolveSimple();
+        deleteReports();
+
+        _clean.setMaxsize("10m");
+        _clean.execute();
+
+        assertTrue(getJarInCache().exists());
+    }
+
+    public void testNoLimit() throws Exception {
+        try {
+            _clean.execute();
+            fail("clean cache without limit should raise an exception");
+        } catch (BuildException ex) {
+            // expected
+        }
+    }
+
+    public void testCleanCacheApi() throws Exception {
+        Ivy ivy = new Ivy();
+        ivy.configure(new File("test/repositories/ivyconf.xml"));
+        ivy.resolve(new File("test/java/fr/jayasoft/ivy/ant/ivy-simple.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+
+        assertTrue(ivy.cleanCache(_cache, 0, -1).isEmpty());
+        deleteReports();
+        assertEquals(1, ivy.cleanCache(_cache, 0, -1).size());
+        assertFalse(getJarInCache().exists());
+    }
+}
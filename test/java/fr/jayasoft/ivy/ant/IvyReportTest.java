@@ -5,13 +5,23 @@
  */
 package fr.jayasoft.ivy.ant;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import junit.framework.TestCase;
 
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Delete;
 
+import fr.jayasoft.ivy.util.FileUtil;
+
 public class IvyReportTest extends TestCase {
     private File _cache;
     private IvyReport _report;
@@ -61,4 +71,90 @@ public class IvyReportTest extends TestCase {
         
         assertTrue(new File(_cache, "report/org11-mod11.1-compile.xml").exists());
     }
+
+    public void testWarnDeferredArtifacts() throws Exception {
+        _project.setProperty("ivy.dep.file", "test/repositories/1/org2/mod2.3/ivys/ivy-0.4.xml");
+        IvyResolve res = new IvyResolve();
+        res.setProject(_project);
+        res.setCache(_cache);
+        res.setLazy(true);
+        res.execute();
+        
+        final List warnings = new ArrayList();
+        _project.addBuildListener(new BuildListener() {
+            public void messageLogged(BuildEvent event) {
+                if (event.getPriority() == Project.MSG_WARN) {
+                    warnings.add(event.getMessage());
+                }
+            }
+            public void buildStarted(BuildEvent event) {}
+            public void buildFinished(BuildEvent event) {}
+            public void targetStarted(BuildEvent event) {}
+            public void targetFinished(BuildEvent event) {}
+            public void taskStarted(BuildEvent event) {}
+            public void taskFinished(BuildEvent event) {}
+        });
+        _report.setTodir(new File(_cache, "report"));
+        _report.setXml(true);
+        _report.setXsl(false); 
+        _report.setGraph(false);
+        _report.execute();
+        
+        // one warning per conf
+        assertEquals(warnings.toString(), 2, warnings.size());
+        assertTrue((String)warnings.get(0), ((String)warnings.get(0)).indexOf("3 artifacts of [ org2 | mod2.3 ] myconf1") != -1);
+    }
+
+    public void testGraphsFromResolvedReport() throws Exception {
+        _project.setProperty("ivy.dep.file", "test/repositories/2/mod11.1/ivy-1.0.xml");
+        IvyResolve res = new IvyResolve();
+        res.setProject(_project);
+        res.execute();
+        
+        _report.setTodir(new File(_cache, "report"));
+        _report.setXsl(false);
+        _report.setGraph(true);
+        _report.setDot(true);
+        _report.execute();
+        
+        String dot = readFile(new File(_cache, "report/org11-mod11.1-test.dot"));
+        assertTrue(dot, dot.indexOf("\"org11-mod11.1\" -> \"org11-mod11.2\" [label=\"1.0\"];") != -1);
+        assertTrue(dot, dot.indexOf("\"org11-mod11.2\" [label=\"mod11.2\\n1.0\"];") != -1);
+        
+        File graphml = new File(_cache, "report/org11-mod11.1-compile.graphml");
+        assertTrue(graphml.exists());
+        // must be well formed
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(graphml);
+        String g = readFile(new File(_cache, "report/org11-mod11.1-test.graphml"));
+        assertTrue(g, g.indexOf("source=\"org11-mod11.1\" target=\"org11-mod11.2\"") != -1);
+    }
+
+    public void testReportsFromCache() throws Exception {
+        _project.setProperty("ivy.dep.file", "test/repositories/2/mod11.1/ivy-1.0.xml");
+        IvyResolve res = new IvyResolve();
+        res.setProject(_project);
+        res.execute();
+        
+        // a new project has no resolve report in memory: the xml reports in cache are transformed
+        Project project = new Project();
+        project.setProperty("ivy.conf.file", "test/repositories/ivyconf.xml");
+        _report.setProject(project);
+        _report.setOrganisation("org11");
+        _report.setModule("mod11.1");
+        _report.setConf("compile, test");
+        _report.setTodir(new File(_cache, "report"));
+        _report.setGraph(false);
+        _report.setDot(true);
+        _report.execute();
+        
+        assertTrue(new File(_cache, "report/org11-mod11.1-compile.html").exists());
+        assertTrue(new File(_cache, "report/org11-mod11.1-test.html").exists());
+        assertTrue(new File(_cache, "report/ivy-report.css").exists());
+        String dot = readFile(new File(_cache, "report/org11-mod11.1-test.dot"));
+        assertTrue(dot, dot.indexOf("\"org11-mod11.1\" -> \"org11-mod11.2\" [label=\"1.0\"];") != -1);
+    }
+
+    private String readFile(File file) throws Exception {
+        return FileUtil.readEntirely(new BufferedReader(new FileReader(file)));
+    }
 }
@@ -14,6 +14,7 @@ import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Delete;
 
+import fr.jayasoft.ivy.ModuleId;
 import fr.jayasoft.ivy.util.IvyPatternHelper;
 
 public class IvyRetrieveTest extends TestCase {
@@ -98,6 +99,20 @@ public class IvyRetrieveTest extends TestCase {
                 "org1", "mod1.2", "2.1", "mod1.2", "jar", "jar", "extension")).exists());
     }
 
+    public void testWithThreads() throws Exception {
+        _project.setProperty("ivy.dep.file", "test/repositories/1/org6/mod6.2/ivys/ivy-0.4.xml");
+        _retrieve.setThreads(3);
+        _retrieve.execute();
+
+        assertEquals("4", _project.getProperty("ivy.nb.targets.copied"));
+        assertTrue(new File(IvyPatternHelper.substitute(RETRIEVE_PATTERN,
+                "org6", "mod6.1", "0.4", "mod6.1", "jar", "jar", "default")).exists());
+        assertTrue(new File(IvyPatternHelper.substitute(RETRIEVE_PATTERN,
+                "org6", "mod6.1", "0.4", "mod6.1", "jar", "jar", "extension")).exists());
+        assertTrue(new File(IvyPatternHelper.substitute(RETRIEVE_PATTERN,
+                "org1", "mod1.2", "2.1", "mod1.2", "jar", "jar", "extension")).exists());
+    }
+
     public void testSync() throws Exception {
         _project.setProperty("ivy.dep.file", "test/repositories/1/org6/mod6.2/ivys/ivy-0.4.xml");
         _retrieve.setSync(true);
@@ -149,6 +164,50 @@ public class IvyRetrieveTest extends TestCase {
                 "jar", "jar")).exists());
     }
 
+    public void testLazy() throws Exception {
+        IvyResolve resolve = new IvyResolve();
+        resolve.setProject(_project);
+        resolve.setCache(_cache);
+        resolve.setFile(new File("test/repositories/1/org2/mod2.3/ivys/ivy-0.4.xml"));
+        resolve.setLazy(true);
+        resolve.execute();
+        File art21B = _retrieve.getIvyInstance().getArchiveFileInCache(_cache, "org2", "mod2.1", "0.3", "art21B", "jar", "jar");
+        assertFalse(art21B.exists());
+
+        // only art21A of mod2.1 is in myconf1, art21B is not downloaded
+        _retrieve.setConf("myconf1");
+        _retrieve.execute();
+        assertTrue(new File(IvyPatternHelper.substitute(RETRIEVE_PATTERN, 
+        		"org2", "mod2.1", "0.3", "art21A", "jar", "jar", "myconf1")).exists());
+        assertTrue(new File(IvyPatternHelper.substitute(RETRIEVE_PATTERN, 
+        		"org1", "mod1.2", "2.0", "mod1.2", "jar", "jar", "myconf1")).exists());
+        assertFalse(art21B.exists());
+
+        // the stored reports are updated with the downloads made by the retrieve
+        assertEquals(0, _retrieve.getIvyInstance().getReportParser().getDeferredArtifacts(
+                new ModuleId("org2", "mod2.3"), "myconf1", _cache).length);
+    }
+
+    public void testLazyMissingArtifact() throws Exception {
+        IvyResolve resolve = new IvyResolve();
+        resolve.setProject(_project);
+        resolve.setCache(_cache);
+        resolve.setFile(new File("test/java/fr/jayasoft/ivy/ant/ivy-lazy-missing.xml"));
+        resolve.setLazy(true);
+        resolve.execute();
+
+        try {
+            _retrieve.execute();
+            fail("retrieve of a missing deferred artifact should fail");
+        } catch (BuildException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("impossible to download 1 deferred artifacts") != -1);
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("mod1.2-missing") != -1);
+        }
+        // the failure is recorded in the report
+        assertEquals(0, _retrieve.getIvyInstance().getReportParser().getDeferredArtifacts(
+                new ModuleId("jayasoft", "resolve-lazy-missing"), "default", _cache).length);
+    }
+
 	public void testUseOrigin() throws Exception {
         // test case for IVY-304
 		// first we do a resolve with useOrigin=true in another project
@@ -0,0 +1,178 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+
+import fr.jayasoft.ivy.Ivy;
+import fr.jayasoft.ivy.report.ResolveReport;
+import fr.jayasoft.ivy.repository.Resource;
+import fr.jayasoft.ivy.resolver.FileSystemResolver;
+import fr.jayasoft.ivy.util.ChecksumHelper;
+import fr.jayasoft.ivy.util.FileUtil;
+
+public class BlobStoreTest extends TestCase {
+    private File _cache;
+    private BlobStore _store;
+
+    protected void setUp() throws Exception {
+        _cache = new File("build/cache");
+        _cache.mkdirs();
+        _store = new BlobStore(_cache);
+    }
+
+    protected void tearDown() throws Exception {
+        Delete del = new Delete();
+        del.setProject(new Project());
+        del.setDir(_cache);
+        del.execute();
+    }
+
+    private File copyToCache(String path) throws Exception {
+        File src = new File("test/repositories/1/org1/mod1.2/jars/mod1.2-1.0.jar");
+        File dest = new File(_cache, path);
+        FileUtil.copy(src, dest, null);
+        return dest;
+    }
+
+    public void testStoreAndFetch() throws Exception {
+        File file = copyToCache("org1/mod1.2/jars/mod1.2-1.0.jar");
+        String sha1 = _store.store(file);
+        assertEquals(ChecksumHelper.computeAsString(file, "sha1"), sha1);
+
+        if (!_store.getBlob(sha1).exists()) {
+            // hard links not supported on this platform
+            return;
+        }
+        File dest = new File(_cache, "org1/mod1.2/jars/mod1.2-1.1.jar");
+        assertTrue(_store.fetch(sha1.toUpperCase(), dest));
+        assertTrue(dest.exists());
+        assertEquals(sha1, ChecksumHelper.computeAsString(dest, "sha1"));
+        assertEquals(1, _store.getHits());
+        assertEquals(file.length(), _store.getSavedDownload());
+    }
+
+    public void testFetchUnknown() throws Exception {
+        File dest = new File(_cache, "dest.jar");
+        assertFalse(_store.fetch("cbb8391c3d1a4bc2b43d2cc5bb4a9bac7e1c7af7", dest));
+        assertFalse(_store.fetch("not a sha1", dest));
+        assertFalse(dest.exists());
+        assertEquals(0, _store.getHits());
+    }
+
+    public void testDeduplicate() throws Exception {
+        File file1 = copyToCache("org1/mod1.2/jars/mod1.2-1.0.jar");
+        File file2 = copyToCache("org2/mod1.2/jars/mod1.2-1.0.jar");
+        _store.store(file1);
+        _store.store(file2);
+        if (FileUtil.getLinkCount(file1) == -1) {
+            // hard links not supported on this platform
+            return;
+        }
+        assertEquals(3, FileUtil.getLinkCount(file1));
+        assertEquals(3, FileUtil.getLinkCount(file2));
+        assertEquals(file2.length(), _store.getSavedDisk());
+    }
+
+    public void testClean() throws Exception {
+        File file = copyToCache("org1/mod1.2/jars/mod1.2-1.0.jar");
+        String sha1 = _store.store(file);
+        assertEquals(0, _store.clean());
+        if (!_store.getBlob(sha1).exists()) {
+            return;
+        }
+        file.delete();
+        assertEquals(1, _store.clean());
+        assertFalse(_store.getBlob(sha1).exists());
+    }
+
+    public void testNoLinkCount() throws Exception {
+        // as on Windows, where the unix:nlink attribute is not available
+        BlobStore store = new BlobStore(_cache) {
+            protected int getLinkCount(File file) {
+                return -1;
+            }
+        };
+        File file = copyToCache("org1/mod1.2/jars/mod1.2-1.0.jar");
+        String sha1 = ChecksumHelper.computeAsString(file, "sha1");
+        assertNull(store.store(file));
+        assertFalse(store.getBlob(sha1).exists());
+        assertTrue(file.exists());
+        assertNull(store.store(copyToCache("org2/mod1.2/jars/mod1.2-1.0.jar")));
+        assertEquals(0, store.getSavedDisk());
+    }
+
+    public void testSavingsOnMultiRepositoryCache() throws Exception {
+        Ivy ivy = new Ivy();
+        ivy.configure(new File("test/repositories/blobstore/ivyconf.xml"));
+        File jar = new File("test/repositories/blobstore/repoB/orgB/lib/lib-2.0.jar");
+
+        ResolveReport report = ivy.resolve(new File("test/repositories/blobstore/ivy-a.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        assertFalse(report.hasError());
+        assertEquals(0, report.getBlobStoreHits());
+        if (FileUtil.getLinkCount(jar) == -1) {
+            // hard links not supported on this platform
+            return;
+        }
+
+        // same content published by another organisation in another repository
+        report = ivy.resolve(new File("test/repositories/blobstore/ivy-b.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        assertFalse(report.hasError());
+        assertEquals(1, report.getBlobStoreHits());
+        assertEquals(jar.length(), report.getBlobStoreSavedDownload());
+        assertEquals(jar.length(), report.getBlobStoreSavedDisk());
+        assertEquals(jar.length(), ivy.getCacheBlobStore(_cache).computeDiskSavings());
+    }
+
+    public void testPublishedSha1DownloadedOnce() throws Exception {
+        // not in store: the sha1 used to look in the store is also used to check the download
+        assertEquals(1, resolveCountingSha1Gets("sha1"));
+    }
+
+    public void testNoSha1LookupWithoutSha1Check() throws Exception {
+        // the store is not looked up when it would cost an additional request
+        assertEquals(0, resolveCountingSha1Gets("md5"));
+    }
+
+    /**
+     * Resolves ivy-a.xml with a resolver using the given checksums
+     * @return the number of sha1 files downloaded
+     */
+    private int resolveCountingSha1Gets(String checksums) throws Exception {
+        Ivy ivy = new Ivy();
+        ivy.configure(new File("test/repositories/blobstore/ivyconf.xml"));
+        final List sha1Gets = new ArrayList();
+        FileSystemResolver resolver = new FileSystemResolver() {
+            protected long get(Resource resource, File dest) throws IOException {
+                if (resource.getName().endsWith(".sha1")) {
+                    sha1Gets.add(resource.getName());
+                }
+                return super.get(resource, dest);
+            }
+        };
+        resolver.setName("counting");
+        resolver.setChecksums(checksums);
+        resolver.addIvyPattern(ivy.substitute("${ivy.conf.dir}/repoA/[organisation]/[module]/ivy-[revision].xml"));
+        resolver.addArtifactPattern(ivy.substitute("${ivy.conf.dir}/repoA/[organisation]/[module]/[artifact]-[revision].[ext]"));
+        ivy.addResolver(resolver);
+        ivy.setDefaultResolver("counting");
+
+        ResolveReport report = ivy.resolve(new File("test/repositories/blobstore/ivy-a.xml").toURL(),
+                null, new String[] {"*"}, _cache, null, true);
+        assertFalse(report.hasError());
+        return sha1Gets.size();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.cache;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+
+import fr.jayasoft.ivy.ModuleRevisionId;
+
+public class CacheAccessIndexTest extends TestCase {
+    private File _cache;
+
+    protected void setUp() throws Exception {
+        _cache = new File("build/cache");
+        _cache.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        Delete del = new Delete();
+        del.setProject(new Project());
+        del.setDir(_cache);
+        del.execute();
+    }
+
+    private CacheAccessIndex.Entry getEntry(CacheAccessIndex index, ModuleRevisionId mrid) {
+        for (Iterator iter = index.getEntries().iterator(); iter.hasNext();) {
+            CacheAccessIndex.Entry entry = (CacheAccessIndex.Entry)iter.next();
+            if (entry.getModuleRevisionId().equals(mrid)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public void testSaveAppendsToJournal() throws Exception {
+        ModuleRevisionId mrid = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        CacheAccessIndex index = new CacheAccessIndex(_cache);
+        index.recordAccess(mrid, new File(_cache, "org1/mod1.1/jars/mod1.1-1.0.jar"));
+        index.save();
+        assertTrue(index.getJournalFile().exists());
+        assertFalse(index.getIndexFile().exists());
+
+        CacheAccessIndex.Entry entry = getEntry(new CacheAccessIndex(_cache), mrid);
+        assertNotNull(entry);
+        assertEquals(Collections.singleton("org1/mod1.1/jars/mod1.1-1.0.jar"), entry.getPaths());
+    }
+
+    public void testBuildsSharingCache() throws Exception {
+        // two builds sharing the same cache, each with its own index
+        ModuleRevisionId mrid1 = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        ModuleRevisionId mrid2 = ModuleRevisionId.newInstance("org1", "mod1.2", "2.0");
+        CacheAccessIndex index1 = new CacheAccessIndex(_cache);
+        CacheAccessIndex index2 = new CacheAccessIndex(_cache);
+        index1.recordAccess(mrid1, new File(_cache, "org1/mod1.1/jars/mod1.1-1.0.jar"));
+        index2.recordAccess(mrid1, new File(_cache, "org1/mod1.1/srcs/mod1.1-1.0.zip"));
+        index2.recordAccess(mrid2);
+        index1.save();
+        index2.save();
+
+        List entries = new CacheAccessIndex(_cache).getEntries();
+        assertEquals(2, entries.size());
+        assertEquals(2, getEntry(index1, mrid1).getPaths().size());
+    }
+
+    public void testConcurrentSaves() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int t = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    CacheAccessIndex index = new CacheAccessIndex(_cache);
+                    for (int j = 0; j < 50; j++) {
+                        index.recordAccess(ModuleRevisionId.newInstance("org"+t, "mod", String.valueOf(j)));
+                        index.save();
+                        if (j == 25) {
+                            // a clean running meanwhile
+                            index.cleaned(Collections.EMPTY_LIST, Collections.EMPTY_LIST, 0);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        assertEquals(200, new CacheAccessIndex(_cache).getEntries().size());
+    }
+
+    public void testCleanedCompactsJournal() throws Exception {
+        ModuleRevisionId mrid1 = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        ModuleRevisionId mrid2 = ModuleRevisionId.newInstance("org1", "mod1.2", "2.0");
+        CacheAccessIndex index = new CacheAccessIndex(_cache);
+        index.recordAccess(mrid1);
+        index.recordAccess(mrid2);
+        index.save();
+
+        index.cleaned(Collections.EMPTY_LIST, Collections.singleton(mrid2), 1000);
+        assertFalse(index.getJournalFile().exists());
+        assertTrue(index.getIndexFile().exists());
+        assertEquals(1000, index.getLastClean());
+        List entries = new CacheAccessIndex(_cache).getEntries();
+        assertEquals(1, entries.size());
+        assertEquals(mrid1, ((CacheAccessIndex.Entry)entries.get(0)).getModuleRevisionId());
+    }
+}
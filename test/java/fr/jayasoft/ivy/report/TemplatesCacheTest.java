@@ -0,0 +1,73 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.report;
+
+import java.io.File;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+
+import fr.jayasoft.ivy.util.FileUtil;
+
+public class TemplatesCacheTest extends TestCase {
+    private File _dir = new File("build/test/templates");
+    
+    protected void setUp() throws Exception {
+        _dir.mkdirs();
+        TemplatesCache.clear();
+    }
+    
+    protected void tearDown() throws Exception {
+        TemplatesCache.clear();
+        Delete del = new Delete();
+        del.setProject(new Project());
+        del.setDir(_dir);
+        del.execute();
+    }
+    
+    public void testResource() throws Exception {
+        Templates templates = TemplatesCache.getTemplates("ivy-report-dot.xsl");
+        assertNotNull(templates);
+        assertSame(templates, TemplatesCache.getTemplates("ivy-report-dot.xsl"));
+        assertEquals(1, TemplatesCache.size());
+    }
+    
+    public void testUnknownResource() throws Exception {
+        try {
+            TemplatesCache.getTemplates("unknown.xsl");
+            fail("unknown stylesheet should raise an exception");
+        } catch (TransformerException ex) {
+            // ok
+        }
+    }
+    
+    public void testModifiedFile() throws Exception {
+        File style = new File(_dir, "style.xsl");
+        FileUtil.copy(XmlReportOutputter.class.getResource("ivy-report-dot.xsl"), style, null);
+        Templates templates = TemplatesCache.getTemplates(style);
+        assertSame(templates, TemplatesCache.getTemplates(style));
+        
+        style.setLastModified(style.lastModified() - 10000);
+        assertNotSame(templates, TemplatesCache.getTemplates(style));
+    }
+    
+    public void testBounded() throws Exception {
+        Templates report = TemplatesCache.getTemplates("ivy-report-dot.xsl");
+        for (int i = 0; i < TemplatesCache.MAX_SIZE + 5; i++) {
+            File style = new File(_dir, "style"+i+".xsl");
+            FileUtil.copy(XmlReportOutputter.class.getResource("ivy-report-dot.xsl"), style, null);
+            TemplatesCache.getTemplates(style);
+            // keep the report stylesheet in use
+            assertSame(report, TemplatesCache.getTemplates("ivy-report-dot.xsl"));
+        }
+        assertEquals(TemplatesCache.MAX_SIZE, TemplatesCache.size());
+    }
+}
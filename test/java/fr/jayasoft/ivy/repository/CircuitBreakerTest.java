@@ -0,0 +1,80 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import junit.framework.TestCase;
+
+import fr.jayasoft.ivy.repository.url.URLRepository;
+
+public class CircuitBreakerTest extends TestCase {
+    public void testOpenAfterThreshold() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+        breaker.failed("down");
+        breaker.failed("down");
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+
+        // a success resets the count of consecutive failures
+        breaker.succeeded();
+        breaker.failed("down");
+        breaker.failed("down");
+        assertFalse(breaker.isOpen());
+        breaker.failed("down");
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.getRemainingCoolDown() > 0);
+    }
+
+    public void testProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50);
+        breaker.failed("down");
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(60);
+        // a single probe is let through after the cool-down period
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.failed("still down");
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(60);
+        assertTrue(breaker.allowRequest());
+        breaker.succeeded();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertEquals(0, breaker.getFailures());
+    }
+
+    public void testRepositoryBreaker() throws Exception {
+        AbstractRepository repository = new URLRepository();
+        repository.setName("test");
+        assertNull(repository.getCircuitBreaker());
+        repository.setFailureThreshold(1);
+        CircuitBreaker breaker = repository.getCircuitBreaker();
+        assertSame(breaker, repository.getCircuitBreaker());
+        
+        // repositories with the same name don't share their breaker
+        AbstractRepository other = new URLRepository();
+        other.setName("test");
+        other.setFailureThreshold(1);
+        assertNotSame(breaker, other.getCircuitBreaker());
+        
+        // the state is kept when the breaker is obtained again
+        breaker.failed("down");
+        assertTrue(repository.getCircuitBreaker().isOpen());
+        assertFalse(other.getCircuitBreaker().isOpen());
+    }
+
+    public void testIsConnectionFailure() throws Exception {
+        assertTrue(CircuitBreaker.isConnectionFailure(new ConnectException("refused")));
+        assertTrue(CircuitBreaker.isConnectionFailure(new RuntimeException("wrapped", new ConnectException("refused"))));
+        assertFalse(CircuitBreaker.isConnectionFailure(new IOException("not found")));
+    }
+}
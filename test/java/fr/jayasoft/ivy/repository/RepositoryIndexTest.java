@@ -0,0 +1,80 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import fr.jayasoft.ivy.ModuleRevisionId;
+
+public class RepositoryIndexTest extends TestCase {
+    public void testReadWrite() throws Exception {
+        RepositoryIndex index = new RepositoryIndex();
+        RepositoryIndex.Entry entry = index.add(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"), 1000);
+        entry.setDescriptor(true);
+        entry.addArtifact("mod1.1", "jar", "jar");
+        index.add(ModuleRevisionId.newInstance("org1", "mod1.2", "2.0"), 2000).addArtifact("mod1.2", "jar", "jar");
+        index.add(ModuleRevisionId.newInstance("org2", "mod2.1", "0.3"), 3000);
+        index.add(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"), 4000);
+        assertEquals(3, index.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        RepositoryIndex read = RepositoryIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, read.size());
+        assertEquals(index.getLastModified(), read.getLastModified());
+        assertEquals(2, read.getOrganisations().length);
+        assertEquals("org1", read.getOrganisations()[0]);
+        assertEquals(2, read.getModules("org1").length);
+        assertEquals(0, read.getModules("unknown").length);
+
+        entry = read.getEntry(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"));
+        assertNotNull(entry);
+        assertEquals(4000, entry.getPublication());
+        assertTrue(entry.hasDescriptor());
+        assertTrue(entry.hasArtifact("mod1.1", "jar", "jar"));
+        assertFalse(entry.hasArtifact("mod1.1", "source", "zip"));
+        assertFalse(read.getEntry(ModuleRevisionId.newInstance("org1", "mod1.2", "2.0")).hasDescriptor());
+        assertFalse(read.contains(ModuleRevisionId.newInstance("org1", "mod1.2", "2.1")));
+    }
+
+    public void testAddAll() throws Exception {
+        RepositoryIndex index = new RepositoryIndex();
+        index.add(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"), 1000).addArtifact("mod1.1", "jar", "jar");
+        RepositoryIndex other = new RepositoryIndex();
+        RepositoryIndex.Entry entry = other.add(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"), 2000);
+        entry.setDescriptor(true);
+        entry.addArtifact("mod1.1", "source", "zip");
+        other.add(ModuleRevisionId.newInstance("org2", "mod2.1", "0.3"), 3000);
+        
+        index.addAll(other);
+        assertEquals(2, index.size());
+        assertEquals(2, index.getEntries().length);
+        entry = index.getEntry(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"));
+        assertEquals(2000, entry.getPublication());
+        assertTrue(entry.hasDescriptor());
+        assertTrue(entry.hasArtifact("mod1.1", "jar", "jar"));
+        assertTrue(entry.hasArtifact("mod1.1", "source", "zip"));
+    }
+
+    public void testBadVersion() throws Exception {
+        try {
+            RepositoryIndex.read(new ByteArrayInputStream("ivy-index 99 0\n".getBytes()));
+            fail("an index with an unknown version should not be read");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().indexOf("version") != -1);
+        }
+        try {
+            RepositoryIndex.read(new ByteArrayInputStream("<html></html>".getBytes()));
+            fail("a file which is not an index should not be read");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
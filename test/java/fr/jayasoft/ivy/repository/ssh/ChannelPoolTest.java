@@ -0,0 +1,119 @@
+package fr.jayasoft.ivy.repository.ssh;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class ChannelPoolTest extends TestCase {
+    /**
+     * stands for a real ssh channel, which cannot be opened without an ssh server
+     */
+    private static class FakeChannel {
+        private boolean alive = true;
+        private boolean destroyed = false;
+    }
+
+    private static class FakePool extends ChannelPool {
+        private int created = 0;
+
+        public FakePool(int maxChannels, long idleTimeout) {
+            super(maxChannels, idleTimeout);
+        }
+
+        protected Object create() throws IOException {
+            created++;
+            return new FakeChannel();
+        }
+
+        protected boolean isAlive(Object channel) {
+            return ((FakeChannel)channel).alive;
+        }
+
+        protected void destroy(Object channel) {
+            ((FakeChannel)channel).destroyed = true;
+        }
+    }
+
+    public void testReuse() throws Exception {
+        FakePool pool = new FakePool(2, 0);
+        Object c1 = pool.acquire();
+        pool.release(c1);
+        assertSame(c1, pool.acquire());
+        assertEquals(1, pool.created);
+        assertEquals(1, pool.getBusyCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testMaxChannels() throws Exception {
+        final FakePool pool = new FakePool(1, 0);
+        final Object c1 = pool.acquire();
+        final Object[] acquired = new Object[1];
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    acquired[0] = pool.acquire();
+                } catch (IOException e) {
+                    acquired[0] = e;
+                }
+            }
+        };
+        t.start();
+        t.join(200);
+        assertTrue("second acquire should wait", t.isAlive());
+        assertEquals(1, pool.created);
+
+        pool.release(c1);
+        t.join(5000);
+        assertSame(c1, acquired[0]);
+        assertEquals(1, pool.created);
+    }
+
+    public void testIdleTimeout() throws Exception {
+        FakePool pool = new FakePool(2, 10);
+        FakeChannel c1 = (FakeChannel)pool.acquire();
+        pool.release(c1);
+        Thread.sleep(50);
+        assertNotSame(c1, pool.acquire());
+        assertTrue(c1.destroyed);
+        assertEquals(2, pool.created);
+    }
+
+    public void testHealthCheck() throws Exception {
+        FakePool pool = new FakePool(2, 0);
+        FakeChannel c1 = (FakeChannel)pool.acquire();
+        pool.release(c1);
+        c1.alive = false;
+        assertNotSame(c1, pool.acquire());
+        assertTrue(c1.destroyed);
+    }
+
+    public void testDiscard() throws Exception {
+        FakePool pool = new FakePool(1, 0);
+        FakeChannel c1 = (FakeChannel)pool.acquire();
+        pool.discard(c1);
+        assertTrue(c1.destroyed);
+        assertEquals(0, pool.getBusyCount());
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(c1, pool.acquire());
+    }
+
+    public void testClose() throws Exception {
+        FakePool pool = new FakePool(2, 0);
+        FakeChannel c1 = (FakeChannel)pool.acquire();
+        FakeChannel c2 = (FakeChannel)pool.acquire();
+        pool.release(c1);
+        assertFalse(pool.isClosed());
+        pool.close();
+        assertTrue(pool.isClosed());
+        assertTrue(c1.destroyed);
+        assertFalse(c2.destroyed);
+        pool.release(c2);
+        assertTrue(c2.destroyed);
+        try {
+            pool.acquire();
+            fail("acquire on a closed pool should raise an exception");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
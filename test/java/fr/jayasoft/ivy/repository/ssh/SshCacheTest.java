@@ -0,0 +1,14 @@
+package fr.jayasoft.ivy.repository.ssh;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+
+import junit.framework.TestCase;
+
+public class SshCacheTest extends TestCase {
+    public void testAcquireOnClearedSession() throws Exception {
+        // a session not (or no longer) in the cache, as after a concurrent clearSession
+        Session session = new JSch().getSession("user", "localhost");
+        assertNull(SshCache.getInstance().acquireChannelSftp(session, 1, 0));
+    }
+}
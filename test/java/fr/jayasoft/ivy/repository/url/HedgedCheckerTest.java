@@ -0,0 +1,114 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository.url;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+public class HedgedCheckerTest extends TestCase {
+    public void testHedgeDelay() throws Exception {
+        HedgedChecker checker = new HedgedChecker();
+        for (int i = 1; i < 20; i++) {
+            checker.record(i * 10);
+        }
+        assertEquals(-1, checker.getHedgeDelay());
+        checker.record(200);
+        assertEquals(190, checker.getHedgeDelay());
+        
+        // only the most recent latencies are used
+        for (int i = 0; i < 100; i++) {
+            checker.record(5);
+        }
+        assertEquals(10, checker.getHedgeDelay());
+    }
+    
+    public void testCheck() throws Exception {
+        HedgedChecker checker = new HedgedChecker();
+        for (int i = 0; i < 40; i++) {
+            checker.record(0);
+        }
+        assertTrue(checker.check(new File("build.xml").toURL(), 0).isReachable());
+        assertFalse(checker.check(new File("unknown.xml").toURL(), 0).isReachable());
+    }
+    
+    public void testHedgedSlowServer() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        new SlowServer(server, 2000).start();
+        try {
+            HedgedChecker checker = new HedgedChecker();
+            for (int i = 0; i < 40; i++) {
+                checker.record(0);
+            }
+            long start = System.currentTimeMillis();
+            assertTrue(checker.check(new URL("http://localhost:"+server.getLocalPort()+"/ivy.xml"), 5000).isReachable());
+            // answered by the second check
+            assertTrue(System.currentTimeMillis() - start < 1500);
+            assertEquals(1, checker.getHedged());
+            // the first check is abandoned, still waiting for its answer
+            for (int i = 0; i < 50 && checker.getRunning() > 1; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, checker.getRunning());
+        } finally {
+            server.close();
+        }
+    }
+    
+    /**
+     * Answers the first request after the given delay, and the others immediately
+     */
+    private static class SlowServer extends Thread {
+        private ServerSocket _server;
+        private long _delay;
+        
+        public SlowServer(ServerSocket server, long delay) {
+            _server = server;
+            _delay = delay;
+            setDaemon(true);
+        }
+        
+        public void run() {
+            try {
+                for (int i = 0; ; i++) {
+                    final Socket socket = _server.accept();
+                    final long delay = i == 0 ? _delay : 0;
+                    Thread answer = new Thread() {
+                        public void run() {
+                            answer(socket, delay);
+                        }
+                    };
+                    answer.setDaemon(true);
+                    answer.start();
+                }
+            } catch (IOException ex) {
+                // server closed
+            }
+        }
+        
+        private void answer(Socket socket, long delay) {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                for (String line = in.readLine(); line != null && line.length() > 0; line = in.readLine()) {
+                }
+                Thread.sleep(delay);
+                OutputStream out = socket.getOutputStream();
+                out.write("HTTP/1.0 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes());
+                out.flush();
+                socket.close();
+            } catch (Exception ex) {
+                // client gone
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository.url;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class URLRepositoryTest extends TestCase {
+    public void testFetchedContentReadOnce() throws Exception {
+        URLRepository repository = new URLRepository();
+        String source = new File("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml").toURL().toExternalForm();
+        URLResource res = (URLResource)repository.fetchResource(source);
+        assertTrue(res.exists());
+        assertTrue(res.hasContent());
+        assertEquals(1, repository.getFetchedContents());
+        
+        res.openStream().close();
+        assertFalse(res.hasContent());
+        assertEquals(0, repository.getFetchedContents());
+        // read again from the url
+        assertTrue(res.openStream().read() != -1);
+    }
+    
+    public void testFetchedContentsBounded() throws Exception {
+        URLRepository repository = new URLRepository();
+        List resources = new ArrayList();
+        for (int i = 0; i < URLRepository.MAX_FETCHED_CONTENTS + 4; i++) {
+            // the query makes a distinct resource of the same file
+            String source = new File("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml").toURL().toExternalForm()+"?"+i;
+            resources.add(repository.fetchResource(source));
+        }
+        assertEquals(URLRepository.MAX_FETCHED_CONTENTS, repository.getFetchedContents());
+        for (int i = 0; i < 4; i++) {
+            assertFalse(((URLResource)resources.get(i)).hasContent());
+        }
+        assertTrue(((URLResource)resources.get(resources.size() - 1)).hasContent());
+    }
+}
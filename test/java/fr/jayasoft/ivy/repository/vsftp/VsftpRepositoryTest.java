@@ -0,0 +1,242 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.repository.vsftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import fr.jayasoft.ivy.repository.Resource;
+
+/**
+ * Tests VsftpRepository with a fake vsftp process
+ */
+public class VsftpRepositoryTest extends TestCase {
+    private static final String A = "-rw-r--r-- 1 user 1234 Jan 12, 2007 10:30 a.jar\n";
+    private static final String C = "-rw-r--r-- 1 user 56 Feb 03, 2007 08:00 c.jar\n";
+    
+    private FakeVsftpRepository _repository;
+
+    protected void setUp() throws Exception {
+        _repository = new FakeVsftpRepository();
+        _repository.setHost("localhost");
+        _repository.setUsername("user");
+        _repository.setReadTimeout(2000);
+        _repository.setPipelined(true);
+        _repository.answer("ls -l /a.jar", A, null);
+        _repository.answer("ls -l /missing.jar", "", "ls: /missing.jar: No such file or directory\n");
+        _repository.answer("ls -l /c.jar", C, null);
+    }
+
+    protected void tearDown() throws Exception {
+        _repository.disconnect();
+    }
+
+    public void testPipelinedBatch() throws Exception {
+        Resource[] resources = _repository.getResources(new String[] {"/a.jar", "/missing.jar", "/c.jar"});
+        assertTrue(resources[0].exists());
+        assertEquals(1234, resources[0].getContentLength());
+        // the error is written in the middle of the batch, and ends in the last response
+        assertFalse(resources[1].exists());
+        assertTrue(resources[2].exists());
+        assertEquals(56, resources[2].getContentLength());
+        assertEquals(3, _repository.getProcess().getCommands().size());
+        
+        // the resources obtained afterwards use the batch
+        assertTrue(_repository.getResource("/a.jar").exists());
+        assertEquals(3, _repository.getProcess().getCommands().size());
+        
+        // until it is released: it could then be stale
+        _repository.releaseResources(new String[] {"/a.jar", "/missing.jar", "/c.jar"});
+        assertTrue(_repository.getResource("/a.jar").exists());
+        assertEquals(4, _repository.getProcess().getCommands().size());
+    }
+
+    public void testNotPipelined() throws Exception {
+        _repository.setPipelined(false);
+        Resource[] resources = _repository.getResources(new String[] {"/a.jar", "/missing.jar"});
+        assertEquals(0, _repository.getProcess() == null ? 0 : _repository.getProcess().getCommands().size());
+        assertTrue(resources[0].exists());
+        assertFalse(resources[1].exists());
+        assertEquals(2, _repository.getProcess().getCommands().size());
+    }
+
+    public void testPartialBatch() throws Exception {
+        _repository.setAnswersBeforeEnd(1);
+        try {
+            _repository.getResources(new String[] {"/a.jar", "/missing.jar", "/c.jar"});
+            fail("an incomplete batch should raise an exception");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("1 of 3") != -1);
+        }
+    }
+
+    public void testNewConnection() throws Exception {
+        _repository.setMaxConnections(2);
+        VsftpRepository connection = _repository.newConnection();
+        assertTrue(connection instanceof FakeVsftpRepository);
+        assertEquals(1, connection.getMaxConnections());
+        assertEquals("localhost", connection.getHost());
+        assertTrue(connection.isPipelined());
+    }
+
+    public static class FakeVsftpRepository extends VsftpRepository {
+        private Map _answers = new HashMap();
+        private int _answersBeforeEnd = -1;
+        private FakeVsftpProcess _process;
+
+        public void answer(String command, String out, String err) {
+            _answers.put(command, new String[] {out, err});
+        }
+
+        public void setAnswersBeforeEnd(int answers) {
+            _answersBeforeEnd = answers;
+        }
+
+        public FakeVsftpProcess getProcess() {
+            return _process;
+        }
+
+        protected Process startProcess(String command) throws IOException {
+            _process = new FakeVsftpProcess(_answers, _answersBeforeEnd);
+            return _process;
+        }
+    }
+
+    /**
+     * Answers the commands it receives with the given answers, each one followed by a prompt
+     */
+    private static class FakeVsftpProcess extends Process {
+        private Map _answers;
+        private int _answersBeforeEnd;
+        private List _commands = new ArrayList();
+        private BlockingInputStream _in = new BlockingInputStream();
+        private BlockingInputStream _err = new BlockingInputStream();
+        private OutputStream _out = new OutputStream() {
+            private StringBuffer _line = new StringBuffer();
+            public void write(int b) throws IOException {
+                if (b == '\n') {
+                    command(_line.toString().trim());
+                    _line.setLength(0);
+                } else {
+                    _line.append((char)b);
+                }
+            }
+        };
+
+        public FakeVsftpProcess(Map answers, int answersBeforeEnd) {
+            _answers = answers;
+            _answersBeforeEnd = answersBeforeEnd;
+            _in.write("vsftp> ");
+        }
+
+        public synchronized List getCommands() {
+            return new ArrayList(_commands);
+        }
+
+        private synchronized void command(String command) {
+            if ("exit".equals(command)) {
+                _in.close();
+                return;
+            }
+            _commands.add(command);
+            if (_answersBeforeEnd >= 0 && _commands.size() > _answersBeforeEnd) {
+                _in.close();
+                return;
+            }
+            String[] answer = (String[])_answers.get(command);
+            if (answer == null) {
+                answer = new String[] {"", "unknown command "+command+"\n"};
+            }
+            if (answer[1] != null) {
+                _err.write(answer[1]);
+            }
+            _in.write(answer[0]+"vsftp> ");
+        }
+
+        public OutputStream getOutputStream() {
+            return _out;
+        }
+
+        public InputStream getInputStream() {
+            return _in;
+        }
+
+        public InputStream getErrorStream() {
+            return _err;
+        }
+
+        public int waitFor() throws InterruptedException {
+            return 0;
+        }
+
+        public int exitValue() {
+            return 0;
+        }
+
+        public void destroy() {
+            _in.close();
+            _err.close();
+        }
+    }
+
+    private static class BlockingInputStream extends InputStream {
+        private StringBuffer _buffer = new StringBuffer();
+        private boolean _closed = false;
+
+        public synchronized void write(String s) {
+            _buffer.append(s);
+            notifyAll();
+        }
+
+        public synchronized void close() {
+            _closed = true;
+            notifyAll();
+        }
+
+        public synchronized int read() throws IOException {
+            while (_buffer.length() == 0) {
+                if (_closed) {
+                    return -1;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+            }
+            char c = _buffer.charAt(0);
+            _buffer.deleteCharAt(0);
+            return c;
+        }
+
+        /**
+         * Returns what is available, as process streams do, waiting only for the first byte
+         */
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int c = read();
+            if (c == -1) {
+                return -1;
+            }
+            b[off] = (byte)c;
+            int n = 1;
+            for (; n < len && _buffer.length() > 0; n++) {
+                b[off + n] = (byte)_buffer.charAt(0);
+                _buffer.deleteCharAt(0);
+            }
+            return n;
+        }
+    }
+}
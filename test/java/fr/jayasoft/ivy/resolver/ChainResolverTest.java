@@ -6,6 +6,7 @@
 package fr.jayasoft.ivy.resolver;
 
 import java.io.File;
+import java.text.ParseException;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -380,5 +381,134 @@ public class ChainResolverTest extends TestCase {
         assertEquals("2", rmr.getResolver().getName());
         assertEquals("chain", rmr.getArtifactResolver().getName());
     }
+    
+    private ChainResolver buildAdaptiveChain(MockResolver[] resolvers) {
+        ChainResolver chain = new ChainResolver();
+        chain.setName("chain");
+        chain.setIvy(_ivy);
+        chain.setAdaptive(true);
+        for (int i = 0; i < resolvers.length; i++) {
+            chain.add(resolvers[i]);
+        }
+        return chain;
+    }
+    
+    public void testAdaptive() throws Exception {
+        MockResolver[] resolvers = new MockResolver[] {
+                MockResolver.buildMockResolver("1", false, null), 
+                MockResolver.buildMockResolver("2", false, null), 
+                MockResolver.buildMockResolver("3", true, null)
+            };
+        DefaultDependencyDescriptor dd = new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org","mod", "rev"), false);
+        ResolvedModuleRevision rmr = buildAdaptiveChain(resolvers).getDependency(dd, _data);
+        assertNotNull(rmr);
+        assertEquals("3", rmr.getResolver().getName());
+        for (int i = 0; i < resolvers.length; i++) {
+            assertEquals(1, resolvers[i].askedDeps.size());
+            resolvers[i].askedDeps.clear();
+        }
+        
+        // a new chain uses the statistics stored in the cache: only the resolver known to have the module is asked
+        ChainResolver chain = buildAdaptiveChain(resolvers);
+        ResolvedModuleRevision rmr2 = chain.getDependency(dd, _data);
+        assertSame(rmr, rmr2);
+        assertTrue(resolvers[0].askedDeps.isEmpty());
+        assertTrue(resolvers[1].askedDeps.isEmpty());
+        assertEquals(1, resolvers[2].askedDeps.size());
+        assertEquals("3", chain.getStatistics(_cache).getFirstHit(dd.getDependencyRevisionId()));
+    }
+    
+    public void testAdaptiveKeepsDeclarationOrder() throws Exception {
+        DefaultDependencyDescriptor dd = new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org","mod", "rev"), false);
+        MockResolver failing = new MockResolver() {
+            public ResolvedModuleRevision getDependency(DependencyDescriptor dd, ResolveData data) throws ParseException {
+                askedDeps.add(dd);
+                throw new IllegalStateException("repository unavailable");
+            }
+        };
+        failing.setName("1");
+        MockResolver[] resolvers = new MockResolver[] {
+                MockResolver.buildMockResolver("2", false, null), 
+                MockResolver.buildMockResolver("3", true, null)
+            };
+        ChainResolver chain = buildAdaptiveChain(new MockResolver[] {failing, resolvers[0], resolvers[1]});
+        assertEquals("3", chain.getDependency(dd, _data).getResolver().getName());
+        // the first resolver may have the module: 3 is not recorded as the first hit
+        assertNull(chain.getStatistics(_cache).getFirstHit(dd.getDependencyRevisionId()));
+        
+        failing.askedDeps.clear();
+        resolvers[0].askedDeps.clear();
+        chain = buildAdaptiveChain(new MockResolver[] {failing, resolvers[0], resolvers[1]});
+        chain.getDependency(dd, _data);
+        assertEquals(1, failing.askedDeps.size());
+        assertEquals(1, resolvers[0].askedDeps.size());
+    }
+    
+    public void testAdaptiveLookupStatistics() throws Exception {
+        MockResolver[] resolvers = new MockResolver[] {
+                MockResolver.buildMockResolver("1", false, null), 
+                MockResolver.buildMockResolver("2", true, null), 
+        };
+        DefaultDependencyDescriptor dd = new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org","mod", "rev"), false);
+        ChainResolver chain = buildAdaptiveChain(resolvers);
+        chain.getDependency(dd, _data);
+        
+        ChainStatistics stats = chain.getStatistics(_cache);
+        assertEquals(0, stats.getHits("org", "1"));
+        assertEquals(1, stats.getMisses("org", "1"));
+        assertEquals(0, stats.getHitRate("org", "1"), 0);
+        assertEquals(1, stats.getHits("org", "2"));
+        assertEquals(0, stats.getMisses("org", "2"));
+        assertEquals(1, stats.getHitRate("org", "2"), 0);
+        assertTrue(stats.getAverageTime("org", "2") >= 0);
+        assertEquals(-1, stats.getHitRate("other", "2"), 0);
+        assertEquals(-1, stats.getAverageTime("other", "2"));
+        
+        // the counters are saved with the statistics
+        stats = new ChainStatistics(_cache, "chain");
+        assertEquals(1, stats.getMisses("org", "1"));
+        assertEquals(1, stats.getHits("org", "2"));
+        assertEquals(1, stats.size());
+    }
+    
+    public void testAdaptiveStatisticsBounded() throws Exception {
+        ChainStatistics stats = new ChainStatistics(_cache, "bounded");
+        for (int i = 0; i < ChainStatistics.MAX_REVISIONS + 10; i++) {
+            stats.setFirstHit(ModuleRevisionId.newInstance("org","mod", String.valueOf(i)), "1");
+        }
+        stats.save();
+        stats = new ChainStatistics(_cache, "bounded");
+        assertEquals(ChainStatistics.MAX_REVISIONS, stats.size());
+    }
+    
+    public void testAdaptiveModuleMoved() throws Exception {
+        DefaultDependencyDescriptor dd = new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org","mod", "rev"), false);
+        buildAdaptiveChain(new MockResolver[] {
+                MockResolver.buildMockResolver("1", false, null), 
+                MockResolver.buildMockResolver("2", false, null), 
+                MockResolver.buildMockResolver("3", true, null)
+            }).getDependency(dd, _data);
+        
+        // the module is not in 3 anymore: the declaration order is used
+        MockResolver[] resolvers = new MockResolver[] {
+                MockResolver.buildMockResolver("1", false, null), 
+                MockResolver.buildMockResolver("2", true, null), 
+                MockResolver.buildMockResolver("3", false, null)
+            };
+        ResolvedModuleRevision rmr = buildAdaptiveChain(resolvers).getDependency(dd, _data);
+        assertNotNull(rmr);
+        assertEquals("2", rmr.getResolver().getName());
+        assertEquals(1, resolvers[0].askedDeps.size());
+        assertEquals(1, resolvers[1].askedDeps.size());
+        assertEquals(1, resolvers[2].askedDeps.size());
+        
+        // and the new location is known
+        resolvers[1].askedDeps.clear();
+        resolvers[0].askedDeps.clear();
+        rmr = buildAdaptiveChain(resolvers).getDependency(dd, _data);
+        assertEquals("2", rmr.getResolver().getName());
+        assertTrue(resolvers[0].askedDeps.isEmpty());
+        assertEquals(1, resolvers[1].askedDeps.size());
+    }
         
 }
@@ -7,7 +7,11 @@ package fr.jayasoft.ivy.resolver;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.Date;
 import java.util.GregorianCalendar;
 
@@ -28,6 +32,8 @@ import fr.jayasoft.ivy.latest.LatestTimeStrategy;
 import fr.jayasoft.ivy.report.ArtifactDownloadReport;
 import fr.jayasoft.ivy.report.DownloadReport;
 import fr.jayasoft.ivy.report.DownloadStatus;
+import fr.jayasoft.ivy.repository.RepositoryIndex;
+import fr.jayasoft.ivy.repository.Resource;
 import fr.jayasoft.ivy.util.FileUtil;
 
 /**
@@ -135,6 +141,36 @@ public class FileSystemResolverTest extends TestCase {
         resolver.reportFailure();
     }
 
+    public void testRetry() throws Exception {
+        final int[] failures = new int[] {2};
+        FileSystemResolver resolver = new FileSystemResolver() {
+            protected long get(Resource resource, File dest) throws IOException {
+                if (failures[0]-- > 0) {
+                    throw new IOException("simulated failure");
+                }
+                return super.get(resource, dest);
+            }
+        };
+        resolver.setName("test");
+        resolver.setIvy(_ivy);
+        resolver.addIvyPattern(IVY_PATTERN);
+        resolver.addArtifactPattern("test/repositories/1/[organisation]/[module]/[type]s/[artifact]-[revision].[type]");
+        resolver.setRetryDelay(1);
+        
+        ModuleRevisionId mrid = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        DefaultArtifact artifact = new DefaultArtifact(mrid, new Date(), "mod1.1", "jar", "jar");
+        
+        // no retry by default
+        DownloadReport report = resolver.download(new Artifact[] {artifact}, _ivy, _cache, false);
+        assertEquals(DownloadStatus.FAILED, report.getArtifactReport(artifact).getDownloadStatus());
+        
+        failures[0] = 2;
+        resolver.setRetries(2);
+        report = resolver.download(new Artifact[] {artifact}, _ivy, _cache, false);
+        assertEquals(DownloadStatus.SUCCESSFUL, report.getArtifactReport(artifact).getDownloadStatus());
+        assertEquals(-1, failures[0]);
+    }
+
     public void testChecksum() throws Exception {
         FileSystemResolver resolver = new FileSystemResolver();
         resolver.setName("test");
@@ -316,7 +352,8 @@ public class FileSystemResolverTest extends TestCase {
         FileUtil.copy(new File("test/repositories/checkmodified/mod1.1-1.0-after.jar"), artifact, null);
         pubdate = new GregorianCalendar(2005, 4, 1, 11, 0, 0).getTime();
         modify.setLastModified(pubdate.getTime());
-        // no need to update new artifact timestamp cause it isn't used
+        // artifact timestamp is used to know if the artifact in cache is still up to date
+        artifact.setLastModified(pubdate.getTime());
         
         // should not get the new version: checkmodified is false and edpendency is not told to be a changing one
         resolver.setCheckmodified(false);
@@ -338,14 +375,150 @@ public class FileSystemResolverTest extends TestCase {
         assertEquals(mrid, rmr.getId());
         assertEquals(pubdate, rmr.getPublicationDate());
 
-        assertFalse(archiveFileInCache.exists());
+        // the artifact is kept in cache, but must be revalidated
+        assertTrue(_ivy.isArtifactToRevalidate(_cache, artifacts[0]));
 
         artifacts = rmr.getDescriptor().getArtifacts("default");
-        resolver.download(artifacts, _ivy, _cache, false);
+        DownloadReport report = resolver.download(artifacts, _ivy, _cache, false);
+        assertEquals(DownloadStatus.SUCCESSFUL, report.getArtifactReport(artifacts[0]).getDownloadStatus());
         assertTrue(archiveFileInCache.exists());
         r = new BufferedReader(new FileReader(archiveFileInCache));
         assertEquals("after", r.readLine());
         r.close();
+        assertFalse(_ivy.isArtifactToRevalidate(_cache, artifacts[0]));
+    }
+
+    public void testChangingNotModified() throws Exception {
+        FileSystemResolver resolver = new FileSystemResolver();
+        resolver.setName("test");
+        resolver.setIvy(_ivy);
+        _ivy.addResolver(resolver);
+        
+        resolver.addIvyPattern("test"+FS+"repositories"+FS+"checkmodified"+FS+"ivy-[revision].xml");
+        resolver.addArtifactPattern("test"+FS+"repositories"+FS+"checkmodified"+FS+"[artifact]-[revision].[ext]");
+        File modify = new File("test/repositories/checkmodified/ivy-1.0.xml");
+        File artifact = new File("test/repositories/checkmodified/mod1.1-1.0.jar");
+        
+        // 'publish' 'before' version
+        FileUtil.copy(new File("test/repositories/checkmodified/ivy-1.0-before.xml"), modify, null);
+        FileUtil.copy(new File("test/repositories/checkmodified/mod1.1-1.0-before.jar"), artifact, null);
+        modify.setLastModified(new GregorianCalendar(2004, 10, 1, 11, 0, 0).getTimeInMillis());
+        
+        ModuleRevisionId mrid = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        ResolvedModuleRevision rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false, true), _data);
+        Artifact[] artifacts = rmr.getDescriptor().getArtifacts("default");
+        resolver.download(artifacts, _ivy, _cache, false);
+        File archiveFileInCache = _ivy.getArchiveFileInCache(_cache, artifacts[0]);
+        long downloadTime = archiveFileInCache.lastModified();
+        
+        // updates only the ivy file in repository
+        FileUtil.copy(new File("test/repositories/checkmodified/ivy-1.0-after.xml"), modify, null);
+        Date pubdate = new GregorianCalendar(2005, 4, 1, 11, 0, 0).getTime();
+        modify.setLastModified(pubdate.getTime());
+
+        rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false, true), _data);
+        assertEquals(pubdate, rmr.getPublicationDate());
+        
+        // the artifact has not changed: it is not downloaded again
+        artifacts = rmr.getDescriptor().getArtifacts("default");
+        DownloadReport report = resolver.download(artifacts, _ivy, _cache, false);
+        assertEquals(DownloadStatus.NO, report.getArtifactReport(artifacts[0]).getDownloadStatus());
+        assertEquals(downloadTime, archiveFileInCache.lastModified());
+        BufferedReader r = new BufferedReader(new FileReader(archiveFileInCache));
+        assertEquals("before", r.readLine());
+        r.close();
+        assertFalse(_ivy.isArtifactToRevalidate(_cache, artifacts[0]));
+    }
+
+    public void testResumePartialDownload() throws Exception {
+        FileSystemResolver resolver = new FileSystemResolver();
+        resolver.setName("test");
+        resolver.setIvy(_ivy);
+        _ivy.addResolver(resolver);
+        
+        resolver.addIvyPattern("test"+FS+"repositories"+FS+"checkmodified"+FS+"ivy-[revision].xml");
+        resolver.addArtifactPattern("test"+FS+"repositories"+FS+"checkmodified"+FS+"[artifact]-[revision].[ext]");
+        File ivyFile = new File("test/repositories/checkmodified/ivy-1.0.xml");
+        File artifact = new File("test/repositories/checkmodified/mod1.1-1.0.jar");
+        FileUtil.copy(new File("test/repositories/checkmodified/ivy-1.0-before.xml"), ivyFile, null);
+        FileUtil.copy(new File("test/repositories/checkmodified/mod1.1-1.0-after.jar"), artifact, null);
+        long lastModified = new GregorianCalendar(2005, 4, 1, 11, 0, 0).getTimeInMillis();
+        artifact.setLastModified(lastModified);
+        
+        ModuleRevisionId mrid = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        ResolvedModuleRevision rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false), _data);
+        Artifact[] artifacts = rmr.getDescriptor().getArtifacts("default");
+        File archiveFileInCache = _ivy.getArchiveFileInCache(_cache, artifacts[0]);
+        File part = _ivy.getArchiveFileInCache(_cache, new DefaultArtifact(mrid, artifacts[0].getPublicationDate(), 
+                artifacts[0].getName(), artifacts[0].getType(), artifacts[0].getExt()+".part"));
+        
+        // a partial download of the same resource: only the missing bytes are fetched
+        writePart(part, "XYZ", lastModified);
+        DownloadReport report = resolver.download(artifacts, _ivy, _cache, false);
+        assertEquals(DownloadStatus.SUCCESSFUL, report.getArtifactReport(artifacts[0]).getDownloadStatus());
+        assertFalse(part.exists());
+        BufferedReader r = new BufferedReader(new FileReader(archiveFileInCache));
+        assertEquals("XYZer", r.readLine());
+        r.close();
+        
+        // a partial download of a modified resource: the whole resource is downloaded again
+        archiveFileInCache.delete();
+        writePart(part, "XYZ", lastModified - 1000);
+        report = resolver.download(artifacts, _ivy, _cache, false);
+        assertEquals(DownloadStatus.SUCCESSFUL, report.getArtifactReport(artifacts[0]).getDownloadStatus());
+        r = new BufferedReader(new FileReader(archiveFileInCache));
+        assertEquals("after", r.readLine());
+        r.close();
+    }
+
+    public void testFailedResumeStartsOver() throws Exception {
+        final int[] resumes = new int[1];
+        FileSystemResolver resolver = new FileSystemResolver() {
+            protected long resume(Resource resource, File dest, long lastModified) throws IOException {
+                // the server refuses the range, as with a 416 status
+                resumes[0]++;
+                throw new IOException("HTTP 416=Requested Range Not Satisfiable");
+            }
+        };
+        resolver.setName("test");
+        resolver.setIvy(_ivy);
+        resolver.setRetries(1);
+        resolver.setRetryDelay(0);
+        _ivy.addResolver(resolver);
+        
+        resolver.addIvyPattern("test"+FS+"repositories"+FS+"checkmodified"+FS+"ivy-[revision].xml");
+        resolver.addArtifactPattern("test"+FS+"repositories"+FS+"checkmodified"+FS+"[artifact]-[revision].[ext]");
+        File ivyFile = new File("test/repositories/checkmodified/ivy-1.0.xml");
+        File artifact = new File("test/repositories/checkmodified/mod1.1-1.0.jar");
+        FileUtil.copy(new File("test/repositories/checkmodified/ivy-1.0-before.xml"), ivyFile, null);
+        FileUtil.copy(new File("test/repositories/checkmodified/mod1.1-1.0-after.jar"), artifact, null);
+        long lastModified = new GregorianCalendar(2005, 4, 1, 11, 0, 0).getTimeInMillis();
+        artifact.setLastModified(lastModified);
+        
+        ModuleRevisionId mrid = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        ResolvedModuleRevision rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false), _data);
+        Artifact[] artifacts = rmr.getDescriptor().getArtifacts("default");
+        File archiveFileInCache = _ivy.getArchiveFileInCache(_cache, artifacts[0]);
+        File part = _ivy.getArchiveFileInCache(_cache, new DefaultArtifact(mrid, artifacts[0].getPublicationDate(), 
+                artifacts[0].getName(), artifacts[0].getType(), artifacts[0].getExt()+".part"));
+        
+        // the partial download can't be resumed: it is discarded and the next attempt starts over
+        writePart(part, "after", lastModified);
+        DownloadReport report = resolver.download(artifacts, _ivy, _cache, false);
+        assertEquals(DownloadStatus.SUCCESSFUL, report.getArtifactReport(artifacts[0]).getDownloadStatus());
+        assertEquals(1, resumes[0]);
+        assertFalse(part.exists());
+        BufferedReader r = new BufferedReader(new FileReader(archiveFileInCache));
+        assertEquals("after", r.readLine());
+        r.close();
+    }
+
+    private void writePart(File part, String content, long lastModified) throws Exception {
+        part.getParentFile().mkdirs();
+        FileWriter w = new FileWriter(part);
+        w.write(content);
+        w.close();
+        part.setLastModified(lastModified);
     }
 
     public void testLatestTime() throws Exception {
@@ -500,6 +673,126 @@ public class FileSystemResolverTest extends TestCase {
         ResolverTestHelper.assertRevisionEntries(resolver, mod, new String[] {"1.0", "1.1", "2.0", "2.1", "2.2"}, revs);
     }
 
+    public void testIndex() throws Exception {
+        File index = new File(_cache, "ivy-index.txt");
+        FileSystemResolver resolver = new FileSystemResolver();
+        resolver.setName("test");
+        resolver.setIvy(_ivy);
+        resolver.setIndex(index.getAbsolutePath());
+        resolver.addIvyPattern(IVY_PATTERN);
+        resolver.addArtifactPattern("test/repositories/1/[organisation]/[module]/[type]s/[artifact]-[revision].[ext]");
+        
+        assertTrue(resolver.makeIndex(null) > 0);
+        assertTrue(index.exists());
+        // the index is up to date
+        assertEquals(0, resolver.makeIndex(null));
+        RepositoryIndex repIndex = RepositoryIndex.read(new FileInputStream(index));
+        RepositoryIndex.Entry entry = repIndex.getEntry(ModuleRevisionId.newInstance("org1", "mod1.2", "2.0"));
+        assertNotNull(entry);
+        assertFalse(entry.hasDescriptor());
+        assertTrue(entry.hasArtifact("mod1.2", "jar", "jar"));
+        assertTrue(repIndex.getEntry(ModuleRevisionId.newInstance("org1", "mod1.1", "2.0")).hasDescriptor());
+        
+        ResolvedModuleRevision rmr = resolver.getDependency(new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org1", "mod1.1", "latest.integration"), false), _data);
+        assertNotNull(rmr);
+        assertEquals(ModuleRevisionId.newInstance("org1", "mod1.1", "2.0"), rmr.getId());
+
+        // replace the index by one knowing only a revision which is not in the repository
+        repIndex = new RepositoryIndex();
+        repIndex.add(ModuleRevisionId.newInstance("org1", "mod1.1", "3.0"), 0).setDescriptor(true);
+        FileOutputStream out = new FileOutputStream(index);
+        repIndex.write(out);
+        out.close();
+        resolver.setIndex(index.getAbsolutePath());
+        
+        OrganisationEntry org = new OrganisationEntry(resolver, "org1");
+        ModuleEntry mod = new ModuleEntry(org, "mod1.1");
+        ResolverTestHelper.assertRevisionEntries(resolver, mod, new String[] {"3.0"}, resolver.listRevisions(mod));
+        
+        // the indexed revision doesn't exist: the repository is listed
+        rmr = resolver.getDependency(new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org1", "mod1.1", "latest.integration"), false), _data);
+        assertNotNull(rmr);
+        assertEquals(ModuleRevisionId.newInstance("org1", "mod1.1", "2.0"), rmr.getId());
+        
+        // a revision found in the repository is missing in the index: the index is not used anymore
+        rmr = resolver.getDependency(new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"), false), _data);
+        assertNotNull(rmr);
+        ResolverTestHelper.assertRevisionEntries(resolver, mod, new String[] {"1.0", "1.0.1", "1.1", "2.0"}, resolver.listRevisions(mod));
+    }
+
+    public void testIndexTtl() throws Exception {
+        File index = new File(_cache, "ivy-index.txt");
+        RepositoryIndex repIndex = new RepositoryIndex();
+        repIndex.add(ModuleRevisionId.newInstance("org1", "mod1.1", "3.0"), 0).setDescriptor(true);
+        repIndex.setLastModified(System.currentTimeMillis() - 20000);
+        FileOutputStream out = new FileOutputStream(index);
+        repIndex.write(out);
+        out.close();
+
+        FileSystemResolver resolver = new FileSystemResolver();
+        resolver.setName("test");
+        resolver.setIvy(_ivy);
+        resolver.setIndex(index.getAbsolutePath());
+        resolver.addIvyPattern(IVY_PATTERN);
+        resolver.addArtifactPattern("test/repositories/1/[organisation]/[module]/[type]s/[artifact]-[revision].[ext]");
+        OrganisationEntry org = new OrganisationEntry(resolver, "org1");
+        ModuleEntry mod = new ModuleEntry(org, "mod1.1");
+        // the index doesn't expire by default
+        ResolverTestHelper.assertRevisionEntries(resolver, mod, new String[] {"3.0"}, resolver.listRevisions(mod));
+
+        // an index older than the ttl isn't used
+        resolver.setIndex(index.getAbsolutePath());
+        resolver.setIndexTtl(10000);
+        ResolverTestHelper.assertRevisionEntries(resolver, mod, new String[] {"1.0", "1.0.1", "1.1", "2.0"}, resolver.listRevisions(mod));
+
+        // makeindex refreshes the index
+        resolver.makeIndex(null);
+        resolver.setIndex(index.getAbsolutePath());
+        ResolverTestHelper.assertRevisionEntries(resolver, mod, new String[] {"1.0", "1.0.1", "1.1", "2.0", "3.0"}, resolver.listRevisions(mod));
+    }
+
+    public void testPublishUpdatesIndex() throws Exception {
+        File index = new File(_cache, "ivy-index.txt");
+        try {
+            FileSystemResolver resolver = new FileSystemResolver();
+            resolver.setName("test");
+            resolver.setIvy(_ivy);
+            resolver.setIndex(index.getAbsolutePath());
+            resolver.addIvyPattern("test"+FS+"repositories"+FS+"1"+FS+"[organisation]"+FS+"[module]"+FS+"[revision]"+FS+"[artifact].[ext]");
+            resolver.addArtifactPattern("test/repositories/1/[organisation]/[module]/[type]s/[artifact]-[revision].[ext]");
+            
+            ModuleRevisionId mrid = ModuleRevisionId.newInstance("myorg", "mymodule", "myrevision");
+            File src = new File("test/repositories/ivyconf.xml");
+            resolver.publish(new DefaultArtifact(mrid, new Date(), "myartifact", "mytype", "myext"), src, false);
+            resolver.publish(new DefaultArtifact(mrid, new Date(), "ivy", "ivy", "xml"), src, false);
+            // the index is updated once all the artifacts are published
+            assertFalse(index.exists());
+            assertEquals(1, resolver.flushIndex());
+            assertEquals(0, resolver.flushIndex());
+            
+            RepositoryIndex repIndex = RepositoryIndex.read(new FileInputStream(index));
+            assertEquals(1, repIndex.size());
+            RepositoryIndex.Entry entry = repIndex.getEntry(mrid);
+            assertTrue(entry.hasDescriptor());
+            assertTrue(entry.hasArtifact("myartifact", "mytype", "myext"));
+            
+            // the revisions indexed meanwhile by another publisher are kept
+            repIndex.add(ModuleRevisionId.newInstance("myorg", "mymodule", "other"), 0);
+            FileOutputStream out = new FileOutputStream(index);
+            repIndex.write(out);
+            out.close();
+            resolver.publish(new DefaultArtifact(ModuleRevisionId.newInstance("myorg", "mymodule", "myrevision2"), new Date(), "myartifact", "mytype", "myext"), src, false);
+            resolver.flushIndex();
+            repIndex = RepositoryIndex.read(new FileInputStream(index));
+            assertEquals(3, repIndex.size());
+        } finally {
+            Delete del = new Delete();
+            del.setProject(new Project());
+            del.setDir(new File("test/repositories/1/myorg"));
+            del.execute();
+        }
+    }
+
     public void testDownloadWithUseOriginIsTrue() throws Exception {
         FileSystemResolver resolver = new FileSystemResolver();
         resolver.setName("test");
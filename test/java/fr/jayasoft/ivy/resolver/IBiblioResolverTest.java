@@ -6,7 +6,10 @@
 package fr.jayasoft.ivy.resolver;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -100,6 +103,37 @@ public class IBiblioResolverTest extends TestCase {
         assertEquals("http://www.ibiblio.org/maven/[module]/jars/[artifact]-[revision].jar", l.get(0));
 }
 
+    public void testMavenMetadata() throws Exception {
+        IBiblioResolver resolver = new IBiblioResolver();
+        resolver.setName("test");
+        resolver.setIvy(_ivy);
+        resolver.setM2compatible(true);
+        resolver.setRoot(new File("test/repositories/m2").toURL().toExternalForm());
+        
+        // the maven-metadata.xml of test4 only lists 1.0, even though 1.1 is in the repository
+        ModuleRevisionId mrid = ModuleRevisionId.newInstance("fr.jayasoft", "test4", "latest.integration");
+        ResolvedModuleRevision rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false), _data);
+        assertNotNull(rmr);
+        assertEquals(ModuleRevisionId.newInstance("fr.jayasoft", "test4", "1.0"), rmr.getId());
+        
+        Map tokenValues = new HashMap();
+        tokenValues.put("organisation", "fr.jayasoft");
+        tokenValues.put("module", "test4");
+        assertEquals(Arrays.asList(new String[] {"1.0"}), Arrays.asList(resolver.listTokenValues("revision", tokenValues)));
+        
+        // test2 has no maven-metadata.xml: its revisions are listed
+        mrid = ModuleRevisionId.newInstance("fr.jayasoft", "test2", "latest.integration");
+        rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false), _data);
+        assertNotNull(rmr);
+        assertEquals(ModuleRevisionId.newInstance("fr.jayasoft", "test2", "1.0"), rmr.getId());
+        
+        resolver.setUseMavenMetadata(false);
+        mrid = ModuleRevisionId.newInstance("fr.jayasoft", "test4", "latest.integration");
+        rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false), _data);
+        assertNotNull(rmr);
+        assertEquals(ModuleRevisionId.newInstance("fr.jayasoft", "test4", "1.1"), rmr.getId());
+    }
+
     public void testIBiblio() throws Exception {
         String ibiblioRoot = IBiblioHelper.getIBiblioMirror();
         if (ibiblioRoot == null) {
@@ -6,8 +6,13 @@
 package fr.jayasoft.ivy.resolver;
 
 import java.io.File;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -26,6 +31,9 @@ import fr.jayasoft.ivy.matcher.ExactPatternMatcher;
 import fr.jayasoft.ivy.report.ArtifactDownloadReport;
 import fr.jayasoft.ivy.report.DownloadReport;
 import fr.jayasoft.ivy.report.DownloadStatus;
+import fr.jayasoft.ivy.repository.AbstractRepository;
+import fr.jayasoft.ivy.repository.CircuitBreaker;
+import fr.jayasoft.ivy.repository.UnreachableRepositoryException;
 
 /**
  * Tests URLResolver. Http tests are based upon ibiblio site.
@@ -94,6 +102,82 @@ public class URLResolverTest extends TestCase {
         assertEquals(DownloadStatus.NO, ar.getDownloadStatus());
     }
 
+    public void testFetchDescriptors() throws Exception {
+        URLResolver resolver = new URLResolver();
+        resolver.setIvy(_ivy);
+        resolver.setName("test");
+        resolver.setFetchdescriptors(true);
+        String rootpath = new File("test/repositories/1").getAbsolutePath().replaceAll("\\\\", "/");
+        resolver.addIvyPattern("file:"+rootpath + "/[organisation]/[module]/unknown/ivy-[revision].xml");
+        resolver.addIvyPattern("file:"+rootpath + "/[organisation]/[module]/ivys/ivy-[revision].xml");
+        resolver.addArtifactPattern("file:"+rootpath + "/[organisation]/[module]/[type]s/[artifact]-[revision].[type]");
+        
+        ModuleRevisionId mrid = ModuleRevisionId.newInstance("org1", "mod1.1", "1.0");
+        ResolvedModuleRevision rmr = resolver.getDependency(new DefaultDependencyDescriptor(mrid, false), _data);
+        assertNotNull(rmr);
+        assertEquals(mrid, rmr.getId());
+        assertEquals(new GregorianCalendar(2004, 10, 1, 11, 0, 0).getTime(), rmr.getPublicationDate());
+        assertEquals(1, rmr.getDescriptor().getAllArtifacts().length);
+        
+        assertNull(resolver.getDependency(new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org1", "mod1.1", "9.9"), false), _data));
+    }
+    
+    public void testCircuitBreaker() throws Exception {
+        // a server accepting connections but never answering
+        final ServerSocket server = new ServerSocket(0);
+        final List connections = new ArrayList();
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = server.accept();
+                        synchronized (connections) {
+                            connections.add(socket);
+                        }
+                    }
+                } catch (Exception ex) {
+                    // server closed
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        try {
+            URLResolver resolver = new URLResolver();
+            resolver.setIvy(_ivy);
+            resolver.setName("test-circuit-breaker");
+            resolver.setTimeout(200);
+            resolver.setFailureThreshold(2);
+            resolver.setCoolDown(60000);
+            String root = "http://localhost:"+server.getLocalPort();
+            resolver.addIvyPattern(root+"/[organisation]/[module]/ivy-[revision].xml");
+            resolver.addArtifactPattern(root+"/[organisation]/[module]/[artifact]-[revision].[ext]");
+            
+            // the ivy file and artifact checks both fail
+            assertNull(resolver.getDependency(new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org1", "mod1.1", "1.0"), false), _data));
+            CircuitBreaker breaker = ((AbstractRepository)resolver.getRepository()).getCircuitBreaker();
+            assertTrue(breaker.isOpen());
+            
+            int nbConnections = connections.size();
+            long start = System.currentTimeMillis();
+            try {
+                resolver.getDependency(new DefaultDependencyDescriptor(ModuleRevisionId.newInstance("org1", "mod1.2", "1.0"), false), _data);
+                fail("an unreachable repository should be skipped with an exception");
+            } catch (UnreachableRepositoryException ex) {
+                assertTrue(ex.getMessage().indexOf("unreachable") != -1);
+            }
+            assertTrue(System.currentTimeMillis() - start < 200);
+            assertEquals(nbConnections, connections.size());
+        } finally {
+            server.close();
+            synchronized (connections) {
+                for (Iterator iter = connections.iterator(); iter.hasNext();) {
+                    ((Socket)iter.next()).close();
+                }
+            }
+        }
+    }
+
     public void testLatestFile() throws Exception {
         URLResolver resolver = new URLResolver();
         resolver.setIvy(_ivy);
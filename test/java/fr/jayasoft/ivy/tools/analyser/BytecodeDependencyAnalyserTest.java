@@ -0,0 +1,194 @@
+package fr.jayasoft.ivy.tools.analyser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+
+import fr.jayasoft.ivy.DependencyDescriptor;
+import fr.jayasoft.ivy.ModuleDescriptor;
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.util.Message;
+
+public class BytecodeDependencyAnalyserTest extends TestCase {
+	private File _dir = new File("build/test/analyser");
+
+	protected void setUp() throws Exception {
+		_dir.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		Delete del = new Delete();
+		del.setProject(new Project());
+		del.setDir(_dir);
+		del.execute();
+	}
+
+	public void testReadClass() throws Exception {
+		Set referenced = new HashSet();
+		DataInputStream in = new DataInputStream(BytecodeDependencyAnalyser.class.getResourceAsStream("BytecodeDependencyAnalyser.class"));
+		try {
+			BytecodeDependencyAnalyser.readClass(in, referenced);
+		} finally {
+			in.close();
+		}
+		assertTrue(referenced.contains("fr/jayasoft/ivy/util/Message"));
+		assertTrue(referenced.contains("java/util/zip/ZipFile"));
+		assertTrue(referenced.contains("fr/jayasoft/ivy/tools/analyser/JarModule"));
+	}
+
+	public void testAnalyze() throws Exception {
+		JarModule[] modules = new JarModule[] {
+				newJarModule("mod1", "1.0", new String[] {"mod1/A", "mod1/A2"}, new String[] {"mod1/A2", "mod2/B"}, null),
+				newJarModule("mod2", "1.0", new String[] {"mod2/B"}, new String[0], "mod3/C"),
+				newJarModule("mod3", "1.0", new String[] {"mod3/C"}, new String[] {"java/lang/String"}, null),
+				newJarModule("mod3", "2.0", new String[] {"mod3/C"}, new String[0], null),
+		};
+		ModuleDescriptor[] mds = new BytecodeDependencyAnalyser(2).analyze(modules);
+		assertEquals(4, mds.length);
+
+		// references to a class of the same module are ignored
+		assertDependencies(mds[0], new ModuleRevisionId[] {modules[1].getMrid()});
+		// references found in field descriptors, the first revision defining a class being used
+		assertDependencies(mds[1], new ModuleRevisionId[] {modules[2].getMrid()});
+		assertDependencies(mds[2], new ModuleRevisionId[0]);
+		assertDependencies(mds[3], new ModuleRevisionId[0]);
+	}
+
+	public void testBadJar() throws Exception {
+		File bad = new File(_dir, "bad.jar");
+		FileOutputStream out = new FileOutputStream(bad);
+		out.write("not a jar".getBytes());
+		out.close();
+		JarModule[] modules = new JarModule[] {
+				new JarModule(ModuleRevisionId.newInstance("org", "bad", "1.0"), bad),
+				newJarModule("mod1", "1.0", new String[] {"mod1/A"}, new String[0], null),
+		};
+		ModuleDescriptor[] mds = new BytecodeDependencyAnalyser().analyze(modules);
+		assertEquals(2, mds.length);
+		assertDependencies(mds[0], new ModuleRevisionId[0]);
+	}
+
+	public void testManyJars() throws Exception {
+		int nb = 3000;
+		JarModule[] modules = new JarModule[nb];
+		for (int i = 0; i < nb; i++) {
+			String[] references = i == 0 ? new String[0] : new String[] {"mod"+(i-1)+"/C", "mod"+(i/3)+"/C"};
+			modules[i] = newJarModule("mod"+i, "1.0", new String[] {"mod"+i+"/C"}, references, "java/lang/String");
+		}
+
+		// the best of a few runs is kept, the first ones warming up the jvm and the file cache
+		long sequential = Long.MAX_VALUE;
+		long parallel = Long.MAX_VALUE;
+		ModuleDescriptor[] mds = null;
+		for (int run = 0; run < 3; run++) {
+			long start = System.currentTimeMillis();
+			new BytecodeDependencyAnalyser(1).analyze(modules);
+			sequential = Math.min(sequential, System.currentTimeMillis() - start);
+			start = System.currentTimeMillis();
+			mds = new BytecodeDependencyAnalyser(4).analyze(modules);
+			parallel = Math.min(parallel, System.currentTimeMillis() - start);
+		}
+		Message.info("analysed "+nb+" jars in "+sequential+"ms with 1 thread, "+parallel+"ms with 4 threads ("
+				+Runtime.getRuntime().availableProcessors()+" processors)");
+		// some tolerance for timing noise, especially with a single processor
+		assertTrue("parallel analysis slower than sequential one: "+parallel+"ms > "+sequential+"ms", 
+				parallel <= sequential * 12 / 10 + 50);
+
+		assertEquals(nb, mds.length);
+		assertDependencies(mds[0], new ModuleRevisionId[0]);
+		assertDependencies(mds[1], new ModuleRevisionId[] {modules[0].getMrid()});
+		for (int i = 2; i < nb; i++) {
+			Set expected = new HashSet();
+			expected.add(modules[i-1].getMrid());
+			expected.add(modules[i/3].getMrid());
+			Set actual = new HashSet();
+			DependencyDescriptor[] dds = mds[i].getDependencies();
+			for (int j = 0; j < dds.length; j++) {
+				actual.add(dds[j].getDependencyRevisionId());
+			}
+			assertEquals(expected, actual);
+		}
+	}
+
+	private void assertDependencies(ModuleDescriptor md, ModuleRevisionId[] expected) {
+		DependencyDescriptor[] dds = md.getDependencies();
+		assertEquals(md.getModuleRevisionId()+" dependencies", expected.length, dds.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], dds[i].getDependencyRevisionId());
+		}
+	}
+
+	private JarModule newJarModule(String module, String revision, String[] classes, String[] references, String fieldType) throws IOException {
+		File jar = new File(_dir, module+"-"+revision+".jar");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+		try {
+			for (int i = 0; i < classes.length; i++) {
+				out.putNextEntry(new ZipEntry(classes[i]+".class"));
+				out.write(newClass(classes[i], references, fieldType));
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+		return new JarModule(ModuleRevisionId.newInstance("org", module, revision), jar);
+	}
+
+	/**
+	 * Builds a class file referencing the given classes in its constant pool, and having
+	 * a field of the given type if any.
+	 */
+	private byte[] newClass(String name, String[] references, String fieldType) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49);
+
+		out.writeShort(5 + 2 * references.length + 2);
+		out.writeByte(1);
+		out.writeUTF(name); // 1
+		out.writeByte(7);
+		out.writeShort(1); // 2
+		out.writeByte(1);
+		out.writeUTF("java/lang/Object"); // 3
+		out.writeByte(7);
+		out.writeShort(3); // 4
+		for (int i = 0; i < references.length; i++) {
+			out.writeByte(1);
+			out.writeUTF(references[i]);
+			out.writeByte(7);
+			out.writeShort(5 + 2 * i);
+		}
+		int field = 5 + 2 * references.length;
+		out.writeByte(1);
+		out.writeUTF("field");
+		out.writeByte(1);
+		out.writeUTF(fieldType == null ? "I" : "[L"+fieldType+";");
+
+		out.writeShort(0x21); // access flags
+		out.writeShort(2); // this class
+		out.writeShort(4); // super class
+		out.writeShort(0); // interfaces
+		out.writeShort(1); // fields
+		out.writeShort(0x2);
+		out.writeShort(field);
+		out.writeShort(field + 1);
+		out.writeShort(0);
+		out.writeShort(0); // methods
+		out.writeShort(0); // attributes
+		out.close();
+		return bytes.toByteArray();
+	}
+}
@@ -5,11 +5,32 @@
  */
 package fr.jayasoft.ivy.url;
 
+import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import junit.framework.TestCase;
 
+import fr.jayasoft.ivy.util.FileUtil;
+
 /**
  * Test BasicURLHandler
  */
@@ -27,4 +48,363 @@ public class BasicURLHandlerTest extends TestCase {
 //        assertTrue(handler.isReachable(new URL("ftp://ftp.mozilla.org/pub/dir.sizes")));
         assertFalse(handler.isReachable(new URL("ftp://ftp.mozilla.org/unknown.file")));
     }
+    
+    public void testOpenStream() throws Exception {
+        URLHandler handler = new BasicURLHandler();
+        File file = new File("build.xml");
+        InputStream in = handler.openStream(file.toURL());
+        long length = 0;
+        try {
+            byte[] buffer = new byte[100];
+            for (int c = in.read(buffer); c != -1; c = in.read(buffer)) {
+                length += c;
+            }
+        } finally {
+            in.close();
+        }
+        assertEquals(file.length(), length);
+        
+        try {
+            handler.openStream(new File("unknownfile.xml").toURL());
+            fail("opening a stream on an unknown file should raise an exception");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+    
+    public void testDecoding() throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(gzipped);
+        out.write("<ivy-module/>".getBytes());
+        out.close();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        out = new DeflaterOutputStream(deflated);
+        out.write("<ivy-module/>".getBytes());
+        out.close();
+        
+        URL ivy = new URL("http://localhost/ivy.xml");
+        assertEquals("<ivy-module/>", read(AbstractURLHandler.getDecodedStream(ivy, "gzip", new ByteArrayInputStream(gzipped.toByteArray()))));
+        assertEquals("<ivy-module/>", read(AbstractURLHandler.getDecodedStream(ivy, "Deflate", new ByteArrayInputStream(deflated.toByteArray()))));
+        assertEquals("<ivy-module/>", read(AbstractURLHandler.getDecodedStream(ivy, "deflate", new ByteArrayInputStream(rawDeflate("<ivy-module/>")))));
+        assertEquals("<ivy-module/>", read(AbstractURLHandler.getDecodedStream(ivy, null, new ByteArrayInputStream("<ivy-module/>".getBytes()))));
+        
+        // compressed archives are kept as is
+        assertFalse(AbstractURLHandler.isDecodingRequired(new URL("http://localhost/src.tar.gz"), "gzip"));
+        assertFalse(AbstractURLHandler.isDecodingRequired(ivy, "identity"));
+    }
+    
+    public void testGzipServer() throws Exception {
+        final byte[] gzipped = gzip("<ivy-module version=\"1.0\"/>");
+        ServerSocket server = new ServerSocket(0);
+        new GzipServer(server, gzipped).start();
+        try {
+            URL url = new URL("http://localhost:"+server.getLocalPort()+"/ivy.xml");
+            BasicURLHandler handler = new BasicURLHandler();
+            assertEquals("<ivy-module version=\"1.0\"/>", read(handler.openStream(url)));
+            
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            assertTrue(handler.fetch(url, content).isReachable());
+            assertEquals("<ivy-module version=\"1.0\"/>", content.toString());
+            
+            File dest = new File("build/test/gzip/ivy.xml");
+            dest.getParentFile().mkdirs();
+            try {
+                handler.download(url, dest, null);
+                assertEquals("<ivy-module version=\"1.0\"/>", read(new FileInputStream(dest)));
+            } finally {
+                FileUtil.forceDelete(dest.getParentFile());
+            }
+        } finally {
+            server.close();
+        }
+    }
+    
+    /**
+     * Answers all requests with the given gzipped content, until its socket is closed
+     */
+    static class GzipServer extends Thread {
+        private ServerSocket _server;
+        private byte[] _content;
+        
+        GzipServer(ServerSocket server, byte[] content) {
+            _server = server;
+            _content = content;
+            setDaemon(true);
+        }
+        
+        public void run() {
+            try {
+                while (true) {
+                    Socket socket = _server.accept();
+                    try {
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                        String request = in.readLine();
+                        for (String line = in.readLine(); line != null && line.length() > 0; line = in.readLine()) {
+                        }
+                        OutputStream out = socket.getOutputStream();
+                        out.write(("HTTP/1.0 200 OK\r\n"
+                                + "Content-Type: text/xml\r\n"
+                                + "Content-Encoding: gzip\r\n"
+                                + "Content-Length: "+_content.length+"\r\n"
+                                + "Connection: close\r\n\r\n").getBytes());
+                        if (request != null && request.startsWith("GET")) {
+                            out.write(_content);
+                        }
+                        out.flush();
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } catch (IOException ex) {
+                // server closed
+            }
+        }
+    }
+    
+    public void testConditionalDownload() throws Exception {
+        ResourceServer server = new ResourceServer(CONTENT, LAST_MODIFIED, "\"v1\"");
+        try {
+            checkConditionalDownload(new BasicURLHandler(), server);
+        } finally {
+            server.close();
+        }
+    }
+    
+    /**
+     * Checks that the content of the given server is downloaded again only when the 
+     * validators given by a first download don't match anymore.
+     */
+    static void checkConditionalDownload(ExtendedURLHandler handler, ResourceServer server) throws Exception {
+        File dest = new File("build/test/conditional/art.jar");
+        dest.getParentFile().mkdirs();
+        try {
+            URLHandler.URLInfo info = handler.download(server.getURL(), dest, null, 0, null);
+            assertNotNull(info);
+            assertEquals(CONTENT, read(new FileInputStream(dest)));
+            assertEquals(LAST_MODIFIED, info.getLastModified());
+            assertEquals("\"v1\"", info.getETag());
+            assertEquals("200", server.getStatuses());
+            
+            // If-None-Match
+            server.clearStatuses();
+            dest.delete();
+            assertNull(handler.download(server.getURL(), dest, null, 0, "\"v1\""));
+            assertFalse(dest.exists());
+            assertEquals("304", server.getStatuses());
+            
+            // If-Modified-Since
+            server.clearStatuses();
+            assertNull(handler.download(server.getURL(), dest, null, LAST_MODIFIED, null));
+            assertFalse(dest.exists());
+            assertEquals("304", server.getStatuses());
+            
+            // validators which don't match: the resource is downloaded
+            server.clearStatuses();
+            assertNotNull(handler.download(server.getURL(), dest, null, LAST_MODIFIED - 60000, "\"v0\""));
+            assertEquals(CONTENT, read(new FileInputStream(dest)));
+            dest.delete();
+            assertNotNull(handler.download(server.getURL(), dest, null, LAST_MODIFIED - 60000, null));
+            assertEquals(CONTENT, read(new FileInputStream(dest)));
+            assertEquals("200 200", server.getStatuses());
+        } finally {
+            FileUtil.forceDelete(dest.getParentFile());
+        }
+    }
+    
+    public void testResume() throws Exception {
+        ResourceServer server = new ResourceServer(CONTENT, LAST_MODIFIED, "\"v1\"");
+        try {
+            checkResume(new BasicURLHandler(), server);
+        } finally {
+            server.close();
+        }
+    }
+    
+    /**
+     * Checks the resume of the download of the content of the given server, whose partial 
+     * and complete content is answered with 206 and 416 statuses to range requests.
+     */
+    static void checkResume(ExtendedURLHandler handler, ResourceServer server) throws Exception {
+        File dest = new File("build/test/resume/art.jar");
+        dest.getParentFile().mkdirs();
+        try {
+            // the resource has not been modified: what remains is appended
+            write(dest, CONTENT.substring(0, 10));
+            handler.resume(server.getURL(), dest, null, LAST_MODIFIED);
+            assertEquals(CONTENT, read(new FileInputStream(dest)));
+            assertEquals("206", server.getStatuses());
+            
+            // the resource has been modified since the partial download: it is downloaded again
+            server.clearStatuses();
+            write(dest, "9876543210");
+            handler.resume(server.getURL(), dest, null, LAST_MODIFIED - 60000);
+            assertEquals(CONTENT, read(new FileInputStream(dest)));
+            assertEquals("200", server.getStatuses());
+            
+            // dest already holds the whole resource: the range can't be satisfied
+            server.clearStatuses();
+            write(dest, CONTENT);
+            handler.resume(server.getURL(), dest, null, LAST_MODIFIED);
+            assertEquals(CONTENT, read(new FileInputStream(dest)));
+            assertEquals("416 200", server.getStatuses());
+        } finally {
+            FileUtil.forceDelete(dest.getParentFile());
+        }
+    }
+    
+    static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+    // http dates have a one second precision
+    static final long LAST_MODIFIED = 1160000000000L;
+    
+    private static void write(File dest, String content) throws IOException {
+        FileUtil.copy(new ByteArrayInputStream(content.getBytes()), dest, null);
+    }
+    
+    /**
+     * Serves the given content, answering conditional and range requests as an http 1.1
+     * server would do, until it is closed. The statuses of its answers are recorded.
+     */
+    static class ResourceServer extends Thread {
+        private ServerSocket _server;
+        private byte[] _content;
+        private long _lastModified;
+        private String _etag;
+        private StringBuffer _statuses = new StringBuffer();
+        
+        ResourceServer(String content, long lastModified, String etag) throws IOException {
+            _server = new ServerSocket(0);
+            _content = content.getBytes();
+            _lastModified = lastModified;
+            _etag = etag;
+            setDaemon(true);
+            start();
+        }
+        
+        URL getURL() throws IOException {
+            return new URL("http://localhost:"+_server.getLocalPort()+"/art.jar");
+        }
+        
+        synchronized String getStatuses() {
+            return _statuses.toString().trim();
+        }
+        
+        synchronized void clearStatuses() {
+            _statuses.setLength(0);
+        }
+        
+        void close() throws IOException {
+            _server.close();
+        }
+        
+        public void run() {
+            try {
+                while (true) {
+                    Socket socket = _server.accept();
+                    try {
+                        answer(socket);
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } catch (IOException ex) {
+                // server closed
+            }
+        }
+        
+        private void answer(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            String request = in.readLine();
+            Map headers = new HashMap();
+            for (String line = in.readLine(); line != null && line.length() > 0; line = in.readLine()) {
+                int colon = line.indexOf(':');
+                if (colon != -1) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+                }
+            }
+            String lastModified = AbstractURLHandler.formatHttpDate(_lastModified);
+            String etag = (String) headers.get("if-none-match");
+            String modifiedSince = (String) headers.get("if-modified-since");
+            String range = (String) headers.get("range");
+            String ifRange = (String) headers.get("if-range");
+            int offset = 0;
+            String status;
+            String contentRange = null;
+            if (etag != null ? etag.equals(_etag) : modifiedSince != null && parseHttpDate(modifiedSince) >= _lastModified) {
+                status = "304 Not Modified";
+            } else if (range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(lastModified))) {
+                offset = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                if (offset >= _content.length) {
+                    status = "416 Requested Range Not Satisfiable";
+                    contentRange = "bytes */"+_content.length;
+                } else {
+                    status = "206 Partial Content";
+                    contentRange = "bytes "+offset+"-"+(_content.length - 1)+"/"+_content.length;
+                }
+            } else {
+                status = "200 OK";
+            }
+            synchronized (this) {
+                _statuses.append(status.substring(0, 3)).append(' ');
+            }
+            int length = status.startsWith("20") ? _content.length - offset : 0;
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.1 "+status+"\r\n"
+                    + "Last-Modified: "+lastModified+"\r\n"
+                    + "ETag: "+_etag+"\r\n"
+                    + (contentRange == null ? "" : "Content-Range: "+contentRange+"\r\n")
+                    + "Content-Length: "+length+"\r\n"
+                    + "Connection: close\r\n\r\n").getBytes());
+            if (request != null && request.startsWith("GET")) {
+                out.write(_content, offset, length);
+            }
+            out.flush();
+        }
+        
+        private static long parseHttpDate(String date) throws IOException {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return format.parse(date).getTime();
+            } catch (ParseException e) {
+                throw new IOException("bad date: "+date);
+            }
+        }
+    }
+    
+    static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(gzipped);
+        out.write(content.getBytes());
+        out.close();
+        return gzipped.toByteArray();
+    }
+    
+    private static byte[] rawDeflate(String content) throws IOException {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        OutputStream out = new DeflaterOutputStream(deflated, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        out.write(content.getBytes());
+        out.close();
+        return deflated.toByteArray();
+    }
+    
+    static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileUtil.copy(in, out, null);
+        return out.toString();
+    }
+    
+    public void testGetURLInfos() throws Exception {
+        ExtendedURLHandler handler = new BasicURLHandler();
+        URL[] urls = new URL[20];
+        for (int i = 0; i < urls.length; i++) {
+            // only the last url is reachable, so that all urls must be checked
+            urls[i] = new File(i == urls.length - 1 ? "build.xml" : "unknownfile"+i+".xml").toURL();
+        }
+        URLHandler.URLInfo[] infos = handler.getURLInfo(urls, 0);
+        assertEquals(urls.length, infos.length);
+        for (int i = 0; i < infos.length; i++) {
+            assertEquals(i == urls.length - 1, infos[i].isReachable());
+        }
+        assertEquals(new File("build.xml").length(), infos[urls.length - 1].getContentLength());
+    }
 }
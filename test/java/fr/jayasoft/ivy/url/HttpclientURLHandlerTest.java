@@ -5,6 +5,8 @@
  */
 package fr.jayasoft.ivy.url;
 
+import java.io.ByteArrayOutputStream;
+import java.net.ServerSocket;
 import java.net.URL;
 
 import junit.framework.TestCase;
@@ -19,4 +21,40 @@ public class HttpclientURLHandlerTest extends TestCase {
         assertTrue(handler.isReachable(new URL("http://www.google.fr/")));
         assertFalse(handler.isReachable(new URL("http://www.google.fr/unknownpage.html")));
     }
+    
+    public void testGzipServer() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        new BasicURLHandlerTest.GzipServer(server, BasicURLHandlerTest.gzip("<ivy-module/>")).start();
+        try {
+            URL url = new URL("http://localhost:"+server.getLocalPort()+"/ivy.xml");
+            HttpClientHandler handler = new HttpClientHandler();
+            assertEquals("<ivy-module/>", BasicURLHandlerTest.read(handler.openStream(url)));
+            
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            assertTrue(handler.fetch(url, content).isReachable());
+            assertEquals("<ivy-module/>", content.toString());
+        } finally {
+            server.close();
+        }
+    }
+    
+    public void testConditionalDownload() throws Exception {
+        BasicURLHandlerTest.ResourceServer server = new BasicURLHandlerTest.ResourceServer(
+                BasicURLHandlerTest.CONTENT, BasicURLHandlerTest.LAST_MODIFIED, "\"v1\"");
+        try {
+            BasicURLHandlerTest.checkConditionalDownload(new HttpClientHandler(), server);
+        } finally {
+            server.close();
+        }
+    }
+    
+    public void testResume() throws Exception {
+        BasicURLHandlerTest.ResourceServer server = new BasicURLHandlerTest.ResourceServer(
+                BasicURLHandlerTest.CONTENT, BasicURLHandlerTest.LAST_MODIFIED, "\"v1\"");
+        try {
+            BasicURLHandlerTest.checkResume(new HttpClientHandler(), server);
+        } finally {
+            server.close();
+        }
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ * 
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.url;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import fr.jayasoft.ivy.repository.url.URLRepository;
+import fr.jayasoft.ivy.util.CopyProgressListener;
+import fr.jayasoft.ivy.util.FileUtil;
+
+/**
+ * Test URLHandlerHelper with handlers implementing only URLHandler
+ */
+public class URLHandlerHelperTest extends TestCase {
+    private File _dest = new File("build/test/urlhelper/dest.txt");
+    
+    protected void tearDown() throws Exception {
+        URLHandlerRegistry.setDefault(new BasicURLHandler());
+        FileUtil.forceDelete(_dest.getParentFile());
+    }
+    
+    public void testPlainHandler() throws Exception {
+        PlainHandler handler = new PlainHandler();
+        URL url = new File("test/repositories/ivyconf.xml").toURL();
+        URL missing = new File("test/repositories/unknown.xml").toURL();
+        
+        URLHandler.URLInfo[] infos = URLHandlerHelper.getURLInfo(handler, new URL[] {url, missing}, 1000);
+        assertTrue(infos[0].isReachable());
+        assertFalse(infos[1].isReachable());
+        
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        assertTrue(URLHandlerHelper.fetch(handler, url, content).isReachable());
+        assertTrue(content.size() > 0);
+        
+        _dest.getParentFile().mkdirs();
+        assertNotNull(URLHandlerHelper.download(handler, url, _dest, null, 0, null));
+        assertTrue(_dest.exists());
+        assertNull(URLHandlerHelper.download(handler, url, _dest, null, _dest.lastModified() + 1000, null));
+        assertEquals(1, handler._downloads);
+    }
+    
+    public void testConditionalGetWithoutCheck() throws Exception {
+        CountingHandler handler = new CountingHandler() {
+            public URLInfo download(URL src, File dest, CopyProgressListener l, long lastModified, String etag) throws IOException {
+                _downloads++;
+                return null;
+            }
+        };
+        URLHandlerRegistry.setDefault(handler);
+        URL url = new File("test/repositories/ivyconf.xml").toURL();
+        
+        _dest.getParentFile().mkdirs();
+        assertNull(new URLRepository().get(url.toExternalForm(), _dest, System.currentTimeMillis(), null));
+        assertEquals(1, handler._downloads);
+        // the conditional get is the only request
+        assertEquals(0, handler._checks);
+    }
+    
+    public void testCheckAllStopsAtFirstReachable() throws Exception {
+        final URL first = new URL("http://localhost/first");
+        URLHandler handler = new PlainHandler() {
+            public URLInfo getURLInfo(URL url, int timeout) {
+                if (url.equals(first)) {
+                    return new URLInfo(true, 10, 0);
+                }
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                }
+                return UNAVAILABLE;
+            }
+        };
+        URL[] urls = new URL[] {first, new URL("http://localhost/second"), new URL("http://localhost/third")};
+        long start = System.currentTimeMillis();
+        URLHandler.URLInfo[] infos = URLHandlerHelper.checkAll(handler, urls, 0);
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertTrue(infos[0].isReachable());
+        assertNull(infos[1]);
+        assertNull(infos[2]);
+    }
+    
+    public void testCheckAllWaitsForPreferredUrls() throws Exception {
+        final URL first = new URL("http://localhost/first");
+        URLHandler handler = new PlainHandler() {
+            public URLInfo getURLInfo(URL url, int timeout) {
+                if (url.equals(first)) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                    }
+                    return UNAVAILABLE;
+                }
+                return new URLInfo(true, 10, 0);
+            }
+        };
+        URL[] urls = new URL[] {first, new URL("http://localhost/second"), new URL("http://localhost/third")};
+        URLHandler.URLInfo[] infos = URLHandlerHelper.checkAll(handler, urls, 0);
+        assertFalse(infos[0].isReachable());
+        assertTrue(infos[1].isReachable());
+    }
+    
+    private static class CountingHandler extends BasicURLHandler {
+        protected int _checks = 0;
+        protected int _downloads = 0;
+        
+        public URLInfo getURLInfo(URL url, int timeout) {
+            _checks++;
+            return super.getURLInfo(url, timeout);
+        }
+        
+    }
+    
+    /**
+     * A handler implementing only URLHandler
+     */
+    private static class PlainHandler implements URLHandler {
+        private URLHandler _delegate = new BasicURLHandler();
+        private int _downloads = 0;
+        
+        public boolean isReachable(URL url) {
+            return _delegate.isReachable(url);
+        }
+        public boolean isReachable(URL url, int timeout) {
+            return _delegate.isReachable(url, timeout);
+        }
+        public long getContentLength(URL url) {
+            return _delegate.getContentLength(url);
+        }
+        public long getContentLength(URL url, int timeout) {
+            return _delegate.getContentLength(url, timeout);
+        }
+        public long getLastModified(URL url) {
+            return _delegate.getLastModified(url);
+        }
+        public long getLastModified(URL url, int timeout) {
+            return _delegate.getLastModified(url, timeout);
+        }
+        public URLInfo getURLInfo(URL url) {
+            return _delegate.getURLInfo(url);
+        }
+        public URLInfo getURLInfo(URL url, int timeout) {
+            return _delegate.getURLInfo(url, timeout);
+        }
+        public InputStream openStream(URL url) throws IOException {
+            return _delegate.openStream(url);
+        }
+        public void download(URL src, File dest, CopyProgressListener l) throws IOException {
+            _downloads++;
+            _delegate.download(src, dest, l);
+        }
+    }
+}
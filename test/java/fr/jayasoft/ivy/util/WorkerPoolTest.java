@@ -0,0 +1,122 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class WorkerPoolTest extends TestCase {
+    public void testRunAll() throws Exception {
+        WorkerPool pool = new WorkerPool("test", 4);
+        final Set threads = Collections.synchronizedSet(new HashSet());
+        final int[] done = new int[1];
+        Runnable[] tasks = new Runnable[20];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Runnable() {
+                public void run() {
+                    threads.add(Thread.currentThread());
+                    sleep(20);
+                    synchronized (done) {
+                        done[0]++;
+                    }
+                }
+            };
+        }
+        assertTrue(pool.runAll(tasks, 4));
+        assertEquals(20, done[0]);
+        assertTrue(threads.size() > 1);
+        assertTrue(threads.size() <= 4);
+        assertTrue(pool.getThreads() <= 4);
+    }
+
+    public void testRunAllWithBusyPool() throws Exception {
+        WorkerPool pool = new WorkerPool("test", 1);
+        final Object lock = new Object();
+        // occupies the only thread of the pool
+        assertTrue(pool.tryExecute(new Runnable() {
+            public void run() {
+                synchronized (lock) {
+                    try {
+                        lock.wait(5000);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }));
+        assertFalse(pool.tryExecute(new Runnable() {
+            public void run() {
+            }
+        }));
+
+        final int[] done = new int[1];
+        Runnable[] tasks = new Runnable[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Runnable() {
+                public void run() {
+                    done[0]++;
+                }
+            };
+        }
+        // run by the calling thread
+        assertTrue(pool.runAll(tasks, 3));
+        assertEquals(3, done[0]);
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    public void testCancel() throws Exception {
+        final int[] done = new int[1];
+        final WorkerPool.Batch[] batch = new WorkerPool.Batch[1];
+        Runnable[] tasks = new Runnable[10];
+        for (int i = 0; i < tasks.length; i++) {
+            final int index = i;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    done[0]++;
+                    if (index == 2) {
+                        batch[0].cancel();
+                    }
+                }
+            };
+        }
+        batch[0] = WorkerPool.newBatch(tasks);
+        assertFalse(new WorkerPool("test", 1).runAll(batch[0], 1));
+        assertEquals(3, done[0]);
+    }
+
+    public void testInterrupt() throws Exception {
+        WorkerPool pool = new WorkerPool("test", 2);
+        final Thread caller = Thread.currentThread();
+        final int[] done = new int[1];
+        Runnable[] tasks = new Runnable[10];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Runnable() {
+                public void run() {
+                    synchronized (done) {
+                        done[0]++;
+                    }
+                    caller.interrupt();
+                    sleep(20);
+                }
+            };
+        }
+        assertFalse(pool.runAll(tasks, 2));
+        assertTrue(Thread.interrupted());
+        assertTrue(done[0] < 10);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
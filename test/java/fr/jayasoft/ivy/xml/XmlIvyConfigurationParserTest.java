@@ -7,6 +7,7 @@ package fr.jayasoft.ivy.xml;
 
 import java.io.File;
 import java.net.URL;
+import java.text.ParseException;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -130,6 +131,17 @@ public class XmlIvyConfigurationParserTest extends TestCase {
         assertEquals(true, ivy.getStatusManager().isIntegration("bronze"));
     }
     
+    public void testBadResolvedModulesCacheSize() throws Exception {
+        Ivy ivy = new Ivy();
+        XmlIvyConfigurationParser parser = new XmlIvyConfigurationParser(ivy);
+        try {
+            parser.parse(XmlIvyConfigurationParserTest.class.getResource("ivyconf-bad-cache-size.xml"));
+            fail("a bad resolvedModulesCacheSize should raise an error");
+        } catch (ParseException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("bad resolvedModulesCacheSize many") != -1);
+        }
+    }
+    
     public void testConflictManager() throws Exception {
         Ivy ivy = new Ivy();
         XmlIvyConfigurationParser parser = new XmlIvyConfigurationParser(ivy);
@@ -0,0 +1,90 @@
+/*
+ * This file is subject to the license found in LICENCE.TXT in the root directory of the project.
+ *
+ * #SNAPSHOT#
+ */
+package fr.jayasoft.ivy.xml;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+
+import fr.jayasoft.ivy.Artifact;
+import fr.jayasoft.ivy.Ivy;
+import fr.jayasoft.ivy.ModuleId;
+import fr.jayasoft.ivy.ModuleRevisionId;
+import fr.jayasoft.ivy.util.FileUtil;
+
+public class XmlReportParserTest extends TestCase {
+    private Ivy _ivy;
+    private File _cache;
+
+    protected void setUp() throws Exception {
+        _ivy = new Ivy();
+        _ivy.configure(new File("test/repositories/ivyconf.xml"));
+        _cache = new File("build/cache");
+        _cache.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        Delete del = new Delete();
+        del.setProject(new Project());
+        del.setDir(_cache);
+        del.execute();
+    }
+
+    private Artifact[] resolveAndParse(String ivyFile) throws Exception {
+        _ivy.resolve(new File(ivyFile).toURL(), null, new String[] {"*"}, _cache, null, true);
+        return _ivy.getReportParser().getArtifacts(new ModuleId("org1", "mod1.1"), "default", _cache);
+    }
+
+    public void testGetArtifacts() throws Exception {
+        Artifact[] artifacts = resolveAndParse("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml");
+        assertEquals(1, artifacts.length);
+        assertEquals(ModuleRevisionId.newInstance("org1", "mod1.2", "2.0"), artifacts[0].getModuleRevisionId());
+
+        // parsing again gives the same result
+        artifacts = _ivy.getReportParser().getArtifacts(new ModuleId("org1", "mod1.1"), "default", _cache);
+        assertEquals(1, artifacts.length);
+        assertEquals(ModuleRevisionId.newInstance("org1", "mod1.2", "2.0"), artifacts[0].getModuleRevisionId());
+    }
+
+    public void testReportRewritten() throws Exception {
+        resolveAndParse("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml");
+
+        // a new resolve of the same module rewrites the report, which must be parsed again
+        Artifact[] artifacts = resolveAndParse("test/repositories/1/org1/mod1.1/ivys/ivy-1.1.xml");
+        assertEquals(1, artifacts.length);
+        assertEquals(ModuleRevisionId.newInstance("org1", "mod1.2", "2.1"), artifacts[0].getModuleRevisionId());
+    }
+
+    public void testBounded() throws Exception {
+        resolveAndParse("test/repositories/1/org1/mod1.1/ivys/ivy-1.0.xml");
+        File report = new File(_cache, "org1-mod1.1-default.xml");
+        File copy = new File(_cache, "copy-default.xml");
+        FileUtil.copy(report, copy, null);
+        
+        XmlReportParser parser = new XmlReportParser(1);
+        assertEquals(1, parser.getDependencyRevisionIds(report).length);
+        assertEquals(1, parser.size());
+        assertEquals(1, parser.getDependencyRevisionIds(copy).length);
+        // the least recently used report has been forgotten
+        assertEquals(1, parser.size());
+        
+        parser = new XmlReportParser(0);
+        assertEquals(1, parser.getDependencyRevisionIds(report).length);
+        assertEquals(0, parser.size());
+    }
+
+    public void testNoReport() throws Exception {
+        try {
+            _ivy.getReportParser().getArtifacts(new ModuleId("org1", "mod1.1"), "default", _cache);
+            fail("parsing a missing report should raise an exception");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+}